@@ -44,6 +44,32 @@ public interface PackageOptions {
          */
         String KEY = "COMPRESSION";
 
+        /**
+         * Compression threads key, the value is the number of blocks of a {@code GZIP} compressed package that are
+         * compressed in parallel, producing a multi-member gzip stream; absent or {@code 1}, the package is
+         * compressed as a single gzip member by the writing thread
+         */
+        String THREADS_KEY = "COMPRESSION_THREADS";
+
+        /**
+         * Compression block size key, the value is the number of uncompressed bytes in each block compressed in
+         * parallel
+         */
+        String BLOCK_SIZE_KEY = "COMPRESSION_BLOCK_SIZE";
+
+        /**
+         * Compression level key, the value is the deflate compression level from {@code 0} (none) to {@code 9} (best)
+         * used for {@code GZIP} compressed packages and deflated {@code ZIP} entries; absent, the default level is used
+         */
+        String LEVEL_KEY = "COMPRESSION_LEVEL";
+
+        /**
+         * Store incompressible key, the value is a boolean; if {@code true} (the default), entries of a {@code ZIP}
+         * archive whose content is already compressed, judging by media type or a sample of their bytes, are stored
+         * rather than deflated
+         */
+        String STORE_INCOMPRESSIBLE_KEY = "COMPRESSION_STORE_INCOMPRESSIBLE";
+
         /**
          * Supported compression
          */
@@ -87,6 +113,12 @@ public interface PackageOptions {
          */
         String KEY = "ALGO";
 
+        /**
+         * Parallel checksum threshold key, the value is the size in bytes at or above which a resource's checksums
+         * are computed in parallel, one thread per algorithm; absent, checksums are computed by the writing thread
+         */
+        String PARALLEL_THRESHOLD_KEY = "ALGO_PARALLEL_THRESHOLD";
+
         /**
          * Supported checksum algorithms
          */
@@ -98,4 +130,55 @@ public interface PackageOptions {
 
     }
 
+    /**
+     * Buffering between the thread writing the package and the thread reading the package
+     */
+    interface Buffer {
+
+        /**
+         * Buffer key
+         */
+        String KEY = "BUFFER";
+
+        /**
+         * Buffer capacity key, the value is the capacity of the buffer in bytes
+         */
+        String CAPACITY_KEY = "BUFFER_CAPACITY";
+
+        /**
+         * Buffer chunk size key, the value is the size in bytes of each chunk handed from the writer to the reader
+         */
+        String CHUNK_SIZE_KEY = "BUFFER_CHUNK_SIZE";
+
+        /**
+         * Supported buffers.  {@code FILE} writes the entire package to a temporary file before it is read, so that its
+         * size and checksums are known before it is opened
+         */
+        enum OPTS {
+            PIPE,
+            RING,
+            FILE
+        }
+
+    }
+
+    /**
+     * Reading custodial resources ahead of the resource being written to the package
+     */
+    interface Prefetch {
+
+        /**
+         * Prefetch key, the value is the number of resources read ahead; {@code 0} disables prefetching
+         */
+        String KEY = "PREFETCH";
+
+        /**
+         * Prefetch memory key, the value is the number of bytes of prefetched content of a package held in memory,
+         * beyond which prefetched content is spooled to temporary files; the memory held by all packages is further
+         * bounded by a budget shared by the application
+         */
+        String MEMORY_KEY = "PREFETCH_MEMORY";
+
+    }
+
 }
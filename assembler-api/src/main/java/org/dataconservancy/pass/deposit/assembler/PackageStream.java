@@ -19,6 +19,7 @@ import org.dataconservancy.pass.deposit.assembler.PackageOptions.Archive;
 import org.dataconservancy.pass.deposit.assembler.PackageOptions.Compression;
 import org.dataconservancy.pass.deposit.model.DepositSubmission;
 
+import java.io.Closeable;
 import java.io.InputStream;
 import java.util.Collection;
 import java.util.Iterator;
@@ -28,7 +29,7 @@ import java.util.Iterator;
  *
  * @author Elliot Metsger (emetsger@jhu.edu)
  */
-public interface PackageStream {
+public interface PackageStream extends Closeable {
 
     /**
      * Opens the package in its entirety, and streams back the bytes as specified by the archive and compression
@@ -62,6 +63,16 @@ public interface PackageStream {
      */
     Metadata metadata();
 
+    /**
+     * Releases any resources held by this {@code PackageStream}, for example a copy of the package spooled to disk.
+     * Callers should close the {@code PackageStream} once they no longer need to {@link #open() open} it.  The default
+     * implementation does nothing.
+     */
+    @Override
+    default void close() {
+        // no-op
+    }
+
     /**
      * Metadata describing the package.
      */
@@ -15,9 +15,12 @@
  */
 package org.dataconservancy.pass.deposit.messaging.config.repository;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import org.dataconservancy.pass.deposit.assembler.PackageOptions.Archive;
+import org.dataconservancy.pass.deposit.assembler.PackageOptions.Buffer;
 import org.dataconservancy.pass.deposit.assembler.PackageOptions.Checksum;
 import org.dataconservancy.pass.deposit.assembler.PackageOptions.Compression;
+import org.dataconservancy.pass.deposit.assembler.PackageOptions.Prefetch;
 
 import java.util.HashMap;
 import java.util.List;
@@ -32,10 +35,35 @@ public class AssemblerOptions {
 
     private String compression;
 
+    @JsonProperty("compression-threads")
+    private Integer compressionThreads;
+
+    @JsonProperty("compression-block-size")
+    private Integer compressionBlockSize;
+
+    @JsonProperty("compression-level")
+    private Integer compressionLevel;
+
+    @JsonProperty("store-incompressible")
+    private Boolean storeIncompressible;
+
     private String archive;
 
     private List<String> algorithms;
 
+    @JsonProperty("checksum-parallel-threshold")
+    private Integer checksumParallelThreshold;
+
+    private String buffer;
+
+    @JsonProperty("buffer-capacity")
+    private Integer bufferCapacity;
+
+    private Integer prefetch;
+
+    @JsonProperty("prefetch-memory")
+    private Integer prefetchMemory;
+
     public String getCompression() {
         return compression;
     }
@@ -44,6 +72,38 @@ public class AssemblerOptions {
         this.compression = compression;
     }
 
+    public Integer getCompressionThreads() {
+        return compressionThreads;
+    }
+
+    public void setCompressionThreads(Integer compressionThreads) {
+        this.compressionThreads = compressionThreads;
+    }
+
+    public Integer getCompressionBlockSize() {
+        return compressionBlockSize;
+    }
+
+    public void setCompressionBlockSize(Integer compressionBlockSize) {
+        this.compressionBlockSize = compressionBlockSize;
+    }
+
+    public Integer getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public void setCompressionLevel(Integer compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    public Boolean getStoreIncompressible() {
+        return storeIncompressible;
+    }
+
+    public void setStoreIncompressible(Boolean storeIncompressible) {
+        this.storeIncompressible = storeIncompressible;
+    }
+
     public String getArchive() {
         return archive;
     }
@@ -60,15 +120,82 @@ public class AssemblerOptions {
         this.algorithms = algorithms;
     }
 
+    public Integer getChecksumParallelThreshold() {
+        return checksumParallelThreshold;
+    }
+
+    public void setChecksumParallelThreshold(Integer checksumParallelThreshold) {
+        this.checksumParallelThreshold = checksumParallelThreshold;
+    }
+
+    public String getBuffer() {
+        return buffer;
+    }
+
+    public void setBuffer(String buffer) {
+        this.buffer = buffer;
+    }
+
+    public Integer getBufferCapacity() {
+        return bufferCapacity;
+    }
+
+    public void setBufferCapacity(Integer bufferCapacity) {
+        this.bufferCapacity = bufferCapacity;
+    }
+
+    public Integer getPrefetch() {
+        return prefetch;
+    }
+
+    public void setPrefetch(Integer prefetch) {
+        this.prefetch = prefetch;
+    }
+
+    public Integer getPrefetchMemory() {
+        return prefetchMemory;
+    }
+
+    public void setPrefetchMemory(Integer prefetchMemory) {
+        this.prefetchMemory = prefetchMemory;
+    }
+
     public Map<String, Object> asOptionsMap() {
         return new HashMap<String, Object>() {
             {
                 put(Compression.KEY, Compression.OPTS.valueOf(compression.toUpperCase()));
+                if (compressionThreads != null) {
+                    put(Compression.THREADS_KEY, compressionThreads);
+                }
+                if (compressionBlockSize != null) {
+                    put(Compression.BLOCK_SIZE_KEY, compressionBlockSize);
+                }
+                if (compressionLevel != null) {
+                    put(Compression.LEVEL_KEY, compressionLevel);
+                }
+                if (storeIncompressible != null) {
+                    put(Compression.STORE_INCOMPRESSIBLE_KEY, storeIncompressible);
+                }
                 put(Archive.KEY, Archive.OPTS.valueOf(archive.toUpperCase()));
                 put(Checksum.KEY,
                         algorithms.stream()
                                 .map(algo -> Checksum.OPTS.valueOf(algo.toUpperCase()))
                                 .collect(Collectors.toList()));
+                if (checksumParallelThreshold != null) {
+                    put(Checksum.PARALLEL_THRESHOLD_KEY, checksumParallelThreshold);
+                }
+                if (buffer != null) {
+                    put(Buffer.KEY, Buffer.OPTS.valueOf(buffer.toUpperCase()));
+                }
+                if (bufferCapacity != null) {
+                    put(Buffer.CAPACITY_KEY, bufferCapacity);
+                }
+                if (prefetch != null) {
+                    put(Prefetch.KEY, prefetch);
+                }
+                if (prefetchMemory != null) {
+                    put(Prefetch.MEMORY_KEY, prefetchMemory);
+                }
             }
         };
     }
@@ -80,18 +207,35 @@ public class AssemblerOptions {
         if (o == null || getClass() != o.getClass())
             return false;
         AssemblerOptions that = (AssemblerOptions) o;
-        return Objects.equals(compression, that.compression) && Objects.equals(archive, that.archive) && Objects.equals(algorithms, that.algorithms);
+        return Objects.equals(compression, that.compression) &&
+                Objects.equals(compressionThreads, that.compressionThreads) &&
+                Objects.equals(compressionBlockSize, that.compressionBlockSize) &&
+                Objects.equals(compressionLevel, that.compressionLevel) &&
+                Objects.equals(storeIncompressible, that.storeIncompressible) &&
+                Objects.equals(archive, that.archive) &&
+                Objects.equals(algorithms, that.algorithms) &&
+                Objects.equals(checksumParallelThreshold, that.checksumParallelThreshold) &&
+                Objects.equals(buffer, that.buffer) &&
+                Objects.equals(bufferCapacity, that.bufferCapacity) && Objects.equals(prefetch, that.prefetch) &&
+                Objects.equals(prefetchMemory, that.prefetchMemory);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(compression, archive, algorithms);
+        return Objects.hash(compression, compressionThreads, compressionBlockSize, compressionLevel,
+                storeIncompressible, archive, algorithms, checksumParallelThreshold, buffer, bufferCapacity, prefetch,
+                prefetchMemory);
     }
 
     @Override
     public String toString() {
-        return "AssemblerOptions{" + "compression='" + compression + '\'' + ", archive='" + archive + '\'' + ", " +
-                "algorithms=" + algorithms + '}';
+        return "AssemblerOptions{" + "compression='" + compression + '\'' +
+                ", compressionThreads=" + compressionThreads + ", compressionBlockSize=" + compressionBlockSize +
+                ", compressionLevel=" + compressionLevel + ", storeIncompressible=" + storeIncompressible +
+                ", archive='" + archive + '\'' + ", " +
+                "algorithms=" + algorithms + ", checksumParallelThreshold=" + checksumParallelThreshold +
+                ", buffer='" + buffer + '\'' + ", bufferCapacity=" + bufferCapacity +
+                ", prefetch=" + prefetch + ", prefetchMemory=" + prefetchMemory + '}';
     }
 
 }
@@ -39,6 +39,9 @@ public class RepositoryConfig {
     @JsonProperty("assembler")
     private AssemblerConfig assemblerConfig;
 
+    @JsonProperty("worker-config")
+    private WorkerConfig workerConfig;
+
     public String getRepositoryKey() {
         return repositoryKey;
     }
@@ -71,6 +74,14 @@ public class RepositoryConfig {
         this.assemblerConfig = assemblerConfig;
     }
 
+    public WorkerConfig getWorkerConfig() {
+        return workerConfig;
+    }
+
+    public void setWorkerConfig(WorkerConfig workerConfig) {
+        this.workerConfig = workerConfig;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o)
@@ -86,7 +97,9 @@ public class RepositoryConfig {
             return false;
         if (transportConfig != null ? !transportConfig.equals(that.transportConfig) : that.transportConfig != null)
             return false;
-        return assemblerConfig != null ? assemblerConfig.equals(that.assemblerConfig) : that.assemblerConfig == null;
+        if (assemblerConfig != null ? !assemblerConfig.equals(that.assemblerConfig) : that.assemblerConfig != null)
+            return false;
+        return workerConfig != null ? workerConfig.equals(that.workerConfig) : that.workerConfig == null;
     }
 
     @Override
@@ -95,6 +108,7 @@ public class RepositoryConfig {
         result = 31 * result + (repositoryDepositConfig != null ? repositoryDepositConfig.hashCode() : 0);
         result = 31 * result + (transportConfig != null ? transportConfig.hashCode() : 0);
         result = 31 * result + (assemblerConfig != null ? assemblerConfig.hashCode() : 0);
+        result = 31 * result + (workerConfig != null ? workerConfig.hashCode() : 0);
         return result;
     }
 
@@ -102,7 +116,7 @@ public class RepositoryConfig {
     public String toString() {
         return "RepositoryConfig{" + "repositoryKey='" + repositoryKey + '\'' + ", repositoryDepositConfig=" +
                 repositoryDepositConfig + ", transportConfig=" + transportConfig +
-                ", assemblerConfig=" + assemblerConfig + '}';
+                ", assemblerConfig=" + assemblerConfig + ", workerConfig=" + workerConfig + '}';
     }
 
 }
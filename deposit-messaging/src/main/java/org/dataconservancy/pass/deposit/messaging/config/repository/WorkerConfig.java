@@ -0,0 +1,90 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.config.repository;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Objects;
+
+/**
+ * Limits the share of the deposit worker pool used by deposits to a repository, so that a slow repository cannot
+ * occupy every worker.  Values that are not configured default to the limits of the deposit worker pool itself.
+ */
+public class WorkerConfig {
+
+    /**
+     * The maximum number of deposits to the repository that may be performed concurrently
+     */
+    @JsonProperty("concurrency")
+    private Integer concurrency;
+
+    /**
+     * The maximum number of deposits to the repository that may wait for a worker
+     */
+    @JsonProperty("queue")
+    private Integer queue;
+
+    /**
+     * The relative share of free workers given to the repository when deposits to several repositories are waiting
+     */
+    @JsonProperty("weight")
+    private Integer weight;
+
+    public Integer getConcurrency() {
+        return concurrency;
+    }
+
+    public void setConcurrency(Integer concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    public Integer getQueue() {
+        return queue;
+    }
+
+    public void setQueue(Integer queue) {
+        this.queue = queue;
+    }
+
+    public Integer getWeight() {
+        return weight;
+    }
+
+    public void setWeight(Integer weight) {
+        this.weight = weight;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        WorkerConfig that = (WorkerConfig) o;
+        return Objects.equals(concurrency, that.concurrency) &&
+                Objects.equals(queue, that.queue) &&
+                Objects.equals(weight, that.weight);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(concurrency, queue, weight);
+    }
+
+    @Override
+    public String toString() {
+        return "WorkerConfig{" + "concurrency=" + concurrency + ", queue=" + queue + ", weight=" + weight + '}';
+    }
+
+}
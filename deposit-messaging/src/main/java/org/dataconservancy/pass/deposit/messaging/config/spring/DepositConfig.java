@@ -21,34 +21,63 @@ import okhttp3.Request;
 import okhttp3.logging.HttpLoggingInterceptor;
 import org.apache.abdera.parser.Parser;
 import org.apache.abdera.parser.stax.FOMParserFactory;
+import org.dataconservancy.deposit.util.async.VirtualThreads;
+import org.dataconservancy.pass.client.PassClient;
 import org.dataconservancy.pass.client.PassClientDefault;
 import org.dataconservancy.pass.client.SubmissionStatusService;
 import org.dataconservancy.pass.client.adapter.PassJsonAdapterBasic;
 import org.dataconservancy.pass.deposit.assembler.Assembler;
-import org.dataconservancy.pass.deposit.assembler.shared.ExceptionHandlingThreadPoolExecutor;
+import org.dataconservancy.pass.deposit.assembler.shared.PackageAssemblyExecutor;
+import org.dataconservancy.pass.deposit.assembler.shared.PackageTaskExecutor;
+import org.dataconservancy.pass.deposit.assembler.shared.PrefetchMemoryBudget;
+import org.dataconservancy.pass.deposit.assembler.shared.ResourceCache;
 import org.dataconservancy.pass.deposit.builder.fs.FcrepoModelBuilder;
 import org.dataconservancy.pass.deposit.builder.fs.FilesystemModelBuilder;
 import org.dataconservancy.pass.deposit.messaging.DepositServiceErrorHandler;
 import org.dataconservancy.pass.deposit.messaging.DepositServiceRuntimeException;
 import org.dataconservancy.pass.deposit.messaging.config.repository.Repositories;
+import org.dataconservancy.pass.deposit.messaging.config.repository.RepositoryConfig;
+import org.dataconservancy.pass.deposit.messaging.config.repository.WorkerConfig;
 import org.dataconservancy.pass.deposit.messaging.model.InMemoryMapRegistry;
 import org.dataconservancy.pass.deposit.messaging.model.Packager;
 import org.dataconservancy.pass.deposit.messaging.model.Registry;
 import org.dataconservancy.pass.deposit.messaging.policy.DirtyDepositPolicy;
+import org.dataconservancy.pass.deposit.messaging.policy.Policy;
+import org.dataconservancy.pass.deposit.messaging.service.BulkheadQueue;
+import org.dataconservancy.pass.deposit.messaging.service.BulkheadTaskExecutor;
+import org.dataconservancy.pass.deposit.messaging.service.DeferredRetryRejectionHandler;
+import org.dataconservancy.pass.deposit.messaging.service.DepositIndex;
+import org.dataconservancy.pass.deposit.messaging.service.DepositJournal;
+import org.dataconservancy.pass.deposit.messaging.service.DepositPipeline;
+import org.dataconservancy.pass.deposit.messaging.service.DepositRecovery;
+import org.dataconservancy.pass.deposit.messaging.service.DepositStatusUpdater;
 import org.dataconservancy.pass.deposit.messaging.service.DepositTask;
+import org.dataconservancy.pass.deposit.messaging.service.DepositTaskHelper;
+import org.dataconservancy.pass.deposit.messaging.service.DepositUpdater;
+import org.dataconservancy.pass.deposit.messaging.service.DepositUtil;
 import org.dataconservancy.pass.deposit.messaging.status.DefaultDepositStatusProcessor;
 import org.dataconservancy.pass.deposit.messaging.status.DepositStatusProcessor;
 import org.dataconservancy.pass.deposit.messaging.status.DepositStatusResolver;
+import org.dataconservancy.pass.deposit.messaging.status.HostLimitedStatusResolver;
+import org.dataconservancy.pass.deposit.messaging.support.actuator.ResourceCacheEndpoint;
+import org.dataconservancy.pass.deposit.messaging.support.actuator.WorkersEndpoint;
+import org.dataconservancy.pass.deposit.messaging.support.jms.CoalescingDispatcher;
 import org.dataconservancy.pass.deposit.messaging.support.swordv2.AtomFeedStatusResolver;
+import org.dataconservancy.pass.deposit.messaging.support.swordv2.StatementCache;
+import org.dataconservancy.pass.deposit.messaging.support.swordv2.StaxStatementResolver;
 import org.dataconservancy.pass.deposit.transport.Transport;
 import org.dataconservancy.pass.deposit.transport.fs.FilesystemTransport;
 import org.dataconservancy.pass.deposit.transport.ftp.FtpTransport;
 import org.dataconservancy.pass.deposit.transport.sword2.Sword2Transport;
+import org.dataconservancy.pass.model.Deposit;
+import org.dataconservancy.pass.model.Submission;
 import org.dataconservancy.pass.support.messaging.cri.CriticalRepositoryInteraction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.web.client.RestTemplateAutoConfiguration;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
@@ -59,13 +88,20 @@ import org.springframework.core.io.Resource;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.IOException;
 import java.net.URI;
+import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -86,6 +122,12 @@ public class DepositConfig {
 
     private static final AtomicInteger THREAD_COUNTER = new AtomicInteger(0);
 
+    /**
+     * The key of the bulkhead of deposit worker tasks that are not for a configured repository.  Repositories may not
+     * be configured with this key.
+     */
+    static final String DEFAULT_BULKHEAD = "<default>";
+
     @Value("${pass.fedora.user}")
     private String fedoraUser;
 
@@ -104,12 +146,33 @@ public class DepositConfig {
     @Value("${pass.deposit.workers.concurrency}")
     private int depositWorkersConcurrency;
 
+    @Value("${pass.deposit.workers.queue}")
+    private int depositWorkersQueue;
+
+    @Value("${pass.deposit.workers.submit.timeout-ms}")
+    private long depositWorkersSubmitTimeoutMs;
+
+    @Value("${pass.deposit.workers.retry.delay-ms}")
+    private long depositWorkersRetryDelayMs;
+
+    @Value("${pass.deposit.submission.io.concurrency}")
+    private int submissionIoConcurrency;
+
     @Value("${pass.deposit.http.agent}")
     private String passHttpAgent;
 
     @Value("${pass.deposit.repository.configuration}")
     private Resource repositoryConfigResource;
 
+    @Value("${pass.deposit.assembler.writers.max}")
+    private int assemblerMaxWriters;
+
+    @Value("${pass.deposit.assembler.writers.queue}")
+    private int assemblerWriterQueue;
+
+    @Value("${pass.deposit.threads.virtual}")
+    private boolean virtualThreads;
+
     @Bean
     public PassClientDefault passClient() {
 
@@ -328,28 +391,110 @@ public class DepositConfig {
         return dbf;
     }
 
+    /**
+     * Blocks threads submitting to a saturated {@link #depositWorkers(DepositServiceErrorHandler,
+     * DeferredRetryRejectionHandler, Repositories) deposit worker pool}, and retries tasks that still cannot be queued
+     * later, rather than failing their {@code Deposit} because the pool was busy.
+     * <p>
+     * Tasks rejected because the pool is shut down, including tasks still awaiting a retry when the application
+     * stops, are left {@code QUEUED} in the deposit journal, if it is enabled, so that they are resumed when the
+     * application next starts.  Without the journal, they are handed to the error handler, which marks their {@code
+     * Deposit} as failed.
+     * </p>
+     *
+     * @param errorHandler handles tasks rejected because the pool is shut down, if the journal is not enabled
+     * @param depositJournal the deposit journal, if it is enabled
+     * @return the rejection handler of the deposit worker pool
+     */
+    @Bean(destroyMethod = "close")
+    public DeferredRetryRejectionHandler depositWorkersRejectionHandler(DepositServiceErrorHandler errorHandler,
+                                                                        ObjectProvider<DepositJournal> depositJournal) {
+        DepositJournal journal = depositJournal.getIfAvailable();
+        return new DeferredRetryRejectionHandler(depositWorkersSubmitTimeoutMs, depositWorkersRetryDelayMs,
+                rejectedTask -> {
+                    String msg = String.format(">>>> Task %s@%s rejected, the deposit worker pool is shut down.",
+                            rejectedTask.getClass().getSimpleName(), toHexString(identityHashCode(rejectedTask)));
+                    if (rejectedTask instanceof DepositTask &&
+                            ((DepositTask) rejectedTask).getDepositWorkerContext() != null) {
+                        DepositUtil.DepositWorkerContext dc = ((DepositTask) rejectedTask).getDepositWorkerContext();
+                        if (journal != null) {
+                            journal.record(dc.deposit().getId(), DepositJournal.Transition.QUEUED);
+                            if (dc.packageShare() != null) {
+                                dc.packageShare().release();
+                            }
+                            LOG.warn("{}  Deposit {} is left queued in the deposit journal for the next start.", msg,
+                                    dc.deposit().getId());
+                        } else {
+                            errorHandler.handleError(new DepositServiceRuntimeException(msg, dc.deposit()));
+                        }
+                    } else {
+                        LOG.error(msg);
+                    }
+                });
+    }
+
+    /**
+     * The deposit worker pool.  The workers are divided among per-repository bulkheads, so that a slow repository
+     * cannot tie up every worker: each repository has its own queue, and a limit on the number of its deposits that
+     * are performed concurrently, configured by the optional {@code worker-config} of its entry in {@code
+     * repositories.json}.  Free workers are shared among repositories with waiting deposits according to their weight.
+     * <p>
+     * When virtual threads are used, the workers are virtual threads, and the pool is sized so that every bulkhead
+     * may run its deposits concurrently: the concurrency of each bulkhead, rather than the size of the pool, caps the
+     * load placed on its repository, and may exceed {@code pass.deposit.workers.concurrency}.
+     * </p>
+     *
+     * @param errorHandler handles exceptions thrown by deposit workers
+     * @param depositWorkersRejectionHandler handles deposits that cannot be queued for their repository
+     * @param repositories the repository configuration
+     * @return the deposit worker pool
+     */
     @Bean
-    public ThreadPoolTaskExecutor depositWorkers(DepositServiceErrorHandler errorHandler) {
-        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-        executor.setMaxPoolSize(depositWorkersConcurrency);
-        executor.setQueueCapacity(10);
-        executor.setRejectedExecutionHandler((rejectedTask, exe) -> {
-            String msg = String.format(">>>> Task %s@%s rejected, will be retried later.",
-                    rejectedTask.getClass().getSimpleName(), toHexString(identityHashCode(rejectedTask)));
-            if (rejectedTask instanceof DepositTask && ((DepositTask)rejectedTask).getDepositWorkerContext() != null) {
-                DepositServiceRuntimeException ex = new DepositServiceRuntimeException(msg, ((DepositTask)
-                        rejectedTask).getDepositWorkerContext().deposit());
-                errorHandler.handleError(ex);
-            } else {
-                LOG.error(msg);
+    public BulkheadTaskExecutor depositWorkers(DepositServiceErrorHandler errorHandler,
+                                               DeferredRetryRejectionHandler depositWorkersRejectionHandler,
+                                               Repositories repositories) {
+        boolean virtual = useVirtualThreads();
+        BulkheadQueue bulkheads = new BulkheadQueue(DepositConfig::bulkheadKey, depositWorkersConcurrency,
+                depositWorkersQueue);
+        // one bulkhead of default concurrency for deposits to unknown repositories
+        int poolSize = depositWorkersConcurrency;
+        for (String key : repositories.keys()) {
+            RepositoryConfig repoConfig = repositories.getConfig(key);
+            if (DEFAULT_BULKHEAD.equals(repoConfig.getRepositoryKey())) {
+                throw new IllegalArgumentException("Repository key '" + DEFAULT_BULKHEAD + "' is reserved for the " +
+                        "bulkhead of deposits to unknown repositories.");
             }
-        });
+            WorkerConfig workerConfig = repoConfig.getWorkerConfig();
+            if (workerConfig == null) {
+                poolSize += depositWorkersConcurrency;
+                continue;
+            }
+            int concurrency = Optional.ofNullable(workerConfig.getConcurrency()).orElse(depositWorkersConcurrency);
+            if (!virtual) {
+                concurrency = Math.min(depositWorkersConcurrency, concurrency);
+            }
+            poolSize += concurrency;
+            bulkheads.configure(repoConfig.getRepositoryKey(), concurrency,
+                    Optional.ofNullable(workerConfig.getQueue()).orElse(depositWorkersQueue),
+                    Optional.ofNullable(workerConfig.getWeight()).orElse(1));
+        }
+        bulkheads.getBulkheads().forEach(bulkhead -> LOG.info("Configured deposit worker bulkhead {}", bulkhead));
+
+        if (virtual) {
+            LOG.info("Deposit workers run on up to {} virtual threads", poolSize);
+        } else {
+            poolSize = depositWorkersConcurrency;
+        }
+
+        BulkheadTaskExecutor executor = new BulkheadTaskExecutor(bulkheads, poolSize);
+        executor.setRejectedExecutionHandler(depositWorkersRejectionHandler);
 
         executor.setWaitForTasksToCompleteOnShutdown(true);
         executor.setThreadNamePrefix("Deposit-Worker-");
+        ThreadFactory threads = virtual ? VirtualThreads.factory("Deposit-Worker-") :
+                r -> new Thread(r, "Deposit-Worker-" + THREAD_COUNTER.getAndIncrement());
         ThreadFactory tf = r -> {
-            Thread t = new Thread(r);
-            t.setName("Deposit-Worker-" + THREAD_COUNTER.getAndIncrement());
+            Thread t = threads.newThread(r);
             t.setUncaughtExceptionHandler((thread, throwable) -> errorHandler.handleError(throwable));
             return t;
         };
@@ -358,13 +503,294 @@ public class DepositConfig {
     }
 
     @Bean
-    public AtomFeedStatusResolver atomFeedStatusParser(Parser abderaParser) {
-        return new AtomFeedStatusResolver(abderaParser);
+    public WorkersEndpoint workersEndpoint(BulkheadTaskExecutor depositWorkers,
+                                           DeferredRetryRejectionHandler depositWorkersRejectionHandler) {
+        return new WorkersEndpoint(depositWorkers, depositWorkersRejectionHandler);
+    }
+
+    /**
+     * Answers the key of the bulkhead of a deposit worker task: the name of the Packager, i.e. the key of the
+     * repository, that a {@code DepositTask} deposits to.
+     */
+    private static String bulkheadKey(Runnable task) {
+        if (task instanceof DepositTask) {
+            DepositUtil.DepositWorkerContext dc = ((DepositTask) task).getDepositWorkerContext();
+            if (dc != null && dc.packager() != null) {
+                return dc.packager().getName();
+            }
+        }
+        return DEFAULT_BULKHEAD;
+    }
+
+    /**
+     * Performs the steps of each deposit as asynchronous stages, each on an executor sized for its kind of work:
+     * reads and updates of PASS resources in Fedora, assembly of packages, and transport of packages to downstream
+     * repositories.  Without the pipeline, each deposit is performed in sequence on a deposit worker thread.
+     *
+     * @param errorHandler handles the exceptions of deposits that fail
+     * @param fedoraConcurrency the number of threads reading and updating PASS resources
+     * @param packagingConcurrency the number of threads assembling packages
+     * @param transportConcurrency the number of threads transporting packages
+     * @return the deposit pipeline
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "pass.deposit.pipeline.enabled", havingValue = "true")
+    DepositPipeline depositPipeline(DepositServiceErrorHandler errorHandler,
+                                    @Value("${pass.deposit.pipeline.fedora.concurrency}") int fedoraConcurrency,
+                                    @Value("${pass.deposit.pipeline.packaging.concurrency}") int packagingConcurrency,
+                                    @Value("${pass.deposit.pipeline.transport.concurrency}") int transportConcurrency) {
+        LOG.info("Deposit pipeline stages run on {} Fedora I/O, {} packaging and {} transport threads",
+                fedoraConcurrency, packagingConcurrency, transportConcurrency);
+        return new DepositPipeline(stageExecutor("Deposit-Fedora-IO-", fedoraConcurrency),
+                stageExecutor("Deposit-Packaging-", packagingConcurrency),
+                stageExecutor("Deposit-Transport-", transportConcurrency),
+                errorHandler::handleError);
+    }
+
+    /**
+     * Journals the transitions of each deposit to local disk, so that the deposits left unfinished by a process that
+     * died can be resumed or failed when the application next starts, without searching the index for them.
+     *
+     * @param directory the directory holding the segments of the journal
+     * @param segmentBytes the size of a journal segment, beyond which a new segment is started
+     * @param compactionIntervalMs the interval between background compactions of the journal
+     * @param fsync whether each transition is forced to the storage device
+     * @return the deposit journal
+     * @throws IOException if the journal cannot be opened
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "pass.deposit.journal.enabled", havingValue = "true")
+    DepositJournal depositJournal(@Value("${pass.deposit.journal.dir}") String directory,
+                                  @Value("${pass.deposit.journal.segment-bytes}") long segmentBytes,
+                                  @Value("${pass.deposit.journal.compaction.interval-ms}") long compactionIntervalMs,
+                                  @Value("${pass.deposit.journal.fsync}") boolean fsync) throws IOException {
+        LOG.info("Journaling deposit transitions in {}", directory);
+        return new DepositJournal(Paths.get(directory), segmentBytes, compactionIntervalMs, fsync);
+    }
+
+    /**
+     * Resumes or fails the deposits recovered from the {@link #depositJournal(String, long, long, boolean) deposit
+     * journal} once the application has started.
+     *
+     * @return the deposit recovery
+     */
+    @Bean
+    @ConditionalOnProperty(name = "pass.deposit.journal.enabled", havingValue = "true")
+    DepositRecovery depositRecovery(DepositJournal depositJournal, PassClient passClient,
+                                    FcrepoModelBuilder fcrepoModelBuilder, Registry<Packager> packagerRegistry,
+                                    DepositTaskHelper depositTaskHelper,
+                                    Policy<Deposit.DepositStatus> intermediateDepositStatusPolicy,
+                                    DepositServiceErrorHandler errorHandler) {
+        return new DepositRecovery(depositJournal, passClient, fcrepoModelBuilder, packagerRegistry,
+                depositTaskHelper, intermediateDepositStatusPolicy, errorHandler::handleError);
+    }
+
+    private ExecutorService stageExecutor(String namePrefix, int concurrency) {
+        ThreadFactory threads = useVirtualThreads() ? VirtualThreads.factory(namePrefix) :
+                r -> new Thread(r, namePrefix + THREAD_COUNTER.getAndIncrement());
+        return Executors.newFixedThreadPool(concurrency, threads);
+    }
+
+    /**
+     * Answers whether threads created by the application should be virtual threads: {@code
+     * pass.deposit.threads.virtual} is {@code true}, and the Java runtime supports them.  The preference is recorded
+     * for components that create their own threads, such as FTP transport sessions.
+     */
+    private boolean useVirtualThreads() {
+        return VirtualThreads.setPreferred(virtualThreads);
+    }
+
+    /**
+     * The executor used by the {@code SubmissionProcessor} to read the Repositories of a Submission and create their
+     * Deposits concurrently, rather than one at a time on the JMS listener thread.  When every thread is busy, the
+     * listener thread performs the work itself.
+     *
+     * @return the submission I/O executor
+     */
+    @Bean(destroyMethod = "shutdown")
+    ExecutorService submissionIoExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(submissionIoConcurrency, submissionIoConcurrency,
+                60, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+                    Thread t = new Thread(r);
+                    t.setName("Submission-IO-" + THREAD_COUNTER.getAndIncrement());
+                    return t;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Collapses the Fedora events for a {@code Submission} that arrive within the coalescing window into a single
+     * read of the {@code Submission} and a single invocation of the {@code submissionConsumer}.
+     *
+     * @param passClient the client used to read each Submission
+     * @param submissionConsumer the consumer of each Submission
+     * @param windowMs the coalescing window
+     * @param threads the number of threads processing Submissions
+     * @param maxPending the maximum number of Submissions waiting to be processed by those threads
+     * @param batchEnabled whether JMS messages are received in batches, which coalescing requires
+     * @return the submission dispatcher
+     */
+    @Bean(destroyMethod = "close")
+    CoalescingDispatcher<URI> submissionDispatcher(PassClient passClient, Consumer<Submission> submissionConsumer,
+                                                   @Value("${pass.deposit.jms.coalesce.window-ms}") long windowMs,
+                                                   @Value("${pass.deposit.jms.coalesce.threads}") int threads,
+                                                   @Value("${pass.deposit.jms.coalesce.max-pending}") int maxPending,
+                                                   @Value("${pass.deposit.jms.batch.enabled}") boolean batchEnabled) {
+        requireBatchesToCoalesce(windowMs, batchEnabled);
+        return new CoalescingDispatcher<>("submission",
+                uri -> submissionConsumer.accept(passClient.readResource(uri, Submission.class)), windowMs, threads,
+                maxPending);
+    }
+
+    /**
+     * Collapses the Fedora events for a {@code Deposit} that arrive within the coalescing window into a single read of
+     * the {@code Deposit} and a single invocation of the {@code depositConsumer}.  Each {@code Deposit} read is
+     * observed by the {@link #depositIndex(PassClient, long, long, long) deposit index}, if it is enabled.
+     *
+     * @param passClient the client used to read each Deposit
+     * @param depositConsumer the consumer of each Deposit
+     * @param depositIndex the deposit index, if it is enabled
+     * @param windowMs the coalescing window
+     * @param threads the number of threads processing Deposits
+     * @param maxPending the maximum number of Deposits waiting to be processed by those threads
+     * @param batchEnabled whether JMS messages are received in batches, which coalescing requires
+     * @return the deposit dispatcher
+     */
+    @Bean(destroyMethod = "close")
+    CoalescingDispatcher<URI> depositDispatcher(PassClient passClient, Consumer<Deposit> depositConsumer,
+                                                ObjectProvider<DepositIndex> depositIndex,
+                                                @Value("${pass.deposit.jms.coalesce.window-ms}") long windowMs,
+                                                @Value("${pass.deposit.jms.coalesce.threads}") int threads,
+                                                @Value("${pass.deposit.jms.coalesce.max-pending}") int maxPending,
+                                                @Value("${pass.deposit.jms.batch.enabled}") boolean batchEnabled) {
+        requireBatchesToCoalesce(windowMs, batchEnabled);
+        DepositIndex index = depositIndex.getIfAvailable();
+        return new CoalescingDispatcher<>("deposit", uri -> {
+            Deposit deposit = passClient.readResource(uri, Deposit.class);
+            if (index != null) {
+                index.observe(deposit);
+            }
+            depositConsumer.accept(deposit);
+        }, windowMs, threads, maxPending);
+    }
+
+    /**
+     * Coalescing requires JMS messages to be received in batches.  A message is only acknowledged once its resource
+     * has been processed, so a listener receiving one message at a time would wait out the window for every message,
+     * and could not collapse it with the messages that follow it.
+     */
+    private static void requireBatchesToCoalesce(long windowMs, boolean batchEnabled) {
+        if (windowMs > 0 && !batchEnabled) {
+            throw new IllegalArgumentException("pass.deposit.jms.coalesce.window-ms requires " +
+                    "pass.deposit.jms.batch.enabled to be true: a listener receiving one message at a time would wait " +
+                    "out the coalescing window for each message.");
+        }
+    }
+
+    /**
+     * Maintains the {@code FAILED} and {@code SUBMITTED} deposits locally, so that the {@code DepositUpdater} checks
+     * only the deposits that are new, have changed, or are due to be checked again, rather than every deposit found in
+     * the PASS index.  The interval after which a deposit is checked again doubles while its status is unchanged, up to
+     * {@code maxRecheckIntervalMs}.
+     *
+     * @param passClient the client used to reconcile the index with the PASS index
+     * @param recheckIntervalMs the amount of time, in milliseconds, after which an unchanged deposit is first checked
+     *                          again
+     * @param maxRecheckIntervalMs the longest amount of time, in milliseconds, after which an unchanged deposit is
+     *                             checked again
+     * @param reconcileIntervalMs the amount of time, in milliseconds, between reconciliations with the PASS index
+     * @return the deposit index
+     */
+    @Bean
+    @ConditionalOnProperty(name = "pass.deposit.updater.index.enabled", havingValue = "true")
+    DepositIndex depositIndex(PassClient passClient,
+                              @Value("${pass.deposit.updater.index.recheck-interval-ms}") long recheckIntervalMs,
+                              @Value("${pass.deposit.updater.index.max-recheck-interval-ms}")
+                                      long maxRecheckIntervalMs,
+                              @Value("${pass.deposit.updater.index.reconcile-interval-ms}") long reconcileIntervalMs) {
+        return new DepositIndex(() -> DepositUpdater.depositUrisToUpdate(passClient), recheckIntervalMs,
+                maxRecheckIntervalMs, reconcileIntervalMs);
     }
 
+    /**
+     * Resolves the SWORD state of a Deposit by parsing its statement into an Abdera document.  Used by the {@link
+     * #defaultDepositStatusProcessor(DepositStatusResolver, int) DefaultDepositStatusProcessor} unless {@code
+     * pass.deposit.status.resolver} is {@code stax}.
+     *
+     * @param abderaParser parses each statement
+     * @param statementCache the statement cache, if it is enabled
+     * @return the status resolver
+     */
+    @Bean
+    @ConditionalOnProperty(name = "pass.deposit.status.resolver", havingValue = "abdera", matchIfMissing = true)
+    public AtomFeedStatusResolver atomFeedStatusParser(Parser abderaParser,
+                                                       ObjectProvider<StatementCache> statementCache) {
+        AtomFeedStatusResolver resolver = new AtomFeedStatusResolver(abderaParser);
+        resolver.setStatementCache(statementCache.getIfAvailable());
+        return resolver;
+    }
+
+    /**
+     * Resolves the SWORD state of a Deposit by scanning its statement with a pull parser, which stops reading once the
+     * state is found.  Used by the {@link #defaultDepositStatusProcessor(DepositStatusResolver, int)
+     * DefaultDepositStatusProcessor} when {@code pass.deposit.status.resolver} is {@code stax}.
+     *
+     * @param statementCache the statement cache, if it is enabled
+     * @return the status resolver
+     */
+    @Bean
+    @ConditionalOnProperty(name = "pass.deposit.status.resolver", havingValue = "stax")
+    public StaxStatementResolver staxStatementResolver(ObjectProvider<StatementCache> statementCache) {
+        StaxStatementResolver resolver = new StaxStatementResolver();
+        resolver.setStatementCache(statementCache.getIfAvailable());
+        return resolver;
+    }
+
+    /**
+     * Remembers the validators and SWORD state of each statement retrieved over HTTP, so that statements that have
+     * not been modified are answered by the repository with {@code 304 Not Modified}, and are not parsed again.
+     *
+     * @param maxEntries the number of statements remembered
+     * @return the statement cache
+     */
+    @Bean
+    @ConditionalOnProperty(name = "pass.deposit.status.statement-cache.enabled", havingValue = "true")
+    StatementCache statementCache(@Value("${pass.deposit.status.statement-cache.max-entries}") int maxEntries) {
+        return new StatementCache(maxEntries);
+    }
+
+    /**
+     * Resolves the status of each Deposit with the {@code statusResolver}, limiting the number of statuses resolved from
+     * each host at once to {@code pass.deposit.updater.host-concurrency}.
+     *
+     * @param statusResolver resolves the SWORD state of a Deposit from its status reference
+     * @param hostConcurrency the number of statuses that may be resolved from a host at once
+     * @return the deposit status processor
+     */
     @Bean({"defaultDepositStatusProcessor", "org.dataconservancy.pass.deposit.messaging.status.DefaultDepositStatusProcessor"})
-    public DefaultDepositStatusProcessor defaultDepositStatusProcessor(DepositStatusResolver<URI, URI> statusResolver) {
-        return new DefaultDepositStatusProcessor(statusResolver);
+    public DefaultDepositStatusProcessor defaultDepositStatusProcessor(DepositStatusResolver<URI, URI> statusResolver,
+                                                                       @Value("${pass.deposit.updater.host-concurrency}")
+                                                                               int hostConcurrency) {
+        return new DefaultDepositStatusProcessor(new HostLimitedStatusResolver(statusResolver, hostConcurrency));
+    }
+
+    /**
+     * Updates the status of Deposits in parallel for the {@code DepositUpdater} and the {@code SubmittedUpdateRunner},
+     * on a pool of {@code pass.deposit.updater.concurrency} threads.
+     *
+     * @param depositTaskHelper updates the status of each Deposit
+     * @param concurrency the number of Deposits updated at once
+     * @param progressIntervalMs the amount of time, in milliseconds, between reports of progress
+     * @return the deposit status updater
+     */
+    @Bean(destroyMethod = "close")
+    DepositStatusUpdater depositStatusUpdater(DepositTaskHelper depositTaskHelper,
+                                              @Value("${pass.deposit.updater.concurrency}") int concurrency,
+                                              @Value("${pass.deposit.updater.progress-interval-ms}")
+                                                      long progressIntervalMs) {
+        return new DepositStatusUpdater(depositTaskHelper, stageExecutor("Deposit-Status-", concurrency),
+                progressIntervalMs);
     }
 
     @Bean
@@ -383,9 +809,84 @@ public class DepositConfig {
         return new DepositServiceErrorHandler(cri);
     }
 
+    /**
+     * The executor used by every Assembler to write packages.  It is installed as the {@link
+     * PackageAssemblyExecutor#shared() shared} executor so that package streams created by Assemblers use it.  When
+     * virtual threads are used, packages are written on virtual threads, at most {@code
+     * pass.deposit.assembler.writers.max} at a time.
+     *
+     * @return the package assembly executor
+     */
+    @Bean(destroyMethod = "shutdown")
+    PackageAssemblyExecutor packageAssemblyExecutor() {
+        boolean virtual = useVirtualThreads();
+        PackageAssemblyExecutor executor = virtual ?
+                new PackageAssemblyExecutor(assemblerMaxWriters, assemblerWriterQueue,
+                        VirtualThreads.factory("package-writer-")) :
+                new PackageAssemblyExecutor(assemblerMaxWriters, assemblerWriterQueue);
+        PackageAssemblyExecutor.setShared(executor);
+        LOG.info("Package assembly executor writes at most {} packages concurrently on {} threads, queueing up to {} " +
+                "writers", assemblerMaxWriters, virtual ? "virtual" : "platform", assemblerWriterQueue);
+        return executor;
+    }
+
+    /**
+     * The executor used by every Assembler for the work a package writer hands off: reading custodial content ahead of
+     * the writer, updating digests and compressing in parallel.  It is installed as the {@link
+     * PackageTaskExecutor#shared() shared} executor, and shut down with the application.
+     *
+     * @param maxThreads the maximum number of tasks run concurrently
+     * @param queueCapacity the number of tasks that may wait for a thread before tasks are run by their submitter
+     * @return the package task executor
+     */
+    @Bean(destroyMethod = "shutdown")
+    PackageTaskExecutor packageTaskExecutor(@Value("${pass.deposit.assembler.tasks.threads}") int maxThreads,
+                                            @Value("${pass.deposit.assembler.tasks.queue}") int queueCapacity) {
+        PackageTaskExecutor executor = new PackageTaskExecutor(maxThreads, queueCapacity);
+        PackageTaskExecutor.setShared(executor);
+        LOG.info("Package task executor runs at most {} tasks concurrently, queueing up to {} tasks", maxThreads,
+                queueCapacity);
+        return executor;
+    }
+
+    /**
+     * The memory available to every Assembler for holding prefetched custodial content.  It is installed as the {@link
+     * PrefetchMemoryBudget#shared() shared} budget so that the prefetchers of every package being assembled draw on
+     * it; content beyond it is spooled to temporary files.
+     *
+     * @param capacity the number of bytes of prefetched content that may be held in memory
+     * @return the prefetch memory budget
+     */
+    @Bean
+    PrefetchMemoryBudget prefetchMemoryBudget(@Value("${pass.deposit.assembler.prefetch.memory-bytes}") long capacity) {
+        PrefetchMemoryBudget budget = new PrefetchMemoryBudget(capacity);
+        PrefetchMemoryBudget.setShared(budget);
+        LOG.info("Prefetched custodial content held in up to {} bytes of memory", capacity);
+        return budget;
+    }
+
+    /**
+     * Caches custodial content retrieved by Assemblers from Fedora, so that content packaged for more than one
+     * repository, or packaged again when a deposit is retried, is revalidated rather than retrieved again.
+     *
+     * @param directory the directory holding cached content
+     * @param maxBytes the maximum number of bytes of cached content
+     * @return the resource cache
+     * @throws IOException if the cache directory cannot be created
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "pass.deposit.assembler.cache.enabled", havingValue = "true")
+    ResourceCache resourceCache(@Value("${pass.deposit.assembler.cache.dir}") String directory,
+                                @Value("${pass.deposit.assembler.cache.max-bytes}") long maxBytes)
+            throws IOException {
+        LOG.info("Caching up to {} bytes of custodial content in {}", maxBytes, directory);
+        return new ResourceCache(Paths.get(directory), maxBytes);
+    }
+
     @Bean
-    ExceptionHandlingThreadPoolExecutor executorService() {
-        return new ExceptionHandlingThreadPoolExecutor(1, 2, 1, TimeUnit.MINUTES, new ArrayBlockingQueue<>(10));
+    @ConditionalOnProperty(name = "pass.deposit.assembler.cache.enabled", havingValue = "true")
+    ResourceCacheEndpoint resourceCacheEndpoint(ResourceCache resourceCache) {
+        return new ResourceCacheEndpoint(resourceCache);
     }
 
 }
@@ -15,33 +15,50 @@
  */
 package org.dataconservancy.pass.deposit.messaging.config.spring;
 
-import org.dataconservancy.pass.client.PassClient;
+import org.dataconservancy.deposit.util.async.VirtualThreads;
 import org.dataconservancy.pass.deposit.messaging.DepositServiceErrorHandler;
 import org.dataconservancy.pass.deposit.messaging.policy.JmsMessagePolicy;
+import org.dataconservancy.pass.deposit.messaging.service.BulkheadTaskExecutor;
+import org.dataconservancy.pass.deposit.messaging.service.DeferredRetryRejectionHandler;
+import org.dataconservancy.pass.deposit.messaging.service.DepositDrain;
+import org.dataconservancy.pass.deposit.messaging.service.DepositJournal;
 import org.dataconservancy.pass.deposit.messaging.service.DepositUtil;
+import org.dataconservancy.pass.deposit.messaging.support.actuator.DrainEndpoint;
+import org.dataconservancy.pass.deposit.messaging.support.jms.BatchMessageListenerContainer;
+import org.dataconservancy.pass.deposit.messaging.support.jms.CoalescingDispatcher;
+import org.dataconservancy.pass.deposit.messaging.support.jms.ListenerBackpressure;
 import org.dataconservancy.pass.support.messaging.constants.Constants;
-import org.dataconservancy.pass.support.messaging.json.JsonParser;
-import org.dataconservancy.pass.model.Deposit;
-import org.dataconservancy.pass.model.Submission;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.jms.annotation.EnableJms;
 import org.springframework.jms.annotation.JmsListener;
 import org.springframework.jms.config.DefaultJmsListenerContainerFactory;
+import org.springframework.jms.config.JmsListenerEndpointRegistry;
+import org.springframework.jms.listener.MessageListenerContainer;
 import org.springframework.jms.support.JmsHeaders;
+import org.springframework.jms.support.converter.MessagingMessageConverter;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.handler.annotation.Header;
 
 import javax.jms.ConnectionFactory;
+import javax.jms.JMSException;
 import javax.jms.Session;
 import java.net.URI;
-import java.util.function.Consumer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
-import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.dataconservancy.pass.deposit.messaging.service.DepositUtil.ackMessage;
 import static org.dataconservancy.pass.deposit.messaging.service.DepositUtil.toMessageContext;
 
@@ -53,11 +70,9 @@ public class JmsConfig {
 
     private static final Logger LOG = LoggerFactory.getLogger(JmsConfig.class);
 
-    @Autowired
-    private PassClient passClient;
+    private static final MessagingMessageConverter MESSAGE_CONVERTER = new MessagingMessageConverter();
 
-    @Autowired
-    private JsonParser jsonParser;
+    private static final long LISTENER_STOP_TIMEOUT_MS = 30000;
 
     @Autowired
     @Qualifier("submissionMessagePolicy")
@@ -68,10 +83,15 @@ public class JmsConfig {
     private JmsMessagePolicy depositPolicy;
 
     @Autowired
-    private Consumer<Submission> submissionConsumer;
+    @Qualifier("submissionDispatcher")
+    private CoalescingDispatcher<URI> submissionDispatcher;
 
     @Autowired
-    private Consumer<Deposit> depositConsumer;
+    @Qualifier("depositDispatcher")
+    private CoalescingDispatcher<URI> depositDispatcher;
+
+    @Value("${pass.deposit.threads.virtual}")
+    private boolean virtualThreads;
 
     @Bean
     public DefaultJmsListenerContainerFactory jmsListenerContainerFactory(DepositServiceErrorHandler errorHandler,
@@ -79,16 +99,149 @@ public class JmsConfig {
                                                                           String concurrency,
                                                                           @Value("${spring.jms.listener.auto-startup}")
                                                                           boolean autoStart,
+                                                                          @Value("${pass.deposit.jms.batch.enabled}")
+                                                                          boolean batchEnabled,
                                                                           ConnectionFactory connectionFactory) {
         DefaultJmsListenerContainerFactory factory = new DefaultJmsListenerContainerFactory();
         factory.setSessionAcknowledgeMode(Session.CLIENT_ACKNOWLEDGE);
         factory.setErrorHandler(errorHandler);
         factory.setConcurrency(concurrency);
         factory.setConnectionFactory(connectionFactory);
-        factory.setAutoStartup(autoStart);
+        // when messages are received in batches, the batch listener containers replace the per-message listeners
+        factory.setAutoStartup(autoStart && !batchEnabled);
+        TaskExecutor taskExecutor = listenerTaskExecutor("JMS-Listener-");
+        if (taskExecutor != null) {
+            factory.setTaskExecutor(taskExecutor);
+        }
         return factory;
     }
 
+    @Bean
+    @ConditionalOnProperty(name = "pass.deposit.jms.batch.enabled", havingValue = "true")
+    public BatchMessageListenerContainer submissionBatchListenerContainer(
+            DepositServiceErrorHandler errorHandler,
+            @Value("${pass.deposit.queue.submission.name}") String destination,
+            @Value("${spring.jms.listener.concurrency}") String concurrency,
+            @Value("${spring.jms.listener.auto-startup}") boolean autoStart,
+            @Value("${pass.deposit.jms.batch.size}") int batchSize,
+            @Value("${pass.deposit.jms.batch.linger-ms}") long lingerMs,
+            ConnectionFactory connectionFactory) {
+        BatchMessageListenerContainer container = batchListenerContainer(errorHandler, destination, concurrency,
+                autoStart, batchSize, lingerMs, connectionFactory);
+        container.setBatchMessageListener(this::processSubmissionMessages);
+        return container;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "pass.deposit.jms.batch.enabled", havingValue = "true")
+    public BatchMessageListenerContainer depositBatchListenerContainer(
+            DepositServiceErrorHandler errorHandler,
+            @Value("${pass.deposit.queue.deposit.name}") String destination,
+            @Value("${spring.jms.listener.concurrency}") String concurrency,
+            @Value("${spring.jms.listener.auto-startup}") boolean autoStart,
+            @Value("${pass.deposit.jms.batch.size}") int batchSize,
+            @Value("${pass.deposit.jms.batch.linger-ms}") long lingerMs,
+            ConnectionFactory connectionFactory) {
+        BatchMessageListenerContainer container = batchListenerContainer(errorHandler, destination, concurrency,
+                autoStart, batchSize, lingerMs, connectionFactory);
+        container.setBatchMessageListener(this::processDepositMessages);
+        return container;
+    }
+
+    /**
+     * Pauses the JMS listeners while the deposit worker pool is saturated: the queue of any one repository's bulkhead
+     * is at its capacity, or threads are blocked submitting tasks to it, or rejected tasks are awaiting a retry.  The
+     * listeners are resumed once every bulkhead has drained to half its capacity, and no task is waiting to be
+     * submitted.
+     * <p>
+     * The saturation is measured per bulkhead, against the capacity configured for it, because a single full bulkhead
+     * refuses further deposits for its repository however much room the queues of the other repositories have.
+     * </p>
+     *
+     * @param registry the registry of the per-message listener containers
+     * @param batchContainers the batch listener containers, if messages are received in batches
+     * @param depositWorkers the deposit worker pool
+     * @param rejectionHandler the rejection handler of the deposit worker pool
+     * @param pollMs the interval, in milliseconds, between samples of the deposit worker pool
+     * @return the backpressure applied to the JMS listeners
+     */
+    @Bean(destroyMethod = "close")
+    public ListenerBackpressure listenerBackpressure(JmsListenerEndpointRegistry registry,
+                                                     ObjectProvider<BatchMessageListenerContainer> batchContainers,
+                                                     BulkheadTaskExecutor depositWorkers,
+                                                     DeferredRetryRejectionHandler rejectionHandler,
+                                                     @Value("${pass.deposit.jms.backpressure.poll-ms}") long pollMs) {
+        return new ListenerBackpressure(
+                () -> {
+                    List<MessageListenerContainer> containers = new ArrayList<>(registry.getListenerContainers());
+                    batchContainers.forEach(containers::add);
+                    return containers;
+                },
+                () -> rejectionHandler.getWaitingCount() > 0 ? 100 :
+                        depositWorkers.getBulkheadQueue().getSaturation(),
+                100, 50, pollMs);
+    }
+
+    /**
+     * Drains the deposit worker pool when the application is stopped.  The intake of new work is stopped first: the
+     * backpressure sampler is closed so that it cannot resume the listeners, the listener containers are stopped and
+     * their in-flight messages processed, and the coalescing dispatchers hand the events they hold to the deposit
+     * workers.  Deposits in progress, queued, or awaiting a retry of their submission are then given {@code
+     * pass.deposit.drain.deadline-ms} to finish; deposits still queued or awaiting a retry after the deadline are
+     * recorded in the deposit journal, so they resume on the next start.
+     * <p>
+     * The drain requires the deposit journal, and is only performed when it is enabled.
+     * </p>
+     *
+     * @param registry the registry of the per-message listener containers
+     * @param batchContainers the batch listener containers, if messages are received in batches
+     * @param listenerBackpressure the backpressure applied to the listener containers
+     * @param depositWorkers the deposit worker pool
+     * @param rejectionHandler the rejection handler of the deposit worker pool
+     * @param depositJournal the deposit journal
+     * @param deadlineMs the amount of time, in milliseconds, that deposits in progress are given to finish
+     * @return the deposit drain
+     */
+    @Bean
+    @ConditionalOnProperty(name = "pass.deposit.journal.enabled", havingValue = "true")
+    public DepositDrain depositDrain(JmsListenerEndpointRegistry registry,
+                                     ObjectProvider<BatchMessageListenerContainer> batchContainers,
+                                     ListenerBackpressure listenerBackpressure,
+                                     BulkheadTaskExecutor depositWorkers,
+                                     DeferredRetryRejectionHandler rejectionHandler,
+                                     DepositJournal depositJournal,
+                                     @Value("${pass.deposit.drain.deadline-ms}") long deadlineMs) {
+        return new DepositDrain(() -> {
+            listenerBackpressure.close();
+            List<MessageListenerContainer> containers = new ArrayList<>(registry.getListenerContainers());
+            batchContainers.forEach(containers::add);
+            stopListeners(containers);
+            submissionDispatcher.close();
+            depositDispatcher.close();
+        }, depositWorkers, rejectionHandler, depositJournal, deadlineMs);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "pass.deposit.journal.enabled", havingValue = "true")
+    public DrainEndpoint drainEndpoint(DepositDrain depositDrain) {
+        return new DrainEndpoint(depositDrain);
+    }
+
+    /**
+     * Stops the listener containers, waiting for the messages they are processing to be processed.
+     */
+    private static void stopListeners(List<MessageListenerContainer> containers) {
+        CountDownLatch stopped = new CountDownLatch(containers.size());
+        containers.forEach(container -> container.stop(stopped::countDown));
+        try {
+            if (!stopped.await(LISTENER_STOP_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                LOG.warn("Timed out waiting for {} JMS listener containers to stop", stopped.getCount());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     @JmsListener(destination = "${pass.deposit.queue.submission.name}", containerFactory = "jmsListenerContainerFactory")
     public void processSubmissionMessage(@Header(Constants.JmsFcrepoHeader.FCREPO_RESOURCE_TYPE) String resourceType,
                                @Header(Constants.JmsFcrepoHeader.FCREPO_EVENT_TYPE) String eventType,
@@ -106,15 +259,10 @@ public class JmsConfig {
             return;
         }
 
-        // Parse the identity of the Submission from the message
-        URI submissionUri = null;
+        // messages received one at a time are not coalesced (see DepositConfig), so the Submission is processed on this
+        // thread, and the future is complete once it returns
         try {
-            submissionUri = parseResourceUri(mc, jsonParser);
-            submissionConsumer.accept(passClient.readResource(submissionUri, Submission.class));
-        } catch (Exception e) {
-            LOG.warn("Failed to process Submission ({}) from JMS message: {}\nPayload (if available): '{}'",
-                    (submissionUri == null ? "<failed to parse Submission URI from JMS message>" : submissionUri),
-                            e.getMessage(), mc.message().getPayload(), e);
+            processSubmission(mc).join();
         } finally {
             ackMessage(mc);
         }
@@ -137,23 +285,180 @@ public class JmsConfig {
             return;
         }
 
-        // Parse the identity of the Deposit from the message
+        // messages received one at a time are not coalesced (see DepositConfig), so the Deposit is processed on this
+        // thread, and the future is complete once it returns
         try {
-            URI depositUri = parseResourceUri(mc, jsonParser);
-            depositConsumer.accept(passClient.readResource(depositUri, Deposit.class));
-        } catch (Exception e) {
-            if (LOG.isTraceEnabled()) {
-                LOG.trace("Error processing a JMS message for a 'Deposit' resource {}: {}\nPayload (if available): '{}'",
-                        mc.id(), e.getMessage(), mc.message().getPayload(), e);
-            } else {
-                LOG.error("Error processing a JMS message for a 'Deposit' resource {}: {}", mc.id(), e.getMessage(), e);
-            }
+            processDeposit(mc).join();
         } finally {
             ackMessage(mc);
         }
 
     }
 
+    /**
+     * Processes a batch of messages from the submission queue.  Every message of the batch is evaluated by the
+     * submission message policy before any accepted message is processed.  The batch is acknowledged by the
+     * container once this method returns, after every accepted message has been processed.
+     *
+     * @param messages the batch of messages
+     * @param session the session that received the messages
+     * @throws JMSException if a message of the batch cannot be read, in which case the batch is redelivered
+     */
+    void processSubmissionMessages(List<javax.jms.Message> messages, Session session) throws JMSException {
+        awaitAll(acceptedMessages(messages, session, submissionPolicy).stream()
+                .map(this::processSubmission));
+    }
+
+    /**
+     * Processes a batch of messages from the deposit queue.  Every message of the batch is evaluated by the deposit
+     * message policy before any accepted message is processed.  The batch is acknowledged by the container once this
+     * method returns, after every accepted message has been processed.
+     *
+     * @param messages the batch of messages
+     * @param session the session that received the messages
+     * @throws JMSException if a message of the batch cannot be read, in which case the batch is redelivered
+     */
+    void processDepositMessages(List<javax.jms.Message> messages, Session session) throws JMSException {
+        awaitAll(acceptedMessages(messages, session, depositPolicy).stream()
+                .map(this::processDeposit));
+    }
+
+    /**
+     * Hands the Submission of a message to the dispatcher, which collapses repeated events for the same Submission.
+     *
+     * @param mc the message context
+     * @return a future completing once the Submission has been processed, which never completes exceptionally
+     */
+    private CompletableFuture<Void> processSubmission(DepositUtil.MessageContext mc) {
+        URI submissionUri = null;
+        try {
+            submissionUri = parseResourceUri(mc);
+            URI uri = submissionUri;
+            return submissionDispatcher.dispatch(submissionUri).exceptionally(e -> {
+                logSubmissionFailure(mc, uri, e);
+                return null;
+            });
+        } catch (Exception e) {
+            logSubmissionFailure(mc, submissionUri, e);
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    /**
+     * Hands the Deposit of a message to the dispatcher, which collapses repeated events for the same Deposit.
+     *
+     * @param mc the message context
+     * @return a future completing once the Deposit has been processed, which never completes exceptionally
+     */
+    private CompletableFuture<Void> processDeposit(DepositUtil.MessageContext mc) {
+        try {
+            return depositDispatcher.dispatch(parseResourceUri(mc)).exceptionally(e -> {
+                logDepositFailure(mc, e);
+                return null;
+            });
+        } catch (Exception e) {
+            logDepositFailure(mc, e);
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    private static void logSubmissionFailure(DepositUtil.MessageContext mc, URI submissionUri, Throwable e) {
+        LOG.warn("Failed to process Submission ({}) from JMS message: {}\nPayload (if available): '{}'",
+                (submissionUri == null ? "<failed to parse Submission URI from JMS message>" : submissionUri),
+                        e.getMessage(), mc.message().getPayload(), e);
+    }
+
+    private static void logDepositFailure(DepositUtil.MessageContext mc, Throwable e) {
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("Error processing a JMS message for a 'Deposit' resource {}: {}\nPayload (if available): '{}'",
+                    mc.id(), e.getMessage(), mc.message().getPayload(), e);
+        } else {
+            LOG.error("Error processing a JMS message for a 'Deposit' resource {}: {}", mc.id(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Waits for the processing of messages to complete, so that they are only acknowledged once they have been
+     * processed.
+     *
+     * @param processing the processing of each message
+     */
+    private static void awaitAll(Stream<CompletableFuture<Void>> processing) {
+        CompletableFuture.allOf(processing.toArray(CompletableFuture[]::new)).join();
+    }
+
+    /**
+     * Answers the messages of a batch that are accepted by the supplied {@code policy}.  Messages that are not accepted
+     * are not acknowledged individually; they are acknowledged along with the rest of the batch.
+     * <p>
+     * A message that cannot be evaluated fails the batch before any of its messages are processed, as it would fail
+     * the listener of a single message: the container recovers the session, and the broker redelivers the batch.
+     * Messages acknowledged by the session cannot be acknowledged one at a time, so the other messages of the batch
+     * are redelivered, and evaluated again, along with it.
+     * </p>
+     *
+     * @param messages the batch of messages
+     * @param session the session that received the messages
+     * @param jmsPolicy the policy
+     * @return the message contexts of the accepted messages, in the order they were received
+     * @throws JMSException if a message cannot be read
+     */
+    private List<DepositUtil.MessageContext> acceptedMessages(List<javax.jms.Message> messages, Session session,
+                                                              JmsMessagePolicy jmsPolicy) throws JMSException {
+        List<DepositUtil.MessageContext> accepted = new ArrayList<>(messages.size());
+        for (javax.jms.Message jmsMessage : messages) {
+            DepositUtil.MessageContext mc = toMessageContext(
+                    jmsMessage.getStringProperty(Constants.JmsFcrepoHeader.FCREPO_RESOURCE_TYPE),
+                    jmsMessage.getStringProperty(Constants.JmsFcrepoHeader.FCREPO_EVENT_TYPE),
+                    jmsMessage.getJMSTimestamp(), jmsMessage.getJMSMessageID(), session,
+                    (Message<?>) MESSAGE_CONVERTER.fromMessage(jmsMessage), jmsMessage);
+
+            LOG.trace(">>>> Processing message (ack mode: {}) {} body:\n{}",
+                    mc.ackMode(), mc.id(), mc.message().getPayload());
+
+            if (jmsPolicy.test(mc)) {
+                accepted.add(mc);
+            }
+        }
+
+        LOG.debug(">>>> Accepted {} of a batch of {} messages", accepted.size(), messages.size());
+        return accepted;
+    }
+
+    private BatchMessageListenerContainer batchListenerContainer(DepositServiceErrorHandler errorHandler,
+                                                                 String destination, String concurrency,
+                                                                 boolean autoStart, int batchSize, long lingerMs,
+                                                                 ConnectionFactory connectionFactory) {
+        BatchMessageListenerContainer container = new BatchMessageListenerContainer();
+        container.setSessionAcknowledgeMode(Session.CLIENT_ACKNOWLEDGE);
+        container.setErrorHandler(errorHandler);
+        container.setConcurrency(concurrency);
+        container.setConnectionFactory(connectionFactory);
+        container.setDestinationName(destination);
+        container.setAutoStartup(autoStart);
+        container.setBatchSize(batchSize);
+        container.setLingerMs(lingerMs);
+        TaskExecutor taskExecutor = listenerTaskExecutor("JMS-Batch-Listener-");
+        if (taskExecutor != null) {
+            container.setTaskExecutor(taskExecutor);
+        }
+        return container;
+    }
+
+    /**
+     * Answers an executor which runs each consumer of a listener container on a virtual thread, or {@code null} if
+     * virtual threads are not used, in which case the container creates platform threads of its own.
+     *
+     * @param namePrefix the prefix of the names of the consumer threads
+     * @return the executor, or {@code null}
+     */
+    private TaskExecutor listenerTaskExecutor(String namePrefix) {
+        if (!VirtualThreads.setPreferred(virtualThreads)) {
+            return null;
+        }
+        return new SimpleAsyncTaskExecutor(VirtualThreads.factory(namePrefix));
+    }
+
     /**
      * Determine if the message should be accepted for further processing according to the supplied {@code policy}.
      *
@@ -174,15 +479,18 @@ public class JmsConfig {
     }
 
     /**
-     * Parse the Fedora repository URI of the PASS entity represented in the message.
+     * Answers the Fedora repository URI of the PASS entity represented in the message.  The message body is parsed
+     * once, and shared with the message policies that inspect it.
      *
      * @param mc the message context
-     * @param jsonParser vanilla Jackson JSON parser used to parse the JMS message payload
      * @return the URI of the PASS resource in the Fedora repository
      */
-    private static URI parseResourceUri(DepositUtil.MessageContext mc, JsonParser jsonParser) {
-        byte[] payload = mc.message().getPayload().getBytes(UTF_8);
-        return URI.create(jsonParser.parseId(payload));
+    private static URI parseResourceUri(DepositUtil.MessageContext mc) {
+        String id = mc.payload().resourceId();
+        if (id == null) {
+            throw new IllegalArgumentException("JMS message body does not identify a resource");
+        }
+        return URI.create(id);
     }
 
 }
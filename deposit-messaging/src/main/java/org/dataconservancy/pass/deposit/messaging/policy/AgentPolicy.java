@@ -15,8 +15,6 @@
  */
 package org.dataconservancy.pass.deposit.messaging.policy;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.dataconservancy.pass.deposit.messaging.service.DepositUtil;
 import org.dataconservancy.pass.support.messaging.constants.Constants;
 import org.slf4j.Logger;
@@ -24,9 +22,6 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.io.IOException;
-import java.util.Iterator;
-
 /**
  * <em>Rejects</em> JMS messages that originate from the user agent supplied on construction.
  * <p>
@@ -42,24 +37,17 @@ public class AgentPolicy implements Policy<DepositUtil.MessageContext> {
 
     private static final Logger LOG = LoggerFactory.getLogger(AgentPolicy.class);
 
-    private ObjectMapper objectMapper;
-
     private String depositServicesUserAgent;
 
     /**
-     * Constructs a new policy using the supplied {@code ObjectMapper} for parsing the user agent from the JMS message.
+     * Constructs a new policy that drops messages attributed to the supplied user agent.
      *
-     * @param objectMapper parses the JMS message body
      * @param userAgent the user agent used by Deposit Services when interacting with the Fedora repository
      */
-    public AgentPolicy(ObjectMapper objectMapper, @Value("${pass.deposit.http.agent}") String userAgent) {
-        if (objectMapper == null) {
-            throw new IllegalArgumentException("ObjectMapper must not be null.");
-        }
+    public AgentPolicy(@Value("${pass.deposit.http.agent}") String userAgent) {
         if (userAgent == null || userAgent.trim().length() == 0) {
             throw new IllegalArgumentException("User Agent String must not be null or empty.");
         }
-        this.objectMapper = objectMapper;
         this.depositServicesUserAgent = userAgent;
     }
 
@@ -67,9 +55,9 @@ public class AgentPolicy implements Policy<DepositUtil.MessageContext> {
      * {@inheritDoc}
      * <em>Implementation notes</em>
      * <p>
-     * Attempts to resolve the JMS message body for a value of the {@code http://www.w3.org/ns/prov#SoftwareAgent}
-     * property.  If the value is {@code null} or does <em>not</em> equal the user agent string supplied on
-     * construction, the message is <em>accepted</em>.  If the value is equal to the user agent string supplied on
+     * Resolves the name of the first {@code http://www.w3.org/ns/prov#SoftwareAgent} the event is attributed to from the
+     * {@link DepositUtil.MessageContext#payload() parsed message body}.  If the value is {@code null} or does
+     * <em>not</em> equal the user agent string supplied on construction, the message is <em>accepted</em>.  If the value is equal to the user agent string supplied on
      * construction, this policy drops the message.
      * </p>
      *
@@ -78,29 +66,11 @@ public class AgentPolicy implements Policy<DepositUtil.MessageContext> {
      */
     @Override
     public boolean test(DepositUtil.MessageContext messageContext) {
-        JsonNode attribution = null;
-        try {
-            attribution = objectMapper.readTree(messageContext.message().getPayload().toString()).findValue
-                    ("wasAttributedTo");
-        } catch (IOException e) {
-            throw new RuntimeException("Unable to resolve JMS message body: " + e.getMessage(), e);
-        }
+        String agent = messageContext.payload().agentName(Constants.Prov.SOFTWARE_AGENT);
 
-        if (attribution != null) {
-            for (Iterator<JsonNode> itr = attribution.elements(); itr.hasNext();) {
-                JsonNode node = itr.next();
-                if (node.has("type") && node.findValue("type").textValue()
-                        .equals(Constants.Prov.SOFTWARE_AGENT)) {
-                    if (node.has("name") && node.findValue("name").textValue()
-                            .equals(depositServicesUserAgent)) {
-                        LOG.trace(">>>> Dropping message that originated from this agent: {}",
-                                depositServicesUserAgent);
-                        return false;
-                    } else {
-                        return true;
-                    }
-                }
-            }
+        if (depositServicesUserAgent.equals(agent)) {
+            LOG.trace(">>>> Dropping message that originated from this agent: {}", depositServicesUserAgent);
+            return false;
         }
 
         // TODO: pluggable null semantic
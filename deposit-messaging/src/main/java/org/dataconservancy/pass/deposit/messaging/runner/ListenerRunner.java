@@ -20,10 +20,12 @@ import okhttp3.Request;
 import okhttp3.Response;
 import org.dataconservancy.pass.deposit.messaging.config.quartz.QuartzConfig;
 import org.dataconservancy.pass.deposit.messaging.config.spring.JmsConfig;
+import org.dataconservancy.pass.deposit.messaging.service.DepositRecovery;
 import org.dataconservancy.deposit.util.async.Condition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.ApplicationRunner;
 import org.springframework.boot.SpringApplication;
@@ -44,6 +46,9 @@ public class ListenerRunner implements ApplicationContextAware {
 
     private ApplicationContext appCtx;
 
+    @Autowired(required = false)
+    private DepositRecovery depositRecovery;
+
     @Bean
     ApplicationRunner runListeners(@Value("${pass.fedora.baseurl}") String fcrepoBaseUrl, OkHttpClient okHttpClient) {
         Condition<Integer> fcrepoUp = new Condition<>(() -> {
@@ -63,6 +68,10 @@ public class ListenerRunner implements ApplicationContextAware {
             }
 
             LOG.info("Fedora repository is up at '{}'", fcrepoBaseUrl);
+
+            if (status && depositRecovery != null) {
+                depositRecovery.recover();
+            }
         };
     }
 
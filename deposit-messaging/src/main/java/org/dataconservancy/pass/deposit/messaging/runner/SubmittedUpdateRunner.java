@@ -17,7 +17,7 @@ package org.dataconservancy.pass.deposit.messaging.runner;
 
 import org.dataconservancy.pass.client.PassClient;
 import org.dataconservancy.pass.deposit.messaging.DepositServiceErrorHandler;
-import org.dataconservancy.pass.deposit.messaging.service.DepositTaskHelper;
+import org.dataconservancy.pass.deposit.messaging.service.DepositStatusUpdater;
 import org.dataconservancy.pass.model.Deposit;
 import org.dataconservancy.pass.model.Repository;
 import org.dataconservancy.pass.model.Submission;
@@ -53,7 +53,7 @@ public class SubmittedUpdateRunner {
     private static final String URIS_PARAM = "uri";
 
     @Autowired
-    private DepositTaskHelper depositTaskHelper;
+    private DepositStatusUpdater statusUpdater;
 
     @Autowired
     private ThreadPoolTaskExecutor taskExecutor;
@@ -64,7 +64,7 @@ public class SubmittedUpdateRunner {
     /**
      * Answers a Spring {@link ApplicationRunner} that will process a {@code Collection} of URIs representing submitted
      * deposits.  If no URIs are supplied on the command line, a search is performed for all submitted deposits.  The
-     * submitted deposits are then queued for processing by the provided {@code processor}.
+     * submitted deposits are then updated in parallel by the {@link DepositStatusUpdater}.
      *
      * @param passClient the client implementation used to resolve PASS entity uris and perform searches
      * @return the Spring {@code ApplicationRunner} which receives the command line arguments supplied to this
@@ -74,14 +74,9 @@ public class SubmittedUpdateRunner {
     public ApplicationRunner depositUpdate(PassClient passClient) {
         return (args) -> {
             Collection<URI> deposits = depositsToUpdate(args, passClient);
-            deposits.forEach(depositUri -> {
-                try {
-                    depositTaskHelper.processDepositStatus(depositUri);
-                } catch (Exception e) {
-                    errorHandler.handleError(e);
-                }
-            });
+            statusUpdater.update(deposits, (depositUri, e) -> errorHandler.handleError(e));
 
+            statusUpdater.close();
             taskExecutor.shutdown();
             taskExecutor.setAwaitTerminationSeconds(10);
         };
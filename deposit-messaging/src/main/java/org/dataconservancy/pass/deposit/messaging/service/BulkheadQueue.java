@@ -0,0 +1,538 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.service;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * The work queue of an executor that divides the executor's threads among bulkheads, so that work for one bulkhead
+ * cannot occupy every thread.
+ * <p>
+ * Each task is classified into a bulkhead by a key, e.g. the repository a {@code DepositTask} deposits to.  Each
+ * bulkhead has its own queue, limited to its {@link Bulkhead#getCapacity() capacity}, and at most its {@link
+ * Bulkhead#getConcurrency() concurrency} tasks are handed to the executor's threads at a time.  When tasks of several
+ * bulkheads are eligible to run, a free thread is given to each bulkhead in proportion to its {@link
+ * Bulkhead#getWeight() weight}, using smooth weighted round-robin.  Bulkheads that have not been {@link
+ * #configure(String, int, int, int) configured} are created on first use with the default limits supplied on
+ * construction.
+ * </p>
+ * <p>
+ * A task taken from this queue is answered wrapped, so that its bulkhead is notified when the task completes; tasks
+ * are queued, removed and drained unwrapped.  An {@link AsyncTask} completes when the work it started completes,
+ * rather than when it returns, so that work continuing on other threads counts towards the concurrency of its
+ * bulkhead.  Every task must pass through the queue for the limits to hold, so the
+ * executor should start all of its threads up front, and have as many core threads as its maximum.
+ * </p>
+ */
+public class BulkheadQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+    private final Function<Runnable, String> classifier;
+
+    private final int defaultConcurrency;
+
+    private final int defaultCapacity;
+
+    private final Map<String, Bulkhead> bulkheads = new LinkedHashMap<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition eligible = lock.newCondition();
+
+    private final Condition notFull = lock.newCondition();
+
+    private int count;
+
+    /**
+     * @param classifier answers the key of the bulkhead a task belongs to
+     * @param defaultConcurrency the concurrency of bulkheads that have not been configured
+     * @param defaultCapacity the capacity of bulkheads that have not been configured
+     */
+    public BulkheadQueue(Function<Runnable, String> classifier, int defaultConcurrency, int defaultCapacity) {
+        if (classifier == null) {
+            throw new IllegalArgumentException("Classifier must not be null.");
+        }
+        if (defaultConcurrency < 1 || defaultCapacity < 1) {
+            throw new IllegalArgumentException("Default concurrency and capacity must be positive integers.");
+        }
+        this.classifier = classifier;
+        this.defaultConcurrency = defaultConcurrency;
+        this.defaultCapacity = defaultCapacity;
+    }
+
+    /**
+     * Configures the limits of a bulkhead.
+     *
+     * @param key the key of the bulkhead
+     * @param concurrency the maximum number of tasks of the bulkhead that may run concurrently
+     * @param capacity the maximum number of tasks of the bulkhead that may be queued
+     * @param weight the relative share of free threads given to the bulkhead
+     */
+    public void configure(String key, int concurrency, int capacity, int weight) {
+        if (concurrency < 1 || capacity < 1 || weight < 1) {
+            throw new IllegalArgumentException("Concurrency, capacity and weight of bulkhead '" + key +
+                    "' must be positive integers.");
+        }
+
+        lock.lock();
+        try {
+            Bulkhead bulkhead = bulkheads.computeIfAbsent(key, Bulkhead::new);
+            bulkhead.concurrency = concurrency;
+            bulkhead.capacity = capacity;
+            bulkhead.weight = weight;
+            eligible.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the bulkheads, in the order they were configured or first used
+     */
+    public List<Bulkhead> getBulkheads() {
+        lock.lock();
+        try {
+            return new ArrayList<>(bulkheads.values());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Answers how full the fullest bulkhead is: the number of tasks waiting in its queue, as a percentage of its
+     * capacity.  A single bulkhead at its capacity refuses further tasks for its key however empty the others are, so
+     * the saturation of the pool is that of its fullest bulkhead rather than of all its queues together.
+     *
+     * @return the saturation of the fullest bulkhead, from {@code 0} to {@code 100}
+     */
+    public int getSaturation() {
+        lock.lock();
+        try {
+            return bulkheads.values().stream()
+                    .mapToInt(bulkhead -> Math.min(100, bulkhead.queue.size() * 100 / bulkhead.capacity))
+                    .max().orElse(0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(Runnable task) {
+        lock.lock();
+        try {
+            return enqueue(task, bulkhead(task));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(Runnable task, long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            Bulkhead bulkhead = bulkhead(task);
+            while (!enqueue(task, bulkhead)) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void put(Runnable task) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            Bulkhead bulkhead = bulkhead(task);
+            while (!enqueue(task, bulkhead)) {
+                notFull.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll() {
+        lock.lock();
+        try {
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            Runnable task;
+            while ((task = dequeue()) == null) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = eligible.awaitNanos(nanos);
+            }
+            return task;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            Runnable task;
+            while ((task = dequeue()) == null) {
+                eligible.await();
+            }
+            return task;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Answers, without removing it, the task at the head of the queue of the first bulkhead that has one.  The task may
+     * not be the next task taken.
+     *
+     * @return a queued task, or {@code null} if no task is queued
+     */
+    @Override
+    public Runnable peek() {
+        lock.lock();
+        try {
+            return bulkheads.values().stream()
+                    .filter(bulkhead -> !bulkhead.queue.isEmpty())
+                    .map(bulkhead -> bulkhead.queue.peek())
+                    .findFirst()
+                    .orElse(null);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (!(o instanceof Runnable)) {
+            return false;
+        }
+
+        lock.lock();
+        try {
+            for (Bulkhead bulkhead : bulkheads.values()) {
+                if (bulkhead.queue.remove(o)) {
+                    count--;
+                    notFull.signalAll();
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        lock.lock();
+        try {
+            return bulkheads.values().stream().mapToInt(bulkhead -> bulkhead.capacity - bulkhead.queue.size()).sum();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c, int maxElements) {
+        lock.lock();
+        try {
+            int drained = 0;
+            for (Bulkhead bulkhead : bulkheads.values()) {
+                while (drained < maxElements && !bulkhead.queue.isEmpty()) {
+                    c.add(bulkhead.queue.poll());
+                    drained++;
+                }
+            }
+            count -= drained;
+            if (drained > 0) {
+                notFull.signalAll();
+            }
+            return drained;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Answers a snapshot of the queued tasks.  Removing a task through the iterator removes it from this queue.
+     *
+     * @return an iterator over the queued tasks
+     */
+    @Override
+    public Iterator<Runnable> iterator() {
+        List<Runnable> snapshot = new ArrayList<>();
+        lock.lock();
+        try {
+            bulkheads.values().forEach(bulkhead -> snapshot.addAll(bulkhead.queue));
+        } finally {
+            lock.unlock();
+        }
+
+        Iterator<Runnable> itr = snapshot.iterator();
+        return new Iterator<Runnable>() {
+
+            private Runnable last;
+
+            @Override
+            public boolean hasNext() {
+                return itr.hasNext();
+            }
+
+            @Override
+            public Runnable next() {
+                last = itr.next();
+                return last;
+            }
+
+            @Override
+            public void remove() {
+                if (last == null) {
+                    throw new IllegalStateException();
+                }
+                BulkheadQueue.this.remove(last);
+                last = null;
+            }
+        };
+    }
+
+    private Bulkhead bulkhead(Runnable task) {
+        if (task == null) {
+            throw new NullPointerException("Task must not be null.");
+        }
+        return bulkheads.computeIfAbsent(classifier.apply(task), Bulkhead::new);
+    }
+
+    private boolean enqueue(Runnable task, Bulkhead bulkhead) {
+        if (bulkhead.queue.size() >= bulkhead.capacity) {
+            return false;
+        }
+
+        bulkhead.queue.add(task);
+        count++;
+        if (bulkhead.active < bulkhead.concurrency) {
+            eligible.signal();
+        }
+        return true;
+    }
+
+    /**
+     * Selects the next task by smooth weighted round-robin among the bulkheads that have a task queued and are below
+     * their concurrency.
+     */
+    private Runnable dequeue() {
+        Bulkhead selected = null;
+        int totalWeight = 0;
+        for (Bulkhead bulkhead : bulkheads.values()) {
+            if (bulkhead.queue.isEmpty() || bulkhead.active >= bulkhead.concurrency) {
+                continue;
+            }
+            bulkhead.currentWeight += bulkhead.weight;
+            totalWeight += bulkhead.weight;
+            if (selected == null || bulkhead.currentWeight > selected.currentWeight) {
+                selected = bulkhead;
+            }
+        }
+
+        if (selected == null) {
+            return null;
+        }
+
+        selected.currentWeight -= totalWeight;
+        selected.active++;
+        count--;
+        notFull.signalAll();
+
+        Runnable task = selected.queue.poll();
+        Bulkhead bulkhead = selected;
+        return new Runnable() {
+            @Override
+            public void run() {
+                CompletionStage<?> completion = null;
+                try {
+                    task.run();
+                    completion = (task instanceof AsyncTask) ? ((AsyncTask) task).completion() : null;
+                } finally {
+                    if (completion == null) {
+                        completed(bulkhead);
+                    }
+                }
+                if (completion != null) {
+                    completion.whenComplete((result, t) -> completed(bulkhead));
+                }
+            }
+
+            @Override
+            public String toString() {
+                return task.toString();
+            }
+        };
+    }
+
+    private void completed(Bulkhead bulkhead) {
+        lock.lock();
+        try {
+            bulkhead.active--;
+            bulkhead.completed++;
+            eligible.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * A task whose work continues on other threads after it returns.
+     */
+    public interface AsyncTask {
+
+        /**
+         * @return the completion of the work started when the task was run, or {@code null} if the work completed when
+         *         the task returned
+         */
+        CompletionStage<?> completion();
+
+    }
+
+    /**
+     * A bulkhead: the queue and limits of the tasks sharing a key.
+     */
+    public class Bulkhead {
+
+        private final String key;
+
+        private final ArrayDeque<Runnable> queue = new ArrayDeque<>();
+
+        private int concurrency = defaultConcurrency;
+
+        private int capacity = defaultCapacity;
+
+        private int weight = 1;
+
+        private int currentWeight;
+
+        private int active;
+
+        private long completed;
+
+        private Bulkhead(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public int getConcurrency() {
+            return concurrency;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        /**
+         * @return the number of tasks of this bulkhead waiting for a thread
+         */
+        public int getQueueDepth() {
+            lock.lock();
+            try {
+                return queue.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return the number of tasks of this bulkhead currently running
+         */
+        public int getActiveCount() {
+            lock.lock();
+            try {
+                return active;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return the number of tasks of this bulkhead that have completed
+         */
+        public long getCompletedCount() {
+            lock.lock();
+            try {
+                return completed;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return key + " [queued=" + getQueueDepth() + ", active=" + getActiveCount() + ", concurrency=" +
+                    concurrency + ", capacity=" + capacity + ", weight=" + weight + "]";
+        }
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.service;
+
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * A {@link ThreadPoolTaskExecutor} whose threads are divided among the bulkheads of a {@link BulkheadQueue}.
+ * <p>
+ * The executor has a fixed number of threads, all started when the executor is initialized, so that every task
+ * submitted to the executor passes through the bulkhead queue rather than being handed directly to a new thread.  The
+ * {@link #setQueueCapacity(int) queue capacity} is ignored: the capacity of each bulkhead is configured on the {@code
+ * BulkheadQueue}.
+ * </p>
+ */
+@SuppressWarnings("serial")
+public class BulkheadTaskExecutor extends ThreadPoolTaskExecutor {
+
+    private final BulkheadQueue bulkheadQueue;
+
+    /**
+     * @param bulkheadQueue the work queue of this executor
+     * @param poolSize the number of threads of this executor
+     */
+    public BulkheadTaskExecutor(BulkheadQueue bulkheadQueue, int poolSize) {
+        if (bulkheadQueue == null) {
+            throw new IllegalArgumentException("Bulkhead queue must not be null.");
+        }
+        this.bulkheadQueue = bulkheadQueue;
+        setCorePoolSize(poolSize);
+        setMaxPoolSize(poolSize);
+    }
+
+    public BulkheadQueue getBulkheadQueue() {
+        return bulkheadQueue;
+    }
+
+    @Override
+    protected BlockingQueue<Runnable> createQueue(int queueCapacity) {
+        return bulkheadQueue;
+    }
+
+    @Override
+    protected ExecutorService initializeExecutor(ThreadFactory threadFactory,
+                                                 RejectedExecutionHandler rejectedExecutionHandler) {
+        ExecutorService executor = super.initializeExecutor(threadFactory, rejectedExecutionHandler);
+        ((ThreadPoolExecutor) executor).prestartAllCoreThreads();
+        return executor;
+    }
+
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static java.lang.Integer.toHexString;
+import static java.lang.System.identityHashCode;
+
+/**
+ * Handles tasks rejected by a saturated executor by waiting for room in its queue, rather than failing the task.
+ * <p>
+ * A thread submitting a task to a saturated executor is blocked until the executor's queue has room for the task, or
+ * until the submit timeout elapses.  A task that still cannot be queued is retried later, after a delay that doubles
+ * with each attempt, without blocking the submitting thread any further.  Tasks are never discarded because the
+ * executor is busy; the number of threads blocked on submission and the number of tasks awaiting a retry are
+ * {@link #getWaitingCount() exposed}, so that producers of work may be slowed while the executor catches up.
+ * </p>
+ * <p>
+ * Only tasks rejected because the executor is shut down, or because this handler is closed, are handed to the
+ * {@code shutdownHandler} supplied on construction.
+ * </p>
+ */
+public class DeferredRetryRejectionHandler implements RejectedExecutionHandler, Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DeferredRetryRejectionHandler.class);
+
+    private static final long MAX_RETRY_DELAY_MS = 60000;
+
+    /**
+     * Set while a deferred task is re-submitted, so that a further rejection defers the task again rather than
+     * blocking the thread performing retries.
+     */
+    private static final ThreadLocal<Boolean> RETRYING = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+    private final long submitTimeoutMs;
+
+    private final long retryDelayMs;
+
+    private final Consumer<Runnable> shutdownHandler;
+
+    private final ScheduledThreadPoolExecutor retryExecutor;
+
+    private final Set<DeferredTask> deferred = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger blocked = new AtomicInteger();
+
+    private final AtomicLong blockedCount = new AtomicLong();
+
+    private final AtomicLong deferredCount = new AtomicLong();
+
+    /**
+     * @param submitTimeoutMs the maximum amount of time, in milliseconds, that a submitting thread is blocked waiting
+     *                        for room in the executor's queue
+     * @param retryDelayMs the amount of time, in milliseconds, before a task that could not be queued is first retried
+     * @param shutdownHandler handles tasks that cannot be executed because the executor is shut down
+     */
+    public DeferredRetryRejectionHandler(long submitTimeoutMs, long retryDelayMs, Consumer<Runnable> shutdownHandler) {
+        if (submitTimeoutMs < 0) {
+            throw new IllegalArgumentException("Submit timeout must not be negative.");
+        }
+        if (retryDelayMs < 1) {
+            throw new IllegalArgumentException("Retry delay must be a positive integer.");
+        }
+        if (shutdownHandler == null) {
+            throw new IllegalArgumentException("Shutdown handler must not be null.");
+        }
+
+        this.submitTimeoutMs = submitTimeoutMs;
+        this.retryDelayMs = retryDelayMs;
+        this.shutdownHandler = shutdownHandler;
+        this.retryExecutor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r);
+            t.setName("Deferred-Retry");
+            return t;
+        });
+        this.retryExecutor.setRemoveOnCancelPolicy(true);
+    }
+
+    @Override
+    public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            shutdownHandler.accept(task);
+            return;
+        }
+
+        if (RETRYING.get()) {
+            throw new RejectedExecutionException();
+        }
+
+        if (offer(task, executor)) {
+            return;
+        }
+
+        LOG.warn("Task {}@{} could not be queued within {} ms, will be retried in {} ms",
+                task.getClass().getSimpleName(), toHexString(identityHashCode(task)), submitTimeoutMs, retryDelayMs);
+        defer(new DeferredTask(task, executor, 1));
+    }
+
+    /**
+     * @return the number of threads currently blocked submitting a task, plus the number of tasks awaiting a retry
+     */
+    public int getWaitingCount() {
+        return blocked.get() + deferred.size();
+    }
+
+    /**
+     * @return the number of times a submitting thread was blocked waiting for room in the executor's queue
+     */
+    public long getBlockedCount() {
+        return blockedCount.get();
+    }
+
+    /**
+     * @return the number of times a task was deferred for a later retry
+     */
+    public long getDeferredCount() {
+        return deferredCount.get();
+    }
+
+    /**
+     * Removes the tasks awaiting a retry, adding them to {@code tasks}; they will not be retried.
+     *
+     * @param tasks receives the tasks that were awaiting a retry
+     * @return the number of tasks removed
+     */
+    public int drainTo(Collection<? super Runnable> tasks) {
+        int drained = 0;
+        for (DeferredTask task : deferred) {
+            if (deferred.remove(task)) {
+                tasks.add(task.task);
+                drained++;
+            }
+        }
+        return drained;
+    }
+
+    /**
+     * Stops retrying deferred tasks.  Tasks that are awaiting a retry are handed to the shutdown handler.
+     */
+    @Override
+    public void close() {
+        retryExecutor.shutdownNow();
+        deferred.forEach(task -> {
+            if (deferred.remove(task)) {
+                shutdownHandler.accept(task.task);
+            }
+        });
+
+        LOG.info("Deferred retry of rejected tasks stopped: {} submissions blocked, {} tasks deferred",
+                blockedCount.get(), deferredCount.get());
+    }
+
+    private boolean offer(Runnable task, ThreadPoolExecutor executor) {
+        blocked.incrementAndGet();
+        blockedCount.incrementAndGet();
+        try {
+            if (!executor.getQueue().offer(task, submitTimeoutMs, TimeUnit.MILLISECONDS)) {
+                return false;
+            }
+
+            // the executor may have been shut down while waiting; it will not run a task queued afterwards
+            if (executor.isShutdown() && executor.remove(task)) {
+                shutdownHandler.accept(task);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            blocked.decrementAndGet();
+        }
+    }
+
+    private void defer(DeferredTask deferredTask) {
+        deferred.add(deferredTask);
+        deferredCount.incrementAndGet();
+        long delay = Math.max(retryDelayMs,
+                Math.min(MAX_RETRY_DELAY_MS, retryDelayMs << Math.min(deferredTask.attempt - 1, 16)));
+        try {
+            retryExecutor.schedule(deferredTask, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            if (deferred.remove(deferredTask)) {
+                shutdownHandler.accept(deferredTask.task);
+            }
+        }
+    }
+
+    /**
+     * A rejected task awaiting a retry.
+     */
+    private class DeferredTask implements Runnable {
+
+        private final Runnable task;
+
+        private final ThreadPoolExecutor executor;
+
+        private final int attempt;
+
+        private DeferredTask(Runnable task, ThreadPoolExecutor executor, int attempt) {
+            this.task = task;
+            this.executor = executor;
+            this.attempt = attempt;
+        }
+
+        @Override
+        public void run() {
+            if (!deferred.remove(this)) {
+                return;
+            }
+
+            RETRYING.set(Boolean.TRUE);
+            try {
+                executor.execute(task);
+                LOG.debug("Task {}@{} queued after {} deferred attempts", task.getClass().getSimpleName(),
+                        toHexString(identityHashCode(task)), attempt);
+            } catch (RejectedExecutionException e) {
+                defer(new DeferredTask(task, executor, attempt + 1));
+            } finally {
+                RETRYING.set(Boolean.FALSE);
+            }
+        }
+    }
+
+}
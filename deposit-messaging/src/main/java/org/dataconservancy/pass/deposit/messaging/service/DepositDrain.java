@@ -0,0 +1,355 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.dataconservancy.pass.deposit.messaging.service.DepositJournal.Transition.QUEUED;
+
+/**
+ * Drains the deposit worker pool when the application is stopped, so that deposits in progress are not cut off.
+ * <p>
+ * Draining proceeds in order:
+ * </p>
+ * <ol>
+ *     <li>the intake of new work is stopped: the JMS listeners stop consuming messages, and messages already received
+ *         are handed to the deposit workers</li>
+ *     <li>the deposits queued for, being performed by, or awaiting a retry of their submission to the deposit
+ *         workers are given until the deadline to finish</li>
+ *     <li>if the deadline passes, the deposits still queued or awaiting a retry are removed from the pool and its
+ *         {@link DeferredRetryRejectionHandler rejection handler}, and recorded in the {@link DepositJournal} as {@link
+ *         DepositJournal.Transition#QUEUED QUEUED} so that they are resumed when the application next starts; the
+ *         deposits still being performed are already recorded in the journal</li>
+ * </ol>
+ * <p>
+ * The journal is required: without it, the deposits left over by the drain could only be failed or lost.
+ * </p>
+ * <p>
+ * The drain is performed when this lifecycle is {@link #stop() stopped}, before the deposit worker pool and the other
+ * beans of the application are destroyed, or earlier, on demand, by {@link #drain()}.  The {@link #getProgress()
+ * progress} of the drain may be observed while it is performed.
+ * </p>
+ */
+public class DepositDrain implements SmartLifecycle {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DepositDrain.class);
+
+    private static final long POLL_MS = 250;
+
+    /**
+     * The states of a drain.
+     */
+    public enum State {
+
+        /**
+         * the drain has not begun
+         */
+        RUNNING,
+
+        /**
+         * the intake of new work is being stopped
+         */
+        STOPPING_INTAKE,
+
+        /**
+         * waiting for deposits in progress to finish
+         */
+        DRAINING,
+
+        /**
+         * every deposit finished before the deadline
+         */
+        DRAINED,
+
+        /**
+         * the deadline passed with deposits unfinished
+         */
+        TIMED_OUT
+    }
+
+    private final Runnable stopIntake;
+
+    private final BulkheadTaskExecutor depositWorkers;
+
+    private final DeferredRetryRejectionHandler rejectionHandler;
+
+    private final DepositJournal journal;
+
+    private final long deadlineMs;
+
+    private final Object lock = new Object();
+
+    private volatile State state = State.RUNNING;
+
+    private volatile boolean running;
+
+    private long startedAt;
+
+    private long finishedAt;
+
+    private long completedAtStart;
+
+    private int leftOver;
+
+    /**
+     * @param stopIntake stops the intake of new work, returning once work already received has been handed to the
+     *                   deposit workers
+     * @param depositWorkers the deposit worker pool
+     * @param rejectionHandler the rejection handler of the deposit worker pool, holding deposits awaiting a retry
+     * @param journal the journal recording the deposits left over when the deadline passes
+     * @param deadlineMs the amount of time, in milliseconds, that deposits in progress are given to finish
+     */
+    public DepositDrain(Runnable stopIntake, BulkheadTaskExecutor depositWorkers,
+                        DeferredRetryRejectionHandler rejectionHandler, DepositJournal journal, long deadlineMs) {
+        if (stopIntake == null || depositWorkers == null || rejectionHandler == null) {
+            throw new IllegalArgumentException("Intake, deposit workers and rejection handler must not be null.");
+        }
+        if (journal == null) {
+            throw new IllegalArgumentException("Deposit journal must not be null.");
+        }
+        if (deadlineMs < 0) {
+            throw new IllegalArgumentException("Drain deadline must not be negative.");
+        }
+        this.stopIntake = stopIntake;
+        this.depositWorkers = depositWorkers;
+        this.rejectionHandler = rejectionHandler;
+        this.journal = journal;
+        this.deadlineMs = deadlineMs;
+    }
+
+    /**
+     * Drains the deposit worker pool, returning once the drain has finished.  If a drain is already in progress, waits
+     * for it to finish; if it has finished, returns immediately.
+     *
+     * @return the state the drain finished in
+     */
+    public State drain() {
+        synchronized (lock) {
+            if (state != State.RUNNING) {
+                while (state == State.STOPPING_INTAKE || state == State.DRAINING) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return state;
+                    }
+                }
+                return state;
+            }
+            state = State.STOPPING_INTAKE;
+            startedAt = System.currentTimeMillis();
+        }
+
+        State finished = State.TIMED_OUT;
+        int left = 0;
+        try {
+            LOG.info("Draining deposits: stopping the intake of new work");
+            stopIntake.run();
+
+            synchronized (lock) {
+                completedAtStart = completedCount();
+                state = State.DRAINING;
+            }
+            LOG.info("Draining deposits: waiting up to {} ms for {} deposits in progress, {} queued and {} awaiting " +
+                    "a retry", deadlineMs, activeCount(), queuedCount(), waitingCount());
+
+            finished = awaitDeposits() ? State.DRAINED : State.TIMED_OUT;
+            if (finished == State.TIMED_OUT) {
+                left = recordLeftOver();
+            }
+        } finally {
+            synchronized (lock) {
+                state = finished;
+                leftOver = left;
+                finishedAt = System.currentTimeMillis();
+                lock.notifyAll();
+            }
+        }
+
+        Map<String, Object> progress = getProgress();
+        if (finished == State.DRAINED) {
+            LOG.info("Drained deposits in {} ms: {} deposits finished", progress.get("elapsedMs"),
+                    progress.get("finished"));
+        } else {
+            LOG.warn("Timed out draining deposits after {} ms: {} deposits finished, {} still in progress, {} left " +
+                    "for the next start", progress.get("elapsedMs"), progress.get("finished"),
+                    progress.get("inProgress"), left);
+        }
+        return finished;
+    }
+
+    /**
+     * Answers the progress of the drain:
+     * <dl>
+     *     <dt>state</dt>
+     *     <dd>the {@link State} of the drain</dd>
+     *     <dt>elapsedMs</dt>
+     *     <dd>the time the drain has taken so far, or took</dd>
+     *     <dt>deadlineMs</dt>
+     *     <dd>the time deposits in progress are given to finish</dd>
+     *     <dt>inProgress</dt>
+     *     <dd>the number of deposits being performed</dd>
+     *     <dt>queued</dt>
+     *     <dd>the number of deposits waiting for a deposit worker</dd>
+     *     <dt>awaitingRetry</dt>
+     *     <dd>the number of deposits whose submission to the deposit workers is being retried</dd>
+     *     <dt>finished</dt>
+     *     <dd>the number of deposits that finished while draining</dd>
+     *     <dt>leftOver</dt>
+     *     <dd>the number of queued deposits, and deposits awaiting a retry, removed when the deadline passed</dd>
+     * </dl>
+     *
+     * @return the progress of the drain
+     */
+    public Map<String, Object> getProgress() {
+        Map<String, Object> progress = new LinkedHashMap<>();
+        synchronized (lock) {
+            progress.put("state", state.name());
+            progress.put("elapsedMs", startedAt == 0 ? 0 :
+                    (finishedAt == 0 ? System.currentTimeMillis() : finishedAt) - startedAt);
+            progress.put("deadlineMs", deadlineMs);
+            progress.put("inProgress", activeCount());
+            progress.put("queued", queuedCount());
+            progress.put("awaitingRetry", waitingCount());
+            progress.put("finished", state == State.RUNNING || state == State.STOPPING_INTAKE ? 0 :
+                    completedCount() - completedAtStart);
+            progress.put("leftOver", leftOver);
+        }
+        return progress;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public DepositJournal getJournal() {
+        return journal;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    /**
+     * Drains the deposit worker pool.
+     */
+    @Override
+    public void stop() {
+        try {
+            drain();
+        } finally {
+            running = false;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public boolean isAutoStartup() {
+        return true;
+    }
+
+    @Override
+    public void stop(Runnable callback) {
+        stop();
+        callback.run();
+    }
+
+    /**
+     * Drains in the first shutdown phase, alongside the JMS listener containers, so that the deposit workers are
+     * drained before any other component is stopped.
+     *
+     * @return the phase of this lifecycle
+     */
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE;
+    }
+
+    private boolean awaitDeposits() {
+        long deadline = System.currentTimeMillis() + deadlineMs;
+        while (activeCount() + queuedCount() + waitingCount() > 0) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            try {
+                Thread.sleep(Math.min(POLL_MS, remaining));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes the deposits still queued from the pool, and the deposits awaiting a retry from the rejection handler,
+     * recording each in the journal so that it is resumed on the next start rather than failed.
+     *
+     * @return the number of deposits removed
+     */
+    private int recordLeftOver() {
+        List<Runnable> tasks = new ArrayList<>();
+        depositWorkers.getBulkheadQueue().drainTo(tasks);
+        rejectionHandler.drainTo(tasks);
+        for (Runnable task : tasks) {
+            if (task instanceof DepositTask) {
+                DepositUtil.DepositWorkerContext dc = ((DepositTask) task).getDepositWorkerContext();
+                URI depositUri = dc.deposit().getId();
+                journal.record(depositUri, QUEUED);
+                if (dc.packageShare() != null) {
+                    dc.packageShare().release();
+                }
+                LOG.info("Recorded queued deposit {} for the next start", depositUri);
+            } else {
+                LOG.warn("Discarding queued task {}: it cannot be recorded for the next start", task);
+            }
+        }
+        return tasks.size();
+    }
+
+    private int activeCount() {
+        return depositWorkers.getBulkheadQueue().getBulkheads().stream()
+                .mapToInt(BulkheadQueue.Bulkhead::getActiveCount).sum();
+    }
+
+    private int queuedCount() {
+        return depositWorkers.getBulkheadQueue().size();
+    }
+
+    private int waitingCount() {
+        return rejectionHandler.getWaitingCount();
+    }
+
+    private long completedCount() {
+        return depositWorkers.getBulkheadQueue().getBulkheads().stream()
+                .mapToLong(BulkheadQueue.Bulkhead::getCompletedCount).sum();
+    }
+
+}
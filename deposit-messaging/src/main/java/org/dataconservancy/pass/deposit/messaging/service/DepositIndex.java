@@ -0,0 +1,313 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.service;
+
+import org.dataconservancy.pass.model.Deposit;
+import org.dataconservancy.pass.model.Deposit.DepositStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * A local index of the {@code Deposit}s that the {@link DepositUpdater} checks: those with a {@code FAILED} or {@code
+ * SUBMITTED} status.  It answers only the deposits that are {@link #due() due} to be checked, rather than every deposit
+ * in an intermediate state.
+ * <p>
+ * A deposit is due when it is new to the index, when its status has changed, or when its recheck interval has passed
+ * since it was last answered.  The recheck interval begins at {@code recheckIntervalMs}, and doubles each time the
+ * deposit is answered without its status having changed, up to {@code maxRecheckIntervalMs}; a change of status
+ * resets it.  A deposit that waits weeks for review by a repository curator is thereby checked far less often than a
+ * deposit submitted a minute ago.  The deposits are held in order of the time they are next due, so answering the
+ * deposits that are due does not visit the others.
+ * </p>
+ * <p>
+ * The index is kept current by the {@code Deposit}s read from the deposit queue,
+ * each of which is {@link #observe(Deposit) observed}, and reconciled with the PASS index every {@code
+ * reconcileIntervalMs}, which adds the deposits whose messages were missed, and removes those that have left an
+ * intermediate status without a message being received.  The first call to {@link #due()} reconciles the index, so
+ * every deposit is due on the first run.
+ * </p>
+ */
+public class DepositIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DepositIndex.class);
+
+    private final Supplier<Collection<URI>> reconciliation;
+
+    private final long recheckIntervalMs;
+
+    private final long maxRecheckIntervalMs;
+
+    private final long reconcileIntervalMs;
+
+    private final LongSupplier clock;
+
+    private final Map<URI, Entry> entries = new HashMap<>();
+
+    private final PriorityQueue<Scheduled> schedule = new PriorityQueue<>();
+
+    private long reconciledAt = -1;
+
+    private long reconciliationCount;
+
+    /**
+     * @param reconciliation answers the URIs of every deposit in a {@code FAILED} or {@code SUBMITTED} status
+     * @param recheckIntervalMs the amount of time, in milliseconds, after which an unchanged deposit is first checked
+     *                          again
+     * @param maxRecheckIntervalMs the longest amount of time, in milliseconds, after which an unchanged deposit is
+     *                             checked again
+     * @param reconcileIntervalMs the amount of time, in milliseconds, between reconciliations with the PASS index
+     */
+    public DepositIndex(Supplier<Collection<URI>> reconciliation, long recheckIntervalMs, long maxRecheckIntervalMs,
+                        long reconcileIntervalMs) {
+        this(reconciliation, recheckIntervalMs, maxRecheckIntervalMs, reconcileIntervalMs, System::currentTimeMillis);
+    }
+
+    DepositIndex(Supplier<Collection<URI>> reconciliation, long recheckIntervalMs, long maxRecheckIntervalMs,
+                 long reconcileIntervalMs, LongSupplier clock) {
+        if (reconciliation == null) {
+            throw new IllegalArgumentException("Reconciliation must not be null.");
+        }
+        if (recheckIntervalMs < 0 || reconcileIntervalMs < 0) {
+            throw new IllegalArgumentException("Intervals must not be negative.");
+        }
+        if (maxRecheckIntervalMs < recheckIntervalMs) {
+            throw new IllegalArgumentException("Maximum recheck interval must not be less than the recheck interval.");
+        }
+        this.reconciliation = reconciliation;
+        this.recheckIntervalMs = recheckIntervalMs;
+        this.maxRecheckIntervalMs = maxRecheckIntervalMs;
+        this.reconcileIntervalMs = reconcileIntervalMs;
+        this.clock = clock;
+    }
+
+    /**
+     * Answers whether the {@code DepositUpdater} checks deposits with the supplied status.
+     *
+     * @param status the status of a deposit
+     * @return {@code true} if the deposit is a candidate for the {@code DepositUpdater}
+     */
+    public static boolean isCandidate(DepositStatus status) {
+        return status == DepositStatus.FAILED || status == DepositStatus.SUBMITTED;
+    }
+
+    /**
+     * Records the current state of a {@code Deposit}.  A deposit that is new to the index, or whose status has
+     * changed, becomes due, and its recheck interval is reset; a deposit that is no longer a candidate is removed.  A
+     * deposit whose status is unchanged keeps its schedule, so the updates made by checking a deposit do not cause it
+     * to be checked again.
+     *
+     * @param deposit the deposit
+     */
+    public void observe(Deposit deposit) {
+        if (deposit == null || deposit.getId() == null) {
+            return;
+        }
+
+        long now = clock.getAsLong();
+        synchronized (this) {
+            if (!isCandidate(deposit.getDepositStatus())) {
+                entries.remove(deposit.getId());
+                return;
+            }
+
+            Entry entry = entries.get(deposit.getId());
+            if (entry == null) {
+                add(deposit.getId(), deposit.getDepositStatus(), now);
+            } else {
+                // a deposit added by a reconciliation has no status until it is observed
+                if (entry.status != null && entry.status != deposit.getDepositStatus()) {
+                    entry.unchangedChecks = 0;
+                    schedule(deposit.getId(), entry, now);
+                }
+                entry.status = deposit.getDepositStatus();
+                entry.observedAt = now;
+            }
+        }
+    }
+
+    /**
+     * Answers the deposits that are due to be checked, reconciling the index first if a reconciliation is due.  Each
+     * deposit answered is not due again until its recheck interval, which is doubled, has passed, or its status
+     * changes.
+     *
+     * @return the URIs of the deposits due to be checked
+     */
+    public Collection<URI> due() {
+        if (isReconciliationDue()) {
+            reconcile();
+        }
+
+        long now = clock.getAsLong();
+        List<URI> due = new ArrayList<>();
+        synchronized (this) {
+            while (!schedule.isEmpty() && schedule.peek().dueAt <= now) {
+                Scheduled next = schedule.poll();
+                Entry entry = entries.get(next.uri);
+                if (entry == null || entry.sequence != next.sequence) {
+                    // the deposit was removed or rescheduled after this was scheduled
+                    continue;
+                }
+                due.add(next.uri);
+                entry.unchangedChecks++;
+                schedule(next.uri, entry, now + recheckInterval(entry.unchangedChecks));
+            }
+            LOG.debug("{} of {} indexed deposits are due to be checked", due.size(), entries.size());
+        }
+        return due;
+    }
+
+    /**
+     * Reconciles the index with the PASS index: deposits that are not indexed are added, and become due, and indexed
+     * deposits that the PASS index no longer answers are removed, unless they were observed while the reconciliation
+     * was performed.
+     */
+    public void reconcile() {
+        long startedAt = clock.getAsLong();
+        Set<URI> candidates = new HashSet<>(reconciliation.get());
+
+        int added = 0;
+        int removed = 0;
+        synchronized (this) {
+            for (URI uri : candidates) {
+                if (!entries.containsKey(uri)) {
+                    add(uri, null, startedAt);
+                    added++;
+                }
+            }
+
+            Iterator<Map.Entry<URI, Entry>> itr = entries.entrySet().iterator();
+            while (itr.hasNext()) {
+                Map.Entry<URI, Entry> entry = itr.next();
+                if (entry.getValue().observedAt < startedAt && !candidates.contains(entry.getKey())) {
+                    itr.remove();
+                    removed++;
+                }
+            }
+
+            // drop the schedule of removed and rescheduled deposits
+            schedule.clear();
+            entries.forEach((uri, entry) -> schedule.add(new Scheduled(uri, entry.dueAt, entry.sequence)));
+
+            reconciledAt = startedAt;
+            reconciliationCount++;
+        }
+
+        LOG.info("Reconciled the deposit index in {} ms: {} deposits added, {} removed, {} indexed",
+                clock.getAsLong() - startedAt, added, removed, size());
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getReconciliationCount() {
+        return reconciliationCount;
+    }
+
+    /**
+     * Answers the time at which a deposit is next due to be checked.
+     *
+     * @param depositUri the URI of the deposit
+     * @return the time, in milliseconds since the epoch, or {@code -1} if the deposit is not indexed
+     */
+    public synchronized long getDueAt(URI depositUri) {
+        Entry entry = entries.get(depositUri);
+        return entry == null ? -1 : entry.dueAt;
+    }
+
+    /**
+     * Answers the recheck interval of a deposit that has been answered {@code unchangedChecks} times without its status
+     * changing: {@code recheckIntervalMs}, doubled for each answer after the first, up to {@code maxRecheckIntervalMs}.
+     */
+    long recheckInterval(int unchangedChecks) {
+        if (unchangedChecks <= 1) {
+            return recheckIntervalMs;
+        }
+        double interval = recheckIntervalMs * Math.pow(2, unchangedChecks - 1);
+        return interval >= maxRecheckIntervalMs ? maxRecheckIntervalMs : (long) interval;
+    }
+
+    private void add(URI uri, DepositStatus status, long now) {
+        Entry entry = new Entry(status, now);
+        entries.put(uri, entry);
+        schedule(uri, entry, now);
+    }
+
+    private void schedule(URI uri, Entry entry, long dueAt) {
+        entry.dueAt = dueAt;
+        entry.sequence++;
+        schedule.add(new Scheduled(uri, dueAt, entry.sequence));
+    }
+
+    private synchronized boolean isReconciliationDue() {
+        return reconciledAt < 0 || clock.getAsLong() - reconciledAt >= reconcileIntervalMs;
+    }
+
+    private static class Entry {
+
+        private DepositStatus status;
+
+        private long dueAt;
+
+        private long observedAt;
+
+        private int unchangedChecks;
+
+        private long sequence;
+
+        private Entry(DepositStatus status, long observedAt) {
+            this.status = status;
+            this.observedAt = observedAt;
+        }
+    }
+
+    /**
+     * The time a deposit is due, as of the {@code sequence} of its entry; superseded once the entry is rescheduled.
+     */
+    private static class Scheduled implements Comparable<Scheduled> {
+
+        private final URI uri;
+
+        private final long dueAt;
+
+        private final long sequence;
+
+        private Scheduled(URI uri, long dueAt, long sequence) {
+            this.uri = uri;
+            this.dueAt = dueAt;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Scheduled other) {
+            return Long.compare(dueAt, other.dueAt);
+        }
+    }
+
+}
@@ -0,0 +1,518 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal, kept on local disk, of the transitions of each {@link DepositTask}, so that the deposits
+ * that were in progress when the process stopped can be found when it starts again, without searching the index for
+ * them.
+ * <p>
+ * Each transition is appended to the active segment of the journal as a line holding the transition, the time it was
+ * recorded, the URI of the {@code Deposit}, and a checksum of the line; a line left incomplete by the death of the
+ * process fails its checksum, and is ignored.  Once the active segment exceeds the segment size, it is sealed and a new
+ * segment is started.  A {@code Deposit} is <em>unfinished</em> while its last transition is not {@link
+ * Transition#isFinal() final}.
+ * </p>
+ * <p>
+ * Sealed segments are compacted in the background: the active segment is sealed, and the sealed segments are replaced
+ * by a single segment holding the last transition of each unfinished {@code Deposit}.  The compacted segment is written
+ * to a temporary file and renamed over the last sealed segment; the segments it replaces are removed afterwards, or,
+ * if the process dies first, when the journal is next opened.
+ * </p>
+ * <p>
+ * When the journal is opened, its segments are replayed, and the unfinished deposits are made available as the
+ * {@link #getRecovered() recovered} deposits.  Transitions recorded after the journal is closed are dropped, leaving
+ * the deposit unfinished, as it would be had the process died.
+ * </p>
+ */
+public class DepositJournal implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DepositJournal.class);
+
+    private static final String SEGMENT_PREFIX = "journal-";
+
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final String COMPACTING_SUFFIX = ".compacting";
+
+    private static final String COMPACTED_HEADER = "# compacted";
+
+    /**
+     * The transitions of a deposit recorded in the journal.
+     */
+    public enum Transition {
+
+        /**
+         * the deposit was queued for a deposit worker; the task has not started
+         */
+        QUEUED,
+
+        /**
+         * the deposit task started; the package has not been sent
+         */
+        STARTED,
+
+        /**
+         * the package is being sent to the repository; the repository may or may not receive it
+         */
+        TRANSPORTING,
+
+        /**
+         * the package was received by the repository; the outcome has not been recorded
+         */
+        TRANSPORTED,
+
+        /**
+         * the outcome of the deposit was recorded
+         */
+        COMPLETED,
+
+        /**
+         * the deposit failed
+         */
+        FAILED;
+
+        /**
+         * @return {@code true} if no further transition is expected for the deposit
+         */
+        public boolean isFinal() {
+            return this == COMPLETED || this == FAILED;
+        }
+    }
+
+    private final Path directory;
+
+    private final long segmentBytes;
+
+    private final boolean fsync;
+
+    private final Object lock = new Object();
+
+    /**
+     * The last transition of each unfinished deposit, as of the last transition appended
+     */
+    private final Map<URI, Transition> unfinished = new LinkedHashMap<>();
+
+    private final Map<URI, Transition> recovered;
+
+    private final ScheduledExecutorService compactor;
+
+    private final AtomicLong appended = new AtomicLong();
+
+    private final AtomicLong compactions = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    private FileChannel active;
+
+    private long activeNumber;
+
+    private long activeSize;
+
+    private boolean closed;
+
+    /**
+     * Opens the journal in the supplied directory, replaying any segments left by an earlier process.
+     *
+     * @param directory the directory holding the segments of the journal, created if it does not exist
+     * @param segmentBytes the size, in bytes, beyond which the active segment is sealed
+     * @param compactionIntervalMs the interval, in milliseconds, between compactions; {@code 0} disables background
+     *                             compaction
+     * @param fsync whether each transition is forced to the storage device before it is answered, so that it survives
+     *              the failure of the host as well as the failure of the process
+     * @throws IOException if the directory cannot be created, or the journal cannot be replayed
+     */
+    public DepositJournal(Path directory, long segmentBytes, long compactionIntervalMs, boolean fsync)
+            throws IOException {
+        if (directory == null) {
+            throw new IllegalArgumentException("Journal directory must not be null.");
+        }
+        if (segmentBytes < 1) {
+            throw new IllegalArgumentException("Segment size must be a positive integer.");
+        }
+        if (compactionIntervalMs < 0) {
+            throw new IllegalArgumentException("Compaction interval must not be negative.");
+        }
+
+        this.directory = Files.createDirectories(directory);
+        this.segmentBytes = segmentBytes;
+        this.fsync = fsync;
+
+        long last = replay();
+        this.recovered = Collections.unmodifiableMap(new LinkedHashMap<>(unfinished));
+        openSegment(last + 1);
+
+        if (!recovered.isEmpty()) {
+            LOG.info("Recovered {} unfinished deposits from the journal in {}", recovered.size(), directory);
+        }
+
+        if (compactionIntervalMs > 0) {
+            compactor = new ScheduledThreadPoolExecutor(1, r -> {
+                Thread t = new Thread(r, "Deposit-Journal-Compactor");
+                t.setDaemon(true);
+                return t;
+            });
+            compactor.scheduleWithFixedDelay(() -> {
+                try {
+                    compact();
+                } catch (IOException | RuntimeException e) {
+                    LOG.warn("Failed to compact the journal in {}: {}", directory, e.getMessage(), e);
+                }
+            }, compactionIntervalMs, compactionIntervalMs, TimeUnit.MILLISECONDS);
+        } else {
+            compactor = null;
+        }
+    }
+
+    /**
+     * Appends a transition of a deposit to the journal.  A transition that cannot be written is logged, and the deposit
+     * proceeds; the journal is an aid to recovery, not a condition of performing a deposit.
+     *
+     * @param deposit the URI of the {@code Deposit}
+     * @param transition the transition
+     */
+    public void record(URI deposit, Transition transition) {
+        if (deposit == null) {
+            return;
+        }
+
+        ByteBuffer line = encode(transition, System.currentTimeMillis(), deposit);
+
+        synchronized (lock) {
+            if (closed) {
+                LOG.debug("Dropping {} transition of {}: the journal is closed", transition, deposit);
+                return;
+            }
+
+            try {
+                int length = line.remaining();
+                while (line.hasRemaining()) {
+                    active.write(line);
+                }
+                if (fsync) {
+                    active.force(false);
+                }
+                activeSize += length;
+                appended.incrementAndGet();
+            } catch (IOException e) {
+                failures.incrementAndGet();
+                LOG.error("Failed to record {} transition of {} in the journal: {}", transition, deposit,
+                        e.getMessage(), e);
+                return;
+            }
+
+            apply(unfinished, deposit, transition);
+
+            if (activeSize >= segmentBytes) {
+                try {
+                    rollSegment();
+                } catch (IOException e) {
+                    failures.incrementAndGet();
+                    LOG.error("Failed to start a new journal segment in {}: {}", directory, e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Answers the deposits that were unfinished when the journal was opened, with the last transition recorded for
+     * each.
+     *
+     * @return the recovered deposits, in the order they were first recorded
+     */
+    public Map<URI, Transition> getRecovered() {
+        return recovered;
+    }
+
+    /**
+     * @return the last transition of each deposit that is currently unfinished
+     */
+    public Map<URI, Transition> getUnfinished() {
+        synchronized (lock) {
+            return new LinkedHashMap<>(unfinished);
+        }
+    }
+
+    /**
+     * @return the number of transitions appended to the journal by this process
+     */
+    public long getAppendedCount() {
+        return appended.get();
+    }
+
+    /**
+     * @return the number of compactions performed by this process
+     */
+    public long getCompactionCount() {
+        return compactions.get();
+    }
+
+    /**
+     * @return the number of transitions that could not be written to the journal
+     */
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    /**
+     * @return the number of segment files of the journal, including the active segment
+     */
+    public int getSegmentCount() throws IOException {
+        return segments().size();
+    }
+
+    /**
+     * Replaces the sealed segments of the journal with a single segment holding the last transition of each unfinished
+     * deposit.  The active segment is sealed first, so that every transition recorded before compaction began is
+     * compacted.  Compaction is skipped if there is only the active segment and it is smaller than the segment size.
+     *
+     * @throws IOException if the compacted segment cannot be written
+     */
+    public synchronized void compact() throws IOException {
+        Map<URI, Transition> snapshot;
+        long sealed;
+
+        synchronized (lock) {
+            if (closed || (activeSize < segmentBytes && segments().size() < 2)) {
+                return;
+            }
+            sealed = activeNumber;
+            snapshot = new LinkedHashMap<>(unfinished);
+            rollSegment();
+        }
+
+        Path compacting = directory.resolve(segmentName(sealed) + COMPACTING_SUFFIX);
+        try (FileChannel out = FileChannel.open(compacting, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            write(out, ByteBuffer.wrap((COMPACTED_HEADER + "\n").getBytes(StandardCharsets.UTF_8)));
+            long now = System.currentTimeMillis();
+            for (Map.Entry<URI, Transition> entry : snapshot.entrySet()) {
+                write(out, encode(entry.getValue(), now, entry.getKey()));
+            }
+            out.force(true);
+        }
+
+        Files.move(compacting, directory.resolve(segmentName(sealed)), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        int removed = removeSegmentsBefore(sealed);
+        compactions.incrementAndGet();
+
+        LOG.debug("Compacted {} journal segments into {}, holding {} unfinished deposits", removed + 1,
+                segmentName(sealed), snapshot.size());
+    }
+
+    /**
+     * Stops compaction and closes the active segment.  The journal is not compacted, so that the deposits left
+     * unfinished are recovered when the journal is next opened.
+     */
+    @Override
+    public void close() {
+        if (compactor != null) {
+            compactor.shutdownNow();
+        }
+
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                active.close();
+            } catch (IOException e) {
+                LOG.warn("Failed to close the journal segment {}: {}", segmentName(activeNumber), e.getMessage());
+            }
+        }
+
+        LOG.info("Closed the journal in {}: {} transitions recorded, {} deposits unfinished", directory,
+                appended.get(), unfinished.size());
+    }
+
+    /**
+     * Replays the segments of the journal, completing any compaction that was interrupted.
+     *
+     * @return the number of the last segment, or {@code 0} if there are none
+     */
+    private long replay() throws IOException {
+        try (DirectoryStream<Path> stale = Files.newDirectoryStream(directory, "*" + COMPACTING_SUFFIX)) {
+            for (Path path : stale) {
+                Files.deleteIfExists(path);
+            }
+        }
+
+        TreeMap<Long, Path> segments = segments();
+
+        // a compacted segment supersedes the segments before it
+        long compacted = 0;
+        for (Map.Entry<Long, Path> segment : segments.entrySet()) {
+            if (isCompacted(segment.getValue())) {
+                compacted = segment.getKey();
+            }
+        }
+        removeSegmentsBefore(compacted);
+
+        long ignored = 0;
+        for (Path segment : segments.tailMap(compacted).values()) {
+            ignored += replay(segment);
+        }
+
+        if (ignored > 0) {
+            LOG.warn("Ignored {} incomplete or corrupt lines while replaying the journal in {}", ignored, directory);
+        }
+
+        return segments.isEmpty() ? 0 : segments.lastKey();
+    }
+
+    private long replay(Path segment) throws IOException {
+        long ignored = 0;
+        try (BufferedReader reader = Files.newBufferedReader(segment, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                if (!decode(line)) {
+                    ignored++;
+                }
+            }
+        }
+        return ignored;
+    }
+
+    private boolean decode(String line) {
+        int crcAt = line.lastIndexOf(' ');
+        if (crcAt < 0) {
+            return false;
+        }
+
+        String record = line.substring(0, crcAt);
+        if (!Long.toHexString(crc(record)).equals(line.substring(crcAt + 1))) {
+            return false;
+        }
+
+        String[] fields = record.split(" ", 3);
+        if (fields.length != 3) {
+            return false;
+        }
+
+        try {
+            apply(unfinished, URI.create(fields[2]), Transition.valueOf(fields[0]));
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static void apply(Map<URI, Transition> unfinished, URI deposit, Transition transition) {
+        if (transition.isFinal()) {
+            unfinished.remove(deposit);
+        } else {
+            unfinished.put(deposit, transition);
+        }
+    }
+
+    private static ByteBuffer encode(Transition transition, long timestamp, URI deposit) {
+        String record = transition.name() + " " + timestamp + " " + deposit;
+        String line = record + " " + Long.toHexString(crc(record)) + "\n";
+        return ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static long crc(String record) {
+        CRC32 crc = new CRC32();
+        crc.update(record.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    private static void write(FileChannel channel, ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+
+    private void rollSegment() throws IOException {
+        active.close();
+        openSegment(activeNumber + 1);
+    }
+
+    private void openSegment(long number) throws IOException {
+        active = FileChannel.open(directory.resolve(segmentName(number)), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        activeNumber = number;
+        activeSize = 0;
+    }
+
+    private int removeSegmentsBefore(long number) throws IOException {
+        List<Path> superseded = new ArrayList<>(segments().headMap(number).values());
+        for (Path segment : superseded) {
+            Files.deleteIfExists(segment);
+        }
+        return superseded.size();
+    }
+
+    private boolean isCompacted(Path segment) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(segment, StandardCharsets.UTF_8)) {
+            return COMPACTED_HEADER.equals(reader.readLine());
+        }
+    }
+
+    private TreeMap<Long, Path> segments() throws IOException {
+        TreeMap<Long, Path> segments = new TreeMap<>();
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : paths) {
+                String name = path.getFileName().toString();
+                try {
+                    segments.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length())), path);
+                } catch (NumberFormatException e) {
+                    LOG.debug("Ignoring {}: not a journal segment", path);
+                }
+            }
+        }
+        return segments;
+    }
+
+    private static String segmentName(long number) {
+        return String.format("%s%016d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX);
+    }
+
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Runs the steps of a {@link DepositTask} as asynchronous stages, each on the executor of the kind of work it performs,
+ * so that a deposit does not occupy a thread while it waits for a slower stage, and each kind of work can be sized on
+ * its own.
+ * <p>
+ * The stages are:
+ * </p>
+ * <dl>
+ *     <dt>{@link Stage#FEDORA_IO FEDORA_IO}</dt>
+ *     <dd>reads and updates of PASS resources in Fedora: checking that the {@code Deposit} is in an intermediate
+ *         state, and recording the outcome of the deposit</dd>
+ *     <dt>{@link Stage#PACKAGING PACKAGING}</dt>
+ *     <dd>assembling the package of custodial content, and writing it in its entirety to a temporary file</dd>
+ *     <dt>{@link Stage#TRANSPORT TRANSPORT}</dt>
+ *     <dd>streaming the written package to the downstream repository</dd>
+ * </dl>
+ * <p>
+ * The time each invocation of a stage takes, from being scheduled on its executor until it completes, is recorded in
+ * the {@link #getHistogram(Stage) histogram} of the stage.  A deposit that fails is handed to the error handler
+ * supplied on construction, as if the {@code DepositTask} had thrown the exception on a deposit worker thread.
+ * </p>
+ */
+public class DepositPipeline implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DepositPipeline.class);
+
+    private static final long CLOSE_TIMEOUT_MS = 60000;
+
+    /**
+     * The kinds of work performed by the stages of a deposit.
+     */
+    public enum Stage {
+        FEDORA_IO,
+        PACKAGING,
+        TRANSPORT
+    }
+
+    private final Map<Stage, ExecutorService> executors = new EnumMap<>(Stage.class);
+
+    private final Map<Stage, LatencyHistogram> histograms = new EnumMap<>(Stage.class);
+
+    private final Consumer<Throwable> errorHandler;
+
+    private final Object lock = new Object();
+
+    private int inFlight;
+
+    /**
+     * @param fedoraIo the executor of {@link Stage#FEDORA_IO FEDORA_IO} stages
+     * @param packaging the executor of {@link Stage#PACKAGING PACKAGING} stages
+     * @param transport the executor of {@link Stage#TRANSPORT TRANSPORT} stages
+     * @param errorHandler handles the exceptions of deposits that fail
+     */
+    public DepositPipeline(ExecutorService fedoraIo, ExecutorService packaging, ExecutorService transport,
+                           Consumer<Throwable> errorHandler) {
+        if (fedoraIo == null || packaging == null || transport == null) {
+            throw new IllegalArgumentException("Stage executors must not be null.");
+        }
+        if (errorHandler == null) {
+            throw new IllegalArgumentException("Error handler must not be null.");
+        }
+
+        executors.put(Stage.FEDORA_IO, fedoraIo);
+        executors.put(Stage.PACKAGING, packaging);
+        executors.put(Stage.TRANSPORT, transport);
+        for (Stage stage : Stage.values()) {
+            histograms.put(stage, new LatencyHistogram(stage.name()));
+        }
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * Starts a deposit with the {@code work} of its first stage.  The deposit is in flight until it is {@link
+     * #completed(DepositTask, Throwable) completed}.
+     *
+     * @param stage the kind of work
+     * @param work the work of the stage
+     * @param <T> the type of the result of the stage
+     * @return the completion of the stage
+     */
+    <T> CompletableFuture<T> start(Stage stage, Supplier<T> work) {
+        synchronized (lock) {
+            inFlight++;
+        }
+        try {
+            return then(stage, (Void ignored) -> work.get()).apply(null);
+        } catch (RuntimeException e) {
+            completed(null, null);
+            throw e;
+        }
+    }
+
+    /**
+     * Answers a function scheduling the {@code work} of a stage on the executor of the stage, for composing a stage
+     * with the stage before it.
+     *
+     * @param stage the kind of work
+     * @param work the work of the stage, supplied with the result of the stage before it
+     * @param <T> the type of the result of the stage before it
+     * @param <R> the type of the result of the stage
+     * @return a function answering the completion of the stage
+     */
+    <T, R> Function<T, CompletableFuture<R>> then(Stage stage, Function<T, R> work) {
+        ExecutorService executor = executors.get(stage);
+        LatencyHistogram histogram = histograms.get(stage);
+        return input -> {
+            long scheduled = System.nanoTime();
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return work.apply(input);
+                } finally {
+                    histogram.record(System.nanoTime() - scheduled);
+                }
+            }, executor);
+        };
+    }
+
+    /**
+     * Records the completion of a deposit, handing the exception of a failed deposit to the error handler.
+     *
+     * @param task the task whose deposit completed
+     * @param t the exception the deposit failed with, possibly wrapped in a {@code CompletionException}, or {@code
+     *          null} if it succeeded
+     */
+    void completed(DepositTask task, Throwable t) {
+        synchronized (lock) {
+            inFlight--;
+            lock.notifyAll();
+        }
+
+        if (t != null) {
+            Throwable cause = (t instanceof CompletionException && t.getCause() != null) ? t.getCause() : t;
+            LOG.debug("Deposit pipeline of {} failed: {}", task, cause.getMessage());
+            errorHandler.accept(cause);
+        }
+    }
+
+    /**
+     * @return the number of deposits started and not yet completed
+     */
+    public int getInFlightCount() {
+        synchronized (lock) {
+            return inFlight;
+        }
+    }
+
+    /**
+     * @param stage the kind of work
+     * @return the latencies of the stages performing that kind of work
+     */
+    public LatencyHistogram getHistogram(Stage stage) {
+        return histograms.get(stage);
+    }
+
+    /**
+     * @return the latency histogram of each stage
+     */
+    public Collection<LatencyHistogram> getHistograms() {
+        return histograms.values();
+    }
+
+    /**
+     * Allows deposits in progress to pass through their remaining stages, then stops the threads of the pipeline.
+     */
+    @Override
+    public void close() {
+        long deadline = System.currentTimeMillis() + CLOSE_TIMEOUT_MS;
+        synchronized (lock) {
+            try {
+                long remaining;
+                while (inFlight > 0 && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                    lock.wait(remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (inFlight > 0) {
+                LOG.warn("Timed out waiting for {} deposits to pass through the deposit pipeline", inFlight);
+            }
+        }
+
+        executors.values().forEach(ExecutorService::shutdown);
+        histograms.values().forEach(histogram -> LOG.info("Deposit pipeline stage latency {}", histogram));
+    }
+
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.service;
+
+import org.dataconservancy.pass.client.PassClient;
+import org.dataconservancy.pass.deposit.builder.InvalidModel;
+import org.dataconservancy.pass.deposit.builder.SubmissionBuilder;
+import org.dataconservancy.pass.deposit.messaging.DepositServiceRuntimeException;
+import org.dataconservancy.pass.deposit.messaging.model.Packager;
+import org.dataconservancy.pass.deposit.messaging.model.Registry;
+import org.dataconservancy.pass.deposit.messaging.policy.Policy;
+import org.dataconservancy.pass.deposit.messaging.service.DepositJournal.Transition;
+import org.dataconservancy.pass.deposit.model.DepositSubmission;
+import org.dataconservancy.pass.model.Deposit;
+import org.dataconservancy.pass.model.Repository;
+import org.dataconservancy.pass.model.Submission;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static java.lang.String.format;
+import static org.dataconservancy.pass.deposit.messaging.service.DepositJournal.Transition.COMPLETED;
+import static org.dataconservancy.pass.deposit.messaging.service.DepositJournal.Transition.FAILED;
+import static org.dataconservancy.pass.deposit.messaging.service.DepositJournal.Transition.QUEUED;
+import static org.dataconservancy.pass.deposit.messaging.service.DepositJournal.Transition.STARTED;
+
+/**
+ * Resumes or fails the deposits that the {@link DepositJournal} recovered as unfinished when the process started.
+ * <p>
+ * What is done with an unfinished deposit depends on the last transition recorded for it:
+ * </p>
+ * <dl>
+ *     <dt>{@link Transition#QUEUED QUEUED} or {@link Transition#STARTED STARTED}</dt>
+ *     <dd>the package was never sent, so the deposit is submitted again, as it would have been by the {@code
+ *         SubmissionProcessor}</dd>
+ *     <dt>{@link Transition#TRANSPORTING TRANSPORTING} or {@link Transition#TRANSPORTED TRANSPORTED}</dt>
+ *     <dd>the repository may have received the package, but its response was lost, so sending it again could create a
+ *         duplicate; the deposit is handed to the error handler, which marks it as failed</dd>
+ * </dl>
+ * <p>
+ * A deposit whose {@code Deposit} has since reached a terminal status is recorded as finished, and left alone.  A
+ * deposit that cannot be read from the repository is left unfinished, and recovered again on the next start.
+ * </p>
+ */
+public class DepositRecovery {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DepositRecovery.class);
+
+    private final DepositJournal journal;
+
+    private final PassClient passClient;
+
+    private final SubmissionBuilder submissionBuilder;
+
+    private final Registry<Packager> packagerRegistry;
+
+    private final DepositTaskHelper depositTaskHelper;
+
+    private final Policy<Deposit.DepositStatus> intermediateDepositStatusPolicy;
+
+    private final Consumer<Throwable> errorHandler;
+
+    /**
+     * @param journal the journal supplying the unfinished deposits
+     * @param passClient the client used to read the unfinished deposits
+     * @param submissionBuilder builds the {@code DepositSubmission} of a deposit that is resumed
+     * @param packagerRegistry supplies the {@code Packager} of a deposit that is resumed
+     * @param depositTaskHelper submits the deposits that are resumed
+     * @param intermediateDepositStatusPolicy answers whether a {@code Deposit} is still in progress
+     * @param errorHandler handles the exceptions of deposits that are failed, marking them as failed
+     */
+    public DepositRecovery(DepositJournal journal, PassClient passClient, SubmissionBuilder submissionBuilder,
+                           Registry<Packager> packagerRegistry, DepositTaskHelper depositTaskHelper,
+                           Policy<Deposit.DepositStatus> intermediateDepositStatusPolicy,
+                           Consumer<Throwable> errorHandler) {
+        this.journal = journal;
+        this.passClient = passClient;
+        this.submissionBuilder = submissionBuilder;
+        this.packagerRegistry = packagerRegistry;
+        this.depositTaskHelper = depositTaskHelper;
+        this.intermediateDepositStatusPolicy = intermediateDepositStatusPolicy;
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * Resumes or fails each deposit recovered by the journal.
+     */
+    public void recover() {
+        Map<URI, Transition> recovered = journal.getRecovered();
+        if (recovered.isEmpty()) {
+            return;
+        }
+
+        LOG.info("Recovering {} deposits left unfinished by the previous process", recovered.size());
+        recovered.forEach((depositUri, transition) -> {
+            try {
+                recover(depositUri, transition);
+            } catch (RuntimeException e) {
+                LOG.warn("Unable to recover unfinished deposit {}: {}", depositUri, e.getMessage(), e);
+            }
+        });
+    }
+
+    private void recover(URI depositUri, Transition transition) {
+        Deposit deposit = passClient.readResource(depositUri, Deposit.class);
+
+        if (!intermediateDepositStatusPolicy.test(deposit.getDepositStatus())) {
+            LOG.debug("Unfinished deposit {} has since reached status {}", depositUri, deposit.getDepositStatus());
+            journal.record(depositUri, deposit.getDepositStatus() == Deposit.DepositStatus.FAILED ? FAILED : COMPLETED);
+            return;
+        }
+
+        if (transition != QUEUED && transition != STARTED) {
+            LOG.warn("Failing unfinished deposit {}: its package may have been received by the repository " +
+                    "(last transition {})", depositUri, transition);
+            journal.record(depositUri, FAILED);
+            errorHandler.accept(new DepositServiceRuntimeException(format("Deposit %s was interrupted while its " +
+                    "package was being sent (last transition %s)", depositUri, transition), deposit));
+            return;
+        }
+
+        Submission submission = passClient.readResource(deposit.getSubmission(), Submission.class);
+        Repository repo = passClient.readResource(deposit.getRepository(), Repository.class);
+        Packager packager = null;
+        for (String key : SubmissionProcessor.getLookupKeys(repo)) {
+            if ((packager = packagerRegistry.get(key)) != null) {
+                break;
+            }
+        }
+        if (packager == null) {
+            journal.record(depositUri, FAILED);
+            errorHandler.accept(new DepositServiceRuntimeException(format("Unable to resume deposit %s: missing " +
+                    "Packager for Repository named '%s'", depositUri, repo.getName()), deposit));
+            return;
+        }
+
+        LOG.info("Resuming unfinished deposit {} of {} to {}", depositUri, submission.getId(), repo.getId());
+        try {
+            DepositSubmission depositSubmission = submissionBuilder.build(submission.getId().toString());
+            depositTaskHelper.submitDeposit(submission, depositSubmission, repo, deposit, packager);
+        } catch (InvalidModel e) {
+            journal.record(depositUri, FAILED);
+            errorHandler.accept(new DepositServiceRuntimeException(format("Unable to resume deposit %s: failed to " +
+                    "build the DepositSubmission model of %s", depositUri, submission.getId()), e, deposit));
+        } catch (DepositServiceRuntimeException e) {
+            journal.record(depositUri, FAILED);
+            errorHandler.accept(e);
+        }
+    }
+
+}
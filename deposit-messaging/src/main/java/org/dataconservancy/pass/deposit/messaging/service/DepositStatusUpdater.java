@@ -0,0 +1,182 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.net.URI;
+import java.util.Collection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Updates the status of a collection of {@code Deposit}s in parallel, on a dedicated pool of threads, rather than one
+ * at a time.  Each update reads the {@code Deposit} and its related resources from the PASS repository and resolves
+ * its status document from the downstream repository, so the updates are dominated by I/O; the size of the pool limits
+ * the number of updates performed at once.  The number of status documents resolved from each host at once is limited
+ * separately, by the {@link org.dataconservancy.pass.deposit.messaging.status.HostLimitedStatusResolver}.
+ * <p>
+ * The progress of an update is logged every {@code progressIntervalMs} while it is performed, and its outcome and
+ * duration when it has finished.
+ * </p>
+ */
+public class DepositStatusUpdater implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DepositStatusUpdater.class);
+
+    private final DepositTaskHelper depositHelper;
+
+    private final ExecutorService executor;
+
+    private final long progressIntervalMs;
+
+    /**
+     * @param depositHelper updates the status of each Deposit
+     * @param executor the size-limited pool performing the updates
+     * @param progressIntervalMs the amount of time, in milliseconds, between reports of progress; {@code 0} disables
+     *                           the reports
+     */
+    public DepositStatusUpdater(DepositTaskHelper depositHelper, ExecutorService executor, long progressIntervalMs) {
+        if (depositHelper == null || executor == null) {
+            throw new IllegalArgumentException("Deposit helper and executor must not be null.");
+        }
+        if (progressIntervalMs < 0) {
+            throw new IllegalArgumentException("Progress interval must not be negative.");
+        }
+        this.depositHelper = depositHelper;
+        this.executor = executor;
+        this.progressIntervalMs = progressIntervalMs;
+    }
+
+    /**
+     * Updates the status of each Deposit, returning once every update has finished.  An update that fails is handed
+     * to the {@code errorHandler}, on the thread that performed it, and does not prevent the other updates.
+     *
+     * @param depositUris the URIs of the Deposits to update
+     * @param errorHandler handles the failure of an update
+     * @return the outcome of the updates
+     */
+    public Result update(Collection<URI> depositUris, BiConsumer<URI, Exception> errorHandler) {
+        long start = System.currentTimeMillis();
+        int total = depositUris.size();
+        CountDownLatch remaining = new CountDownLatch(total);
+        AtomicInteger failed = new AtomicInteger();
+
+        for (URI depositUri : depositUris) {
+            try {
+                executor.execute(() -> {
+                    try {
+                        depositHelper.processDepositStatus(depositUri);
+                    } catch (Exception e) {
+                        failed.incrementAndGet();
+                        errorHandler.accept(depositUri, e);
+                    } finally {
+                        remaining.countDown();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                failed.incrementAndGet();
+                errorHandler.accept(depositUri, e);
+                remaining.countDown();
+            }
+        }
+
+        try {
+            if (progressIntervalMs > 0) {
+                while (!remaining.await(progressIntervalMs, TimeUnit.MILLISECONDS)) {
+                    LOG.info("Updated {} of {} deposits in {} ms ({} failed)", total - remaining.getCount(), total,
+                            System.currentTimeMillis() - start, failed.get());
+                }
+            } else {
+                remaining.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.warn("Interrupted waiting for {} of {} deposit updates to finish", remaining.getCount(), total);
+        }
+
+        Result result = new Result(total, (int) (total - remaining.getCount()), failed.get(),
+                System.currentTimeMillis() - start);
+        LOG.info("Updated {} of {} deposits in {} ms ({} failed)", result.getFinished(), result.getTotal(),
+                result.getDurationMs(), result.getFailed());
+        return result;
+    }
+
+    /**
+     * Shuts down the pool, allowing the updates already submitted to finish.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    /**
+     * The outcome of an {@link #update(Collection, BiConsumer) update}.
+     */
+    public static class Result {
+
+        private final int total;
+
+        private final int finished;
+
+        private final int failed;
+
+        private final long durationMs;
+
+        Result(int total, int finished, int failed, long durationMs) {
+            this.total = total;
+            this.finished = finished;
+            this.failed = failed;
+            this.durationMs = durationMs;
+        }
+
+        /**
+         * @return the number of Deposits to update
+         */
+        public int getTotal() {
+            return total;
+        }
+
+        /**
+         * @return the number of updates that finished, successfully or not
+         */
+        public int getFinished() {
+            return finished;
+        }
+
+        /**
+         * @return the number of updates that failed
+         */
+        public int getFailed() {
+            return failed;
+        }
+
+        /**
+         * @return the time taken by the updates, in milliseconds
+         */
+        public long getDurationMs() {
+            return durationMs;
+        }
+
+    }
+
+}
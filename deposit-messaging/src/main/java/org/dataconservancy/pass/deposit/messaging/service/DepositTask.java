@@ -15,6 +15,7 @@
  */
 package org.dataconservancy.pass.deposit.messaging.service;
 
+import org.dataconservancy.pass.deposit.assembler.PackageOptions;
 import org.dataconservancy.pass.deposit.assembler.PackageStream;
 import org.dataconservancy.pass.deposit.transport.TransportResponse;
 import org.dataconservancy.pass.deposit.transport.TransportSession;
@@ -35,7 +36,9 @@ import org.slf4j.LoggerFactory;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.BiPredicate;
 import java.util.function.Function;
 import java.util.function.Predicate;
@@ -44,6 +47,14 @@ import java.util.function.Supplier;
 import static java.lang.Integer.toHexString;
 import static java.lang.String.format;
 import static java.lang.System.identityHashCode;
+import static org.dataconservancy.pass.deposit.messaging.service.DepositJournal.Transition.COMPLETED;
+import static org.dataconservancy.pass.deposit.messaging.service.DepositJournal.Transition.FAILED;
+import static org.dataconservancy.pass.deposit.messaging.service.DepositJournal.Transition.STARTED;
+import static org.dataconservancy.pass.deposit.messaging.service.DepositJournal.Transition.TRANSPORTED;
+import static org.dataconservancy.pass.deposit.messaging.service.DepositJournal.Transition.TRANSPORTING;
+import static org.dataconservancy.pass.deposit.messaging.service.DepositPipeline.Stage.FEDORA_IO;
+import static org.dataconservancy.pass.deposit.messaging.service.DepositPipeline.Stage.PACKAGING;
+import static org.dataconservancy.pass.deposit.messaging.service.DepositPipeline.Stage.TRANSPORT;
 import static org.dataconservancy.pass.model.Deposit.DepositStatus.ACCEPTED;
 import static org.dataconservancy.pass.model.Deposit.DepositStatus.SUBMITTED;
 
@@ -62,10 +73,32 @@ import static org.dataconservancy.pass.model.Deposit.DepositStatus.SUBMITTED;
  * the repository endpoint.  That is to say the logical outcome revolves around the transfer of custody to another
  * repository.  A successful logical outcome indicates that custody was transferred to another repository.
  * </p>
+ * <p>
+ * By default the deposit is performed on the thread running the task.  If a {@link DepositPipeline} is {@link
+ * #setPipeline(DepositPipeline) set}, the task only starts the deposit, which passes through the stages of the
+ * pipeline: the {@code Deposit} is checked to be in an intermediate state, the package is assembled, the package is
+ * streamed to the repository, and the outcome is recorded, each on the executor of its stage.  Streaming the package
+ * is still performed as a {@link CriticalRepositoryInteraction}, which checks the state of the {@code Deposit} again
+ * before the package is sent; a package that fails to be assembled fails within the interaction, as it does when the
+ * package is assembled on the thread running the task.
+ * </p>
+ * <p>
+ * So that the packaging stage performs the archiving, compression and checksums of the package, rather than leaving
+ * them to the transport stage, a package assembled by the pipeline uses the {@link PackageOptions.Buffer.OPTS#FILE
+ * FILE} buffer and its {@link PackageStream#metadata() metadata} is read within the stage, which writes the package to
+ * a temporary file.  The transport stage then only reads the file.  This trades the overlap of writing and sending
+ * the package for the isolation of the stages, and requires temporary disk space for each package between the two
+ * stages.
+ * </p>
+ * <p>
+ * If a {@link DepositJournal} is {@link #setJournal(DepositJournal) set}, the task records its transitions in the
+ * journal: when it starts, before and after the package is streamed to the repository, and when the deposit completes
+ * or fails.  The {@link DepositTaskHelper} records the task as queued before handing it to the deposit workers.
+ * </p>
  *
  * @author Elliot Metsger (emetsger@jhu.edu)
  */
-public class DepositTask implements Runnable {
+public class DepositTask implements Runnable, BulkheadQueue.AsyncTask {
 
     private static final Logger LOG = LoggerFactory.getLogger(DepositTask.class);
 
@@ -85,6 +118,12 @@ public class DepositTask implements Runnable {
     // e.g. https://jscholarship.library.jhu.edu/swordv2
     private String replacementPrefix;
 
+    private DepositPipeline pipeline;
+
+    private volatile CompletableFuture<Void> completion;
+
+    private DepositJournal journal;
+
     public DepositTask(DepositWorkerContext dc,
                        PassClient passClient,
                        Policy<Deposit.DepositStatus> intermediateDepositStatusPolicy,
@@ -100,6 +139,92 @@ public class DepositTask implements Runnable {
 
         LOG.debug(">>>> Running {}@{}", DepositTask.class.getSimpleName(), toHexString(identityHashCode(this)));
 
+        journal(STARTED);
+
+        if (pipeline != null) {
+            completion = depositAsync().whenComplete((result, t) -> {
+                releasePackageShare();
+                journal(t == null ? COMPLETED : FAILED);
+                pipeline.completed(this, t);
+            });
+            return;
+        }
+
+        try {
+            TransportResponse transportResponse = transport(DepositTaskCriFunc.performDeposit(dc));
+            record(transportResponse);
+            journal(COMPLETED);
+        } catch (RuntimeException | Error e) {
+            journal(FAILED);
+            throw e;
+        } finally {
+            releasePackageShare();
+        }
+    }
+
+    /**
+     * Answers the completion of a deposit started by {@link #run()} on a {@link DepositPipeline}.
+     *
+     * @return the completion of the deposit, or {@code null} if the task has not run, or did not use a pipeline
+     */
+    @Override
+    public CompletableFuture<Void> completion() {
+        return completion;
+    }
+
+    private CompletableFuture<Void> depositAsync() {
+        PendingPackage pendingPackage = new PendingPackage(dc);
+        return pipeline.start(FEDORA_IO, this::isIntermediate)
+                .thenCompose(pipeline.then(PACKAGING, (Boolean intermediate) -> {
+                    if (intermediate) {
+                        pendingPackage.assemble();
+                    }
+                    return pendingPackage;
+                }))
+                .thenCompose(pipeline.then(TRANSPORT, (PendingPackage assembled) -> {
+                    try {
+                        return transport(DepositTaskCriFunc.performDeposit(dc, assembled));
+                    } finally {
+                        assembled.discard();
+                    }
+                }))
+                .thenCompose(pipeline.then(FEDORA_IO, (TransportResponse transportResponse) -> {
+                    record(transportResponse);
+                    return (Void) null;
+                }));
+    }
+
+    /**
+     * Answers whether the {@code Deposit} is in an intermediate state, so that a package is not assembled for a
+     * {@code Deposit} that will not be performed.  If the {@code Deposit} cannot be read, the package is assembled, and
+     * the failure is left to the critical interaction performing the deposit.
+     */
+    private boolean isIntermediate() {
+        try {
+            Deposit deposit = passClient.readResource(dc.deposit().getId(), Deposit.class);
+            return intermediateDepositStatusPolicy.test(deposit.getDepositStatus());
+        } catch (RuntimeException e) {
+            LOG.debug("Unable to read {} before assembling its package: {}", dc.deposit().getId(), e.getMessage());
+            return true;
+        }
+    }
+
+    private void releasePackageShare() {
+        // release the share of a shared package even if the package was never opened
+        if (dc.packageShare() != null) {
+            dc.packageShare().release();
+        }
+    }
+
+    /**
+     * Streams the package to the repository within a critical interaction, answering the {@code TransportResponse} if
+     * the package was physically received.
+     *
+     * @param performDeposit the critical function opening the package and sending it to the repository
+     * @return the transport response
+     */
+    private TransportResponse transport(Function<Deposit, TransportResponse> performDeposit) {
+        journal(TRANSPORTING);
         CriticalResult<TransportResponse, Deposit> physicalResult =
                 cri.performCritical(dc.deposit().getId(), Deposit.class,
 
@@ -116,7 +241,7 @@ public class DepositTask implements Runnable {
                 /*
                  * Assemble and stream a package of content to the repository endpoint, update status to SUBMITTED
                  */
-                DepositTaskCriFunc.performDeposit(dc));
+                performDeposit);
 
         // Check *physical* success: were the bytes of the package successfully streamed to endpoint?
 
@@ -137,6 +262,22 @@ public class DepositTask implements Runnable {
         TransportResponse transportResponse = physicalResult.result().orElseThrow(() ->
                 new DepositServiceRuntimeException("Missing TransportResponse for " +
                         dc.deposit().getId(), dc.deposit()));
+        journal(TRANSPORTED);
+        return transportResponse;
+    }
+
+    private void journal(DepositJournal.Transition transition) {
+        if (journal != null) {
+            journal.record(dc.deposit().getId(), transition);
+        }
+    }
+
+    /**
+     * Records the outcome of a deposit whose package was physically received by the repository.
+     *
+     * @param transportResponse the response of the repository
+     */
+    private void record(TransportResponse transportResponse) {
 
         // Determine *logical* success: was the Deposit accepted by the remote system?
 
@@ -237,6 +378,29 @@ public class DepositTask implements Runnable {
         return dc;
     }
 
+    public DepositPipeline getPipeline() {
+        return pipeline;
+    }
+
+    /**
+     * @param pipeline the pipeline performing the deposit, or {@code null} to perform the deposit on the thread
+     *                 running this task
+     */
+    public void setPipeline(DepositPipeline pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    public DepositJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * @param journal the journal recording the transitions of this task, or {@code null} if they are not recorded
+     */
+    public void setJournal(DepositJournal journal) {
+        this.journal = journal;
+    }
+
     public long getSwordSleepTimeMs() {
         return swordSleepTimeMs;
     }
@@ -424,11 +588,24 @@ public class DepositTask implements Runnable {
          * @return
          */
         static Function<Deposit, TransportResponse> performDeposit(DepositWorkerContext dc) {
+            return performDeposit(dc, () -> openPackage(dc));
+        }
+
+        /**
+         * Like {@link #performDeposit(DepositWorkerContext)}, but the package is supplied by {@code packageStream},
+         * e.g. a package assembled before the critical interaction.  The supplier is only invoked if the pre-condition
+         * is met.
+         *
+         * @param dc
+         * @param packageSupplier supplies the package to deposit
+         * @return
+         */
+        static Function<Deposit, TransportResponse> performDeposit(DepositWorkerContext dc,
+                                                                   Supplier<PackageStream> packageSupplier) {
             return (deposit) -> {
                 Packager packager = dc.packager();
 
-                PackageStream packageStream = packager.getAssembler().assemble(
-                        dc.depositSubmission(), packager.getAssemblerOptions());
+                PackageStream packageStream = packageSupplier.get();
                 Map<String, String> packagerConfig = packager.getConfiguration();
                 try (TransportSession transport = packager.getTransport().open(packagerConfig)) {
                     TransportResponse tr = transport.send(packageStream, packagerConfig);
@@ -437,10 +614,58 @@ public class DepositTask implements Runnable {
                 } catch (Exception e) {
                     throw new RuntimeException("Error closing transport session for deposit " +
                             dc.deposit().getId() + ": " + e.getMessage(), e);
+                } finally {
+                    // release any spooled copy of the package, or this deposit's share of it
+                    packageStream.close();
                 }
             };
         }
 
+        /**
+         * Opens the package of the deposit: the deposit's share of a shared package, or a package assembled for the
+         * deposit alone.
+         *
+         * @param dc
+         * @return the package
+         */
+        static PackageStream openPackage(DepositWorkerContext dc) {
+            Packager packager = dc.packager();
+            return (dc.packageShare() != null)
+                    ? dc.packageShare().open()
+                    : packager.getAssembler().assemble(dc.depositSubmission(), packager.getAssemblerOptions());
+        }
+
+        /**
+         * Builds the package of the deposit in its entirety on the calling thread: the package is assembled with the
+         * {@link PackageOptions.Buffer.OPTS#FILE FILE} buffer, and its metadata is read, which writes the package to a
+         * temporary file and computes its size and checksums.  Opening the returned package only reads the file.
+         *
+         * @param dc
+         * @return the spooled package
+         */
+        static PackageStream spoolPackage(DepositWorkerContext dc) {
+            Packager packager = dc.packager();
+            PackageStream packageStream;
+            if (dc.packageShare() != null) {
+                packageStream = dc.packageShare().open(true);
+            } else {
+                Map<String, Object> options = (packager.getAssemblerOptions() == null)
+                        ? new HashMap<>()
+                        : new HashMap<>(packager.getAssemblerOptions());
+                options.put(PackageOptions.Buffer.KEY, PackageOptions.Buffer.OPTS.FILE);
+                packageStream = packager.getAssembler().assemble(dc.depositSubmission(), options);
+            }
+
+            try {
+                packageStream.metadata();
+            } catch (RuntimeException e) {
+                packageStream.close();
+                throw e;
+            }
+
+            return packageStream;
+        }
+
         /**
          * Answers a {@code BiPredicate} that checks the TransportResponse for success and places the updated Deposit
          * resource in the DepositWorkerContext.  If the TransportResponse indicates an error, the exception is
@@ -475,4 +700,53 @@ public class DepositTask implements Runnable {
         }
     }
 
+    /**
+     * A package built by the packaging stage of a {@link DepositPipeline}, supplied to the critical interaction that
+     * deposits it.  The package is {@link DepositTaskCriFunc#spoolPackage(DepositWorkerContext) spooled} by the
+     * packaging stage, so the transport stage only reads it.  A package that failed to be built fails the interaction
+     * with the same exception, and a package that was not built, because the {@code Deposit} was not in an
+     * intermediate state, is assembled by the interaction should its pre-condition be met after all.
+     */
+    private static class PendingPackage implements Supplier<PackageStream> {
+
+        private final DepositWorkerContext dc;
+
+        private PackageStream packageStream;
+
+        private RuntimeException failure;
+
+        private PendingPackage(DepositWorkerContext dc) {
+            this.dc = dc;
+        }
+
+        private synchronized void assemble() {
+            try {
+                packageStream = DepositTaskCriFunc.spoolPackage(dc);
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        }
+
+        @Override
+        public synchronized PackageStream get() {
+            if (failure != null) {
+                throw failure;
+            }
+            PackageStream assembled = (packageStream != null) ? packageStream : DepositTaskCriFunc.openPackage(dc);
+            packageStream = null;
+            return assembled;
+        }
+
+        /**
+         * Closes a package that was assembled, but not sent because the critical interaction did not invoke its
+         * critical function.
+         */
+        private synchronized void discard() {
+            if (packageStream != null) {
+                packageStream.close();
+                packageStream = null;
+            }
+        }
+    }
+
 }
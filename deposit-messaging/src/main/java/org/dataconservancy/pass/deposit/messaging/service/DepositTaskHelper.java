@@ -53,6 +53,8 @@ import java.util.function.Predicate;
 import static java.lang.Integer.toHexString;
 import static java.lang.String.format;
 import static java.lang.System.identityHashCode;
+import static org.dataconservancy.pass.deposit.messaging.service.DepositJournal.Transition.FAILED;
+import static org.dataconservancy.pass.deposit.messaging.service.DepositJournal.Transition.QUEUED;
 import static org.dataconservancy.pass.deposit.messaging.service.DepositUtil.toDepositWorkerContext;
 import static org.dataconservancy.pass.model.Deposit.DepositStatus.ACCEPTED;
 import static org.dataconservancy.pass.model.Deposit.DepositStatus.REJECTED;
@@ -112,6 +114,10 @@ public class DepositTaskHelper {
 
     private Repositories repositories;
 
+    private DepositPipeline depositPipeline;
+
+    private DepositJournal depositJournal;
+
     @Autowired
     public DepositTaskHelper(PassClient passClient,
                              TaskExecutor depositWorkers,
@@ -149,26 +155,65 @@ public class DepositTaskHelper {
      */
     public void submitDeposit(Submission submission, DepositSubmission depositSubmission, Repository repo, Deposit deposit,
                        Packager packager) {
+        submitDeposit(submission, depositSubmission, repo, deposit, packager, null);
+    }
+
+    /**
+     * Like {@link #submitDeposit(Submission, DepositSubmission, Repository, Deposit, Packager)}, but the package is
+     * opened from the supplied share of a package that may be assembled once for several repositories.  The {@code
+     * DepositTask} releases the share when it completes; if the task cannot be submitted, the share is released by
+     * this method.
+     * <p>
+     * If a {@link DepositJournal} is {@link #setDepositJournal(DepositJournal) set}, the deposit is recorded as {@link
+     * DepositJournal.Transition#QUEUED QUEUED} before the task is handed to the {@code TaskExecutor}, and as {@link
+     * DepositJournal.Transition#FAILED FAILED} if the task cannot be submitted.
+     * </p>
+     *
+     * @param submission the submission that the {@code deposit} belongs to
+     * @param depositSubmission the submission in the Deposit Services' model
+     * @param repo the {@code Repository} that is the target of the {@code Deposit}
+     * @param deposit the {@code Deposit} that is being submitted
+     * @param packager the Packager for the {@code repo}
+     * @param packageShare the share of the package to deposit, may be {@code null}
+     */
+    public void submitDeposit(Submission submission, DepositSubmission depositSubmission, Repository repo, Deposit deposit,
+                       Packager packager, SharedPackages.Share packageShare) {
         try {
             DepositWorkerContext dc = toDepositWorkerContext(
                     deposit, submission, depositSubmission, repo, packager);
+            dc.packageShare(packageShare);
             DepositTask depositTask = new DepositTask(dc, passClient, intermediateDepositStatusPolicy, cri);
             depositTask.setSwordSleepTimeMs(swordDepositSleepTimeMs);
             depositTask.setPrefixToMatch(statementUriPrefix);
             depositTask.setReplacementPrefix(statementUriReplacement);
+            depositTask.setPipeline(depositPipeline);
+            depositTask.setJournal(depositJournal);
 
             LOG.debug(">>>> Submitting task ({}@{}) for tuple [{}, {}, {}]",
                     depositTask.getClass().getSimpleName(), toHexString(identityHashCode(depositTask)),
                     submission.getId(), repo.getId(), deposit.getId());
+            // journaled before the task is queued, so that a deposit waiting for a worker, or for a retry of its
+            // submission, is recovered should the process die before the task starts
+            journal(deposit, QUEUED);
             taskExecutor.execute(depositTask);
         } catch (Exception e) {
             // For example, if the task isn't accepted by the taskExecutor
+            journal(deposit, FAILED);
+            if (packageShare != null) {
+                packageShare.release();
+            }
             String msg = format(FAILED_TO_PROCESS_DEPOSIT, submission.getId(), repo.getId(),
                     (deposit == null) ? "null" : deposit.getId(), e.getMessage());
             throw new DepositServiceRuntimeException(msg, e, deposit);
         }
     }
 
+    private void journal(Deposit deposit, DepositJournal.Transition transition) {
+        if (depositJournal != null && deposit != null) {
+            depositJournal.record(deposit.getId(), transition);
+        }
+    }
+
     public void processDepositStatus(URI depositUri) {
 
         CriticalResult<RepositoryCopy, Deposit> cr = cri.performCritical(depositUri, Deposit.class,
@@ -199,6 +244,32 @@ public class DepositTaskHelper {
         }
     }
 
+    DepositPipeline getDepositPipeline() {
+        return depositPipeline;
+    }
+
+    /**
+     * @param depositPipeline the pipeline performing the stages of each deposit, or {@code null} to perform each
+     *                        deposit on a deposit worker thread
+     */
+    @Autowired(required = false)
+    public void setDepositPipeline(DepositPipeline depositPipeline) {
+        this.depositPipeline = depositPipeline;
+    }
+
+    DepositJournal getDepositJournal() {
+        return depositJournal;
+    }
+
+    /**
+     * @param depositJournal the journal recording the transitions of each deposit, or {@code null} if they are not
+     *                       recorded
+     */
+    @Autowired(required = false)
+    public void setDepositJournal(DepositJournal depositJournal) {
+        this.depositJournal = depositJournal;
+    }
+
     String getStatementUriPrefix() {
         return statementUriPrefix;
     }
@@ -27,6 +27,16 @@ import java.net.URI;
 import java.util.Collection;
 import java.util.Set;
 
+/**
+ * Checks the status of {@code Deposit}s in an intermediate state, updating those whose status in their downstream
+ * repository has changed.
+ * <p>
+ * By default every {@code FAILED} and {@code SUBMITTED} deposit is found in the PASS index and checked on each update.
+ * If a {@link DepositIndex} is {@link #setDepositIndex(DepositIndex) set}, only the deposits it answers as due are
+ * checked: those that are new, whose status has changed, or that have not been checked recently.  The deposits are
+ * checked in parallel by the {@link DepositStatusUpdater}.
+ * </p>
+ */
 @Component
 public class DepositUpdater {
 
@@ -36,31 +46,45 @@ public class DepositUpdater {
 
     private PassClient passClient;
 
-    private DepositTaskHelper depositHelper;
+    private DepositStatusUpdater statusUpdater;
+
+    private DepositIndex depositIndex;
 
     @Autowired
-    public DepositUpdater(PassClient passClient, DepositTaskHelper depositHelper) {
+    public DepositUpdater(PassClient passClient, DepositStatusUpdater statusUpdater) {
         this.passClient = passClient;
-        this.depositHelper = depositHelper;
+        this.statusUpdater = statusUpdater;
     }
 
     public void doUpdate() {
-        doUpdate(depositUrisToUpdate(passClient));
+        doUpdate(depositIndex != null ? depositIndex.due() : depositUrisToUpdate(passClient));
     }
 
     void doUpdate(Collection<URI> depositUris) {
-        depositUris.forEach(depositUri ->
-                {
-                    try {
-                        depositHelper.processDepositStatus(depositUri);
-                    } catch (Exception e) {
-                        LOG.warn("Failed to update {}: {}", depositUri, e.getMessage(), e);
-                    }
-                }
-        );
+        statusUpdater.update(depositUris, (depositUri, e) ->
+                LOG.warn("Failed to update {}: {}", depositUri, e.getMessage(), e));
+    }
+
+    DepositIndex getDepositIndex() {
+        return depositIndex;
+    }
+
+    /**
+     * @param depositIndex the index answering the deposits due to be checked, or {@code null} to check every deposit
+     *                     in an intermediate state
+     */
+    @Autowired(required = false)
+    public void setDepositIndex(DepositIndex depositIndex) {
+        this.depositIndex = depositIndex;
     }
 
-    private static Collection<URI> depositUrisToUpdate(PassClient passClient) {
+    /**
+     * Answers the URIs of every {@code FAILED} and {@code SUBMITTED} deposit in the PASS index.
+     *
+     * @param passClient the client used to query the PASS index
+     * @return the URIs of the deposits in an intermediate state
+     */
+    public static Collection<URI> depositUrisToUpdate(PassClient passClient) {
         Set<URI> depositUris = passClient.findAllByAttribute(
                 Deposit.class, STATUS_ATTRIBUTE, Deposit.DepositStatus.FAILED.toString());
         depositUris.addAll(passClient.findAllByAttribute(
@@ -21,6 +21,7 @@ import org.dataconservancy.pass.deposit.messaging.policy.TerminalDepositStatusPo
 import org.dataconservancy.pass.deposit.messaging.policy.TerminalSubmissionStatusPolicy;
 import org.dataconservancy.pass.deposit.messaging.status.DepositStatusEvaluator;
 import org.dataconservancy.pass.deposit.messaging.status.SubmissionStatusEvaluator;
+import org.dataconservancy.pass.deposit.messaging.support.jms.FedoraMessagePayload;
 import org.dataconservancy.pass.support.messaging.cri.CriticalRepositoryInteraction;
 import org.dataconservancy.pass.support.messaging.cri.CriticalRepositoryInteraction.CriticalResult;
 import org.dataconservancy.pass.model.Deposit;
@@ -34,9 +35,13 @@ import org.springframework.messaging.Message;
 
 import javax.jms.JMSException;
 import javax.jms.Session;
+import java.io.IOException;
 import java.net.URI;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.Set;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static java.time.Instant.ofEpochMilli;
@@ -73,7 +78,7 @@ public class DepositUtil {
      * @return true if the message matches {@code eventType} and {@code resourceType}
      */
     public static boolean isMessageA(String eventType, String resourceType, MessageContext mc) {
-        if (!((csvStringContains(eventType, mc.eventType()) && csvStringContains(resourceType, mc.resourceType())))) {
+        if (!(mc.eventTypes().contains(eventType) && mc.resourceTypes().contains(resourceType))) {
             return false;
         }
         return true;
@@ -146,6 +151,22 @@ public class DepositUtil {
                 .anyMatch(candidateType -> candidateType.trim().equals(toMatch));
     }
 
+    /**
+     * Splits a comma-delimited multi-valued string into its individual, trimmed, values.
+     *
+     * @param csvValues a String that may contain multiple values separated by commas, may be {@code null}
+     * @return the values, empty if {@code csvValues} is {@code null} or blank
+     */
+    static Set<String> csvStringValues(String csvValues) {
+        if (csvValues == null || csvValues.trim().length() == 0) {
+            return Collections.emptySet();
+        }
+
+        return Stream.of(csvValues.split(","))
+                .map(String::trim)
+                .collect(Collectors.toSet());
+    }
+
     /**
      * Creates a convenience object that holds references to the objects related to an incoming JMS message.
      *
@@ -286,6 +307,9 @@ public class DepositUtil {
         private Session session;
         private Message<String> message;
         private javax.jms.Message jmsMessage;
+        private Set<String> resourceTypes;
+        private Set<String> eventTypes;
+        private FedoraMessagePayload payload;
 
         /**
          * The type of the resource in Fedora, comma-delimited multi-value
@@ -305,6 +329,48 @@ public class DepositUtil {
             return eventType;
         }
 
+        /**
+         * The types of the resource in Fedora, split from the multi-valued {@link #resourceType()} when first requested
+         *
+         * @return the Fedora resource types
+         */
+        public Set<String> resourceTypes() {
+            if (resourceTypes == null) {
+                resourceTypes = csvStringValues(resourceType());
+            }
+            return resourceTypes;
+        }
+
+        /**
+         * The types of the event from Fedora, split from the multi-valued {@link #eventType()} when first requested
+         *
+         * @return the Fedora event types
+         */
+        public Set<String> eventTypes() {
+            if (eventTypes == null) {
+                eventTypes = csvStringValues(eventType());
+            }
+            return eventTypes;
+        }
+
+        /**
+         * The fields of the message body, parsed when first requested, and shared by each consumer of this context
+         * thereafter
+         *
+         * @return the parsed message body
+         * @throws RuntimeException if the message body cannot be parsed
+         */
+        public FedoraMessagePayload payload() {
+            if (payload == null) {
+                try {
+                    payload = FedoraMessagePayload.parse(message().getPayload());
+                } catch (IOException e) {
+                    throw new RuntimeException("Unable to resolve JMS message body: " + e.getMessage(), e);
+                }
+            }
+            return payload;
+        }
+
         /**
          * The identifier of the message
          *
@@ -380,6 +446,7 @@ public class DepositUtil {
         private Packager packager;
         private RepositoryCopy repoCopy;
         private String statusUri;
+        private SharedPackages.Share packageShare;
 
         /**
          * the {@code Deposit} itself
@@ -463,6 +530,20 @@ public class DepositUtil {
             this.statusUri = statusUri;
         }
 
+        /**
+         * the share of a package assembled once for several repositories, may be {@code null} if the package is not
+         * shared
+         *
+         * @return the package share
+         */
+        public SharedPackages.Share packageShare() {
+            return packageShare;
+        }
+
+        public void packageShare(SharedPackages.Share packageShare) {
+            this.packageShare = packageShare;
+        }
+
         @Override
         public String toString() {
             return "DepositWorkerContext{" +
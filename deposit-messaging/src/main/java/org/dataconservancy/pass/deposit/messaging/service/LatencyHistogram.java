@@ -0,0 +1,149 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records the distribution of latencies in fixed buckets, from one millisecond to five minutes.
+ * <p>
+ * Recording is lock-free, so a histogram may be shared by any number of threads.  Percentiles are answered as the
+ * upper bound of the bucket holding the percentile, so they over-estimate the true value by at most the width of that
+ * bucket; latencies beyond the last bucket are answered as the maximum recorded latency.
+ * </p>
+ */
+public class LatencyHistogram {
+
+    private static final long[] BUCKET_BOUNDS_MS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000,
+            30000, 60000, 120000, 300000};
+
+    private final String name;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS_MS.length + 1);
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong totalNanos = new AtomicLong();
+
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * @param name the name of this histogram, used when it is logged
+     */
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos the latency in nanoseconds
+     */
+    public void record(long nanos) {
+        long ms = TimeUnit.NANOSECONDS.toMillis(nanos);
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS_MS.length && ms > BUCKET_BOUNDS_MS[bucket]) {
+            bucket++;
+        }
+
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the number of latencies recorded
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return the mean latency in milliseconds, or {@code 0} if none has been recorded
+     */
+    public long getMeanMs() {
+        long n = count.get();
+        return (n == 0) ? 0 : TimeUnit.NANOSECONDS.toMillis(totalNanos.get() / n);
+    }
+
+    /**
+     * @return the greatest latency recorded, in milliseconds
+     */
+    public long getMaxMs() {
+        return TimeUnit.NANOSECONDS.toMillis(maxNanos.get());
+    }
+
+    /**
+     * Answers the latency, in milliseconds, that {@code percentile} percent of the recorded latencies do not exceed.
+     *
+     * @param percentile the percentile, greater than {@code 0} and at most {@code 100}
+     * @return the upper bound of the bucket holding the percentile, or {@code 0} if no latency has been recorded
+     */
+    public long getPercentileMs(double percentile) {
+        if (percentile <= 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be greater than 0 and at most 100.");
+        }
+
+        long n = 0;
+        long[] snapshot = new long[buckets.length()];
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = buckets.get(i);
+            n += snapshot[i];
+        }
+        if (n == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(n * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_BOUNDS_MS.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(BUCKET_BOUNDS_MS[i], getMaxMs());
+            }
+        }
+        return getMaxMs();
+    }
+
+    /**
+     * @return the number of latencies recorded in each bucket, keyed by the upper bound of the bucket in milliseconds;
+     *         latencies beyond the last bucket are keyed by {@code Long.MAX_VALUE}
+     */
+    public Map<Long, Long> getBuckets() {
+        Map<Long, Long> result = new LinkedHashMap<>();
+        for (int i = 0; i < BUCKET_BOUNDS_MS.length; i++) {
+            result.put(BUCKET_BOUNDS_MS[i], buckets.get(i));
+        }
+        result.put(Long.MAX_VALUE, buckets.get(BUCKET_BOUNDS_MS.length));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return name + ": count=" + getCount() + ", mean=" + getMeanMs() + "ms, p50=" + getPercentileMs(50) +
+                "ms, p90=" + getPercentileMs(90) + "ms, p99=" + getPercentileMs(99) + "ms, max=" + getMaxMs() + "ms";
+    }
+
+}
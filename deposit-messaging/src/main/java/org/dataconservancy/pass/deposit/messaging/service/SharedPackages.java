@@ -0,0 +1,302 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.service;
+
+import org.dataconservancy.pass.deposit.assembler.Assembler;
+import org.dataconservancy.pass.deposit.assembler.PackageOptions;
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.dataconservancy.pass.deposit.messaging.model.Packager;
+import org.dataconservancy.pass.deposit.model.DepositSubmission;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shares one assembled package among the {@link DepositTask}s that would otherwise assemble identical packages: the
+ * same {@link DepositSubmission}, assembled by the same {@link Assembler} with equal assembler options.
+ * <p>
+ * Each consumer of a package {@link #reserve(DepositSubmission, Packager) reserves} a {@link Share} before any
+ * consumer opens the package.  When more than one share is reserved for the same package, the package is assembled
+ * once, on first use, with the {@link PackageOptions.Buffer.OPTS#FILE FILE} buffer, so that its bytes are spooled to a
+ * temporary file that each consumer's {@code TransportSession} may read concurrently.  The package is closed, deleting
+ * the spooled file, when the last share is {@link Share#release() released}.  A package with a single share is
+ * assembled as it would be without sharing.
+ * </p>
+ * <p>
+ * Sharing relies on the {@code PackageStream} supporting concurrent {@link PackageStream#open() opens} when the
+ * {@code FILE} buffer is used, as the streams created by the shared assembler do.
+ * </p>
+ */
+@Component
+public class SharedPackages {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SharedPackages.class);
+
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+
+    private final AtomicLong assembled = new AtomicLong();
+
+    private final AtomicLong shared = new AtomicLong();
+
+    /**
+     * Reserves a share of the package assembled by the {@code packager} for the {@code depositSubmission}.  The share
+     * must be {@link Share#release() released} whether or not the package is opened.
+     *
+     * @param depositSubmission the submission being packaged
+     * @param packager the packager supplying the assembler and its options
+     * @return the share
+     */
+    public Share reserve(DepositSubmission depositSubmission, Packager packager) {
+        Map<String, Object> options = packager.getAssemblerOptions();
+        Key key = new Key(depositSubmission, packager.getAssembler(),
+                options == null ? Collections.emptyMap() : options);
+        Entry entry = entries.compute(key, (k, existing) -> {
+            Entry e = (existing == null) ? new Entry(k) : existing;
+            synchronized (e) {
+                e.consumers++;
+            }
+            return e;
+        });
+
+        return new Share(entry);
+    }
+
+    /**
+     * @return the number of packages assembled through this class
+     */
+    public long getAssembledCount() {
+        return assembled.get();
+    }
+
+    /**
+     * @return the number of times an already assembled package was opened by another consumer, rather than being
+     *         assembled again
+     */
+    public long getSharedCount() {
+        return shared.get();
+    }
+
+    private void release(Entry entry) {
+        PackageStream toClose = null;
+
+        synchronized (entry) {
+            if (--entry.consumers == 0) {
+                entries.remove(entry.key, entry);
+                toClose = entry.packageStream;
+                entry.packageStream = null;
+            }
+        }
+
+        if (toClose != null) {
+            LOG.debug("Closing shared package for {}", entry.key);
+            toClose.close();
+        }
+    }
+
+    private PackageStream open(Entry entry, boolean spool) {
+        synchronized (entry) {
+            if (entry.consumers > 1 || entry.packageStream != null) {
+                if (entry.packageStream == null) {
+                    Map<String, Object> options = new HashMap<>(entry.key.options);
+                    options.put(PackageOptions.Buffer.KEY, PackageOptions.Buffer.OPTS.FILE);
+                    LOG.debug("Assembling a package for {} consumers of {}", entry.consumers, entry.key);
+                    entry.packageStream = entry.key.assembler.assemble(entry.key.depositSubmission, options);
+                    assembled.incrementAndGet();
+                } else {
+                    shared.incrementAndGet();
+                }
+                return entry.packageStream;
+            }
+        }
+
+        assembled.incrementAndGet();
+        Map<String, Object> options = entry.key.options;
+        if (spool) {
+            options = new HashMap<>(options);
+            options.put(PackageOptions.Buffer.KEY, PackageOptions.Buffer.OPTS.FILE);
+        }
+        return entry.key.assembler.assemble(entry.key.depositSubmission, options);
+    }
+
+    /**
+     * A consumer's share of a package.
+     */
+    public class Share {
+
+        private final Entry entry;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Share(Entry entry) {
+            this.entry = entry;
+        }
+
+        /**
+         * Answers the package, assembling it if no other consumer has.  Closing the returned {@code PackageStream}
+         * releases this share.  If the package cannot be assembled, this share is released and the exception is
+         * re-thrown.
+         *
+         * @return the package
+         */
+        public PackageStream open() {
+            return open(false);
+        }
+
+        /**
+         * Like {@link #open()}, but a package that is not shared is also assembled with the {@link
+         * PackageOptions.Buffer.OPTS#FILE FILE} buffer when {@code spool} is {@code true}, so that it may be written in
+         * its entirety before it is sent.
+         *
+         * @param spool whether the package is assembled with the {@code FILE} buffer even if it is not shared
+         * @return the package
+         */
+        public PackageStream open(boolean spool) {
+            PackageStream packageStream;
+            try {
+                packageStream = SharedPackages.this.open(entry, spool);
+            } catch (RuntimeException e) {
+                release();
+                throw e;
+            }
+
+            // a package that is not shared is closed directly, rather than when its entry is released
+            boolean sharedPackage;
+            synchronized (entry) {
+                sharedPackage = entry.packageStream == packageStream;
+            }
+
+            return new SharedPackageStream(packageStream, sharedPackage);
+        }
+
+        /**
+         * Releases this share; the package is closed when all of its shares are released.  Releasing a share more than
+         * once has no effect.
+         */
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                SharedPackages.this.release(entry);
+            }
+        }
+
+        private class SharedPackageStream implements PackageStream {
+
+            private final PackageStream delegate;
+
+            private final boolean sharedPackage;
+
+            private SharedPackageStream(PackageStream delegate, boolean sharedPackage) {
+                this.delegate = delegate;
+                this.sharedPackage = sharedPackage;
+            }
+
+            @Override
+            public InputStream open() {
+                return delegate.open();
+            }
+
+            @Override
+            public InputStream open(String packageResource) {
+                return delegate.open(packageResource);
+            }
+
+            @Override
+            public Iterator<Resource> resources() {
+                return delegate.resources();
+            }
+
+            @Override
+            public Metadata metadata() {
+                return delegate.metadata();
+            }
+
+            @Override
+            public void close() {
+                try {
+                    if (!sharedPackage) {
+                        delegate.close();
+                    }
+                } finally {
+                    release();
+                }
+            }
+        }
+    }
+
+    private static class Entry {
+
+        private final Key key;
+
+        private int consumers;
+
+        private PackageStream packageStream;
+
+        private Entry(Key key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * Identifies a package: the submission and assembler are compared by identity, the options by equality.
+     */
+    private static class Key {
+
+        private final DepositSubmission depositSubmission;
+
+        private final Assembler assembler;
+
+        private final Map<String, Object> options;
+
+        private Key(DepositSubmission depositSubmission, Assembler assembler, Map<String, Object> options) {
+            this.depositSubmission = depositSubmission;
+            this.assembler = assembler;
+            this.options = options;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return depositSubmission == key.depositSubmission && assembler == key.assembler &&
+                    options.equals(key.options);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * System.identityHashCode(depositSubmission) + System.identityHashCode(assembler)) +
+                    options.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return "[" + depositSubmission.getId() + ", " + assembler.getClass().getSimpleName() + ", " + options +
+                    "]";
+        }
+    }
+}
@@ -18,6 +18,7 @@ package org.dataconservancy.pass.deposit.messaging.service;
 import org.dataconservancy.pass.client.PassClient;
 import org.dataconservancy.pass.deposit.builder.InvalidModel;
 import org.dataconservancy.pass.deposit.builder.SubmissionBuilder;
+import org.dataconservancy.pass.deposit.messaging.DepositServiceErrorHandler;
 import org.dataconservancy.pass.deposit.messaging.DepositServiceRuntimeException;
 import org.dataconservancy.pass.deposit.messaging.model.Packager;
 import org.dataconservancy.pass.deposit.messaging.model.Registry;
@@ -34,12 +35,17 @@ import org.dataconservancy.pass.model.Submission;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
+import org.springframework.util.ErrorHandler;
 
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.function.BiPredicate;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -76,10 +82,24 @@ public class SubmissionProcessor implements Consumer<Submission> {
 
     protected DepositTaskHelper depositTaskHelper;
 
-    @Autowired
+    protected SharedPackages sharedPackages;
+
+    protected Executor ioExecutor = Runnable::run;
+
+    protected ErrorHandler errorHandler = t -> { };
+
     public SubmissionProcessor(PassClient passClient, JsonParser jsonParser, SubmissionBuilder fcrepoModelBuilder,
                                Registry<Packager> packagerRegistry, SubmissionPolicy passUserSubmittedPolicy,
                                DepositTaskHelper depositTaskHelper, CriticalRepositoryInteraction critical) {
+        this(passClient, jsonParser, fcrepoModelBuilder, packagerRegistry, passUserSubmittedPolicy, depositTaskHelper,
+                critical, new SharedPackages());
+    }
+
+    @Autowired
+    public SubmissionProcessor(PassClient passClient, JsonParser jsonParser, SubmissionBuilder fcrepoModelBuilder,
+                               Registry<Packager> packagerRegistry, SubmissionPolicy passUserSubmittedPolicy,
+                               DepositTaskHelper depositTaskHelper, CriticalRepositoryInteraction critical,
+                               SharedPackages sharedPackages) {
 
         this.passClient = passClient;
         this.jsonParser = jsonParser;
@@ -88,8 +108,42 @@ public class SubmissionProcessor implements Consumer<Submission> {
         this.submissionPolicy = passUserSubmittedPolicy;
         this.critical = critical;
         this.depositTaskHelper = depositTaskHelper;
+        this.sharedPackages = sharedPackages;
     }
 
+    /**
+     * The executor used to read each {@code Repository} of a {@code Submission} and create its {@code Deposit}
+     * concurrently.  By default the Repositories are processed on the thread accepting the {@code Submission}, one
+     * at a time.
+     *
+     * @param ioExecutor the executor performing repository I/O on behalf of this processor
+     */
+    @Autowired(required = false)
+    @Qualifier("submissionIoExecutor")
+    public void setIoExecutor(Executor ioExecutor) {
+        this.ioExecutor = ioExecutor;
+    }
+
+    /**
+     * The handler of the failure of each {@code Deposit} of a {@code Submission}, which marks the {@code Deposit} as
+     * failed.  By default failures are only reported by the exception thrown from {@link #accept(Submission)}.
+     *
+     * @param errorHandler handles the failure of each Deposit
+     */
+    @Autowired(required = false)
+    public void setErrorHandler(DepositServiceErrorHandler errorHandler) {
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * Creates and submits a {@code Deposit} for each {@code Repository} of the {@code submission}.  A failure to
+     * create or submit the {@code Deposit} for one {@code Repository} does not prevent the others from being
+     * submitted: each failure is handed to the {@link #setErrorHandler(DepositServiceErrorHandler) error handler}, and
+     * the first is re-thrown once every {@code Deposit} has been processed.
+     *
+     * @param submission the submission
+     * @throws DepositServiceRuntimeException if the submission cannot be processed, or a Deposit fails
+     */
     public void accept(Submission submission) {
 
         // Validates the incoming Submission, marks it as being IN_PROGRESS immediately.
@@ -126,13 +180,71 @@ public class SubmissionProcessor implements Consumer<Submission> {
 
         LOG.debug(">>>> Processing Submission {}", submission.getId());
 
-        updatedS.getRepositories().stream().map(repoUri -> passClient.readResource(repoUri, Repository.class))
-                .forEach(repo -> {
-                    submitDeposit(updatedS, depositSubmission, repo);
-                });
+        // Create the Deposit for each Repository concurrently, and before submitting any DepositTask, so that every
+        // Repository which receives an identical package holds a share of it before the package is assembled.
+        // Deposits created for other Repositories are still submitted if the Deposit for one Repository fails, and
+        // every failure is handed to the error handler, which marks the failed Deposit accordingly.
+
+        List<CompletableFuture<PreparedDeposit>> preparing = updatedS.getRepositories().stream()
+                .map(repoUri -> CompletableFuture.supplyAsync(() ->
+                        prepareDeposit(updatedS, passClient.readResource(repoUri, Repository.class)), ioExecutor))
+                .collect(Collectors.toList());
+
+        List<PreparedDeposit> prepared = new ArrayList<>();
+        List<RuntimeException> failures = new ArrayList<>();
+        for (CompletableFuture<PreparedDeposit> future : preparing) {
+            try {
+                prepared.add(future.join());
+            } catch (CompletionException e) {
+                failures.add((e.getCause() instanceof RuntimeException) ? (RuntimeException) e.getCause() : e);
+            }
+        }
+
+        prepared.forEach(pd -> pd.share = sharedPackages.reserve(depositSubmission, pd.packager));
+
+        try {
+            for (PreparedDeposit pd : prepared) {
+                SharedPackages.Share share = pd.share;
+                pd.share = null;
+                try {
+                    depositTaskHelper.submitDeposit(updatedS, depositSubmission, pd.repo, pd.deposit, pd.packager,
+                            share);
+                } catch (RuntimeException e) {
+                    failures.add(e);
+                }
+            }
+        } finally {
+            // release the shares of any Deposits that were not submitted
+            prepared.stream().filter(pd -> pd.share != null).forEach(pd -> pd.share.release());
+        }
+
+        if (failures.isEmpty()) {
+            return;
+        }
+
+        for (RuntimeException failure : failures) {
+            LOG.warn(">>>> Failure processing Submission {}: {}", submission.getId(), failure.getMessage(), failure);
+            errorHandler.handleError(failure);
+        }
+
+        throw failures.get(0);
     }
 
     void submitDeposit(Submission submission, DepositSubmission depositSubmission, Repository repo) {
+        PreparedDeposit pd = prepareDeposit(submission, repo);
+        depositTaskHelper.submitDeposit(submission, depositSubmission, repo, pd.deposit, pd.packager);
+    }
+
+    /**
+     * Looks up the {@code Packager} for the {@code repo}, and creates the {@code Deposit} of the {@code submission} to
+     * the {@code repo}.
+     *
+     * @param submission the submission being deposited
+     * @param repo the repository the submission is deposited to
+     * @return the Deposit, ready to be submitted to the {@code DepositTaskHelper}
+     * @throws DepositServiceRuntimeException if the Packager cannot be found or the Deposit cannot be created
+     */
+    PreparedDeposit prepareDeposit(Submission submission, Repository repo) {
         Deposit deposit = null;
         Packager packager = null;
         try {
@@ -155,7 +267,27 @@ public class SubmissionProcessor implements Consumer<Submission> {
             throw new DepositServiceRuntimeException(msg, e, deposit);
         }
 
-        depositTaskHelper.submitDeposit(submission, depositSubmission, repo, deposit, packager);
+        return new PreparedDeposit(repo, deposit, packager);
+    }
+
+    /**
+     * A {@code Deposit} that has been created, but not yet submitted to the {@code DepositTaskHelper}.
+     */
+    static class PreparedDeposit {
+
+        private final Repository repo;
+
+        private final Deposit deposit;
+
+        private final Packager packager;
+
+        private SharedPackages.Share share;
+
+        private PreparedDeposit(Repository repo, Deposit deposit, Packager packager) {
+            this.repo = repo;
+            this.deposit = deposit;
+            this.packager = packager;
+        }
     }
 
     static class CriFunc {
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.status;
+
+import org.dataconservancy.pass.deposit.messaging.config.repository.RepositoryConfig;
+
+import java.net.URI;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Limits the number of deposit statuses that are resolved from each host at once, so that updating many deposits in
+ * parallel does not overwhelm the repository serving their status documents.  Resolutions beyond the limit wait for a
+ * resolution from the same host to finish.  Statuses resolved from URIs without a host, such as {@code file} or {@code
+ * classpath} URIs, are not limited.
+ */
+public class HostLimitedStatusResolver implements DepositStatusResolver<URI, URI> {
+
+    private final DepositStatusResolver<URI, URI> delegate;
+
+    private final int hostConcurrency;
+
+    private final ConcurrentMap<String, Semaphore> permits = new ConcurrentHashMap<>();
+
+    /**
+     * @param delegate the resolver performing each resolution
+     * @param hostConcurrency the number of statuses that may be resolved from a host at once
+     */
+    public HostLimitedStatusResolver(DepositStatusResolver<URI, URI> delegate, int hostConcurrency) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Delegate resolver must not be null.");
+        }
+        if (hostConcurrency < 1) {
+            throw new IllegalArgumentException("Host concurrency must be a positive integer.");
+        }
+        this.delegate = delegate;
+        this.hostConcurrency = hostConcurrency;
+    }
+
+    @Override
+    public URI resolve(URI statusUri, RepositoryConfig repositoryConfig) {
+        if (statusUri == null || statusUri.getHost() == null) {
+            return delegate.resolve(statusUri, repositoryConfig);
+        }
+
+        Semaphore hostPermits = permits.computeIfAbsent(statusUri.getHost().toLowerCase(Locale.ROOT),
+                host -> new Semaphore(hostConcurrency, true));
+        try {
+            hostPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted waiting to resolve the deposit status " + statusUri, e);
+        }
+
+        try {
+            return delegate.resolve(statusUri, repositoryConfig);
+        } finally {
+            hostPermits.release();
+        }
+    }
+
+    public DepositStatusResolver<URI, URI> getDelegate() {
+        return delegate;
+    }
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.support.actuator;
+
+import org.dataconservancy.pass.deposit.messaging.service.DepositDrain;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+
+import java.util.Map;
+
+/**
+ * Exposes the progress of the {@link DepositDrain} as the {@code drain} actuator endpoint.
+ * <p>
+ * Reading the endpoint answers the {@link DepositDrain#getProgress() progress} of the drain.  Writing the endpoint
+ * begins the drain, if it has not begun, on a separate thread, and answers its progress; a deployment can drain an
+ * instance this way before stopping it, and poll the endpoint until the drain has finished.
+ * </p>
+ */
+@Endpoint(id = "drain")
+public class DrainEndpoint {
+
+    private final DepositDrain depositDrain;
+
+    public DrainEndpoint(DepositDrain depositDrain) {
+        this.depositDrain = depositDrain;
+    }
+
+    @ReadOperation
+    public Map<String, Object> progress() {
+        return depositDrain.getProgress();
+    }
+
+    @WriteOperation
+    public Map<String, Object> drain() {
+        if (depositDrain.getState() == DepositDrain.State.RUNNING) {
+            Thread drainer = new Thread(depositDrain::drain, "Deposit-Drain");
+            drainer.setDaemon(true);
+            drainer.start();
+        }
+        return depositDrain.getProgress();
+    }
+
+}
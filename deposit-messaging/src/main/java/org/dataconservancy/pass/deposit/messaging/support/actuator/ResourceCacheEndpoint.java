@@ -0,0 +1,52 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.support.actuator;
+
+import org.dataconservancy.pass.deposit.assembler.shared.ResourceCache;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Exposes the statistics of the {@link ResourceCache} as the {@code resourcecache} actuator endpoint.
+ * <p>
+ * Reading the endpoint answers the number of cache hits and misses, the number of bytes answered from the cache
+ * rather than retrieved from Fedora, the number of evictions, and the number of bytes held by the cache.
+ * </p>
+ */
+@Endpoint(id = "resourcecache")
+public class ResourceCacheEndpoint {
+
+    private final ResourceCache resourceCache;
+
+    public ResourceCacheEndpoint(ResourceCache resourceCache) {
+        this.resourceCache = resourceCache;
+    }
+
+    @ReadOperation
+    public Map<String, Object> statistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("hits", resourceCache.getHitCount());
+        statistics.put("misses", resourceCache.getMissCount());
+        statistics.put("bytesSaved", resourceCache.getBytesSaved());
+        statistics.put("evictions", resourceCache.getEvictionCount());
+        statistics.put("size", resourceCache.getSize());
+        return statistics;
+    }
+
+}
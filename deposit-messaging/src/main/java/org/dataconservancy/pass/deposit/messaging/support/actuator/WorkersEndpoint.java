@@ -0,0 +1,70 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.support.actuator;
+
+import org.dataconservancy.pass.deposit.messaging.service.BulkheadQueue;
+import org.dataconservancy.pass.deposit.messaging.service.BulkheadTaskExecutor;
+import org.dataconservancy.pass.deposit.messaging.service.DeferredRetryRejectionHandler;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Exposes the state of the deposit worker pool as the {@code workers} actuator endpoint.
+ * <p>
+ * Reading the endpoint answers, for each repository's bulkhead, the number of deposits waiting in its queue and the
+ * number being performed, along with its configured concurrency, capacity and weight, and the number of its deposits
+ * completed.  The number of deposits awaiting a retry of their submission to the pool, and the saturation of the
+ * fullest bulkhead, are answered for the pool as a whole.
+ * </p>
+ */
+@Endpoint(id = "workers")
+public class WorkersEndpoint {
+
+    private final BulkheadTaskExecutor depositWorkers;
+
+    private final DeferredRetryRejectionHandler rejectionHandler;
+
+    public WorkersEndpoint(BulkheadTaskExecutor depositWorkers, DeferredRetryRejectionHandler rejectionHandler) {
+        this.depositWorkers = depositWorkers;
+        this.rejectionHandler = rejectionHandler;
+    }
+
+    @ReadOperation
+    public Map<String, Object> workers() {
+        Map<String, Object> bulkheads = new LinkedHashMap<>();
+        for (BulkheadQueue.Bulkhead bulkhead : depositWorkers.getBulkheadQueue().getBulkheads()) {
+            Map<String, Object> state = new LinkedHashMap<>();
+            state.put("queueDepth", bulkhead.getQueueDepth());
+            state.put("active", bulkhead.getActiveCount());
+            state.put("completed", bulkhead.getCompletedCount());
+            state.put("concurrency", bulkhead.getConcurrency());
+            state.put("capacity", bulkhead.getCapacity());
+            state.put("weight", bulkhead.getWeight());
+            bulkheads.put(bulkhead.getKey(), state);
+        }
+
+        Map<String, Object> workers = new LinkedHashMap<>();
+        workers.put("active", depositWorkers.getActiveCount());
+        workers.put("awaitingRetry", rejectionHandler.getWaitingCount());
+        workers.put("saturation", depositWorkers.getBulkheadQueue().getSaturation());
+        workers.put("bulkheads", bulkheads);
+        return workers;
+    }
+
+}
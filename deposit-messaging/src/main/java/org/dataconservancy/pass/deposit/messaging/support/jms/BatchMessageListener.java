@@ -0,0 +1,40 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.support.jms;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+import java.util.List;
+
+/**
+ * Receives a batch of JMS messages from a {@link BatchMessageListenerContainer}.  Messages are acknowledged by the
+ * container after the listener returns; listeners should not acknowledge messages themselves.
+ */
+@FunctionalInterface
+public interface BatchMessageListener {
+
+    /**
+     * Processes a batch of messages.  If this method throws an exception, none of the messages in the batch are
+     * acknowledged, and they will be redelivered.
+     *
+     * @param messages the messages in the batch, in the order they were received, never empty
+     * @param session the session the messages were received on
+     * @throws JMSException if the messages cannot be read
+     */
+    void onMessages(List<Message> messages, Session session) throws JMSException;
+
+}
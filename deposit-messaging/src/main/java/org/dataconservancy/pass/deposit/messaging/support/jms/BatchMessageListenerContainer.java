@@ -0,0 +1,180 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.support.jms;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jms.listener.DefaultMessageListenerContainer;
+import org.springframework.transaction.TransactionStatus;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A message listener container which hands messages to a {@link BatchMessageListener} in batches.
+ * <p>
+ * Each consumer of the container waits for a message as a {@code DefaultMessageListenerContainer} would.  Once a
+ * message is received, the consumer keeps receiving messages until the batch holds {@link #setBatchSize(int) batch
+ * size} messages, or until no message is immediately available once the {@link #setLingerMs(long) linger} time has
+ * elapsed.  The batch is then handed to the listener, and acknowledged (or committed, if the session is transacted)
+ * once the listener returns.  In {@code CLIENT_ACKNOWLEDGE} mode, acknowledging the last message of the batch
+ * acknowledges every message of the batch.
+ * </p>
+ * <p>
+ * Batches are only received on the cached sessions and consumers of the container, so the cache level of the container
+ * is always {@code CACHE_CONSUMER}, and external transaction managers are not supported.
+ * </p>
+ */
+public class BatchMessageListenerContainer extends DefaultMessageListenerContainer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BatchMessageListenerContainer.class);
+
+    private static final int DEFAULT_BATCH_SIZE = 100;
+
+    private static final long DEFAULT_LINGER_MS = 500;
+
+    private BatchMessageListener batchMessageListener;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    private long lingerMs = DEFAULT_LINGER_MS;
+
+    public BatchMessageListenerContainer() {
+        setCacheLevel(CACHE_CONSUMER);
+    }
+
+    /**
+     * @param batchMessageListener the listener receiving batches of messages
+     */
+    public void setBatchMessageListener(BatchMessageListener batchMessageListener) {
+        this.batchMessageListener = batchMessageListener;
+    }
+
+    /**
+     * @param batchSize the maximum number of messages in a batch
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be a positive integer.");
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param lingerMs the maximum amount of time, in milliseconds, to wait for further messages once the first message
+     *                 of a batch has been received
+     */
+    public void setLingerMs(long lingerMs) {
+        if (lingerMs < 0) {
+            throw new IllegalArgumentException("Linger time must not be negative.");
+        }
+        this.lingerMs = lingerMs;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public long getLingerMs() {
+        return lingerMs;
+    }
+
+    @Override
+    public void setCacheLevel(int cacheLevel) {
+        if (cacheLevel != CACHE_CONSUMER) {
+            throw new IllegalArgumentException("Batches may only be received by cached consumers.");
+        }
+        super.setCacheLevel(cacheLevel);
+    }
+
+    @Override
+    protected void validateConfiguration() {
+        super.validateConfiguration();
+        if (batchMessageListener == null) {
+            throw new IllegalArgumentException("Property 'batchMessageListener' is required");
+        }
+        if (getTransactionManager() != null) {
+            throw new IllegalArgumentException("Batches may not be received using an external transaction manager");
+        }
+    }
+
+    @Override
+    protected boolean doReceiveAndExecute(Object invoker, Session session, MessageConsumer consumer,
+                                          TransactionStatus status) throws JMSException {
+        if (session == null || consumer == null) {
+            throw new IllegalStateException("Batches may only be received by cached consumers.");
+        }
+
+        Message first = receiveMessage(consumer);
+        if (first == null) {
+            noMessageReceived(invoker, session);
+            return false;
+        }
+
+        messageReceived(invoker, session);
+        List<Message> batch = receiveBatch(first, consumer);
+
+        if (!isAcceptMessagesWhileStopping() && !isRunning()) {
+            LOG.debug("Rejecting a batch of {} messages, the listener container is stopping", batch.size());
+            rollbackIfNecessary(session);
+            return false;
+        }
+
+        LOG.trace("Received a batch of {} messages from {}", batch.size(), getDestinationDescription());
+
+        try {
+            batchMessageListener.onMessages(batch, session);
+        } catch (JMSException | RuntimeException | Error e) {
+            rollbackOnExceptionIfNecessary(session, e);
+            handleListenerException(e);
+            return true;
+        }
+
+        commitIfNecessary(session, batch.get(batch.size() - 1));
+        return true;
+    }
+
+    /**
+     * Receives messages following the {@code first} message of a batch, until the batch is full, or no message is
+     * immediately available after the linger time has elapsed.
+     *
+     * @param first the first message of the batch
+     * @param consumer the consumer to receive the remainder of the batch from
+     * @return the batch
+     * @throws JMSException if a message cannot be received
+     */
+    List<Message> receiveBatch(Message first, MessageConsumer consumer) throws JMSException {
+        List<Message> batch = new ArrayList<>(Math.min(batchSize, DEFAULT_BATCH_SIZE));
+        batch.add(first);
+
+        long deadline = System.currentTimeMillis() + lingerMs;
+        while (batch.size() < batchSize) {
+            long remaining = deadline - System.currentTimeMillis();
+            Message next = (remaining > 0) ? consumer.receive(remaining) : consumer.receiveNoWait();
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+
+        return batch;
+    }
+
+}
@@ -0,0 +1,325 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.support.jms;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Collapses events for the same key that arrive within a window of time into a single invocation of an action.
+ * <p>
+ * Fedora emits several events for a resource within milliseconds of each other.  Processing an event only requires the
+ * URI of the resource, because the current state of the resource is read when the event is processed; so the events
+ * for a resource that arrive before it is processed can be satisfied by processing it once.  When an event is
+ * {@link #dispatch(Object) dispatched} for a key, the action is invoked for the key after the window has elapsed, and
+ * any further events for the key that arrive in the meantime are collapsed into that invocation.
+ * </p>
+ * <p>
+ * Dispatching an event answers a future that completes once the invocation processing the event has completed, so
+ * that the message carrying the event is only acknowledged after it has been acted upon.  An invocation that fails
+ * still completes the future: the failure is logged, as it would be if the event were processed on its own.
+ * </p>
+ * <p>
+ * Invocations for the same key never overlap, and occur in the order their events were dispatched: an event that
+ * arrives while the action is being invoked for its key is processed by a further invocation, once the current
+ * invocation has completed.  Invocations for different keys may occur concurrently.
+ * </p>
+ * <p>
+ * At most {@code maxPending} keys wait for an invocation.  An event for a further key is processed on the thread
+ * dispatching it, so that a dispatcher that has fallen behind slows its callers, rather than accumulating work they
+ * can no longer see.  A window of {@code 0} disables coalescing: the action is invoked for each event on the thread
+ * dispatching it.
+ * </p>
+ *
+ * @param <K> the type of key identifying the resource an event is for
+ */
+public class CoalescingDispatcher<K> implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CoalescingDispatcher.class);
+
+    private static final long CLOSE_TIMEOUT_MS = 30000;
+
+    private final String name;
+
+    private final Consumer<K> action;
+
+    private final long windowMs;
+
+    private final int maxPending;
+
+    private final ScheduledExecutorService executor;
+
+    private final Map<K, KeyState> states = new HashMap<>();
+
+    private final AtomicLong received = new AtomicLong();
+
+    private final AtomicLong collapsed = new AtomicLong();
+
+    private final AtomicLong invoked = new AtomicLong();
+
+    private final AtomicLong callerRuns = new AtomicLong();
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /**
+     * @param name the name of this dispatcher, used to name its threads and in log messages
+     * @param action the action invoked for each key
+     * @param windowMs the window, in milliseconds, within which events for the same key are collapsed
+     * @param threads the number of threads invoking the action
+     * @param maxPending the maximum number of keys waiting for an invocation
+     */
+    public CoalescingDispatcher(String name, Consumer<K> action, long windowMs, int threads, int maxPending) {
+        if (action == null) {
+            throw new IllegalArgumentException("Action must not be null.");
+        }
+        if (windowMs < 0) {
+            throw new IllegalArgumentException("Coalescing window must not be negative.");
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be a positive integer.");
+        }
+        if (maxPending < 1) {
+            throw new IllegalArgumentException("Maximum pending keys must be a positive integer.");
+        }
+
+        this.name = name;
+        this.action = action;
+        this.windowMs = windowMs;
+        this.maxPending = maxPending;
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.executor = new ScheduledThreadPoolExecutor(threads, r -> {
+            Thread t = new Thread(r);
+            t.setName(name + "-coalescer-" + threadCounter.getAndIncrement());
+            return t;
+        });
+    }
+
+    /**
+     * Dispatches an event for {@code key}.  The event is collapsed into an invocation for the key that has not yet
+     * started, if there is one; otherwise an invocation is scheduled, or performed on the calling thread if {@code
+     * maxPending} keys are already waiting.
+     *
+     * @param key the key of the resource the event is for
+     * @return a future completing once the invocation processing the event has completed, or completing exceptionally
+     *         if the event is dropped because this dispatcher is closed
+     */
+    public CompletableFuture<Void> dispatch(K key) {
+        received.incrementAndGet();
+
+        if (windowMs == 0) {
+            invoked.incrementAndGet();
+            action.accept(key);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        KeyState state;
+        CompletableFuture<Void> completion = new CompletableFuture<>();
+        synchronized (states) {
+            state = states.get(key);
+            if (state != null && state.next != null) {
+                collapsed.incrementAndGet();
+                LOG.trace("Collapsed {} event for {}", name, key);
+                return state.next;
+            }
+            if (state != null) {
+                // an invocation is in progress: process the event with a further invocation once it has completed
+                state.next = completion;
+                return completion;
+            }
+
+            state = new KeyState();
+            states.put(key, state);
+            if (states.size() <= maxPending) {
+                state.next = completion;
+                schedule(key, completion);
+                return completion;
+            }
+            state.running = true;
+        }
+
+        callerRuns.incrementAndGet();
+        LOG.trace("Processing {} event for {} on the dispatching thread: {} keys are pending", name, key, maxPending);
+        run(key, state, completion);
+        return completion;
+    }
+
+    /**
+     * @return the number of events dispatched
+     */
+    public long getReceivedCount() {
+        return received.get();
+    }
+
+    /**
+     * @return the number of events collapsed into an invocation for an earlier event
+     */
+    public long getCollapsedCount() {
+        return collapsed.get();
+    }
+
+    /**
+     * @return the number of invocations of the action
+     */
+    public long getInvokedCount() {
+        return invoked.get();
+    }
+
+    /**
+     * @return the number of events processed on the dispatching thread because {@code maxPending} keys were waiting
+     */
+    public long getCallerRunsCount() {
+        return callerRuns.get();
+    }
+
+    /**
+     * @return the number of keys with an invocation that is scheduled or in progress
+     */
+    public int getPendingCount() {
+        synchronized (states) {
+            return states.size();
+        }
+    }
+
+    /**
+     * Invokes the action for any events that have been dispatched, then stops the threads of this dispatcher.  Events
+     * that arrive for a key while it is being processed are processed once the invocation in progress has completed,
+     * on the thread that performed it.  Events dispatched for other keys after this dispatcher is closed are dropped.  Closing a dispatcher more than once has no effect.
+     */
+    @Override
+    public void close() {
+        // an invocation completing concurrently either schedules its follow-up before the executor is shut down, or sees
+        // that this dispatcher is closing and performs the follow-up itself
+        synchronized (states) {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+        }
+
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(windowMs + CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                LOG.warn("Timed out waiting for {} pending {} events to be processed", getPendingCount(), name);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        LOG.info("Coalesced {} events: {} received, {} collapsed, {} processed, {} on the dispatching thread", name,
+                received.get(), collapsed.get(), invoked.get(), callerRuns.get());
+    }
+
+    /**
+     * Schedules an invocation for {@code key}; {@code completion} must be the future of the key's next invocation.
+     * Must be called while holding the lock on {@code states}.
+     */
+    private void schedule(K key, CompletableFuture<Void> completion) {
+        try {
+            executor.schedule(() -> invoke(key), windowMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            states.remove(key);
+            LOG.warn("Dropping {} event for {}: the dispatcher is closed", name, key);
+            completion.completeExceptionally(e);
+        }
+    }
+
+    private void invoke(K key) {
+        KeyState state;
+        CompletableFuture<Void> completion;
+        synchronized (states) {
+            state = states.get(key);
+            completion = state.next;
+            state.next = null;
+            state.running = true;
+        }
+
+        run(key, state, completion);
+    }
+
+    /**
+     * Invokes the action for {@code key}, whose state is marked as running, then completes {@code completion} and
+     * schedules a further invocation if an event arrived in the meantime.  Once this dispatcher is closing, the
+     * further invocation is performed on the current thread instead, because the executor may no longer accept it.
+     */
+    private void run(K key, KeyState state, CompletableFuture<Void> completion) {
+        while (completion != null) {
+            CompletableFuture<Void> next = null;
+            try {
+                invoked.incrementAndGet();
+                action.accept(key);
+            } catch (RuntimeException e) {
+                LOG.error("Failed to process {} event for {}: {}", name, key, e.getMessage(), e);
+            } finally {
+                completion.complete(null);
+                synchronized (states) {
+                    next = completed(key, state);
+                }
+            }
+            completion = next;
+        }
+    }
+
+    /**
+     * Marks the invocation of {@code key} as completed, scheduling a further invocation if an event arrived in the
+     * meantime.  Must be called while holding the lock on {@code states}.
+     *
+     * @return the future of the further invocation, if it is to be performed on the current thread because this
+     *         dispatcher is closing, otherwise {@code null}
+     */
+    private CompletableFuture<Void> completed(K key, KeyState state) {
+        state.running = false;
+        if (state.next == null) {
+            states.remove(key);
+            return null;
+        }
+
+        if (closed.get()) {
+            CompletableFuture<Void> next = state.next;
+            state.next = null;
+            state.running = true;
+            return next;
+        }
+
+        schedule(key, state.next);
+        return null;
+    }
+
+    /**
+     * The invocation state of a key: whether an invocation is in progress, and the future of the next invocation,
+     * which is scheduled, or will be once the invocation in progress has completed.
+     */
+    private static class KeyState {
+
+        private boolean running;
+
+        private CompletableFuture<Void> next;
+
+    }
+
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.support.jms;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The fields of a Fedora JMS message body that are used when deciding whether, and how, to process the message: the
+ * identity and types of the resource, the types of the event, and the agents the event is attributed to.
+ * <p>
+ * The body is read by a streaming parser, which skips the values of other fields without building a tree, and stops
+ * reading once each of the fields has been read.  In particular, the JSON-LD {@code @context}, which Fedora places
+ * after the fields read here, is never read.
+ * </p>
+ */
+public class FedoraMessagePayload {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final String ID = "id";
+
+    private static final String TYPE = "type";
+
+    private static final String NAME = "name";
+
+    private static final String WAS_GENERATED_BY = "wasGeneratedBy";
+
+    private static final String WAS_ATTRIBUTED_TO = "wasAttributedTo";
+
+    private static final int FIELD_COUNT = 4;
+
+    private String resourceId;
+
+    private List<String> resourceTypes = Collections.emptyList();
+
+    private List<String> eventTypes = Collections.emptyList();
+
+    private List<Attribution> attributions = Collections.emptyList();
+
+    private FedoraMessagePayload() {
+
+    }
+
+    /**
+     * Parses the body of a Fedora JMS message.
+     *
+     * @param body the message body
+     * @return the parsed fields of the body
+     * @throws IOException if the body is not a JSON object, or cannot be read
+     */
+    public static FedoraMessagePayload parse(String body) throws IOException {
+        if (body == null) {
+            throw new IOException("Message body must not be null.");
+        }
+
+        FedoraMessagePayload payload = new FedoraMessagePayload();
+
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Message body is not a JSON object.");
+            }
+
+            int read = 0;
+            while (read < FIELD_COUNT && parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                switch (field) {
+                    case ID:
+                        payload.resourceId = parser.getValueAsString();
+                        read++;
+                        break;
+                    case TYPE:
+                        payload.resourceTypes = readStrings(parser);
+                        read++;
+                        break;
+                    case WAS_GENERATED_BY:
+                        payload.eventTypes = readEventTypes(parser);
+                        read++;
+                        break;
+                    case WAS_ATTRIBUTED_TO:
+                        payload.attributions = readAttributions(parser);
+                        read++;
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+        }
+
+        return payload;
+    }
+
+    /**
+     * @return the URI of the resource the event is for, or {@code null} if the body does not identify the resource
+     */
+    public String resourceId() {
+        return resourceId;
+    }
+
+    /**
+     * @return the RDF types of the resource, in the order they appear in the body
+     */
+    public List<String> resourceTypes() {
+        return resourceTypes;
+    }
+
+    /**
+     * @return the types of the event, in the order they appear in the body
+     */
+    public List<String> eventTypes() {
+        return eventTypes;
+    }
+
+    /**
+     * @return the agents the event is attributed to, in the order they appear in the body
+     */
+    public List<Attribution> attributions() {
+        return attributions;
+    }
+
+    /**
+     * Answers the name of the first agent of type {@code agentType} that the event is attributed to.
+     *
+     * @param agentType the type of agent, e.g. {@code http://www.w3.org/ns/prov#SoftwareAgent}
+     * @return the name of the agent, or {@code null} if the event is not attributed to an agent of the type, or the
+     *         first such agent has no name
+     */
+    public String agentName(String agentType) {
+        return attributions.stream()
+                .filter(attribution -> attribution.types().contains(agentType))
+                .findFirst()
+                .map(Attribution::name)
+                .orElse(null);
+    }
+
+    private static List<String> readEventTypes(JsonParser parser) throws IOException {
+        List<String> types = Collections.emptyList();
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return types;
+        }
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if (TYPE.equals(field)) {
+                types = readStrings(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        return types;
+    }
+
+    private static List<Attribution> readAttributions(JsonParser parser) throws IOException {
+        List<Attribution> attributions = new ArrayList<>(2);
+        if (parser.currentToken() == JsonToken.START_OBJECT) {
+            attributions.add(readAttribution(parser));
+        } else if (parser.currentToken() == JsonToken.START_ARRAY) {
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                if (parser.currentToken() == JsonToken.START_OBJECT) {
+                    attributions.add(readAttribution(parser));
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+
+        return attributions;
+    }
+
+    private static Attribution readAttribution(JsonParser parser) throws IOException {
+        List<String> types = Collections.emptyList();
+        String name = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if (TYPE.equals(field)) {
+                types = readStrings(parser);
+            } else if (NAME.equals(field)) {
+                name = parser.getValueAsString();
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        return new Attribution(types, name);
+    }
+
+    /**
+     * Reads a value that is either a single string, or an array of strings.  The parser is positioned on the first
+     * token of the value, and is left on its last token.
+     */
+    private static List<String> readStrings(JsonParser parser) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_STRING) {
+            return Collections.singletonList(parser.getText());
+        }
+
+        List<String> values = new ArrayList<>();
+        if (parser.currentToken() == JsonToken.START_ARRAY) {
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                if (parser.currentToken() == JsonToken.VALUE_STRING) {
+                    values.add(parser.getText());
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } else {
+            parser.skipChildren();
+        }
+
+        return values;
+    }
+
+    /**
+     * An agent an event is attributed to.
+     */
+    public static class Attribution {
+
+        private final List<String> types;
+
+        private final String name;
+
+        private Attribution(List<String> types, String name) {
+            this.types = types;
+            this.name = name;
+        }
+
+        /**
+         * @return the types of the agent
+         */
+        public List<String> types() {
+            return types;
+        }
+
+        /**
+         * @return the name of the agent, or {@code null} if it has none
+         */
+        public String name() {
+            return name;
+        }
+    }
+
+}
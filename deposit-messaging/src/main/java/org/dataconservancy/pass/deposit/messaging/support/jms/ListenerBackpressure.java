@@ -0,0 +1,180 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.support.jms;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.Lifecycle;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Pauses JMS message listener containers while the work they produce is backing up, and resumes them once the backlog
+ * has drained.
+ * <p>
+ * The backlog is sampled periodically.  When it reaches the {@code pauseAt} mark, each listener container that is
+ * running is {@link Lifecycle#stop() stopped}, so that no further messages are consumed; messages remain on the broker
+ * in the meantime.  When the backlog falls to the {@code resumeAt} mark, the containers stopped by this class, and only
+ * those, are {@link Lifecycle#start() started} again.  Containers that were not running when the backlog was reached,
+ * for example because they are not started automatically, are left alone.
+ * </p>
+ */
+public class ListenerBackpressure implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ListenerBackpressure.class);
+
+    private final Supplier<Collection<? extends Lifecycle>> listeners;
+
+    private final IntSupplier backlog;
+
+    private final int pauseAt;
+
+    private final int resumeAt;
+
+    private final ScheduledExecutorService executor;
+
+    private final List<Lifecycle> stopped = new ArrayList<>();
+
+    private final AtomicLong pauseCount = new AtomicLong();
+
+    private final AtomicLong pausedMs = new AtomicLong();
+
+    private boolean paused;
+
+    private boolean closed;
+
+    private long pausedSince;
+
+    /**
+     * @param listeners supplies the listener containers to pause
+     * @param backlog supplies the current backlog of work
+     * @param pauseAt the backlog at which the listener containers are paused
+     * @param resumeAt the backlog at which paused listener containers are resumed
+     * @param pollMs the interval, in milliseconds, between samples of the backlog
+     */
+    public ListenerBackpressure(Supplier<Collection<? extends Lifecycle>> listeners, IntSupplier backlog, int pauseAt,
+                                int resumeAt, long pollMs) {
+        if (listeners == null || backlog == null) {
+            throw new IllegalArgumentException("Listeners and backlog must not be null.");
+        }
+        if (resumeAt < 0 || resumeAt >= pauseAt) {
+            throw new IllegalArgumentException("Resume mark must be non-negative, and less than the pause mark.");
+        }
+        if (pollMs < 1) {
+            throw new IllegalArgumentException("Poll interval must be a positive integer.");
+        }
+
+        this.listeners = listeners;
+        this.backlog = backlog;
+        this.pauseAt = pauseAt;
+        this.resumeAt = resumeAt;
+        this.executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r);
+            t.setName("JMS-Backpressure");
+            t.setDaemon(true);
+            return t;
+        });
+        this.executor.scheduleWithFixedDelay(this::check, pollMs, pollMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return true if the listener containers are currently paused
+     */
+    public synchronized boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * @return the number of times the listener containers were paused
+     */
+    public long getPauseCount() {
+        return pauseCount.get();
+    }
+
+    /**
+     * @return the total amount of time, in milliseconds, that the listener containers were paused, not including a
+     *         pause in progress
+     */
+    public long getPausedMs() {
+        return pausedMs.get();
+    }
+
+    /**
+     * Stops sampling the backlog.  Listener containers that are paused are left stopped.  Closing more than once has no
+     * effect.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        executor.shutdownNow();
+        LOG.info("JMS listeners paused {} times for a total of {} ms", pauseCount.get(), pausedMs.get());
+    }
+
+    /**
+     * Samples the backlog, pausing or resuming the listener containers as necessary.
+     */
+    synchronized void check() {
+        if (closed) {
+            return;
+        }
+        try {
+            int current = backlog.getAsInt();
+            if (!paused && current >= pauseAt) {
+                pause(current);
+            } else if (paused && current <= resumeAt) {
+                resume(current);
+            }
+        } catch (RuntimeException e) {
+            LOG.warn("Unable to apply backpressure to JMS listeners: {}", e.getMessage(), e);
+        }
+    }
+
+    private void pause(int current) {
+        for (Lifecycle listener : listeners.get()) {
+            if (listener.isRunning()) {
+                listener.stop();
+                stopped.add(listener);
+            }
+        }
+
+        paused = true;
+        pausedSince = System.currentTimeMillis();
+        pauseCount.incrementAndGet();
+        LOG.info("Backlog of {} reached, paused {} JMS listeners", current, stopped.size());
+    }
+
+    private void resume(int current) {
+        stopped.forEach(Lifecycle::start);
+        LOG.info("Backlog drained to {}, resumed {} JMS listeners", current, stopped.size());
+
+        stopped.clear();
+        paused = false;
+        pausedMs.addAndGet(System.currentTimeMillis() - pausedSince);
+    }
+
+}
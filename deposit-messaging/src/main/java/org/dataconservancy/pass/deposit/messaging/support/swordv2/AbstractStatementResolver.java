@@ -0,0 +1,187 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.support.swordv2;
+
+import org.dataconservancy.pass.deposit.assembler.shared.AuthenticatedResource;
+import org.dataconservancy.pass.deposit.messaging.config.repository.AuthRealm;
+import org.dataconservancy.pass.deposit.messaging.config.repository.BasicAuthRealm;
+import org.dataconservancy.pass.deposit.messaging.config.repository.RepositoryConfig;
+import org.dataconservancy.pass.deposit.messaging.status.DepositStatusResolver;
+import org.dataconservancy.pass.support.messaging.constants.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.UrlResource;
+
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Optional;
+
+/**
+ * Resolves the SWORD state of a deposit from the Atom statement referenced by a {@code URI}, leaving the parsing of the
+ * statement to subclasses.
+ * <p>
+ * Statements are retrieved from {@code file}, {@code classpath}, {@code jar}, {@code http} and {@code https} URIs.
+ * Statements retrieved over HTTP are authenticated with the {@code BasicAuthRealm} of the {@code RepositoryConfig}
+ * whose base URL matches the statement URI.  If a {@link StatementCache} is {@link #setStatementCache(StatementCache)
+ * set}, statements retrieved over HTTP are retrieved with conditional requests, and a statement that has not been
+ * modified since it was last retrieved is not parsed again.
+ * </p>
+ */
+public abstract class AbstractStatementResolver implements DepositStatusResolver<URI, URI> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AbstractStatementResolver.class);
+
+    private StatementCache statementCache;
+
+    /**
+     * Determine the deposit status represented in the referenced Atom statement.
+     * <p>
+     * Retrieves the Atom statement, {@link #parseState(InputStream) parses} it, and examines it for the {@link
+     * Constants.SWORD#SWORD_STATE} term. If the term exists, return the corresponding {@code URI}.  If the term or the
+     * state cannot be determined, return {@code null}.
+     * </p>
+     *
+     * @param atomStatementUri the Atom statement URI
+     * @param repositoryConfig the configuration containing an {@code auth-realm} with authentication credentials for
+     *                         retrieving the {@code atomStatementUri}
+     * @return the state {@code URI}, or {@code null} if one cannot be found
+     * @see <a href="http://swordapp.github.io/SWORDv2-Profile/SWORDProfile.html#statement_predicates_state">SWORDv2 Profile §11.1.2</a>
+     */
+    @Override
+    public URI resolve(URI atomStatementUri, RepositoryConfig repositoryConfig) {
+        if (atomStatementUri == null) {
+            throw new IllegalArgumentException("Atom statement URI must not be null.");
+        }
+
+        Resource resource = null;
+
+        if (atomStatementUri.getScheme().startsWith("file")) {
+            resource = new FileSystemResource(atomStatementUri.getPath());
+        } else if (atomStatementUri.getScheme().startsWith("classpath")) {
+            if (atomStatementUri.getScheme().startsWith("classpath*")) {
+                resource = new ClassPathResource(atomStatementUri.toString().substring("classpath*:".length()));
+            } else {
+                resource = new ClassPathResource(atomStatementUri.toString().substring("classpath:".length()));
+            }
+        } else if (atomStatementUri.getScheme().startsWith("http")) {
+            Optional<BasicAuthRealm> statementRealm = matchRealm(atomStatementUri.toString(),
+                    repositoryConfig.getTransportConfig().getAuthRealms());
+            if (statementCache != null) {
+                if (!statementRealm.isPresent()) {
+                    LOG.warn("Null AuthRealm used for Atom Statement URI '{}'", atomStatementUri);
+                }
+                return resolveCached(atomStatementUri, statementRealm.orElse(null));
+            }
+            resource = statementRealm
+                        .map(realm -> {
+                            try {
+                                if (realm.getUsername() != null && realm.getUsername().trim().length() > 0) {
+                                    return new AuthenticatedResource(atomStatementUri.toURL(),
+                                            realm.getUsername(), realm.getPassword());
+                                } else {
+                                    return new UrlResource(atomStatementUri.toURL());
+                                }
+                            } catch (MalformedURLException e) {
+                                throw new IllegalArgumentException(
+                                        "Atom statement could not be parsed as URL: '" + atomStatementUri + "'", e);
+                            }
+                        }).orElseGet(() -> {
+                            LOG.warn("Null AuthRealm used for Atom Statement URI '{}'", atomStatementUri);
+                            try {
+                                return new UrlResource(atomStatementUri.toURL());
+                            } catch (MalformedURLException e) {
+                                throw new IllegalArgumentException(
+                                        "Atom statement could not be parsed as URL: '" + atomStatementUri + "'", e);
+                            }
+                        });
+        } else if (atomStatementUri.getScheme().startsWith("jar")) {
+            try {
+                resource = new UrlResource(atomStatementUri);
+            } catch (MalformedURLException e) {
+                throw new IllegalArgumentException("Atom statement could not be parsed as URL '" + atomStatementUri +
+                        "':" + e.getMessage(), e);
+            }
+        }
+
+        if (resource == null) {
+            throw new IllegalArgumentException("Atom statement URI could not be parsed as a Spring resource: '" +
+                    atomStatementUri + "'");
+        }
+
+        LOG.trace("Retrieving SWORD Statement from: {}", atomStatementUri);
+        try (InputStream statement = resource.getInputStream()) {
+            return parseState(statement);
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Error parsing Atom resource '" + resource + "' (resolved from '" +
+                    atomStatementUri + "'): " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Parses the SWORD state from the statement.  Implementations need not close the statement.
+     *
+     * @param statement the Atom statement
+     * @return the state {@code URI}, or {@code null} if one cannot be found
+     * @throws IllegalArgumentException if the state cannot be parsed as a {@code URI}
+     * @throws Exception if the statement cannot be parsed
+     */
+    protected abstract URI parseState(InputStream statement) throws Exception;
+
+    public StatementCache getStatementCache() {
+        return statementCache;
+    }
+
+    /**
+     * @param statementCache retrieves {@code http} and {@code https} statements with conditional requests, answering
+     *                       the remembered state of statements that have not been modified, or {@code null} to
+     *                       retrieve and parse every statement
+     */
+    public void setStatementCache(StatementCache statementCache) {
+        this.statementCache = statementCache;
+    }
+
+    private URI resolveCached(URI atomStatementUri, BasicAuthRealm realm) {
+        try {
+            LOG.trace("Retrieving SWORD Statement from: {}", atomStatementUri);
+            return statementCache.resolve(atomStatementUri, realm, this::parseState);
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Error parsing Atom resource '" + atomStatementUri + "': " + e.getMessage(), e);
+        }
+    }
+
+    private static Optional<BasicAuthRealm> matchRealm(String url, Collection<AuthRealm> authRealms) {
+        if (authRealms == null || authRealms.isEmpty()) {
+            return Optional.empty();
+        }
+
+        return authRealms
+                .stream()
+                .filter(realm -> realm instanceof BasicAuthRealm)
+                .map(realm -> (BasicAuthRealm) realm)
+                .filter(realm -> url.startsWith(realm.getBaseUrl().toString()))
+                .max(Comparator.comparingInt(realm -> realm.getBaseUrl().length()));
+    }
+}
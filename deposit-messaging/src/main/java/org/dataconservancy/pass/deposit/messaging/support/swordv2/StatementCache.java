@@ -0,0 +1,185 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.support.swordv2;
+
+import org.dataconservancy.pass.deposit.messaging.config.repository.BasicAuthRealm;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Base64.getEncoder;
+
+/**
+ * Retrieves SWORD statements over HTTP with conditional requests, remembering the SWORD state parsed from each.
+ * <p>
+ * When a statement is retrieved, its {@code ETag} and {@code Last-Modified} validators are remembered along with the
+ * state parsed from it.  The next retrieval of the same statement sends the validators as {@code If-None-Match} and
+ * {@code If-Modified-Since}; if the repository answers {@code 304 Not Modified}, the remembered state is answered
+ * without the statement being transferred or parsed.  A statement answered without validators is not remembered.  The
+ * least recently used statements are forgotten once {@code maxEntries} are remembered.
+ * </p>
+ */
+public class StatementCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StatementCache.class);
+
+    private final Map<URI, Entry> entries;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Parses the SWORD state from a statement.
+     */
+    @FunctionalInterface
+    public interface StateParser {
+
+        /**
+         * @param statement the statement
+         * @return the SWORD state, or {@code null} if it cannot be found
+         * @throws Exception if the statement cannot be parsed
+         */
+        URI parse(InputStream statement) throws Exception;
+
+    }
+
+    /**
+     * @param maxEntries the number of statements remembered
+     */
+    public StatementCache(int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Maximum entries must be a positive integer.");
+        }
+        this.entries = new LinkedHashMap<URI, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<URI, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Retrieves the statement, and answers its SWORD state: the remembered state if the statement has not been
+     * modified since it was last retrieved, otherwise the state parsed from the statement by the {@code parser}.
+     *
+     * @param statementUri the {@code http} or {@code https} URI of the statement
+     * @param realm supplies the credentials used to retrieve the statement, may be {@code null}
+     * @param parser parses the SWORD state from the statement
+     * @return the SWORD state, or {@code null} if it cannot be found
+     * @throws Exception if the statement cannot be retrieved or parsed
+     */
+    public URI resolve(URI statementUri, BasicAuthRealm realm, StateParser parser) throws Exception {
+        Entry cached;
+        synchronized (entries) {
+            cached = entries.get(statementUri);
+        }
+
+        URLConnection urlCon = statementUri.toURL().openConnection();
+        if (!(urlCon instanceof HttpURLConnection)) {
+            throw new IllegalArgumentException("Statement URI is not an HTTP URI: '" + statementUri + "'");
+        }
+        HttpURLConnection con = (HttpURLConnection) urlCon;
+        con.setUseCaches(false);
+        if (realm != null && realm.getUsername() != null && realm.getUsername().trim().length() > 0) {
+            byte[] credentials = String.format("%s:%s", realm.getUsername(), realm.getPassword())
+                    .getBytes(StandardCharsets.UTF_8);
+            con.setRequestProperty("Authorization", "Basic " + getEncoder().encodeToString(credentials));
+        }
+        if (cached != null) {
+            if (cached.etag != null) {
+                con.setRequestProperty("If-None-Match", cached.etag);
+            }
+            if (cached.lastModified != null) {
+                con.setRequestProperty("If-Modified-Since", cached.lastModified);
+            }
+        }
+
+        try {
+            if (cached != null && con.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                con.getInputStream().close();
+                hitCount.incrementAndGet();
+                LOG.trace("SWORD Statement {} not modified; answering cached state {}", statementUri, cached.state);
+                return cached.state;
+            }
+
+            URI state;
+            try (InputStream in = con.getInputStream()) {
+                state = parser.parse(in);
+            }
+            missCount.incrementAndGet();
+
+            String etag = con.getHeaderField("ETag");
+            String lastModified = con.getHeaderField("Last-Modified");
+            synchronized (entries) {
+                if (etag != null || lastModified != null) {
+                    entries.put(statementUri, new Entry(etag, lastModified, state));
+                } else {
+                    entries.remove(statementUri);
+                }
+            }
+            return state;
+        } catch (IOException e) {
+            con.disconnect();
+            throw e;
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * @return the number of retrievals answered from the cache
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return the number of retrievals that transferred and parsed the statement
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    private static class Entry {
+
+        private final String etag;
+
+        private final String lastModified;
+
+        private final URI state;
+
+        private Entry(String etag, String lastModified, URI state) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.state = state;
+        }
+    }
+
+}
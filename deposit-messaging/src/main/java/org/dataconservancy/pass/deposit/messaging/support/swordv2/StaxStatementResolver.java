@@ -0,0 +1,99 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.support.swordv2;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.net.URI;
+
+import static org.dataconservancy.pass.support.messaging.constants.Constants.SWORD.SWORD_STATE;
+
+/**
+ * Determines the status of a {@code Deposit} from its Atom statement by scanning the statement with a pull parser,
+ * rather than parsing it into a document.
+ * <p>
+ * The statement is read only until the {@code <category>} of the {@code <feed>} whose scheme is {@link
+ * org.dataconservancy.pass.support.messaging.constants.Constants.SWORD#SWORD_STATE SWORD_STATE} is found; its term is
+ * answered as the state, as it would be by {@link AtomUtil#parseSwordState(org.apache.abdera.model.Document)}.  The
+ * {@code <entry>} elements describing the files of the deposit, which make up most of a large statement, are scanned
+ * without being retained, and are not read at all if the state precedes them.
+ * </p>
+ *
+ * @see AtomFeedStatusResolver
+ */
+public class StaxStatementResolver extends AbstractStatementResolver {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StaxStatementResolver.class);
+
+    private static final String ATOM_NS = "http://www.w3.org/2005/Atom";
+
+    private static final String CATEGORY = "category";
+
+    private final XMLInputFactory xmlInputFactory;
+
+    public StaxStatementResolver() {
+        xmlInputFactory = XMLInputFactory.newFactory();
+        xmlInputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    @Override
+    protected URI parseState(InputStream statement) throws XMLStreamException {
+        XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(statement);
+        try {
+            // the depth of the current element: the <feed> is at 1, and its children at 2
+            int depth = 0;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                } else if (event == XMLStreamConstants.START_ELEMENT && ++depth == 2 && isSwordState(reader)) {
+                    return toState(reader.getAttributeValue(null, "term"));
+                }
+            }
+            return null;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static URI toState(String term) {
+        try {
+            if (term == null) {
+                throw new IllegalArgumentException("Missing term for Atom <feed>/<category> scheme " + SWORD_STATE);
+            }
+            return URI.create(term);
+        } catch (IllegalArgumentException e) {
+            // An unknown term value, which is exceptional
+            LOG.error("Unable to resolve the term value for Atom <feed>/<category> scheme " + SWORD_STATE + " " +
+                    "as a URI: " + term);
+            throw e;
+        }
+    }
+
+    private static boolean isSwordState(XMLStreamReader reader) {
+        return CATEGORY.equals(reader.getLocalName()) && ATOM_NS.equals(reader.getNamespaceURI())
+                && SWORD_STATE.equals(reader.getAttributeValue(null, "scheme"));
+    }
+
+}
@@ -15,9 +15,11 @@
  */
 package org.dataconservancy.pass.deposit.messaging.config.repository;
 
+import org.dataconservancy.pass.deposit.assembler.PackageOptions;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.Map;
 
 import static org.junit.Assert.*;
 
@@ -36,6 +38,52 @@ public class AssemblerOptionsMappingTest extends AbstractJacksonMappingTest {
             "        ]\n" +
             "}";
 
+    private static final String BUFFER_OPTIONS_CONFIG = "" +
+            "{\n" +
+            "        \"archive\": \"ZIP\",\n" +
+            "        \"compression\": \"NONE\",\n" +
+            "        \"algorithms\": [\n" +
+            "          \"md5\"\n" +
+            "        ],\n" +
+            "        \"buffer\": \"ring\",\n" +
+            "        \"buffer-capacity\": 4194304\n" +
+            "}";
+
+    private static final String PREFETCH_OPTIONS_CONFIG = "" +
+            "{\n" +
+            "        \"archive\": \"TAR\",\n" +
+            "        \"compression\": \"GZIP\",\n" +
+            "        \"algorithms\": [\n" +
+            "          \"md5\"\n" +
+            "        ],\n" +
+            "        \"checksum-parallel-threshold\": 1048576,\n" +
+            "        \"prefetch\": 3,\n" +
+            "        \"prefetch-memory\": 16777216\n" +
+            "}";
+
+    private static final String COMPRESSION_OPTIONS_CONFIG = "" +
+            "{\n" +
+            "        \"archive\": \"TAR\",\n" +
+            "        \"compression\": \"GZIP\",\n" +
+            "        \"compression-threads\": 4,\n" +
+            "        \"compression-block-size\": 262144,\n" +
+            "        \"compression-level\": 1,\n" +
+            "        \"algorithms\": [\n" +
+            "          \"md5\"\n" +
+            "        ]\n" +
+            "}";
+
+    private static final String ZIP_COMPRESSION_OPTIONS_CONFIG = "" +
+            "{\n" +
+            "        \"archive\": \"ZIP\",\n" +
+            "        \"compression\": \"NONE\",\n" +
+            "        \"compression-level\": 9,\n" +
+            "        \"store-incompressible\": false,\n" +
+            "        \"algorithms\": [\n" +
+            "          \"md5\"\n" +
+            "        ]\n" +
+            "}";
+
 
     @Test
     public void mapOptions() throws IOException {
@@ -48,4 +96,89 @@ public class AssemblerOptionsMappingTest extends AbstractJacksonMappingTest {
         assertTrue(options.getAlgorithms().contains("md5"));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void mapBufferOptions() throws IOException {
+        AssemblerOptions options = mapper.readValue(BUFFER_OPTIONS_CONFIG, AssemblerOptions.class);
+
+        assertEquals("ring", options.getBuffer());
+        assertEquals(4194304, options.getBufferCapacity().intValue());
+
+        Map<String, Object> optionsMap = options.asOptionsMap();
+        assertEquals(PackageOptions.Buffer.OPTS.RING, optionsMap.get(PackageOptions.Buffer.KEY));
+        assertEquals(4194304, optionsMap.get(PackageOptions.Buffer.CAPACITY_KEY));
+
+        assertRoundTrip(options, AssemblerOptions.class);
+    }
+
+    @Test
+    public void bufferOptionsAreOptional() throws IOException {
+        Map<String, Object> optionsMap = mapper.readValue(OPTIONS_CONFIG, AssemblerOptions.class).asOptionsMap();
+
+        assertFalse(optionsMap.containsKey(PackageOptions.Buffer.KEY));
+        assertFalse(optionsMap.containsKey(PackageOptions.Buffer.CAPACITY_KEY));
+    }
+
+    @Test
+    public void mapPrefetchOptions() throws IOException {
+        AssemblerOptions options = mapper.readValue(PREFETCH_OPTIONS_CONFIG, AssemblerOptions.class);
+
+        assertEquals(3, options.getPrefetch().intValue());
+        assertEquals(16777216, options.getPrefetchMemory().intValue());
+
+        Map<String, Object> optionsMap = options.asOptionsMap();
+        assertEquals(3, optionsMap.get(PackageOptions.Prefetch.KEY));
+        assertEquals(16777216, optionsMap.get(PackageOptions.Prefetch.MEMORY_KEY));
+        assertEquals(1048576, optionsMap.get(PackageOptions.Checksum.PARALLEL_THRESHOLD_KEY));
+
+        assertRoundTrip(options, AssemblerOptions.class);
+    }
+
+    @Test
+    public void prefetchOptionsAreOptional() throws IOException {
+        Map<String, Object> optionsMap = mapper.readValue(OPTIONS_CONFIG, AssemblerOptions.class).asOptionsMap();
+
+        assertFalse(optionsMap.containsKey(PackageOptions.Prefetch.KEY));
+        assertFalse(optionsMap.containsKey(PackageOptions.Prefetch.MEMORY_KEY));
+    }
+
+    @Test
+    public void mapCompressionOptions() throws IOException {
+        AssemblerOptions options = mapper.readValue(COMPRESSION_OPTIONS_CONFIG, AssemblerOptions.class);
+
+        assertEquals(4, options.getCompressionThreads().intValue());
+        assertEquals(262144, options.getCompressionBlockSize().intValue());
+
+        Map<String, Object> optionsMap = options.asOptionsMap();
+        assertEquals(PackageOptions.Compression.OPTS.GZIP, optionsMap.get(PackageOptions.Compression.KEY));
+        assertEquals(4, optionsMap.get(PackageOptions.Compression.THREADS_KEY));
+        assertEquals(262144, optionsMap.get(PackageOptions.Compression.BLOCK_SIZE_KEY));
+        assertEquals(1, optionsMap.get(PackageOptions.Compression.LEVEL_KEY));
+
+        assertRoundTrip(options, AssemblerOptions.class);
+    }
+
+    @Test
+    public void compressionOptionsAreOptional() throws IOException {
+        Map<String, Object> optionsMap = mapper.readValue(OPTIONS_CONFIG, AssemblerOptions.class).asOptionsMap();
+
+        assertFalse(optionsMap.containsKey(PackageOptions.Compression.THREADS_KEY));
+        assertFalse(optionsMap.containsKey(PackageOptions.Compression.BLOCK_SIZE_KEY));
+        assertFalse(optionsMap.containsKey(PackageOptions.Compression.LEVEL_KEY));
+        assertFalse(optionsMap.containsKey(PackageOptions.Compression.STORE_INCOMPRESSIBLE_KEY));
+    }
+
+    @Test
+    public void mapZipCompressionOptions() throws IOException {
+        AssemblerOptions options = mapper.readValue(ZIP_COMPRESSION_OPTIONS_CONFIG, AssemblerOptions.class);
+
+        assertEquals(9, options.getCompressionLevel().intValue());
+        assertFalse(options.getStoreIncompressible());
+
+        Map<String, Object> optionsMap = options.asOptionsMap();
+        assertEquals(9, optionsMap.get(PackageOptions.Compression.LEVEL_KEY));
+        assertEquals(Boolean.FALSE, optionsMap.get(PackageOptions.Compression.STORE_INCOMPRESSIBLE_KEY));
+
+        assertRoundTrip(options, AssemblerOptions.class);
+    }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.config.repository;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class WorkerConfigMappingTest extends AbstractJacksonMappingTest {
+
+    private static final String REPOSITORY_WITH_WORKER_CONFIG_JSON = "" +
+            "{\n" +
+            "    \"transport-config\": {\n" +
+            "      \"protocol-binding\": {\n" +
+            "        \"protocol\": \"SWORDv2\"\n" +
+            "      }\n" +
+            "    },\n" +
+            "\n" +
+            "    \"worker-config\": {\n" +
+            "      \"concurrency\": 2,\n" +
+            "      \"weight\": 3\n" +
+            "    }\n" +
+            "  }";
+
+    @Test
+    public void mapWorkerConfig() throws IOException {
+        RepositoryConfig config = mapper.readValue(REPOSITORY_WITH_WORKER_CONFIG_JSON, RepositoryConfig.class);
+
+        WorkerConfig workerConfig = config.getWorkerConfig();
+        assertNotNull(workerConfig);
+        assertEquals(2, (int) workerConfig.getConcurrency());
+        assertNull(workerConfig.getQueue());
+        assertEquals(3, (int) workerConfig.getWeight());
+    }
+
+    @Test
+    public void mapWorkerConfigFromJsonRoundTrip() throws IOException {
+        RepositoryConfig config = mapper.readValue(REPOSITORY_WITH_WORKER_CONFIG_JSON, RepositoryConfig.class);
+
+        assertRoundTrip(config, RepositoryConfig.class);
+    }
+
+    @Test
+    public void mapWorkerConfigFromJavaRoundTrip() throws IOException {
+        WorkerConfig config = new WorkerConfig();
+        config.setConcurrency(1);
+        config.setQueue(5);
+        config.setWeight(2);
+
+        assertRoundTrip(config, WorkerConfig.class);
+    }
+}
@@ -15,7 +15,6 @@
  */
 package org.dataconservancy.pass.deposit.messaging.policy;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.dataconservancy.pass.deposit.messaging.service.DepositUtil;
 import org.junit.Test;
 
@@ -37,7 +36,7 @@ public class AgentPolicyTest {
     public void denyFromSameUserAgent() throws Exception {
         AgentPolicy agentPolicy = mock(AgentPolicy.class);
         when(agentPolicy.test(any())).thenReturn(false);
-        AgentPolicy underTest = new AgentPolicy(new ObjectMapper(), AGENT_STRING);
+        AgentPolicy underTest = new AgentPolicy(AGENT_STRING);
 
         DepositUtil.MessageContext mc = PolicyTestUtil.withResourceAndEventType(SUBMISSION_RESOURCE, RESOURCE_CREATION, "software-agent-equals.json");
         assertFalse(underTest.test(mc));
@@ -47,7 +46,7 @@ public class AgentPolicyTest {
     public void acceptFromDifferentUserAgent() throws Exception {
         AgentPolicy agentPolicy = mock(AgentPolicy.class);
         when(agentPolicy.test(any())).thenReturn(false);
-        AgentPolicy underTest = new AgentPolicy(new ObjectMapper(), AGENT_STRING);
+        AgentPolicy underTest = new AgentPolicy(AGENT_STRING);
 
         DepositUtil.MessageContext mc = PolicyTestUtil.withResourceAndEventType(SUBMISSION_RESOURCE, RESOURCE_CREATION, "software-agent-not-equal.json");
         assertTrue(underTest.test(mc));
@@ -57,7 +56,7 @@ public class AgentPolicyTest {
     public void acceptAgentMissingName() throws Exception {
         AgentPolicy agentPolicy = mock(AgentPolicy.class);
         when(agentPolicy.test(any())).thenReturn(false);
-        AgentPolicy underTest = new AgentPolicy(new ObjectMapper(), AGENT_STRING);
+        AgentPolicy underTest = new AgentPolicy(AGENT_STRING);
 
         DepositUtil.MessageContext mc = PolicyTestUtil.withResourceAndEventType(SUBMISSION_RESOURCE, RESOURCE_CREATION, "software-agent-missing-name.json");
         assertTrue(underTest.test(mc));
@@ -67,7 +66,7 @@ public class AgentPolicyTest {
     public void acceptAgentMissingObject() throws Exception {
         AgentPolicy agentPolicy = mock(AgentPolicy.class);
         when(agentPolicy.test(any())).thenReturn(false);
-        AgentPolicy underTest = new AgentPolicy(new ObjectMapper(), AGENT_STRING);
+        AgentPolicy underTest = new AgentPolicy(AGENT_STRING);
 
         DepositUtil.MessageContext mc = PolicyTestUtil.withResourceAndEventType(SUBMISSION_RESOURCE, RESOURCE_CREATION, "software-agent-missing-object.json");
         assertTrue(underTest.test(mc));
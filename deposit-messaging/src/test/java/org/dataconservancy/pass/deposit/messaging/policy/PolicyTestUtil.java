@@ -21,8 +21,6 @@ import org.springframework.messaging.Message;
 
 import java.io.IOException;
 import java.time.Instant;
-import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
 import java.util.UUID;
 
 import static org.mockito.Mockito.mock;
@@ -39,25 +37,12 @@ public class PolicyTestUtil {
     @SuppressWarnings({"unchecked", "rawtypes"})
     static DepositUtil.MessageContext withResourceAndEventType(String resourceType, String eventType, String
             messageBodyResource) throws IOException {
-        DepositUtil.MessageContext mc = mock(DepositUtil.MessageContext.class);
-
-        when(mc.eventType()).thenReturn(eventType);
-        when(mc.resourceType()).thenReturn(resourceType);
-
-        Instant now = Instant.now();
-        when(mc.timestamp()).thenReturn(now.toEpochMilli());
-        String formattedNow = DateTimeFormatter.ISO_DATE_TIME.format(now.atZone(ZoneId.of("UTC")));
-        when(mc.dateTime()).thenReturn(formattedNow);
-
-        when(mc.id()).thenReturn(UUID.randomUUID().toString());
-
         Message message = mock(Message.class);
-        when(mc.message()).thenReturn(message);
-
         when(message.getPayload()).thenReturn(
                 IOUtils.toString(
                         SubmissionMessagePolicyTest.class.getResourceAsStream(messageBodyResource), "UTF-8"));
 
-        return mc;
+        return DepositUtil.toMessageContext(resourceType, eventType, Instant.now().toEpochMilli(),
+                UUID.randomUUID().toString(), null, message, null);
     }
 }
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.service;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BulkheadQueueTest {
+
+    private BulkheadQueue underTest;
+
+    @Before
+    public void setUp() throws Exception {
+        underTest = new BulkheadQueue(task -> ((KeyedTask) task).key, 4, 10);
+    }
+
+    /**
+     * A bulkhead at its concurrency does not hand out further tasks until a running task completes, while other
+     * bulkheads are unaffected.
+     */
+    @Test
+    public void concurrencyLimitedPerBulkhead() throws Exception {
+        underTest.configure("sword", 1, 10, 1);
+        underTest.offer(new KeyedTask("sword"));
+        underTest.offer(new KeyedTask("sword"));
+        underTest.offer(new KeyedTask("ftp"));
+
+        Runnable first = underTest.poll();
+        Runnable second = underTest.poll();
+        assertNull(underTest.poll());
+        assertEquals(1, bulkhead("sword").getActiveCount());
+        assertEquals(1, bulkhead("sword").getQueueDepth());
+        assertEquals(1, bulkhead("ftp").getActiveCount());
+
+        // the running sword task completes, freeing its bulkhead
+        (toString(first).equals("sword") ? first : second).run();
+        assertEquals("sword", toString(underTest.poll(1, TimeUnit.SECONDS)));
+        assertEquals(1, bulkhead("sword").getCompletedCount());
+        assertEquals(0, underTest.size());
+    }
+
+    /**
+     * A bulkhead at its capacity refuses further tasks.
+     */
+    @Test
+    public void capacityLimitedPerBulkhead() throws Exception {
+        underTest.configure("sword", 1, 2, 1);
+
+        assertTrue(underTest.offer(new KeyedTask("sword")));
+        assertTrue(underTest.offer(new KeyedTask("sword")));
+        assertFalse(underTest.offer(new KeyedTask("sword")));
+        assertFalse(underTest.offer(new KeyedTask("sword"), 10, TimeUnit.MILLISECONDS));
+        assertTrue(underTest.offer(new KeyedTask("ftp")));
+        assertEquals(3, underTest.size());
+    }
+
+    /**
+     * The saturation of the queue is that of its fullest bulkhead, relative to the capacity of that bulkhead.
+     */
+    @Test
+    public void saturationOfFullestBulkhead() throws Exception {
+        underTest.configure("sword", 1, 2, 1);
+        assertEquals(0, underTest.getSaturation());
+
+        underTest.offer(new KeyedTask("ftp"));
+        underTest.offer(new KeyedTask("ftp"));
+        underTest.offer(new KeyedTask("sword"));
+        assertEquals(50, underTest.getSaturation());
+
+        underTest.offer(new KeyedTask("sword"));
+        assertEquals(100, underTest.getSaturation());
+    }
+
+    /**
+     * Free threads are shared among bulkheads with waiting tasks in proportion to their weight.
+     */
+    @Test
+    public void weightedFairDispatch() throws Exception {
+        underTest.configure("a", 10, 10, 3);
+        underTest.configure("b", 10, 10, 1);
+        for (int i = 0; i < 4; i++) {
+            underTest.offer(new KeyedTask("a"));
+            underTest.offer(new KeyedTask("b"));
+        }
+
+        List<String> order = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            order.add(toString(underTest.poll()));
+        }
+
+        assertEquals(3, order.stream().filter("a"::equals).count());
+        assertEquals(1, order.stream().filter("b"::equals).count());
+    }
+
+    /**
+     * Queued tasks are removed and drained unwrapped.
+     */
+    @Test
+    public void removeAndDrainUnwrapped() throws Exception {
+        KeyedTask removed = new KeyedTask("a");
+        KeyedTask drained = new KeyedTask("b");
+        underTest.offer(removed);
+        underTest.offer(drained);
+
+        assertTrue(underTest.remove(removed));
+        List<Runnable> tasks = new ArrayList<>();
+        assertEquals(1, underTest.drainTo(tasks));
+        assertEquals(drained, tasks.get(0));
+        assertTrue(underTest.isEmpty());
+    }
+
+    /**
+     * An asynchronous task occupies its bulkhead until the work it started completes.
+     */
+    @Test
+    public void asyncTaskCompletesWithItsWork() throws Exception {
+        underTest.configure("sword", 1, 10, 1);
+        AsyncKeyedTask async = new AsyncKeyedTask("sword");
+        underTest.offer(async);
+        underTest.offer(new KeyedTask("sword"));
+
+        underTest.poll().run();
+        assertNull(underTest.poll());
+        assertEquals(1, bulkhead("sword").getActiveCount());
+
+        async.completion.complete(null);
+        assertEquals(0, bulkhead("sword").getActiveCount());
+        assertEquals("sword", toString(underTest.poll()));
+    }
+
+    private BulkheadQueue.Bulkhead bulkhead(String key) {
+        return underTest.getBulkheads().stream().filter(b -> b.getKey().equals(key)).findFirst().get();
+    }
+
+    private static String toString(Runnable task) {
+        return task.toString();
+    }
+
+    private static class KeyedTask implements Runnable {
+
+        private final String key;
+
+        private KeyedTask(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public void run() {
+
+        }
+
+        @Override
+        public String toString() {
+            return key;
+        }
+    }
+
+    private static class AsyncKeyedTask extends KeyedTask implements BulkheadQueue.AsyncTask {
+
+        private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+        private AsyncKeyedTask(String key) {
+            super(key);
+        }
+
+        @Override
+        public CompletableFuture<Void> completion() {
+            return completion;
+        }
+    }
+
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.service;
+
+import org.dataconservancy.deposit.util.async.VirtualThreads;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * A synthetic micro-benchmark of the {@link BulkheadTaskExecutor}, comparing its throughput and resident set size when
+ * its workers are platform threads, and when they are virtual threads.
+ * <p>
+ * No deposits are performed: each task blocks for {@link #IO_MS} milliseconds, standing in for the time a deposit
+ * worker spends waiting on Fedora and a downstream repository, and allocates a small buffer, standing in for a package
+ * being streamed.  The results therefore measure the overhead of the executor and its threads, not the throughput of
+ * the deposit path.  Both modes are given the same per-repository concurrency, so the platform mode runs as many
+ * platform threads as the virtual mode runs virtual threads.
+ * </p>
+ * <p>
+ * The benchmark is not run by the build, and requires a Java runtime supporting virtual threads, and the
+ * {@code /proc} file system to measure the resident set size.  Run it with:
+ * </p>
+ * <pre>
+ * mvn -pl deposit-messaging test -Dtest=BulkheadTaskExecutorBenchmark -DfailIfNoTests=false
+ * </pre>
+ */
+public class BulkheadTaskExecutorBenchmark {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BulkheadTaskExecutorBenchmark.class);
+
+    private static final Path PROC_STATUS = Paths.get("/proc/self/status");
+
+    private static final int REPOSITORIES = 4;
+
+    private static final int CONCURRENCY = Integer.getInteger("benchmark.concurrency", 250);
+
+    private static final int TASKS = Integer.getInteger("benchmark.tasks", 20000);
+
+    private static final long IO_MS = Long.getLong("benchmark.io-ms", 50);
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    @Test
+    public void comparePlatformAndVirtualWorkers() throws Exception {
+        assumeTrue("Virtual threads are not supported by this Java runtime", VirtualThreads.isSupported());
+        assumeTrue("Resident set size is not available", Files.isReadable(PROC_STATUS));
+
+        // warm up, so that the first mode measured does not pay for class loading and JIT compilation
+        run("warm-up", platformThreads(), TASKS / 10);
+
+        Result platform = run("platform", platformThreads(), TASKS);
+        Result virtual = run("virtual", VirtualThreads.factory("Benchmark-Worker-"), TASKS);
+
+        LOG.info("Platform threads: {}", platform);
+        LOG.info("Virtual threads:  {}", virtual);
+        LOG.info("Virtual/platform: throughput {}, peak RSS growth {}",
+                String.format("%.2f", virtual.throughput() / platform.throughput()),
+                String.format("%.2f", (double) virtual.rssGrowthKb / Math.max(1, platform.rssGrowthKb)));
+
+        assertEquals(TASKS, platform.completed);
+        assertEquals(TASKS, virtual.completed);
+    }
+
+    private static Result run(String mode, ThreadFactory threads, int tasks) throws Exception {
+        System.gc();
+        long baselineKb = rssKb();
+
+        BulkheadQueue bulkheads = new BulkheadQueue(task -> ((SimulatedTask) task).repository, CONCURRENCY, tasks);
+        BulkheadTaskExecutor executor = new BulkheadTaskExecutor(bulkheads, REPOSITORIES * CONCURRENCY);
+        executor.setThreadFactory(threads);
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+
+        AtomicInteger completed = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(tasks);
+        long peakKb = baselineKb;
+
+        long start = System.nanoTime();
+        executor.initialize();
+        for (int i = 0; i < tasks; i++) {
+            executor.execute(new SimulatedTask("repository-" + (i % REPOSITORIES), completed, done));
+        }
+        while (!done.await(50, TimeUnit.MILLISECONDS)) {
+            peakKb = Math.max(peakKb, rssKb());
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        peakKb = Math.max(peakKb, rssKb());
+
+        executor.shutdown();
+        assertTrue(executor.getThreadPoolExecutor().awaitTermination(30, TimeUnit.SECONDS));
+
+        Result result = new Result(completed.get(), elapsedMs, peakKb - baselineKb);
+        LOG.debug("Benchmark mode '{}': {}", mode, result);
+        return result;
+    }
+
+    private static ThreadFactory platformThreads() {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> new Thread(r, "Benchmark-Worker-" + counter.getAndIncrement());
+    }
+
+    private static long rssKb() throws IOException {
+        return Files.readAllLines(PROC_STATUS).stream()
+                .filter(line -> line.startsWith("VmRSS:"))
+                .map(line -> Long.parseLong(line.replaceAll("[^0-9]", "")))
+                .findFirst()
+                .orElseThrow(() -> new IOException("VmRSS missing from " + PROC_STATUS));
+    }
+
+    private static class SimulatedTask implements Runnable {
+
+        private final String repository;
+
+        private final AtomicInteger completed;
+
+        private final CountDownLatch done;
+
+        private SimulatedTask(String repository, AtomicInteger completed, CountDownLatch done) {
+            this.repository = repository;
+            this.completed = completed;
+            this.done = done;
+        }
+
+        @Override
+        public void run() {
+            try {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                Thread.sleep(IO_MS);
+                buffer[buffer.length - 1] = 1;
+                completed.incrementAndGet();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                done.countDown();
+            }
+        }
+    }
+
+    private static class Result {
+
+        private final int completed;
+
+        private final long elapsedMs;
+
+        private final long rssGrowthKb;
+
+        private Result(int completed, long elapsedMs, long rssGrowthKb) {
+            this.completed = completed;
+            this.elapsedMs = elapsedMs;
+            this.rssGrowthKb = rssGrowthKb;
+        }
+
+        private double throughput() {
+            return completed * 1000.0 / Math.max(1, elapsedMs);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d tasks in %d ms (%.1f tasks/s), peak RSS growth %d KiB", completed,
+                    elapsedMs, throughput(), rssGrowthKb);
+        }
+    }
+
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DeferredRetryRejectionHandlerTest {
+
+    private final List<Runnable> shutdownRejected = new CopyOnWriteArrayList<>();
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private DeferredRetryRejectionHandler underTest;
+
+    private ThreadPoolExecutor executor;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        release.countDown();
+        underTest.close();
+        executor.shutdownNow();
+    }
+
+    /**
+     * A task submitted to a saturated executor waits for room in the queue, and is executed once there is.
+     */
+    @Test
+    public void submitterBlockedUntilQueued() throws Exception {
+        underTest = new DeferredRetryRejectionHandler(10000, 1000, shutdownRejected::add);
+        executor.setRejectedExecutionHandler(underTest);
+        saturate();
+
+        CountDownLatch executed = new CountDownLatch(1);
+        Thread submitter = new Thread(() -> executor.execute(executed::countDown));
+        submitter.start();
+
+        while (underTest.getWaitingCount() == 0) {
+            Thread.sleep(10);
+        }
+        release.countDown();
+
+        assertTrue(executed.await(10, TimeUnit.SECONDS));
+        submitter.join(10000);
+        assertEquals(1, underTest.getBlockedCount());
+        assertEquals(0, underTest.getDeferredCount());
+        assertEquals(0, underTest.getWaitingCount());
+        assertTrue(shutdownRejected.isEmpty());
+    }
+
+    /**
+     * A task that cannot be queued within the submit timeout is retried later, rather than rejected.
+     */
+    @Test
+    public void taskDeferredAfterTimeout() throws Exception {
+        underTest = new DeferredRetryRejectionHandler(0, 50, shutdownRejected::add);
+        executor.setRejectedExecutionHandler(underTest);
+        saturate();
+
+        CountDownLatch executed = new CountDownLatch(1);
+        executor.execute(executed::countDown);
+
+        assertEquals(1, underTest.getDeferredCount());
+        assertEquals(1, underTest.getWaitingCount());
+
+        Thread.sleep(200);
+        release.countDown();
+
+        assertTrue(executed.await(10, TimeUnit.SECONDS));
+        assertTrue(underTest.getDeferredCount() > 1);
+        assertTrue(shutdownRejected.isEmpty());
+    }
+
+    /**
+     * Tasks rejected by an executor that is shut down, and tasks awaiting a retry when the handler is closed, are
+     * handed to the shutdown handler.
+     */
+    @Test
+    public void shutdownRejectionsHandedOff() throws Exception {
+        underTest = new DeferredRetryRejectionHandler(0, 60000, shutdownRejected::add);
+        executor.setRejectedExecutionHandler(underTest);
+        saturate();
+
+        Runnable deferred = () -> { };
+        executor.execute(deferred);
+        underTest.close();
+        assertEquals(1, shutdownRejected.size());
+        assertEquals(deferred, shutdownRejected.get(0));
+
+        executor.shutdown();
+        Runnable rejected = () -> { };
+        executor.execute(rejected);
+        assertEquals(2, shutdownRejected.size());
+        assertEquals(rejected, shutdownRejected.get(1));
+    }
+
+    /**
+     * Tasks awaiting a retry may be removed from the handler; they are neither retried nor handed to the shutdown
+     * handler.
+     */
+    @Test
+    public void deferredTasksDrained() throws Exception {
+        underTest = new DeferredRetryRejectionHandler(0, 60000, shutdownRejected::add);
+        executor.setRejectedExecutionHandler(underTest);
+        saturate();
+
+        Runnable deferred = () -> { };
+        executor.execute(deferred);
+        List<Runnable> drained = new ArrayList<>();
+
+        assertEquals(1, underTest.drainTo(drained));
+        assertEquals(deferred, drained.get(0));
+        assertEquals(0, underTest.getWaitingCount());
+
+        underTest.close();
+        assertTrue(shutdownRejected.isEmpty());
+    }
+
+    /**
+     * Occupies the only thread of the executor until released, and fills its queue.
+     */
+    private void saturate() {
+        executor.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        executor.execute(() -> { });
+    }
+
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.service;
+
+import org.dataconservancy.pass.model.Deposit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class DepositDrainTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private BulkheadTaskExecutor depositWorkers;
+
+    private DeferredRetryRejectionHandler rejectionHandler;
+
+    private DepositJournal journal;
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws Exception {
+        rejectionHandler = new DeferredRetryRejectionHandler(0, 60000, task -> { });
+        depositWorkers = new BulkheadTaskExecutor(new BulkheadQueue(task -> "default", 1, 1), 1);
+        depositWorkers.setRejectedExecutionHandler(rejectionHandler);
+        depositWorkers.initialize();
+        journal = new DepositJournal(tmp.getRoot().toPath(), 1024 * 1024, 0, false);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        release.countDown();
+        depositWorkers.shutdown();
+        rejectionHandler.close();
+        journal.close();
+    }
+
+    /**
+     * The intake is stopped before the drain waits for the deposits in progress, which finish within the deadline.
+     */
+    @Test
+    public void drainWaitsForDepositsInProgress() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        depositWorkers.execute(() -> {
+            started.countDown();
+            await(release);
+        });
+        started.await(10, TimeUnit.SECONDS);
+
+        AtomicInteger intakeStops = new AtomicInteger();
+        DepositDrain underTest = new DepositDrain(intakeStops::incrementAndGet, depositWorkers,
+                rejectionHandler, journal, 10000);
+
+        Thread drainer = new Thread(underTest::stop);
+        drainer.start();
+        while (underTest.getState() != DepositDrain.State.DRAINING) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, underTest.getProgress().get("inProgress"));
+
+        release.countDown();
+        drainer.join(10000);
+
+        assertEquals(DepositDrain.State.DRAINED, underTest.getState());
+        assertEquals(1, intakeStops.get());
+        assertEquals(1L, underTest.getProgress().get("finished"));
+        assertEquals(DepositDrain.State.DRAINED, underTest.drain());
+        assertEquals(1, intakeStops.get());
+        assertFalse(underTest.isRunning());
+    }
+
+    /**
+     * Deposits still queued when the deadline passes are removed from the pool and recorded in the journal, so that
+     * they resume on the next start.
+     */
+    @Test
+    public void queuedDepositsRecordedWhenDeadlinePasses() throws Exception {
+        depositWorkers.execute(() -> await(release));
+        Deposit deposit = deposit("queued");
+        depositWorkers.execute(task(deposit));
+
+        DepositDrain underTest = new DepositDrain(() -> { }, depositWorkers, rejectionHandler, journal, 100);
+
+        assertEquals(DepositDrain.State.TIMED_OUT, underTest.drain());
+        journal.close();
+
+        assertEquals(1, underTest.getProgress().get("leftOver"));
+        assertEquals(0, underTest.getProgress().get("queued"));
+        assertEquals(DepositJournal.Transition.QUEUED, recovered().get(deposit.getId()));
+    }
+
+    /**
+     * Deposits awaiting a retry of their submission to the deposit workers are waited for like queued deposits, and
+     * are recorded in the journal, rather than failed, when the deadline passes.
+     */
+    @Test
+    public void deferredDepositsRecordedWhenDeadlinePasses() throws Exception {
+        depositWorkers.execute(() -> await(release));
+        Deposit queued = deposit("queued");
+        depositWorkers.execute(task(queued));
+        Deposit deferred = deposit("deferred");
+        depositWorkers.execute(task(deferred));
+        assertEquals(1, rejectionHandler.getWaitingCount());
+
+        DepositDrain underTest = new DepositDrain(() -> { }, depositWorkers, rejectionHandler, journal, 100);
+        assertEquals(1, underTest.getProgress().get("awaitingRetry"));
+
+        assertEquals(DepositDrain.State.TIMED_OUT, underTest.drain());
+        journal.close();
+
+        assertEquals(2, underTest.getProgress().get("leftOver"));
+        assertEquals(0, underTest.getProgress().get("awaitingRetry"));
+        Map<URI, DepositJournal.Transition> recovered = recovered();
+        assertEquals(DepositJournal.Transition.QUEUED, recovered.get(queued.getId()));
+        assertEquals(DepositJournal.Transition.QUEUED, recovered.get(deferred.getId()));
+    }
+
+    private Map<URI, DepositJournal.Transition> recovered() throws Exception {
+        return new DepositJournal(tmp.getRoot().toPath(), 1024 * 1024, 0, false).getRecovered();
+    }
+
+    private static Deposit deposit(String id) {
+        Deposit deposit = new Deposit();
+        deposit.setId(URI.create("http://localhost:8080/fcrepo/rest/deposits/" + id));
+        return deposit;
+    }
+
+    private static DepositTask task(Deposit deposit) {
+        DepositUtil.DepositWorkerContext dc = new DepositUtil.DepositWorkerContext();
+        dc.deposit(deposit);
+        return new DepositTask(dc, null, null, null);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.service;
+
+import org.dataconservancy.pass.model.Deposit;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Collections.emptySet;
+import static java.util.Collections.singleton;
+import static org.junit.Assert.assertEquals;
+
+public class DepositIndexTest {
+
+    private static final URI A = URI.create("http://localhost:8080/fcrepo/rest/deposits/a");
+
+    private static final URI B = URI.create("http://localhost:8080/fcrepo/rest/deposits/b");
+
+    private static final URI C = URI.create("http://localhost:8080/fcrepo/rest/deposits/c");
+
+    private static final long RECHECK_MS = 1000;
+
+    private static final long MAX_RECHECK_MS = 4000;
+
+    private static final long RECONCILE_MS = 100000;
+
+    private final AtomicLong clock = new AtomicLong(1);
+
+    private Collection<URI> indexed;
+
+    private DepositIndex underTest;
+
+    @Before
+    public void setUp() throws Exception {
+        indexed = new HashSet<>(Arrays.asList(A, B));
+        underTest = new DepositIndex(() -> indexed, RECHECK_MS, MAX_RECHECK_MS, RECONCILE_MS, clock::get);
+    }
+
+    /**
+     * Every deposit found by the first reconciliation is due, and is not due again until the recheck interval has
+     * passed.
+     */
+    @Test
+    public void reconciledDepositsDueUntilChecked() throws Exception {
+        assertEquals(new HashSet<>(Arrays.asList(A, B)), new HashSet<>(underTest.due()));
+        assertEquals(emptySet(), new HashSet<>(underTest.due()));
+
+        clock.addAndGet(RECHECK_MS);
+
+        assertEquals(new HashSet<>(Arrays.asList(A, B)), new HashSet<>(underTest.due()));
+        assertEquals(1, underTest.getReconciliationCount());
+    }
+
+    /**
+     * New deposits and deposits whose status changes are due immediately; deposits whose status is unchanged keep
+     * their schedule, and deposits that leave an intermediate status are removed.
+     */
+    @Test
+    public void observedDepositsDueWhenNewOrChanged() throws Exception {
+        underTest.observe(deposit(A, Deposit.DepositStatus.SUBMITTED));
+        underTest.observe(deposit(B, Deposit.DepositStatus.SUBMITTED));
+        underTest.due();
+
+        underTest.observe(deposit(A, Deposit.DepositStatus.SUBMITTED));
+        underTest.observe(deposit(B, Deposit.DepositStatus.FAILED));
+        underTest.observe(deposit(C, Deposit.DepositStatus.SUBMITTED));
+        assertEquals(new HashSet<>(Arrays.asList(B, C)), new HashSet<>(underTest.due()));
+
+        underTest.observe(deposit(C, Deposit.DepositStatus.ACCEPTED));
+        assertEquals(2, underTest.size());
+    }
+
+    /**
+     * A reconciliation adds the deposits whose messages were missed, and removes those the PASS index no longer
+     * answers.
+     */
+    @Test
+    public void reconciliationAddsAndRemovesDeposits() throws Exception {
+        underTest.due();
+
+        indexed = singleton(C);
+        clock.addAndGet(RECONCILE_MS);
+
+        assertEquals(singleton(C), new HashSet<>(underTest.due()));
+        assertEquals(1, underTest.size());
+        assertEquals(2, underTest.getReconciliationCount());
+    }
+
+    /**
+     * The recheck interval of a deposit doubles each time it is answered with its status unchanged, up to the maximum,
+     * and is reset when its status changes.
+     */
+    @Test
+    public void recheckIntervalBacksOffUntilStatusChanges() throws Exception {
+        indexed = singleton(A);
+        underTest.observe(deposit(A, Deposit.DepositStatus.SUBMITTED));
+
+        long[] expectedIntervals = {RECHECK_MS, 2 * RECHECK_MS, MAX_RECHECK_MS, MAX_RECHECK_MS};
+        for (long interval : expectedIntervals) {
+            assertEquals(singleton(A), new HashSet<>(underTest.due()));
+            assertEquals(clock.get() + interval, underTest.getDueAt(A));
+
+            clock.addAndGet(interval - 1);
+            assertEquals(emptySet(), new HashSet<>(underTest.due()));
+            clock.incrementAndGet();
+        }
+
+        underTest.observe(deposit(A, Deposit.DepositStatus.FAILED));
+        assertEquals(singleton(A), new HashSet<>(underTest.due()));
+        assertEquals(clock.get() + RECHECK_MS, underTest.getDueAt(A));
+    }
+
+    private static Deposit deposit(URI uri, Deposit.DepositStatus status) {
+        Deposit deposit = new Deposit();
+        deposit.setId(uri);
+        deposit.setDepositStatus(status);
+        return deposit;
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.service;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+import static org.dataconservancy.pass.deposit.messaging.service.DepositJournal.Transition.COMPLETED;
+import static org.dataconservancy.pass.deposit.messaging.service.DepositJournal.Transition.FAILED;
+import static org.dataconservancy.pass.deposit.messaging.service.DepositJournal.Transition.STARTED;
+import static org.dataconservancy.pass.deposit.messaging.service.DepositJournal.Transition.TRANSPORTED;
+import static org.dataconservancy.pass.deposit.messaging.service.DepositJournal.Transition.TRANSPORTING;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DepositJournalTest {
+
+    private static final URI A = URI.create("http://localhost:8080/fcrepo/rest/deposits/a");
+
+    private static final URI B = URI.create("http://localhost:8080/fcrepo/rest/deposits/b");
+
+    private static final URI C = URI.create("http://localhost:8080/fcrepo/rest/deposits/c");
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /**
+     * Deposits whose last transition is not final are recovered, with their last transition, when the journal is
+     * opened again.
+     */
+    @Test
+    public void unfinishedDepositsRecovered() throws Exception {
+        DepositJournal underTest = new DepositJournal(tmp.getRoot().toPath(), 1024 * 1024, 0, false);
+        underTest.record(A, STARTED);
+        underTest.record(B, STARTED);
+        underTest.record(A, TRANSPORTING);
+        underTest.record(C, STARTED);
+        underTest.record(A, COMPLETED);
+        underTest.record(B, TRANSPORTING);
+        underTest.record(C, FAILED);
+        underTest.close();
+
+        Map<URI, DepositJournal.Transition> recovered = reopen().getRecovered();
+
+        assertEquals(1, recovered.size());
+        assertEquals(TRANSPORTING, recovered.get(B));
+    }
+
+    /**
+     * A line left incomplete by the death of the process is ignored.
+     */
+    @Test
+    public void incompleteLineIgnored() throws Exception {
+        DepositJournal underTest = new DepositJournal(tmp.getRoot().toPath(), 1024 * 1024, 0, false);
+        underTest.record(A, STARTED);
+        underTest.close();
+
+        Path segment = Files.list(tmp.getRoot().toPath()).findFirst().get();
+        Files.write(segment, "COMPLETED 1546300800000 http://localhost:8080/fcrepo/rest/deposits/a 1f"
+                .getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        assertEquals(STARTED, reopen().getRecovered().get(A));
+    }
+
+    /**
+     * Compaction replaces the sealed segments with a single segment holding the unfinished deposits.
+     */
+    @Test
+    public void compactionReplacesSealedSegments() throws Exception {
+        DepositJournal underTest = new DepositJournal(tmp.getRoot().toPath(), 128, 0, false);
+        underTest.record(A, STARTED);
+        underTest.record(B, STARTED);
+        underTest.record(C, STARTED);
+        underTest.record(A, TRANSPORTING);
+        underTest.record(A, TRANSPORTED);
+        underTest.record(B, COMPLETED);
+        assertTrue(underTest.getSegmentCount() > 2);
+
+        underTest.compact();
+        underTest.record(C, FAILED);
+        underTest.close();
+
+        assertEquals(2, underTest.getSegmentCount());
+        assertEquals(1, underTest.getCompactionCount());
+
+        Map<URI, DepositJournal.Transition> recovered = reopen().getRecovered();
+        assertEquals(1, recovered.size());
+        assertEquals(TRANSPORTED, recovered.get(A));
+    }
+
+    private DepositJournal reopen() throws Exception {
+        return new DepositJournal(tmp.getRoot().toPath(), 1024 * 1024, 0, false);
+    }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.dataconservancy.pass.deposit.messaging.service.DepositPipeline.Stage.FEDORA_IO;
+import static org.dataconservancy.pass.deposit.messaging.service.DepositPipeline.Stage.PACKAGING;
+import static org.dataconservancy.pass.deposit.messaging.service.DepositPipeline.Stage.TRANSPORT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DepositPipelineTest {
+
+    private ExecutorService fedoraIo;
+
+    private ExecutorService packaging;
+
+    private ExecutorService transport;
+
+    private List<Throwable> errors;
+
+    private DepositPipeline underTest;
+
+    @Before
+    public void setUp() throws Exception {
+        fedoraIo = Executors.newSingleThreadExecutor(r -> new Thread(r, "fedora"));
+        packaging = Executors.newSingleThreadExecutor(r -> new Thread(r, "packaging"));
+        transport = Executors.newSingleThreadExecutor(r -> new Thread(r, "transport"));
+        errors = new CopyOnWriteArrayList<>();
+        underTest = new DepositPipeline(fedoraIo, packaging, transport, errors::add);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        underTest.close();
+    }
+
+    /**
+     * Each stage runs on the executor of its kind of work, and its latency is recorded in the histogram of the stage.
+     */
+    @Test
+    public void testStagesRunOnTheirExecutors() throws Exception {
+        CompletableFuture<String> result = underTest.start(FEDORA_IO, () -> Thread.currentThread().getName())
+                .thenCompose(underTest.then(PACKAGING, (String s) -> s + "," + Thread.currentThread().getName()))
+                .thenCompose(underTest.then(TRANSPORT, (String s) -> s + "," + Thread.currentThread().getName()));
+
+        assertEquals("fedora,packaging,transport", result.get(10, TimeUnit.SECONDS));
+        assertEquals(1, underTest.getHistogram(FEDORA_IO).getCount());
+        assertEquals(1, underTest.getHistogram(PACKAGING).getCount());
+        assertEquals(1, underTest.getHistogram(TRANSPORT).getCount());
+        assertEquals(1, underTest.getInFlightCount());
+
+        underTest.completed(null, null);
+        assertEquals(0, underTest.getInFlightCount());
+        assertTrue(errors.isEmpty());
+    }
+
+    /**
+     * The exception failing a stage is handed to the error handler, unwrapped, when the deposit completes.
+     */
+    @Test
+    public void testFailedStageHandledOnCompletion() throws Exception {
+        RuntimeException expected = new RuntimeException("Assembly failed");
+        CompletableFuture<Object> result = underTest.start(FEDORA_IO, () -> true)
+                .thenCompose(underTest.then(PACKAGING, (Boolean ignored) -> {
+                    throw expected;
+                }));
+
+        try {
+            result.get(10, TimeUnit.SECONDS);
+            fail("Expected the stage to fail");
+        } catch (ExecutionException e) {
+            assertSame(expected, e.getCause());
+        }
+
+        result.whenComplete((r, t) -> underTest.completed(null, t));
+
+        assertEquals(1, errors.size());
+        assertSame(expected, errors.get(0));
+        assertEquals(1, underTest.getHistogram(PACKAGING).getCount());
+    }
+
+    /**
+     * Closing the pipeline waits for deposits in flight to complete.
+     */
+    @Test
+    public void testCloseWaitsForDepositsInFlight() throws Exception {
+        CompletableFuture<Void> result = underTest.start(FEDORA_IO, () -> sleep(200))
+                .thenCompose(underTest.then(TRANSPORT, (Void ignored) -> sleep(200)));
+        result.whenComplete((r, t) -> underTest.completed(null, t));
+
+        underTest.close();
+
+        assertTrue(result.isDone());
+        assertEquals(0, underTest.getInFlightCount());
+        assertTrue(fedoraIo.isShutdown() && packaging.isShutdown() && transport.isShutdown());
+    }
+
+    private static Void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.service;
+
+import org.dataconservancy.pass.client.PassClient;
+import org.dataconservancy.pass.deposit.builder.SubmissionBuilder;
+import org.dataconservancy.pass.deposit.messaging.DepositServiceRuntimeException;
+import org.dataconservancy.pass.deposit.messaging.model.Packager;
+import org.dataconservancy.pass.deposit.messaging.model.Registry;
+import org.dataconservancy.pass.deposit.messaging.policy.Policy;
+import org.dataconservancy.pass.deposit.model.DepositSubmission;
+import org.dataconservancy.pass.model.Deposit;
+import org.dataconservancy.pass.model.Repository;
+import org.dataconservancy.pass.model.Submission;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.dataconservancy.pass.deposit.messaging.service.DepositJournal.Transition.COMPLETED;
+import static org.dataconservancy.pass.deposit.messaging.service.DepositJournal.Transition.FAILED;
+import static org.dataconservancy.pass.deposit.messaging.service.DepositJournal.Transition.QUEUED;
+import static org.dataconservancy.pass.deposit.messaging.service.DepositJournal.Transition.TRANSPORTING;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DepositRecoveryTest {
+
+    private static final URI DEPOSIT = URI.create("http://localhost:8080/fcrepo/rest/deposits/a");
+
+    private static final URI SUBMISSION = URI.create("http://localhost:8080/fcrepo/rest/submissions/a");
+
+    private static final URI REPOSITORY = URI.create("http://localhost:8080/fcrepo/rest/repositories/js");
+
+    private DepositJournal journal;
+
+    private PassClient passClient;
+
+    private SubmissionBuilder submissionBuilder;
+
+    private Registry<Packager> packagerRegistry;
+
+    private DepositTaskHelper depositTaskHelper;
+
+    private Policy<Deposit.DepositStatus> intermediateDepositStatusPolicy;
+
+    private List<Throwable> errors;
+
+    private Deposit deposit;
+
+    private Submission submission;
+
+    private Repository repository;
+
+    private DepositRecovery underTest;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        journal = mock(DepositJournal.class);
+        passClient = mock(PassClient.class);
+        submissionBuilder = mock(SubmissionBuilder.class);
+        packagerRegistry = mock(Registry.class);
+        depositTaskHelper = mock(DepositTaskHelper.class);
+        intermediateDepositStatusPolicy = mock(Policy.class);
+        errors = new ArrayList<>();
+
+        deposit = new Deposit();
+        deposit.setId(DEPOSIT);
+        deposit.setSubmission(SUBMISSION);
+        deposit.setRepository(REPOSITORY);
+
+        submission = new Submission();
+        submission.setId(SUBMISSION);
+
+        repository = new Repository();
+        repository.setId(REPOSITORY);
+        repository.setName("JScholarship");
+        repository.setRepositoryKey("js");
+
+        when(passClient.readResource(DEPOSIT, Deposit.class)).thenReturn(deposit);
+        when(passClient.readResource(SUBMISSION, Submission.class)).thenReturn(submission);
+        when(passClient.readResource(REPOSITORY, Repository.class)).thenReturn(repository);
+        when(intermediateDepositStatusPolicy.test(any())).thenReturn(true);
+
+        underTest = new DepositRecovery(journal, passClient, submissionBuilder, packagerRegistry, depositTaskHelper,
+                intermediateDepositStatusPolicy, errors::add);
+    }
+
+    /**
+     * A deposit whose package was never sent is submitted again, with the Packager found by the repository key when
+     * no Packager is registered under the name of the Repository.
+     */
+    @Test
+    public void queuedDepositResumedWithPackagerLookedUpByKey() throws Exception {
+        recovered(QUEUED);
+        Packager packager = mock(Packager.class);
+        when(packagerRegistry.get("js")).thenReturn(packager);
+        DepositSubmission depositSubmission = new DepositSubmission();
+        when(submissionBuilder.build(SUBMISSION.toString())).thenReturn(depositSubmission);
+
+        underTest.recover();
+
+        verify(depositTaskHelper).submitDeposit(submission, depositSubmission, repository, deposit, packager);
+        verify(journal, never()).record(DEPOSIT, FAILED);
+        assertTrue(errors.isEmpty());
+    }
+
+    /**
+     * A deposit whose package may have been received by the repository is failed, rather than sent again.
+     */
+    @Test
+    public void transportingDepositFailed() throws Exception {
+        recovered(TRANSPORTING);
+
+        underTest.recover();
+
+        verify(journal).record(DEPOSIT, FAILED);
+        verify(depositTaskHelper, never()).submitDeposit(any(), any(), any(), any(), any());
+        assertEquals(1, errors.size());
+        assertSame(deposit, ((DepositServiceRuntimeException) errors.get(0)).getResource());
+    }
+
+    /**
+     * A deposit that has since reached a terminal status is recorded as finished, and left alone.
+     */
+    @Test
+    public void terminalDepositRecordedAsFinished() throws Exception {
+        recovered(QUEUED);
+        deposit.setDepositStatus(Deposit.DepositStatus.ACCEPTED);
+        when(intermediateDepositStatusPolicy.test(Deposit.DepositStatus.ACCEPTED)).thenReturn(false);
+
+        underTest.recover();
+
+        verify(journal).record(DEPOSIT, COMPLETED);
+        verify(depositTaskHelper, never()).submitDeposit(any(), any(), any(), any(), any());
+        assertTrue(errors.isEmpty());
+    }
+
+    /**
+     * A deposit whose Repository has no Packager under any of its lookup keys is failed.
+     */
+    @Test
+    public void missingPackagerFailsDeposit() throws Exception {
+        recovered(QUEUED);
+        when(packagerRegistry.get(anyString())).thenReturn(null);
+
+        underTest.recover();
+
+        verify(journal).record(DEPOSIT, FAILED);
+        verify(depositTaskHelper, never()).submitDeposit(any(), any(), any(), any(), any());
+        assertEquals(1, errors.size());
+    }
+
+    /**
+     * A deposit that cannot be read is left unfinished, to be recovered again on the next start.
+     */
+    @Test
+    public void unreadableDepositLeftUnfinished() throws Exception {
+        recovered(QUEUED);
+        when(passClient.readResource(DEPOSIT, Deposit.class)).thenThrow(new RuntimeException("Fedora is down"));
+
+        underTest.recover();
+
+        verify(journal, never()).record(any(), any());
+        assertTrue(errors.isEmpty());
+    }
+
+    private void recovered(DepositJournal.Transition transition) {
+        when(journal.getRecovered()).thenReturn(Collections.singletonMap(DEPOSIT, transition));
+    }
+
+}
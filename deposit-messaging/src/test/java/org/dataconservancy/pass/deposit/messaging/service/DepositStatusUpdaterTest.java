@@ -0,0 +1,102 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class DepositStatusUpdaterTest {
+
+    private static final int DEPOSITS = 4;
+
+    private DepositTaskHelper depositHelper;
+
+    private DepositStatusUpdater underTest;
+
+    private List<URI> depositUris;
+
+    @Before
+    public void setUp() throws Exception {
+        depositHelper = mock(DepositTaskHelper.class);
+        underTest = new DepositStatusUpdater(depositHelper, Executors.newFixedThreadPool(DEPOSITS), 10);
+        depositUris = new ArrayList<>();
+        for (int i = 0; i < DEPOSITS; i++) {
+            depositUris.add(URI.create("http://localhost:8080/fcrepo/rest/deposits/" + i));
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        underTest.close();
+    }
+
+    /**
+     * Deposits are updated at once, up to the size of the pool.
+     */
+    @Test
+    public void depositsUpdatedInParallel() throws Exception {
+        CountDownLatch allStarted = new CountDownLatch(DEPOSITS);
+        doAnswer(inv -> {
+            allStarted.countDown();
+            assertTrue(allStarted.await(10, TimeUnit.SECONDS));
+            return null;
+        }).when(depositHelper).processDepositStatus(any());
+
+        DepositStatusUpdater.Result result = underTest.update(depositUris, (uri, e) -> { });
+
+        assertEquals(DEPOSITS, result.getTotal());
+        assertEquals(DEPOSITS, result.getFinished());
+        assertEquals(0, result.getFailed());
+        depositUris.forEach(uri -> verify(depositHelper).processDepositStatus(uri));
+    }
+
+    /**
+     * A failed update is handed to the error handler, and the other deposits are still updated.
+     */
+    @Test
+    public void failedUpdateHandled() throws Exception {
+        RuntimeException failure = new RuntimeException("Expected exception");
+        doThrow(failure).when(depositHelper).processDepositStatus(eq(depositUris.get(1)));
+        Map<URI, Exception> failures = new ConcurrentHashMap<>();
+
+        DepositStatusUpdater.Result result = underTest.update(depositUris, failures::put);
+
+        assertEquals(DEPOSITS, result.getFinished());
+        assertEquals(1, result.getFailed());
+        assertEquals(failure, failures.get(depositUris.get(1)));
+        assertEquals(1, failures.size());
+    }
+
+}
@@ -40,6 +40,7 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.springframework.core.task.TaskExecutor;
 
 import java.net.URI;
@@ -57,6 +58,8 @@ import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
@@ -151,6 +154,44 @@ public class DepositTaskHelperTest {
         assertEquals(replacement, depositTask.getReplacementPrefix());
     }
 
+    /**
+     * A deposit is journaled as queued before its task is handed to the task executor, so that it is recovered should
+     * the process die before the task starts.
+     */
+    @Test
+    public void submittedDepositJournaledAsQueued() throws Exception {
+        URI depositUri = randomUri();
+        when(d.getId()).thenReturn(depositUri);
+        DepositJournal journal = mock(DepositJournal.class);
+        underTest.setDepositJournal(journal);
+
+        underTest.submitDeposit(s, ds, r, d, p);
+
+        InOrder submission = inOrder(journal, taskExecutor);
+        submission.verify(journal).record(depositUri, DepositJournal.Transition.QUEUED);
+        submission.verify(taskExecutor).execute(any(DepositTask.class));
+    }
+
+    /**
+     * A deposit whose task cannot be submitted is journaled as failed.
+     */
+    @Test
+    public void rejectedDepositJournaledAsFailed() throws Exception {
+        URI depositUri = randomUri();
+        when(d.getId()).thenReturn(depositUri);
+        DepositJournal journal = mock(DepositJournal.class);
+        underTest.setDepositJournal(journal);
+        doThrow(new RuntimeException("Rejected")).when(taskExecutor).execute(any());
+
+        try {
+            underTest.submitDeposit(s, ds, r, d, p);
+        } catch (DepositServiceRuntimeException e) {
+            // expected
+        }
+
+        verify(journal).record(depositUri, DepositJournal.Transition.FAILED);
+    }
+
     @Test
     public void lookupRepositoryConfigByKey() {
         String key = "repoKey";
@@ -18,7 +18,9 @@ package org.dataconservancy.pass.deposit.messaging.service;
 import org.apache.abdera.i18n.iri.IRI;
 import org.dataconservancy.pass.client.PassClient;
 import org.dataconservancy.pass.deposit.assembler.Assembler;
+import org.dataconservancy.pass.deposit.assembler.PackageOptions;
 import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.dataconservancy.pass.deposit.messaging.DepositServiceRuntimeException;
 import org.dataconservancy.pass.deposit.messaging.model.Packager;
 import org.dataconservancy.pass.deposit.messaging.policy.Policy;
 import org.dataconservancy.pass.deposit.transport.Transport;
@@ -34,22 +36,40 @@ import org.dataconservancy.pass.support.messaging.cri.DefaultConflictHandler;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.swordapp.client.DepositReceipt;
 import org.swordapp.client.SWORDClientException;
 import org.swordapp.client.SwordIdentifier;
 
 import java.net.URI;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static org.dataconservancy.pass.deposit.messaging.DepositMessagingTestUtil.randomIntermediateDepositStatus;
 import static org.dataconservancy.pass.deposit.messaging.DepositMessagingTestUtil.randomUri;
+import static org.dataconservancy.pass.deposit.messaging.service.DepositJournal.Transition.COMPLETED;
+import static org.dataconservancy.pass.deposit.messaging.service.DepositJournal.Transition.STARTED;
+import static org.dataconservancy.pass.deposit.messaging.service.DepositJournal.Transition.TRANSPORTED;
+import static org.dataconservancy.pass.deposit.messaging.service.DepositJournal.Transition.TRANSPORTING;
+import static org.dataconservancy.pass.model.Deposit.DepositStatus.SUBMITTED;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyMap;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -164,6 +184,132 @@ public class DepositTaskTest {
         assertEquals(href, d.getDepositStatusRef());
     }
 
+    /**
+     * A deposit performed in the stages of a pipeline records the same outcome as one performed on the thread running
+     * the task.
+     */
+    @Test
+    public void pipelineDepositRecordsOutcome() throws Exception {
+        when(intermediateDepositStatusPolicy.test(any())).thenReturn(true);
+        String href = "http://baz";
+
+        SwordIdentifier dspaceItem = mock(SwordIdentifier.class);
+        when(dspaceItem.getHref()).thenReturn(randomUri().toString());
+
+        DepositReceipt dr = mock(DepositReceipt.class);
+        Sword2DepositReceiptResponse tr = new Sword2DepositReceiptResponse(dr);
+        when(dr.getStatusCode()).thenReturn(200);
+        when(dr.getSplashPageLink()).thenReturn(dspaceItem);
+        when(dr.getAtomStatementLink()).thenReturn(identifierFor(href));
+
+        Deposit d = depositContext(dc, tr, passClient);
+
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+        DepositPipeline pipeline = pipeline(errors);
+        underTest.setPipeline(pipeline);
+
+        underTest.run();
+        underTest.completion().get(10, TimeUnit.SECONDS);
+        pipeline.close();
+
+        assertEquals(href, d.getDepositStatusRef());
+        assertEquals(SUBMITTED, d.getDepositStatus());
+        assertTrue(errors.isEmpty());
+        assertEquals(1, pipeline.getHistogram(DepositPipeline.Stage.PACKAGING).getCount());
+        assertEquals(1, pipeline.getHistogram(DepositPipeline.Stage.TRANSPORT).getCount());
+        assertEquals(2, pipeline.getHistogram(DepositPipeline.Stage.FEDORA_IO).getCount());
+    }
+
+    /**
+     * The packaging stage of a pipeline builds the package in its entirety, by assembling it with the FILE buffer and
+     * reading its metadata, before the package is handed to the transport stage.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void pipelinePackagingSpoolsPackage() throws Exception {
+        when(intermediateDepositStatusPolicy.test(any())).thenReturn(true);
+        TransportResponse tr = mock(TransportResponse.class);
+        when(tr.success()).thenReturn(true);
+        depositContext(dc, tr, passClient);
+        Assembler assembler = dc.packager().getAssembler();
+        PackageStream stream = assembler.assemble(null, new HashMap<>());
+        clearInvocations(assembler);
+
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+        DepositPipeline pipeline = pipeline(errors);
+        underTest.setPipeline(pipeline);
+
+        underTest.run();
+        underTest.completion().get(10, TimeUnit.SECONDS);
+        pipeline.close();
+
+        ArgumentCaptor<Map<String, Object>> options = ArgumentCaptor.forClass(Map.class);
+        verify(assembler).assemble(any(), options.capture());
+        assertEquals(PackageOptions.Buffer.OPTS.FILE, options.getValue().get(PackageOptions.Buffer.KEY));
+
+        InOrder packaging = inOrder(stream, dc.packager().getTransport());
+        packaging.verify(stream).metadata();
+        packaging.verify(dc.packager().getTransport()).open(anyMap());
+        assertTrue(errors.isEmpty());
+    }
+
+    /**
+     * A package that fails to be assembled by the pipeline fails the deposit within the critical interaction, and the
+     * failure is handed to the error handler with the Deposit.
+     */
+    @Test
+    public void pipelineAssemblyFailureHandled() throws Exception {
+        when(intermediateDepositStatusPolicy.test(any())).thenReturn(true);
+        Deposit d = depositContext(dc, mock(TransportResponse.class), passClient);
+        RuntimeException expected = new RuntimeException("Assembly failed");
+        when(dc.packager().getAssembler().assemble(any(), anyMap())).thenThrow(expected);
+
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+        DepositPipeline pipeline = pipeline(errors);
+        underTest.setPipeline(pipeline);
+
+        underTest.run();
+        try {
+            underTest.completion().get(10, TimeUnit.SECONDS);
+            fail("Expected the deposit to fail");
+        } catch (ExecutionException e) {
+            // expected
+        }
+        pipeline.close();
+
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0) instanceof DepositServiceRuntimeException);
+        assertSame(expected, errors.get(0).getCause());
+        assertEquals(d, ((DepositServiceRuntimeException) errors.get(0)).getResource());
+    }
+
+    /**
+     * The transitions of a deposit are recorded in the journal, in order.
+     */
+    @Test
+    public void journalRecordsTransitions() throws Exception {
+        when(intermediateDepositStatusPolicy.test(any())).thenReturn(true);
+        TransportResponse tr = mock(TransportResponse.class);
+        when(tr.success()).thenReturn(true);
+        Deposit d = depositContext(dc, tr, passClient);
+
+        DepositJournal journal = mock(DepositJournal.class);
+        underTest.setJournal(journal);
+
+        underTest.run();
+
+        InOrder transitions = inOrder(journal);
+        transitions.verify(journal).record(d.getId(), STARTED);
+        transitions.verify(journal).record(d.getId(), TRANSPORTING);
+        transitions.verify(journal).record(d.getId(), TRANSPORTED);
+        transitions.verify(journal).record(d.getId(), COMPLETED);
+    }
+
+    private static DepositPipeline pipeline(List<Throwable> errors) {
+        return new DepositPipeline(Executors.newSingleThreadExecutor(), Executors.newSingleThreadExecutor(),
+                Executors.newSingleThreadExecutor(), errors::add);
+    }
+
     /**
      * Populates the supplied {@code depositContext} with a {@code Repository}, {@code Submission} and
      * {@code Deposit}.
@@ -38,9 +38,7 @@ public class DepositUtilTest {
 
     @Test
     public void testIsMessageA() {
-        DepositUtil.MessageContext mc = mock(DepositUtil.MessageContext.class);
-        when(mc.eventType()).thenReturn("event");
-        when(mc.resourceType()).thenReturn("resource");
+        DepositUtil.MessageContext mc = DepositUtil.toMessageContext("resource", "event", 0, "id", null, null, null);
 
         assertTrue(DepositUtil.isMessageA("event", "resource", mc));
         assertFalse(DepositUtil.isMessageA("event", "foo", mc));
@@ -49,15 +47,24 @@ public class DepositUtilTest {
 
     @Test
     public void testIsMessageAMultiValued() throws Exception {
-        DepositUtil.MessageContext mc = mock(DepositUtil.MessageContext.class);
-        when(mc.eventType()).thenReturn("event1,event2");
-        when(mc.resourceType()).thenReturn("resource1,resource2,resource3");
+        DepositUtil.MessageContext mc = DepositUtil.toMessageContext("resource1,resource2,resource3",
+                "event1,event2", 0, "id", null, null, null);
 
         assertTrue(DepositUtil.isMessageA("event1", "resource3", mc));
         assertFalse(DepositUtil.isMessageA("event2", "foo", mc));
         assertFalse(DepositUtil.isMessageA("even1", "resource2", mc));
     }
 
+    @Test
+    public void testIsMessageAMultiValuedWithWhitespace() throws Exception {
+        DepositUtil.MessageContext mc = DepositUtil.toMessageContext("resource1, resource2,resource3",
+                "event1, event2", 0, "id", null, null, null);
+
+        assertTrue(DepositUtil.isMessageA("event2", "resource2", mc));
+        assertTrue(DepositUtil.isMessageA("event1", "resource3", mc));
+        assertFalse(DepositUtil.isMessageA("event2", " resource2", mc));
+    }
+
     @Test
     public void testContains() throws Exception {
         assertTrue(DepositUtil.csvStringContains("event", "event"));
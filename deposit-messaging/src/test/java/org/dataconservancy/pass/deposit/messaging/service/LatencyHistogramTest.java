@@ -0,0 +1,73 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.service;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class LatencyHistogramTest {
+
+    /**
+     * Percentiles are answered as the upper bound of the bucket holding them, and never exceed the maximum.
+     */
+    @Test
+    public void testPercentiles() throws Exception {
+        LatencyHistogram underTest = new LatencyHistogram("test");
+        for (int i = 0; i < 90; i++) {
+            underTest.record(TimeUnit.MILLISECONDS.toNanos(3));
+        }
+        for (int i = 0; i < 10; i++) {
+            underTest.record(TimeUnit.MILLISECONDS.toNanos(150));
+        }
+
+        assertEquals(100, underTest.getCount());
+        assertEquals(5, underTest.getPercentileMs(50));
+        assertEquals(5, underTest.getPercentileMs(90));
+        assertEquals(150, underTest.getPercentileMs(99));
+        assertEquals(150, underTest.getMaxMs());
+        assertEquals(17, underTest.getMeanMs());
+        assertEquals(Long.valueOf(90), underTest.getBuckets().get(5L));
+        assertEquals(Long.valueOf(10), underTest.getBuckets().get(200L));
+    }
+
+    /**
+     * Latencies beyond the last bucket are answered as the maximum.
+     */
+    @Test
+    public void testLatencyBeyondLastBucket() throws Exception {
+        LatencyHistogram underTest = new LatencyHistogram("test");
+        underTest.record(TimeUnit.MINUTES.toNanos(10));
+
+        assertEquals(TimeUnit.MINUTES.toMillis(10), underTest.getPercentileMs(50));
+        assertEquals(Long.valueOf(1), underTest.getBuckets().get(Long.MAX_VALUE));
+    }
+
+    /**
+     * An empty histogram answers zero.
+     */
+    @Test
+    public void testEmptyHistogram() throws Exception {
+        LatencyHistogram underTest = new LatencyHistogram("test");
+
+        assertEquals(0, underTest.getCount());
+        assertEquals(0, underTest.getMeanMs());
+        assertEquals(0, underTest.getPercentileMs(99));
+    }
+
+}
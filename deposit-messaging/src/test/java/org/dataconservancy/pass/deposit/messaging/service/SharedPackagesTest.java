@@ -0,0 +1,189 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.service;
+
+import org.dataconservancy.pass.deposit.assembler.Assembler;
+import org.dataconservancy.pass.deposit.assembler.PackageOptions;
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.dataconservancy.pass.deposit.messaging.model.Packager;
+import org.dataconservancy.pass.deposit.model.DepositSubmission;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SharedPackagesTest {
+
+    private SharedPackages underTest;
+
+    private Assembler assembler;
+
+    private PackageStream packageStream;
+
+    private DepositSubmission depositSubmission;
+
+    @Before
+    public void setUp() throws Exception {
+        underTest = new SharedPackages();
+        assembler = mock(Assembler.class);
+        packageStream = mock(PackageStream.class);
+        depositSubmission = new DepositSubmission();
+        when(assembler.assemble(any(), anyMap())).thenReturn(packageStream);
+    }
+
+    /**
+     * Deposits of the same submission with equal assembler options share a package spooled to a file, which is closed
+     * when the last share is released.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void sharedPackageAssembledOnce() throws Exception {
+        SharedPackages.Share first = underTest.reserve(depositSubmission, packager(options()));
+        SharedPackages.Share second = underTest.reserve(depositSubmission, packager(options()));
+
+        PackageStream firstStream = first.open();
+        PackageStream secondStream = second.open();
+
+        ArgumentCaptor<Map<String, Object>> options = ArgumentCaptor.forClass(Map.class);
+        verify(assembler).assemble(eq(depositSubmission), options.capture());
+        assertEquals(PackageOptions.Buffer.OPTS.FILE, options.getValue().get(PackageOptions.Buffer.KEY));
+        assertEquals(1, underTest.getAssembledCount());
+        assertEquals(1, underTest.getSharedCount());
+
+        firstStream.close();
+        verify(packageStream, never()).close();
+
+        secondStream.close();
+        verify(packageStream).close();
+    }
+
+    /**
+     * A package with a single share is assembled with the original options, and closed by its consumer.
+     */
+    @Test
+    public void unsharedPackageAssembledAsConfigured() throws Exception {
+        Map<String, Object> options = options();
+        SharedPackages.Share share = underTest.reserve(depositSubmission, packager(options));
+
+        share.open().close();
+
+        verify(assembler).assemble(depositSubmission, options);
+        verify(packageStream).close();
+        assertEquals(0, underTest.getSharedCount());
+    }
+
+    /**
+     * A package with a single share is assembled with the FILE buffer when its consumer asks for it to be spooled,
+     * leaving the original options untouched.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void unsharedPackageSpooledOnRequest() throws Exception {
+        Map<String, Object> options = options();
+        SharedPackages.Share share = underTest.reserve(depositSubmission, packager(options));
+
+        share.open(true).close();
+
+        ArgumentCaptor<Map<String, Object>> spooled = ArgumentCaptor.forClass(Map.class);
+        verify(assembler).assemble(eq(depositSubmission), spooled.capture());
+        assertEquals(PackageOptions.Buffer.OPTS.FILE, spooled.getValue().get(PackageOptions.Buffer.KEY));
+        assertFalse(options.containsKey(PackageOptions.Buffer.KEY));
+        verify(packageStream).close();
+    }
+
+    /**
+     * Deposits with different assembler options, or of different submissions, do not share a package.
+     */
+    @Test
+    public void differentPackagesNotShared() throws Exception {
+        Map<String, Object> other = options();
+        other.put(PackageOptions.Archive.KEY, PackageOptions.Archive.OPTS.TAR);
+
+        underTest.reserve(depositSubmission, packager(options())).open();
+        underTest.reserve(depositSubmission, packager(other)).open();
+        underTest.reserve(new DepositSubmission(), packager(options())).open();
+
+        verify(assembler, times(3)).assemble(any(), anyMap());
+        assertEquals(0, underTest.getSharedCount());
+    }
+
+    /**
+     * A share released without being opened still allows the package to be closed.
+     */
+    @Test
+    public void releasedShareClosesPackage() throws Exception {
+        SharedPackages.Share first = underTest.reserve(depositSubmission, packager(options()));
+        SharedPackages.Share second = underTest.reserve(depositSubmission, packager(options()));
+
+        first.open().close();
+        second.release();
+        second.release();
+
+        verify(packageStream).close();
+    }
+
+    /**
+     * A share is released if its package cannot be assembled.
+     */
+    @Test
+    public void failedAssemblyReleasesShare() throws Exception {
+        RuntimeException expected = new RuntimeException("Assembly failed");
+        when(assembler.assemble(any(), anyMap())).thenThrow(expected).thenReturn(packageStream);
+
+        SharedPackages.Share first = underTest.reserve(depositSubmission, packager(options()));
+        SharedPackages.Share second = underTest.reserve(depositSubmission, packager(options()));
+
+        try {
+            first.open();
+            fail("Expected the assembly to fail");
+        } catch (RuntimeException e) {
+            assertEquals(expected, e);
+        }
+
+        second.open().close();
+        verify(packageStream).close();
+        assertEquals(1, underTest.getAssembledCount());
+    }
+
+    private Packager packager(Map<String, Object> options) {
+        Packager packager = mock(Packager.class);
+        when(packager.getAssembler()).thenReturn(assembler);
+        when(packager.getAssemblerOptions()).thenReturn(options);
+        return packager;
+    }
+
+    private static Map<String, Object> options() {
+        Map<String, Object> options = new HashMap<>();
+        options.put(PackageOptions.Archive.KEY, PackageOptions.Archive.OPTS.ZIP);
+        options.put(PackageOptions.Compression.KEY, PackageOptions.Compression.OPTS.ZIP);
+        return options;
+    }
+
+}
@@ -19,6 +19,7 @@ package org.dataconservancy.pass.deposit.messaging.service;
 import org.dataconservancy.pass.deposit.builder.InvalidModel;
 import org.dataconservancy.pass.deposit.model.DepositFile;
 import org.dataconservancy.pass.deposit.model.DepositSubmission;
+import org.dataconservancy.pass.deposit.messaging.DepositServiceErrorHandler;
 import org.dataconservancy.pass.deposit.messaging.DepositServiceRuntimeException;
 import org.dataconservancy.pass.deposit.messaging.model.Packager;
 import org.dataconservancy.pass.model.Submission.AggregatedDepositStatus;
@@ -33,11 +34,14 @@ import org.junit.rules.ExpectedException;
 import org.springframework.core.task.TaskRejectedException;
 
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.BiPredicate;
 import java.util.stream.Collectors;
 
@@ -54,10 +58,12 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
@@ -102,6 +108,118 @@ public class SubmissionProcessorTest extends AbstractSubmissionProcessorTest {
      *
      * @throws Exception
      */
+    /**
+     * When the Repositories of a Submission are processed concurrently, a failure to process the Deposit for one
+     * Repository is attributed to that Deposit, and the Deposits for the other Repositories are still submitted.
+     *
+     * @throws Exception
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void concurrentRepositoryFailureAttributedToDeposit() throws Exception {
+        ExecutorService ioExecutor = Executors.newFixedThreadPool(3);
+        underTest.setIoExecutor(ioExecutor);
+
+        List<URI> repositoryIds = Arrays.asList(URI.create("http://repo1.uri"), URI.create("http://repo2.uri"),
+                URI.create("http://repo3.uri"));
+        URI failingRepoUri = repositoryIds.get(1);
+
+        Submission submission = new Submission();
+        submission.setId(URI.create("http://submission.uri"));
+        submission.setRepositories(repositoryIds);
+        submission.setAggregatedDepositStatus(AggregatedDepositStatus.IN_PROGRESS);
+
+        CriticalResult<DepositSubmission, Submission> criResult = mock(CriticalResult.class);
+        when(criResult.success()).thenReturn(true);
+        when(criResult.resource()).thenReturn(Optional.of(submission));
+        when(criResult.result()).thenReturn(Optional.of(new DepositSubmission()));
+        when(cri.performCritical(any(), any(), any(), any(BiPredicate.class), any())).thenReturn(criResult);
+
+        when(passClient.createAndReadResource(any(Deposit.class), eq(Deposit.class)))
+                .then(inv -> inv.getArgument(0));
+
+        repositoryIds.forEach(repoUri -> {
+            Repository r = new Repository();
+            r.setId(repoUri);
+            r.setName("Repository for " + repoUri);
+            when(passClient.readResource(repoUri, Repository.class)).thenReturn(r);
+
+            // Return 'null' to mock an error in resolving the Packager for one Repository
+            when(packagerRegistry.get(r.getName()))
+                    .thenReturn(repoUri.equals(failingRepoUri) ? null : mock(Packager.class));
+        });
+
+        try {
+            underTest.accept(submission);
+            fail("Expected a DepositServiceRuntimeException");
+        } catch (DepositServiceRuntimeException e) {
+            assertTrue(e.getCause() instanceof NullPointerException);
+            assertTrue(e.getMessage().contains(failingRepoUri.toString()));
+            assertEquals(failingRepoUri, ((Deposit) e.getResource()).getRepository());
+        } finally {
+            ioExecutor.shutdown();
+        }
+
+        verify(passClient, times(2)).createAndReadResource(any(Deposit.class), eq(Deposit.class));
+        verify(taskExecutor, times(2)).execute(any(DepositTask.class));
+    }
+
+    /**
+     * A failure to submit the Deposit for one Repository does not prevent the Deposits for the other Repositories
+     * from being submitted, and each failure is handed to the error handler.
+     *
+     * @throws Exception
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void submitFailureDoesNotStopRemainingDeposits() throws Exception {
+        List<Throwable> handled = new ArrayList<>();
+        DepositServiceErrorHandler errorHandler = mock(DepositServiceErrorHandler.class);
+        doAnswer(inv -> handled.add(inv.getArgument(0))).when(errorHandler).handleError(any());
+        underTest.setErrorHandler(errorHandler);
+
+        List<URI> repositoryIds = Arrays.asList(URI.create("http://repo1.uri"), URI.create("http://repo2.uri"),
+                URI.create("http://repo3.uri"));
+
+        Submission submission = new Submission();
+        submission.setId(URI.create("http://submission.uri"));
+        submission.setRepositories(repositoryIds);
+        submission.setAggregatedDepositStatus(AggregatedDepositStatus.IN_PROGRESS);
+
+        CriticalResult<DepositSubmission, Submission> criResult = mock(CriticalResult.class);
+        when(criResult.success()).thenReturn(true);
+        when(criResult.resource()).thenReturn(Optional.of(submission));
+        when(criResult.result()).thenReturn(Optional.of(new DepositSubmission()));
+        when(cri.performCritical(any(), any(), any(), any(BiPredicate.class), any())).thenReturn(criResult);
+
+        when(passClient.createAndReadResource(any(Deposit.class), eq(Deposit.class)))
+                .then(inv -> inv.getArgument(0));
+
+        repositoryIds.forEach(repoUri -> {
+            Repository r = new Repository();
+            r.setId(repoUri);
+            r.setName("Repository for " + repoUri);
+            when(passClient.readResource(repoUri, Repository.class)).thenReturn(r);
+            when(packagerRegistry.get(r.getName())).thenReturn(mock(Packager.class));
+        });
+
+        // the first Deposit is rejected by the deposit workers, the others are accepted
+        doThrow(TaskRejectedException.class).doNothing().when(taskExecutor).execute(any(DepositTask.class));
+
+        try {
+            underTest.accept(submission);
+            fail("Expected a DepositServiceRuntimeException");
+        } catch (DepositServiceRuntimeException e) {
+            assertTrue(e.getCause() instanceof TaskRejectedException);
+            assertEquals(1, handled.size());
+            assertSame(e, handled.get(0));
+            assertEquals(repositoryIds.get(0), ((Deposit) e.getResource()).getRepository());
+        }
+
+        verify(passClient, times(3)).createAndReadResource(any(Deposit.class), eq(Deposit.class));
+        verify(taskExecutor, times(3)).execute(any(DepositTask.class));
+    }
+
     @Test
     @SuppressWarnings("unchecked")
     public void submissionAcceptSuccess() throws Exception {
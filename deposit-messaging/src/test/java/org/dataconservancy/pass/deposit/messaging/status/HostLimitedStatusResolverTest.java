@@ -0,0 +1,96 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.status;
+
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HostLimitedStatusResolverTest {
+
+    private static final URI STATE = URI.create("http://dspace.org/state/inprogress");
+
+    /**
+     * No more than the host concurrency of resolutions are performed against one host at once, while resolutions
+     * against other hosts proceed.
+     */
+    @Test
+    public void resolutionsLimitedPerHost() throws Exception {
+        AtomicInteger inProgress = new AtomicInteger();
+        AtomicInteger maxInProgress = new AtomicInteger();
+        CountDownLatch otherHostResolved = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        HostLimitedStatusResolver underTest = new HostLimitedStatusResolver((uri, config) -> {
+            if (uri.getHost().equals("other.org")) {
+                otherHostResolved.countDown();
+                return STATE;
+            }
+            maxInProgress.accumulateAndGet(inProgress.incrementAndGet(), Math::max);
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            inProgress.decrementAndGet();
+            return STATE;
+        }, 2);
+
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        try {
+            List<Future<URI>> resolutions = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                URI statement = URI.create("http://Example.org/swordv2/statement/" + i + ".atom");
+                resolutions.add(executor.submit(() -> underTest.resolve(statement, null)));
+            }
+            resolutions.add(executor.submit(() ->
+                    underTest.resolve(URI.create("http://other.org/swordv2/statement/0.atom"), null)));
+
+            assertTrue(otherHostResolved.await(10, TimeUnit.SECONDS));
+            release.countDown();
+            for (Future<URI> resolution : resolutions) {
+                assertEquals(STATE, resolution.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(2, maxInProgress.get());
+    }
+
+    /**
+     * Resolutions of URIs without a host are not limited.
+     */
+    @Test
+    public void resolutionsWithoutHostNotLimited() throws Exception {
+        URI statement = URI.create("classpath:/status/statement.atom");
+        HostLimitedStatusResolver underTest = new HostLimitedStatusResolver((uri, config) -> uri, 1);
+
+        assertEquals(statement, underTest.resolve(statement, null));
+    }
+
+}
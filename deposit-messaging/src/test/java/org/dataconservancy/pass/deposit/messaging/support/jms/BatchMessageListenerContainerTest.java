@@ -0,0 +1,96 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.support.jms;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BatchMessageListenerContainerTest {
+
+    private BatchMessageListenerContainer underTest;
+
+    private MessageConsumer consumer;
+
+    @Before
+    public void setUp() throws Exception {
+        underTest = new BatchMessageListenerContainer();
+        consumer = mock(MessageConsumer.class);
+    }
+
+    /**
+     * A batch ends when it holds the maximum number of messages, even if more messages are available.
+     */
+    @Test
+    public void batchEndsWhenFull() throws Exception {
+        underTest.setBatchSize(3);
+        Message first = mock(Message.class);
+        when(consumer.receive(anyLong())).thenReturn(mock(Message.class));
+        when(consumer.receiveNoWait()).thenReturn(mock(Message.class));
+
+        List<Message> batch = underTest.receiveBatch(first, consumer);
+
+        assertEquals(3, batch.size());
+        assertSame(first, batch.get(0));
+    }
+
+    /**
+     * A batch ends when no further message arrives within the linger time.
+     */
+    @Test
+    public void batchEndsWhenNoMessageArrives() throws Exception {
+        underTest.setBatchSize(10);
+        underTest.setLingerMs(1000);
+        when(consumer.receive(anyLong())).thenReturn(mock(Message.class), mock(Message.class), null);
+
+        assertEquals(3, underTest.receiveBatch(mock(Message.class), consumer).size());
+    }
+
+    /**
+     * Without a linger time, a batch holds only the messages that are immediately available.
+     */
+    @Test
+    public void batchWithoutLingerTakesAvailableMessages() throws Exception {
+        underTest.setBatchSize(10);
+        underTest.setLingerMs(0);
+        when(consumer.receiveNoWait()).thenReturn(mock(Message.class), (Message) null);
+
+        assertEquals(2, underTest.receiveBatch(mock(Message.class), consumer).size());
+        verify(consumer, never()).receive(anyLong());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void batchSizeMustBePositive() throws Exception {
+        underTest.setBatchSize(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cacheLevelMustCacheConsumers() throws Exception {
+        underTest.setCacheLevel(BatchMessageListenerContainer.CACHE_SESSION);
+    }
+
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.support.jms;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CoalescingDispatcherTest {
+
+    /**
+     * Events for the same key within the window are collapsed into one invocation; events for other keys are not.
+     */
+    @Test
+    public void eventsWithinWindowCollapsed() throws Exception {
+        List<String> invocations = Collections.synchronizedList(new ArrayList<>());
+        CoalescingDispatcher<String> underTest = new CoalescingDispatcher<>("test", invocations::add, 200, 2, 100);
+
+        underTest.dispatch("a");
+        underTest.dispatch("a");
+        underTest.dispatch("b");
+        underTest.dispatch("a");
+        underTest.close();
+
+        assertEquals(2, invocations.size());
+        assertTrue(invocations.contains("a"));
+        assertTrue(invocations.contains("b"));
+        assertEquals(4, underTest.getReceivedCount());
+        assertEquals(2, underTest.getCollapsedCount());
+        assertEquals(2, underTest.getInvokedCount());
+        assertEquals(0, underTest.getPendingCount());
+    }
+
+    /**
+     * An event that arrives while its key is being processed is processed afterwards, never concurrently.
+     */
+    @Test
+    public void eventDuringInvocationProcessedAfterwards() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger invocations = new AtomicInteger();
+        List<Boolean> overlapped = Collections.synchronizedList(new ArrayList<>());
+
+        CoalescingDispatcher<String> underTest = new CoalescingDispatcher<>("test", key -> {
+            overlapped.add(running.incrementAndGet() > 1);
+            if (invocations.incrementAndGet() == 1) {
+                started.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            running.decrementAndGet();
+        }, 10, 4, 100);
+
+        underTest.dispatch("a");
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // arrives while "a" is being processed: one further invocation, with the remaining events collapsed into it
+        underTest.dispatch("a");
+        underTest.dispatch("a");
+        underTest.dispatch("a");
+        release.countDown();
+        underTest.close();
+
+        assertEquals(2, invocations.get());
+        assertEquals(2, underTest.getCollapsedCount());
+        assertFalse(overlapped.contains(true));
+    }
+
+    /**
+     * An event that arrives while its key is being processed is still processed when the dispatcher is closed before
+     * the invocation in progress completes.
+     */
+    @Test
+    public void eventDuringInvocationProcessedWhenClosed() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger invocations = new AtomicInteger();
+
+        CoalescingDispatcher<String> underTest = new CoalescingDispatcher<>("test", key -> {
+            if (invocations.incrementAndGet() == 1) {
+                started.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, 10, 1, 100);
+
+        underTest.dispatch("a");
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Void> pending = underTest.dispatch("a");
+
+        Thread closer = new Thread(underTest::close);
+        closer.start();
+        // let close() begin shutting down the executor before the invocation in progress completes
+        Thread.sleep(100);
+        release.countDown();
+        closer.join(10000);
+
+        assertFalse(closer.isAlive());
+        assertEquals(2, invocations.get());
+        assertTrue(pending.isDone());
+        assertFalse(pending.isCompletedExceptionally());
+    }
+
+    /**
+     * Without a window, every event is processed on the dispatching thread.
+     */
+    @Test
+    public void zeroWindowProcessesEveryEvent() throws Exception {
+        List<Thread> threads = new ArrayList<>();
+        CoalescingDispatcher<String> underTest = new CoalescingDispatcher<>("test",
+                key -> threads.add(Thread.currentThread()), 0, 1, 100);
+
+        underTest.dispatch("a");
+        underTest.dispatch("a");
+        underTest.close();
+
+        assertEquals(2, threads.size());
+        assertEquals(Thread.currentThread(), threads.get(0));
+        assertEquals(0, underTest.getCollapsedCount());
+    }
+
+    /**
+     * A failure to process an event does not prevent later events for the key from being processed.
+     */
+    @Test
+    public void failedInvocationDoesNotBlockKey() throws Exception {
+        AtomicInteger invocations = new AtomicInteger();
+        CoalescingDispatcher<String> underTest = new CoalescingDispatcher<>("test", key -> {
+            if (invocations.incrementAndGet() == 1) {
+                throw new RuntimeException("Expected failure");
+            }
+        }, 10, 1, 100);
+
+        underTest.dispatch("a");
+        Thread.sleep(200);
+        underTest.dispatch("a");
+        underTest.close();
+
+        assertEquals(2, invocations.get());
+    }
+
+    /**
+     * The future answered for an event completes only once the invocation processing it has completed, whether or not
+     * the invocation succeeded; collapsed events share the future of the invocation they were collapsed into.
+     */
+    @Test
+    public void dispatchCompletesAfterInvocation() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CoalescingDispatcher<String> underTest = new CoalescingDispatcher<>("test", key -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new RuntimeException("Expected failure");
+        }, 10, 1, 100);
+
+        CompletableFuture<Void> first = underTest.dispatch("a");
+        CompletableFuture<Void> collapsed = underTest.dispatch("a");
+        Thread.sleep(100);
+        assertFalse(first.isDone());
+        assertFalse(collapsed.isDone());
+
+        release.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        collapsed.get(5, TimeUnit.SECONDS);
+        assertFalse(first.isCompletedExceptionally());
+        underTest.close();
+    }
+
+    /**
+     * Once the maximum number of keys are waiting for an invocation, an event for a further key is processed on the
+     * dispatching thread, and is complete when dispatch returns.
+     */
+    @Test
+    public void eventProcessedByCallerWhenPendingKeysExhausted() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<Thread> threads = Collections.synchronizedList(new ArrayList<>());
+        CoalescingDispatcher<String> underTest = new CoalescingDispatcher<>("test", key -> {
+            threads.add(Thread.currentThread());
+            if (key.equals("a")) {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, 10, 1, 1);
+
+        underTest.dispatch("a");
+        CompletableFuture<Void> b = underTest.dispatch("b");
+
+        assertTrue(b.isDone());
+        assertEquals(1, underTest.getCallerRunsCount());
+        assertTrue(threads.contains(Thread.currentThread()));
+
+        release.countDown();
+        underTest.close();
+        assertEquals(2, underTest.getInvokedCount());
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.support.jms;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FedoraMessagePayloadTest {
+
+    private static final String SOFTWARE_AGENT = "http://www.w3.org/ns/prov#SoftwareAgent";
+
+    private static final String SUBMISSION_URI =
+            "http://192.168.99.100:8080/fcrepo/rest/submissions/01/d6/60/7f/01d6607f-3ba6-4335-89d8-b904cd5b333a";
+
+    /**
+     * The resource, its types, the event types and the agents are read from a Fedora message body.
+     */
+    @Test
+    public void parseFedoraMessage() throws Exception {
+        FedoraMessagePayload underTest = FedoraMessagePayload.parse(body("software-agent-equals.json"));
+
+        assertEquals(SUBMISSION_URI, underTest.resourceId());
+        assertEquals(6, underTest.resourceTypes().size());
+        assertTrue(underTest.resourceTypes().contains("http://oapass.org/ns/pass#Submission"));
+        assertEquals(Arrays.asList("http://fedora.info/definitions/v4/event#ResourceModification",
+                "http://www.w3.org/ns/prov#Activity"), underTest.eventTypes());
+        assertEquals(2, underTest.attributions().size());
+        assertEquals("admin", underTest.agentName("http://www.w3.org/ns/prov#Person"));
+        assertEquals("pass-deposit/x.y.z", underTest.agentName(SOFTWARE_AGENT));
+    }
+
+    /**
+     * A missing agent, or an agent without a name, has no name.
+     */
+    @Test
+    public void parseMissingAgentName() throws Exception {
+        assertNull(FedoraMessagePayload.parse(body("software-agent-missing-name.json")).agentName(SOFTWARE_AGENT));
+        assertNull(FedoraMessagePayload.parse(body("software-agent-missing-object.json")).agentName(SOFTWARE_AGENT));
+    }
+
+    /**
+     * Parsing stops once the fields have been read, so content following them is never read.
+     */
+    @Test
+    public void parseStopsOnceFieldsRead() throws Exception {
+        String body = "{\"type\": \"http://oapass.org/ns/pass#Deposit\", \"id\": \"http://example.org/deposit\", " +
+                "\"ignored\": {\"id\": \"http://example.org/other\"}, " +
+                "\"wasGeneratedBy\": {\"type\": \"http://fedora.info/definitions/v4/event#ResourceCreation\"}, " +
+                "\"wasAttributedTo\": {\"type\": \"" + SOFTWARE_AGENT + "\", \"name\": \"agent\"}, " +
+                "\"@context\": not json";
+
+        FedoraMessagePayload underTest = FedoraMessagePayload.parse(body);
+
+        assertEquals("http://example.org/deposit", underTest.resourceId());
+        assertEquals(Arrays.asList("http://oapass.org/ns/pass#Deposit"), underTest.resourceTypes());
+        assertEquals(Arrays.asList("http://fedora.info/definitions/v4/event#ResourceCreation"),
+                underTest.eventTypes());
+        assertEquals("agent", underTest.agentName(SOFTWARE_AGENT));
+    }
+
+    /**
+     * A body that is not a JSON object cannot be parsed.
+     */
+    @Test(expected = IOException.class)
+    public void parseNonObject() throws Exception {
+        FedoraMessagePayload.parse("[\"http://example.org/deposit\"]");
+    }
+
+    private static String body(String resource) throws IOException {
+        return IOUtils.toString(FedoraMessagePayloadTest.class.getResourceAsStream(
+                "/org/dataconservancy/pass/deposit/messaging/policy/" + resource), "UTF-8");
+    }
+
+}
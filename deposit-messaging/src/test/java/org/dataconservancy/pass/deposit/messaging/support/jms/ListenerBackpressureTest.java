@@ -0,0 +1,125 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.support.jms;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.Lifecycle;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ListenerBackpressureTest {
+
+    private final AtomicInteger backlog = new AtomicInteger();
+
+    private Listener running;
+
+    private Listener notStarted;
+
+    private ListenerBackpressure underTest;
+
+    @Before
+    public void setUp() throws Exception {
+        running = new Listener(true);
+        notStarted = new Listener(false);
+        underTest = new ListenerBackpressure(() -> Arrays.asList(running, notStarted), backlog::get, 10, 5, 60000);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        underTest.close();
+    }
+
+    /**
+     * Running listeners are paused when the backlog reaches the pause mark, and resumed once it falls to the resume
+     * mark; listeners that were not running are left alone.
+     */
+    @Test
+    public void pauseAndResume() throws Exception {
+        backlog.set(9);
+        underTest.check();
+        assertFalse(underTest.isPaused());
+        assertTrue(running.isRunning());
+
+        backlog.set(10);
+        underTest.check();
+        assertTrue(underTest.isPaused());
+        assertFalse(running.isRunning());
+
+        backlog.set(6);
+        underTest.check();
+        assertTrue(underTest.isPaused());
+
+        backlog.set(5);
+        underTest.check();
+        assertFalse(underTest.isPaused());
+        assertTrue(running.isRunning());
+        assertFalse(notStarted.isRunning());
+        assertEquals(0, notStarted.starts);
+        assertEquals(1, underTest.getPauseCount());
+    }
+
+    /**
+     * A backlog that cannot be sampled leaves the listeners as they are.
+     */
+    @Test
+    public void failedSampleIgnored() throws Exception {
+        ListenerBackpressure failing = new ListenerBackpressure(() -> Arrays.asList(running), () -> {
+            throw new IllegalStateException("Not initialized");
+        }, 10, 5, 60000);
+        try {
+            failing.check();
+            assertFalse(failing.isPaused());
+            assertTrue(running.isRunning());
+        } finally {
+            failing.close();
+        }
+    }
+
+    private static class Listener implements Lifecycle {
+
+        private boolean running;
+
+        private int starts;
+
+        private Listener(boolean running) {
+            this.running = running;
+        }
+
+        @Override
+        public void start() {
+            starts++;
+            running = true;
+        }
+
+        @Override
+        public void stop() {
+            running = false;
+        }
+
+        @Override
+        public boolean isRunning() {
+            return running;
+        }
+    }
+
+}
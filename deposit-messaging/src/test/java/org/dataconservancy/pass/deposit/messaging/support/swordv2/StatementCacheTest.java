@@ -0,0 +1,155 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.support.swordv2;
+
+import com.sun.net.httpserver.HttpServer;
+import org.dataconservancy.pass.deposit.messaging.config.repository.BasicAuthRealm;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Base64.getEncoder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class StatementCacheTest {
+
+    private static final String ETAG = "\"statement-1\"";
+
+    private static final URI INPROGRESS = URI.create("http://dspace.org/state/inprogress");
+
+    private HttpServer server;
+
+    private URI statementUri;
+
+    private volatile String etag = ETAG;
+
+    private final List<String> ifNoneMatch = new ArrayList<>();
+
+    private final List<String> authorization = new ArrayList<>();
+
+    private final AtomicInteger parsed = new AtomicInteger();
+
+    private StatementCache underTest;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/swordv2/statement.atom", exchange -> {
+            String validator = exchange.getRequestHeaders().getFirst("If-None-Match");
+            ifNoneMatch.add(validator);
+            authorization.add(exchange.getRequestHeaders().getFirst("Authorization"));
+            if (etag != null) {
+                exchange.getResponseHeaders().add("ETag", etag);
+            }
+            if (etag != null && etag.equals(validator)) {
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                byte[] body = "<feed/>".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+            exchange.close();
+        });
+        server.start();
+        statementUri = URI.create("http://localhost:" + server.getAddress().getPort() + "/swordv2/statement.atom");
+        underTest = new StatementCache(10);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop(0);
+    }
+
+    /**
+     * A statement that has not been modified is answered from the cache, without being parsed.
+     */
+    @Test
+    public void notModifiedStatementAnsweredFromCache() throws Exception {
+        assertEquals(INPROGRESS, underTest.resolve(statementUri, null, this::parse));
+        assertEquals(INPROGRESS, underTest.resolve(statementUri, null, this::parse));
+
+        assertEquals(1, parsed.get());
+        assertNull(ifNoneMatch.get(0));
+        assertEquals(ETAG, ifNoneMatch.get(1));
+        assertEquals(1, underTest.getHitCount());
+        assertEquals(1, underTest.getMissCount());
+    }
+
+    /**
+     * A statement that has been modified is parsed again.
+     */
+    @Test
+    public void modifiedStatementParsed() throws Exception {
+        underTest.resolve(statementUri, null, this::parse);
+        etag = "\"statement-2\"";
+        underTest.resolve(statementUri, null, this::parse);
+        underTest.resolve(statementUri, null, this::parse);
+
+        assertEquals(2, parsed.get());
+        assertEquals(1, underTest.getHitCount());
+    }
+
+    /**
+     * A statement answered without validators is not cached.
+     */
+    @Test
+    public void statementWithoutValidatorsNotCached() throws Exception {
+        etag = null;
+        underTest.resolve(statementUri, null, this::parse);
+        underTest.resolve(statementUri, null, this::parse);
+
+        assertEquals(2, parsed.get());
+        assertEquals(0, underTest.size());
+    }
+
+    /**
+     * The credentials of the realm are sent with each request.
+     */
+    @Test
+    public void realmCredentialsSent() throws Exception {
+        BasicAuthRealm realm = new BasicAuthRealm();
+        realm.setUsername("user");
+        realm.setPassword("pass");
+
+        underTest.resolve(statementUri, realm, this::parse);
+        underTest.resolve(statementUri, realm, this::parse);
+
+        String expected = "Basic " + getEncoder().encodeToString("user:pass".getBytes(StandardCharsets.UTF_8));
+        assertEquals(expected, authorization.get(0));
+        assertEquals(expected, authorization.get(1));
+    }
+
+    private URI parse(InputStream in) throws Exception {
+        parsed.incrementAndGet();
+        while (in.read() != -1) {
+            // consume the statement
+        }
+        return INPROGRESS;
+    }
+
+}
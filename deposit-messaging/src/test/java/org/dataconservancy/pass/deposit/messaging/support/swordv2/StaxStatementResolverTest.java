@@ -0,0 +1,128 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.support.swordv2;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+
+import static org.dataconservancy.pass.deposit.messaging.status.SwordDspaceDepositStatus.SWORD_STATE_ARCHIVED;
+import static org.dataconservancy.pass.deposit.messaging.status.SwordDspaceDepositStatus.SWORD_STATE_INPROGRESS;
+import static org.dataconservancy.pass.deposit.messaging.status.SwordDspaceDepositStatus.SWORD_STATE_INREVIEW;
+import static org.dataconservancy.pass.deposit.messaging.status.SwordDspaceDepositStatus.SWORD_STATE_WITHDRAWN;
+import static org.dataconservancy.pass.deposit.messaging.support.swordv2.AtomResources.ARCHIVED_STATUS_RESOURCE;
+import static org.dataconservancy.pass.deposit.messaging.support.swordv2.AtomResources.INPROGRESS_STATUS_RESOURCE;
+import static org.dataconservancy.pass.deposit.messaging.support.swordv2.AtomResources.INREVIEW_STATUS_RESOURCE;
+import static org.dataconservancy.pass.deposit.messaging.support.swordv2.AtomResources.MISSING_STATUS_RESOURCE;
+import static org.dataconservancy.pass.deposit.messaging.support.swordv2.AtomResources.MULTIPLE_STATUS_RESOURCE;
+import static org.dataconservancy.pass.deposit.messaging.support.swordv2.AtomResources.UNKNOWN_STATUS_RESOURCE;
+import static org.dataconservancy.pass.deposit.messaging.support.swordv2.AtomResources.WITHDRAWN_STATUS_RESOURCE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static resources.SharedResourceUtil.findStreamByName;
+import static resources.SharedResourceUtil.findUriByName;
+
+public class StaxStatementResolverTest {
+
+    private StaxStatementResolver underTest;
+
+    @Before
+    public void setUp() throws Exception {
+        underTest = new StaxStatementResolver();
+    }
+
+    @Test
+    public void mapArchived() throws Exception {
+        assertEquals(SWORD_STATE_ARCHIVED.asUri(), parse(ARCHIVED_STATUS_RESOURCE));
+    }
+
+    @Test
+    public void mapInProgress() throws Exception {
+        assertEquals(SWORD_STATE_INPROGRESS.asUri(), parse(INPROGRESS_STATUS_RESOURCE));
+    }
+
+    @Test
+    public void mapInReview() throws Exception {
+        assertEquals(SWORD_STATE_INREVIEW.asUri(), parse(INREVIEW_STATUS_RESOURCE));
+    }
+
+    @Test
+    public void mapMissing() throws Exception {
+        assertNull(parse(MISSING_STATUS_RESOURCE));
+    }
+
+    @Test
+    public void mapMultiple() throws Exception {
+        assertEquals(SWORD_STATE_ARCHIVED.asUri(), parse(MULTIPLE_STATUS_RESOURCE));
+    }
+
+    @Test
+    public void mapUnknown() throws Exception {
+        assertEquals(URI.create("http://dspace.org/state/moo"), parse(UNKNOWN_STATUS_RESOURCE));
+    }
+
+    @Test
+    public void mapWithdrawn() throws Exception {
+        assertEquals(SWORD_STATE_WITHDRAWN.asUri(), parse(WITHDRAWN_STATUS_RESOURCE));
+    }
+
+    /**
+     * The statement is resolved from its URI, as it is by the {@code AtomFeedStatusResolver}.
+     */
+    @Test
+    public void resolveStatementUri() throws Exception {
+        assertEquals(SWORD_STATE_ARCHIVED.asUri(),
+                underTest.resolve(findUriByName(ARCHIVED_STATUS_RESOURCE, AtomResources.class), null));
+    }
+
+    /**
+     * The statement is not read beyond the state: the malformed remainder of the statement is never parsed.
+     */
+    @Test
+    public void readingStopsAtState() throws Exception {
+        String state = "<feed xmlns=\"http://www.w3.org/2005/Atom\">" +
+                "<category scheme=\"http://purl.org/net/sword/terms/state\" term=\"http://dspace.org/state/archived\"/>";
+        InputStream statement = new SequenceInputStream(
+                new ByteArrayInputStream(state.getBytes(StandardCharsets.UTF_8)),
+                new ByteArrayInputStream("<entry><<<".getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(SWORD_STATE_ARCHIVED.asUri(), underTest.parseState(statement));
+    }
+
+    /**
+     * A {@code <category>} with the state scheme inside an {@code <entry>} is not the state of the deposit.
+     */
+    @Test
+    public void entryCategoryIgnored() throws Exception {
+        String statement = "<feed xmlns=\"http://www.w3.org/2005/Atom\"><entry>" +
+                "<category scheme=\"http://purl.org/net/sword/terms/state\" term=\"http://dspace.org/state/archived\"/>" +
+                "</entry></feed>";
+
+        assertNull(underTest.parseState(new ByteArrayInputStream(statement.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    private URI parse(String resource) throws Exception {
+        try (InputStream statement = findStreamByName(resource, AtomResources.class)) {
+            return underTest.parseState(statement);
+        }
+    }
+
+}
@@ -46,6 +46,11 @@ public class DepositFile {
      */
     private String location;
 
+    /**
+     * The media type of the file, as recorded by PASS; may be {@code null}
+     */
+    private String mimeType;
+
     public DepositFileType getType() {
         return type;
     }
@@ -78,6 +83,14 @@ public class DepositFile {
         this.location = location;
     }
 
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public void setMimeType(String mimeType) {
+        this.mimeType = mimeType;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -88,7 +101,8 @@ public class DepositFile {
         if (type != depositFile.type) return false;
         if (name != null ? !name.equals(depositFile.name) : depositFile.name != null) return false;
         if (label != null ? !label.equals(depositFile.label) : depositFile.label != null) return false;
-        return location != null ? location.equals(depositFile.location) : depositFile.location == null;
+        if (location != null ? !location.equals(depositFile.location) : depositFile.location != null) return false;
+        return mimeType != null ? mimeType.equals(depositFile.mimeType) : depositFile.mimeType == null;
     }
 
     @Override
@@ -97,6 +111,7 @@ public class DepositFile {
         result = 31 * result + (name != null ? name.hashCode() : 0);
         result = 31 * result + (label != null ? label.hashCode() : 0);
         result = 31 * result + (location != null ? location.hashCode() : 0);
+        result = 31 * result + (mimeType != null ? mimeType.hashCode() : 0);
         return result;
     }
 
@@ -107,6 +122,7 @@ public class DepositFile {
                 ", name='" + name + '\'' +
                 ", label='" + label + '\'' +
                 ", location='" + location + '\'' +
+                ", mimeType='" + mimeType + '\'' +
                 '}';
     }
 
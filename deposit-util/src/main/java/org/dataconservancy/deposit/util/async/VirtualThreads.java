@@ -0,0 +1,183 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.deposit.util.async;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Creates virtual threads, on Java runtimes that support them.
+ * <p>
+ * The application is compiled for Java 8, so virtual threads are created reflectively.  When the runtime does not
+ * support virtual threads, {@link #isSupported()} answers {@code false}, and the methods creating them fall back to
+ * platform threads, logging a warning the first time they do.
+ * </p>
+ * <p>
+ * Components which create their own threads, and are not wired by the application, consult {@link #isPreferred()} to
+ * decide whether to create virtual threads.  The application {@link #setPreferred(boolean) sets} the preference once
+ * on startup.
+ * </p>
+ */
+public class VirtualThreads {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualThreads.class);
+
+    private static final Method OF_VIRTUAL;
+
+    private static final Method BUILDER_NAME;
+
+    private static final Method BUILDER_FACTORY;
+
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+
+    private static volatile boolean preferred;
+
+    private static volatile boolean warned;
+
+    static {
+        Method ofVirtual = null;
+        Method builderName = null;
+        Method builderFactory = null;
+        Method newThreadPerTaskExecutor = null;
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            builderName = builder.getMethod("name", String.class, long.class);
+            builderFactory = builder.getMethod("factory");
+            newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+
+            // Java 19 and 20 expose the API as a preview feature, which fails unless previews are enabled
+            ofVirtual.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOG.debug("Virtual threads are not supported by this Java runtime: {}", e.toString());
+            ofVirtual = null;
+        }
+
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = builderName;
+        BUILDER_FACTORY = builderFactory;
+        NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+    }
+
+    private VirtualThreads() {
+        // prevent instantiation
+    }
+
+    /**
+     * @return {@code true} if the Java runtime supports virtual threads
+     */
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * @return {@code true} if virtual threads are preferred, and supported by the Java runtime
+     */
+    public static boolean isPreferred() {
+        return preferred;
+    }
+
+    /**
+     * Sets whether virtual threads are preferred.  A preference for virtual threads is ignored, with a warning, if the
+     * Java runtime does not support them.
+     *
+     * @param preferVirtualThreads whether virtual threads are preferred
+     * @return whether virtual threads will be used, i.e. the value answered by {@link #isPreferred()}
+     */
+    public static boolean setPreferred(boolean preferVirtualThreads) {
+        if (preferVirtualThreads && !isSupported()) {
+            warnUnsupported();
+            preferred = false;
+        } else {
+            preferred = preferVirtualThreads;
+        }
+        return preferred;
+    }
+
+    /**
+     * Answers a factory of virtual threads named {@code namePrefix} followed by a counter starting at {@code 0}.  If
+     * virtual threads are not supported, the factory creates daemon platform threads.
+     *
+     * @param namePrefix the prefix of the names of created threads
+     * @return the thread factory
+     */
+    public static ThreadFactory factory(String namePrefix) {
+        if (isSupported()) {
+            try {
+                Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), namePrefix, 0L);
+                return (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                throw new IllegalStateException("Unable to create a virtual thread factory: " + e.getMessage(), e);
+            }
+        }
+
+        warnUnsupported();
+        AtomicLong counter = new AtomicLong();
+        return r -> {
+            Thread t = new Thread(r, namePrefix + counter.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /**
+     * Answers an executor which starts a new virtual thread for each task.  If virtual threads are not supported, the
+     * executor caches daemon platform threads.
+     *
+     * @param namePrefix the prefix of the names of created threads
+     * @return the executor
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String namePrefix) {
+        if (isSupported()) {
+            try {
+                return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, factory(namePrefix));
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                throw new IllegalStateException("Unable to create a virtual thread executor: " + e.getMessage(), e);
+            }
+        }
+
+        return Executors.newCachedThreadPool(factory(namePrefix));
+    }
+
+    /**
+     * Answers a {@link #newThreadPerTaskExecutor(String) virtual thread executor} if virtual threads are {@link
+     * #isPreferred() preferred}, otherwise the executor supplied by {@code platformExecutor}.
+     *
+     * @param namePrefix the prefix of the names of created virtual threads
+     * @param platformExecutor supplies the executor used when virtual threads are not preferred
+     * @return the executor
+     */
+    public static ExecutorService preferredExecutor(String namePrefix, Supplier<ExecutorService> platformExecutor) {
+        return isPreferred() ? newThreadPerTaskExecutor(namePrefix) : platformExecutor.get();
+    }
+
+    private static void warnUnsupported() {
+        if (!warned) {
+            warned = true;
+            LOG.warn("Virtual threads are not supported by Java {}; platform threads will be used instead.",
+                    System.getProperty("java.version"));
+        }
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.deposit.util.async;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class VirtualThreadsTest {
+
+    @After
+    public void tearDown() throws Exception {
+        VirtualThreads.setPreferred(false);
+    }
+
+    /**
+     * Created threads are named with the prefix and a counter, and are virtual threads if the runtime supports them.
+     */
+    @Test
+    public void testFactoryNamesThreads() throws Exception {
+        Thread first = VirtualThreads.factory("test-").newThread(() -> { });
+        Thread second = VirtualThreads.factory("other-").newThread(() -> { });
+
+        assertEquals("test-0", first.getName());
+        assertEquals("other-0", second.getName());
+        assertTrue(first.isDaemon());
+        assertEquals(VirtualThreads.isSupported(), isVirtual(first));
+    }
+
+    /**
+     * Tasks submitted to a thread-per-task executor run on threads of their own.
+     */
+    @Test
+    public void testThreadPerTaskExecutorRunsTasks() throws Exception {
+        ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor("task-");
+        try {
+            Thread thread = executor.submit(Thread::currentThread).get(10, TimeUnit.SECONDS);
+            assertTrue(thread.getName().startsWith("task-"));
+            assertEquals(VirtualThreads.isSupported(), isVirtual(thread));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * A preference for virtual threads is only recorded if the runtime supports them; otherwise the platform executor
+     * is used.
+     */
+    @Test
+    public void testPreferenceRequiresSupport() throws Exception {
+        assertEquals(VirtualThreads.isSupported(), VirtualThreads.setPreferred(true));
+        assertEquals(VirtualThreads.isSupported(), VirtualThreads.isPreferred());
+
+        ExecutorService platform = Executors.newSingleThreadExecutor();
+        ExecutorService executor = VirtualThreads.preferredExecutor("preferred-", () -> platform);
+        try {
+            assertEquals(!VirtualThreads.isSupported(), executor == platform);
+        } finally {
+            executor.shutdown();
+            platform.shutdown();
+        }
+
+        assertFalse(VirtualThreads.setPreferred(false));
+        assertFalse(VirtualThreads.isPreferred());
+    }
+
+    private static boolean isVirtual(Thread thread) throws Exception {
+        if (!VirtualThreads.isSupported()) {
+            return false;
+        }
+        return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+    }
+
+}
@@ -16,6 +16,7 @@
 package org.dataconservancy.pass.deposit.transport.ftp;
 
 import org.apache.commons.net.ftp.FTPClient;
+import org.dataconservancy.deposit.util.async.VirtualThreads;
 import org.dataconservancy.pass.deposit.assembler.PackageStream;
 import org.dataconservancy.pass.deposit.transport.TransportResponse;
 import org.dataconservancy.pass.deposit.transport.TransportSession;
@@ -75,8 +76,14 @@ public class FtpTransportSession implements TransportSession {
      */
     private FutureTask<TransportResponse> transfer;
 
+    /**
+     * Creates a session transferring files on a thread of its own: a virtual thread if {@link
+     * VirtualThreads#isPreferred() virtual threads are preferred}, otherwise a platform thread.
+     *
+     * @param ftpClient a connected and logged-in FTP client
+     */
     public FtpTransportSession(FTPClient ftpClient) {
-        this(ftpClient, Executors.newSingleThreadExecutor());
+        this(ftpClient, VirtualThreads.preferredExecutor("FTP-Transfer-", Executors::newSingleThreadExecutor));
     }
 
     private FtpTransportSession(FTPClient ftpClient, ExecutorService executorService) {
@@ -160,6 +167,8 @@ public class FtpTransportSession implements TransportSession {
                     this.getClass().getSimpleName(), toHexString(identityHashCode(this)), e.getMessage(), e);
         }
 
+        executorService.shutdown();
+
         LOG.debug("Marking {}@{} as closed.",
                 this.getClass().getSimpleName(), toHexString(identityHashCode(this)));
         this.isClosed = true;
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.io.input;
+
+import org.dataconservancy.pass.deposit.assembler.PackageOptions.Checksum;
+import org.dataconservancy.pass.deposit.assembler.ResourceBuilder;
+import org.dataconservancy.pass.deposit.assembler.shared.ChecksumImpl;
+import org.dataconservancy.pass.deposit.assembler.shared.PackageTaskExecutor;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+import static java.util.Base64.getEncoder;
+import static org.apache.commons.codec.binary.Hex.encodeHexString;
+import static org.dataconservancy.pass.deposit.assembler.shared.AssemblerSupport.messageDigest;
+
+/**
+ * Computes a digest for each of several algorithms over the observed bytes, and applies them to the {@link
+ * ResourceBuilder}.  Unlike attaching one {@link DigestObserver} per algorithm, each observed chunk is dispatched once
+ * and used to update every digest, and single bytes are staged so that digests are only updated with whole chunks.
+ * <p>
+ * If this observer is supplied with an {@code Executor}, the digests are updated in parallel: observed bytes are
+ * staged in a chunk which, when full, is hashed by each algorithm on a separate thread while the next chunk is staged.
+ * This is worthwhile for large resources with more than one algorithm; otherwise digests are updated on the observing
+ * thread.
+ * </p>
+ * <p>
+ * Checksums are applied to the {@code ResourceBuilder} in the order the algorithms are supplied, as {@link
+ * ChecksumImpl} instances identical to those produced by {@link DigestObserver}.
+ * </p>
+ */
+public class MultiDigestObserver extends ResourceBuilderObserver {
+
+    static final int SERIAL_CHUNK_SIZE = 8 * 1024;
+
+    static final int PARALLEL_CHUNK_SIZE = 256 * 1024;
+
+    private final Checksum.OPTS[] algos;
+
+    private final MessageDigest[] digests;
+
+    private final Executor executor;
+
+    /**
+     * Chunk being staged by the observing thread
+     */
+    private byte[] chunk;
+
+    private int pos = 0;
+
+    /**
+     * Chunk being hashed in parallel; only allocated when an {@code Executor} is present
+     */
+    private byte[] hashing;
+
+    private CompletableFuture<Void> pending = CompletableFuture.completedFuture(null);
+
+    /**
+     * Updates every digest on the observing thread.
+     *
+     * @param builder the builder the checksums are applied to
+     * @param algorithms the algorithms to compute
+     */
+    public MultiDigestObserver(ResourceBuilder builder, List<Checksum.OPTS> algorithms) {
+        this(builder, algorithms, null);
+    }
+
+    /**
+     * Updates the digests in parallel using the supplied {@code executor}.  If {@code executor} is {@code null}, or
+     * only one algorithm is requested, digests are updated on the observing thread.
+     *
+     * @param builder the builder the checksums are applied to
+     * @param algorithms the algorithms to compute
+     * @param executor used to update the digests in parallel, may be {@code null}
+     */
+    public MultiDigestObserver(ResourceBuilder builder, List<Checksum.OPTS> algorithms, Executor executor) {
+        super(builder);
+        if (algorithms == null) {
+            throw new IllegalArgumentException("Algorithms must not be null.");
+        }
+
+        this.algos = algorithms.toArray(new Checksum.OPTS[0]);
+        this.digests = new MessageDigest[algos.length];
+        for (int i = 0; i < algos.length; i++) {
+            if (algos[i] == null) {
+                throw new IllegalArgumentException("Algorithm must not be null.");
+            }
+            digests[i] = messageDigest(algos[i]);
+        }
+
+        if (executor != null && algos.length > 1) {
+            this.executor = executor;
+            this.chunk = new byte[PARALLEL_CHUNK_SIZE];
+            this.hashing = new byte[PARALLEL_CHUNK_SIZE];
+        } else {
+            this.executor = null;
+            this.chunk = new byte[SERIAL_CHUNK_SIZE];
+        }
+    }
+
+    /**
+     * Answers the executor shared by all observers, the {@link PackageTaskExecutor#shared() shared} {@code
+     * PackageTaskExecutor}.
+     *
+     * @return the shared executor
+     */
+    public static ExecutorService sharedExecutor() {
+        return PackageTaskExecutor.shared();
+    }
+
+    @Override
+    void data(int pByte) throws IOException {
+        chunk[pos++] = (byte) pByte;
+        if (pos == chunk.length) {
+            flush();
+        }
+    }
+
+    @Override
+    void data(byte[] pBuffer, int pOffset, int pLength) throws IOException {
+        if (executor == null && pos == 0 && pLength >= chunk.length) {
+            // nothing staged, and the chunk is large enough to hash in place
+            update(pBuffer, pOffset, pLength);
+            return;
+        }
+
+        while (pLength > 0) {
+            int toCopy = Math.min(pLength, chunk.length - pos);
+            System.arraycopy(pBuffer, pOffset, chunk, pos, toCopy);
+            pos += toCopy;
+            pOffset += toCopy;
+            pLength -= toCopy;
+            if (pos == chunk.length) {
+                flush();
+            }
+        }
+    }
+
+    @Override
+    void finished() throws IOException {
+        if (!isFinished()) {
+            flush();
+            pending.join();
+            for (int i = 0; i < algos.length; i++) {
+                byte[] value = digests[i].digest();
+                builder.checksum(new ChecksumImpl(algos[i], value, getEncoder().encodeToString(value),
+                        encodeHexString(value)));
+            }
+        }
+        super.finished();
+    }
+
+    /**
+     * Hashes the staged bytes.  In parallel mode, the staged chunk is handed to the executor once the previously
+     * handed chunk has been hashed, and the observing thread continues staging into the other chunk.
+     */
+    private void flush() {
+        if (pos == 0) {
+            return;
+        }
+
+        if (executor == null) {
+            update(chunk, 0, pos);
+            pos = 0;
+            return;
+        }
+
+        pending.join();
+
+        byte[] toHash = chunk;
+        int length = pos;
+        CompletableFuture<?>[] updates = new CompletableFuture<?>[digests.length];
+        for (int i = 0; i < digests.length; i++) {
+            MessageDigest digest = digests[i];
+            updates[i] = CompletableFuture.runAsync(() -> digest.update(toHash, 0, length), executor);
+        }
+        pending = CompletableFuture.allOf(updates);
+
+        chunk = hashing;
+        hashing = toHash;
+        pos = 0;
+    }
+
+    private void update(byte[] b, int off, int len) {
+        for (MessageDigest digest : digests) {
+            digest.update(b, off, len);
+        }
+    }
+}
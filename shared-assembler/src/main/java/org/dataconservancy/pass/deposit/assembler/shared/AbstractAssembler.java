@@ -25,6 +25,7 @@ import org.dataconservancy.pass.deposit.model.DepositFile;
 import org.dataconservancy.pass.deposit.model.DepositSubmission;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.FileSystemResource;
@@ -74,6 +75,8 @@ public abstract class AbstractAssembler implements Assembler {
 
     private String fedoraPassword;
 
+    private ResourceCache resourceCache;
+
     /**
      * Constructs a new assembler that provides {@link MetadataBuilderFactory} and {@link ResourceBuilderFactory} for
      * implementations to create and amend the state of package metadata and resources.
@@ -256,12 +259,38 @@ public abstract class AbstractAssembler implements Assembler {
                         throw new RuntimeException(String.format(ERR_MAPPING_LOCATION, location));
                     }
 
+                    if (resourceCache != null && (location.startsWith(HTTP_PREFIX) ||
+                            location.startsWith(HTTPS_PREFIX))) {
+                        delegateResource = cached(delegateResource);
+                    }
+
                     dfr.setResource(delegateResource);
 
                 })
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Answers a {@link CachedResource} retrieving the bytes of the supplied remote resource through the {@link
+     * #getResourceCache() resource cache}.  Connections made by the cache carry the credentials of an {@link
+     * AuthenticatedResource}.
+     *
+     * @param remote a remote resource
+     * @return the cached resource
+     */
+    private Resource cached(Resource remote) {
+        ResourceCache.ConnectionCustomizer customizer = null;
+        if (remote instanceof AuthenticatedResource) {
+            customizer = ((AuthenticatedResource) remote)::customizeConnection;
+        }
+
+        try {
+            return new CachedResource(remote, resourceCache, customizer);
+        } catch (IOException e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+    }
+
     /**
      * Sanitizes the supplied string, which is a candidate for use as a posix filename.  Alpha-numeric characters from
      * the latin-1 codeblock are allowed, all others are removed.  Path elements like {@code \} and {@code /} are
@@ -312,4 +341,19 @@ public abstract class AbstractAssembler implements Assembler {
         this.fedoraPassword = fedoraPassword;
     }
 
+    public ResourceCache getResourceCache() {
+        return resourceCache;
+    }
+
+    /**
+     * Caches the custodial content retrieved over HTTP, typically from Fedora.  If no cache is set, custodial content
+     * is retrieved from its origin every time a package is assembled.
+     *
+     * @param resourceCache the cache, may be {@code null}
+     */
+    @Autowired(required = false)
+    public void setResourceCache(ResourceCache resourceCache) {
+        this.resourceCache = resourceCache;
+    }
+
 }
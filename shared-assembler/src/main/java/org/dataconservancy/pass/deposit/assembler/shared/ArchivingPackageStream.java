@@ -18,6 +18,7 @@ package org.dataconservancy.pass.deposit.assembler.shared;
 
 import org.apache.commons.compress.archivers.ArchiveOutputStream;
 import org.dataconservancy.pass.deposit.assembler.MetadataBuilder;
+import org.dataconservancy.pass.deposit.assembler.PackageOptions;
 import org.dataconservancy.pass.deposit.assembler.PackageOptions.Archive;
 import org.dataconservancy.pass.deposit.assembler.PackageStream;
 import org.dataconservancy.pass.deposit.assembler.ResourceBuilder;
@@ -27,31 +28,47 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
-import static java.lang.Runtime.getRuntime;
+import static org.dataconservancy.pass.deposit.assembler.shared.AssemblerSupport.intOption;
 
 /**
  * Creates {@link PackageStream}s in a supported {@link Archive archival format}.  Package options, including the
  * archival format, are supplied upon construction.
  * <p>
- * This implementation employs {@link PipedOutputStream} and {@link PipedInputStream} to decouple write and read
- * operations to the {@code PackageStream}.  The intent is the caller (i.e. the client of {@code PackageStream}) can
+ * This implementation employs {@link PipedOutputStream} and {@link PipedInputStream} (or, if the {@link
+ * PackageOptions.Buffer#KEY buffer option} is {@link PackageOptions.Buffer.OPTS#RING RING}, a {@link
+ * RingBufferOutputStream} and {@link RingBufferInputStream}) to decouple write and read operations to the {@code
+ * PackageStream}.  The intent is the caller (i.e. the client of {@code PackageStream}) can
  * {@link PackageStream#open() open} the stream and begin to read it without blocking.  At the same time,
  * the concrete implementation of {@code ArchivingPackageStream} begins to write the contents of the package in a
  * separate thread.
  * </p>
  * <p>
+ * If the buffer option is {@link PackageOptions.Buffer.OPTS#FILE FILE}, the package is instead written in its entirety
+ * to a {@link SpooledPackage temporary file} by the thread that first invokes {@link #open()} or {@link #metadata()}.
+ * The size and checksums of the package are then available from the {@code Metadata}, and every invocation of {@code
+ * open()} reads the same file.  The file is deleted when this stream is {@link #close() closed}.
+ * </p>
+ * <p>
+ * Unless an executor is supplied on construction, packages are written by the {@link PackageAssemblyExecutor#shared()
+ * shared} {@code PackageAssemblyExecutor}, which bounds the number of packages written concurrently.  Exceptions
+ * thrown by the writer are routed to the input stream returned by the {@code open()} invocation that submitted it.
+ * </p>
+ * <p>
  * Subclasses of {@code ArchivingPackageStream} are expected to use the {@link MetadataBuilder} and
  * {@link ResourceBuilder} interfaces for adding metadata describing the stream and resources within the stream
  * ({@code ResourceBuilder} instances are obtained from the {@code ResourceBuilderFactory} supplied on construction).
@@ -65,7 +82,7 @@ public class ArchivingPackageStream implements PackageStream {
 
     private static final Logger LOG = LoggerFactory.getLogger(ArchivingPackageStream.class);
 
-    private static final int ONE_MIB = 2 ^ 20;
+    private static final int ONE_MIB = 1 << 20;
 
     /**
      * The custodial content to be packaged and streamed.
@@ -89,6 +106,8 @@ public class ArchivingPackageStream implements PackageStream {
 
     private PackageProvider packageProvider;
 
+    private SpooledPackage spooledPackage;
+
     public ArchivingPackageStream(DepositSubmission submission,
                                   List<DepositFileResource> custodialContent,
                                   MetadataBuilder metadataBuilder,
@@ -99,8 +118,7 @@ public class ArchivingPackageStream implements PackageStream {
         this.metadataBuilder = metadataBuilder;
         this.rbf = rbf;
         this.packageOptions = packageOptions;
-        this.executorService = new ExceptionHandlingThreadPoolExecutor(getRuntime().availableProcessors(),
-                getRuntime().availableProcessors() * 2, 1, TimeUnit.MINUTES, new ArrayBlockingQueue<>(10));
+        this.executorService = PackageAssemblyExecutor.shared();
         this.packageProvider = packageProvider;
         this.streamWriter = new DefaultStreamWriterImpl(submission, custodialContent, rbf, packageOptions,
                 packageProvider);
@@ -146,8 +164,10 @@ public class ArchivingPackageStream implements PackageStream {
     /**
      * {@inheritDoc}
      * <p>
-     * This implementation returns an {@code PipedInputStream} whose bytes are supplied by an internal {@link
-     * StreamWriter}.
+     * This implementation returns an {@code ExHandingPipedInputStream} or a {@code RingBufferInputStream} (depending
+     * on the {@link PackageOptions.Buffer#KEY buffer option}) whose bytes are supplied by an internal {@link
+     * StreamWriter}.  The capacity of either is governed by the {@link PackageOptions.Buffer#CAPACITY_KEY buffer
+     * capacity option}, and defaults to 1 MiB.
      * </p>
      * <p>
      * De-coupling the reading and writing of the stream allows the caller to open and begin reading the stream, even as
@@ -159,14 +179,37 @@ public class ArchivingPackageStream implements PackageStream {
     @Override
     public InputStream open() {
 
-        // Create a pipe: bytes written to the PipedOutputStream will be the source of bytes read from the
-        // PipedInputStream.  As the caller reads bytes from the PipedInputStream, bytes will be read from the
-        // PipedOutputStream.
-        ExHandingPipedInputStream pipedIn = new ExHandingPipedInputStream(ONE_MIB);
+        if (isSpooled()) {
+            try {
+                return spool().open();
+            } catch (IOException e) {
+                throw new RuntimeException(e.getMessage(), e);
+            }
+        }
+
+        // Create a pipe: bytes written to the output stream will be the source of bytes read from the input stream.
+        // As the caller reads bytes from the input stream, bytes will be read from the output stream.
+        InputStream pipedIn;
+        OutputStream pipedOut;
+        Consumer<Throwable> writerExHandler;
+
+        int capacity = intOption(packageOptions, PackageOptions.Buffer.CAPACITY_KEY, ONE_MIB);
 
-        PipedOutputStream pipedOut;
         try {
-            pipedOut = new PipedOutputStream(pipedIn);
+            if (packageOptions.getOrDefault(PackageOptions.Buffer.KEY, PackageOptions.Buffer.OPTS.PIPE) ==
+                    PackageOptions.Buffer.OPTS.RING) {
+                int chunkSize = intOption(packageOptions, PackageOptions.Buffer.CHUNK_SIZE_KEY,
+                        RingBufferInputStream.DEFAULT_CHUNK_SIZE);
+                RingBufferInputStream ringIn = new RingBufferInputStream(capacity, chunkSize);
+                pipedOut = new RingBufferOutputStream(ringIn);
+                pipedIn = ringIn;
+                writerExHandler = ringIn::setWriterEx;
+            } else {
+                ExHandingPipedInputStream exHandlingIn = new ExHandingPipedInputStream(capacity);
+                pipedOut = new PipedOutputStream(exHandlingIn);
+                pipedIn = exHandlingIn;
+                writerExHandler = exHandlingIn::setWriterEx;
+            }
         } catch (IOException e) {
             throw new RuntimeException(e.getMessage(), e);
         }
@@ -179,10 +222,10 @@ public class ArchivingPackageStream implements PackageStream {
         // stack trace of the exception will be reported when it is encountered by the reader
         BiConsumer<Runnable, Throwable> exceptionHandler = (runnable, throwable) -> {
 
-            // Make the exception caught by the writer available to the reader; set it on the PipedInputStream
+            // Make the exception caught by the writer available to the reader; set it on the input stream
             // The reader will use this to close any resources it has open when an exception occurs, and allow the
             // thread to be cleaned up.
-            pipedIn.setWriterEx(throwable);
+            writerExHandler.accept(throwable);
 
             if (throwable != null) {
                 LOG.error("Error encountered when writing the package stream.", throwable);
@@ -214,20 +257,88 @@ public class ArchivingPackageStream implements PackageStream {
             }
         };
 
-        executorService.setExceptionHandler(exceptionHandler);
-
-        // invoke call() from another thread
+        // invoke call() from another thread; the exception handler travels with the task, because the executor may be
+        // shared with other package streams
         CallableStreamWriter<?> callableSw = new CallableStreamWriter<>(streamWriter, archiveOut, custodialContent);
-        executorService.submit(callableSw);
+        try {
+            executorService.submit(callableSw, exceptionHandler);
+        } catch (RejectedExecutionException e) {
+            // surface the rejection to the reader, like any other failure of the writer; no task ran, so there is no
+            // Runnable to report
+            exceptionHandler.accept(null, e);
+        }
 
         return pipedIn;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * If the package is {@link PackageOptions.Buffer.OPTS#FILE spooled}, this method writes the package (if it has not
+     * already been written) so that the size and checksums of the package are present in the returned metadata.
+     * </p>
+     *
+     * @return {@inheritDoc}
+     */
     @Override
     public PackageStream.Metadata metadata() {
+        if (isSpooled()) {
+            try {
+                spool();
+            } catch (IOException e) {
+                throw new RuntimeException(e.getMessage(), e);
+            }
+        }
         return metadataBuilder.build();
     }
 
+    /**
+     * Deletes the spooled copy of the package, if there is one.
+     */
+    @Override
+    public synchronized void close() {
+        if (spooledPackage != null) {
+            spooledPackage.close();
+            spooledPackage = null;
+        }
+    }
+
+    private boolean isSpooled() {
+        return packageOptions.getOrDefault(PackageOptions.Buffer.KEY, PackageOptions.Buffer.OPTS.PIPE) ==
+                PackageOptions.Buffer.OPTS.FILE;
+    }
+
+    /**
+     * Writes the package to a temporary file on the calling thread, computing its size and checksums, and records them
+     * on the {@code MetadataBuilder}.  The package is only written once; subsequent invocations answer the same file.
+     * The package MD5 is always computed, because transports (e.g. SWORD) use it to verify the transfer.
+     *
+     * @return the spooled package
+     * @throws IOException if the package cannot be written
+     */
+    @SuppressWarnings("unchecked")
+    private synchronized SpooledPackage spool() throws IOException {
+        if (spooledPackage != null) {
+            return spooledPackage;
+        }
+
+        List<PackageOptions.Checksum.OPTS> algos = new ArrayList<>((List<PackageOptions.Checksum.OPTS>)
+                packageOptions.getOrDefault(PackageOptions.Checksum.KEY, Collections.emptyList()));
+        if (!algos.contains(PackageOptions.Checksum.OPTS.MD5)) {
+            algos.add(PackageOptions.Checksum.OPTS.MD5);
+        }
+
+        spooledPackage = SpooledPackage.spool(null, algos, out -> {
+            ArchiveOutputStream archiveOut = archiveOutputStreamFactory.newInstance(packageOptions, out);
+            streamWriter.start(custodialContent, archiveOut);
+        });
+
+        metadataBuilder.sizeBytes(spooledPackage.length());
+        spooledPackage.checksums().forEach(metadataBuilder::checksum);
+
+        return spooledPackage;
+    }
+
     /**
      * Unsupported by this implementation, always throws {@code UnsupportedOperationException}.
      *
@@ -24,6 +24,7 @@ import org.apache.tika.mime.MediaType;
 import org.dataconservancy.pass.deposit.assembler.MetadataBuilder;
 import org.dataconservancy.pass.deposit.assembler.PackageOptions.Archive;
 import org.dataconservancy.pass.deposit.assembler.PackageOptions.Archive.OPTS;
+import org.dataconservancy.pass.deposit.assembler.PackageOptions.Checksum;
 import org.dataconservancy.pass.deposit.assembler.PackageOptions.Compression;
 import org.dataconservancy.pass.deposit.assembler.PackageOptions.Spec;
 import org.dataconservancy.pass.deposit.assembler.PackageStream;
@@ -32,6 +33,8 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Map;
 
 import static org.apache.tika.mime.MediaType.APPLICATION_ZIP;
@@ -125,6 +128,75 @@ public class AssemblerSupport {
         return detector.detect(in, new Metadata());
     }
 
+    /**
+     * Answers the integer value of the option identified by {@code key}, or {@code defaultValue} if the option is not
+     * present.  The option value may be a {@code Number} or a {@code String}.
+     *
+     * @param options the Assembler options
+     * @param key the option key
+     * @param defaultValue the value to use if the option is not present
+     * @return the value of the option
+     * @throws NumberFormatException if the option value cannot be parsed as an integer
+     */
+    public static int intOption(Map<String, Object> options, String key, int defaultValue) {
+        Object value = options.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        }
+
+        return Integer.parseInt(value.toString().trim());
+    }
+
+    /**
+     * Answers the boolean value of a package option, which may be a {@code Boolean} or a {@code String}.
+     *
+     * @param options the package options
+     * @param key the option key
+     * @param defaultValue the value answered if the option is absent
+     * @return the value of the option
+     */
+    public static boolean booleanOption(Map<String, Object> options, String key, boolean defaultValue) {
+        Object value = options.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+
+        return Boolean.parseBoolean(value.toString().trim());
+    }
+
+    /**
+     * Answers a new {@code MessageDigest} for the supplied checksum algorithm.
+     *
+     * @param algorithm the checksum algorithm
+     * @return the {@code MessageDigest}
+     * @throws IllegalArgumentException if the algorithm is unknown or unsupported by the platform
+     */
+    public static MessageDigest messageDigest(Checksum.OPTS algorithm) {
+        try {
+            switch (algorithm) {
+                case MD5:
+                    return MessageDigest.getInstance("MD5");
+                case SHA256:
+                    return MessageDigest.getInstance("SHA-256");
+                case SHA512:
+                    return MessageDigest.getInstance("SHA-512");
+                default:
+                    throw new IllegalArgumentException("Unknown algorithm: " + algorithm.name());
+            }
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("Unable to obtain MessageDigest instance for algorithm: " +
+                    algorithm.name());
+        }
+    }
+
     public static InputStream updateLength(ArchiveEntry entry, SizedStream toSize) throws IOException {
         if (entry instanceof TarArchiveEntry) {
             ((TarArchiveEntry) entry).setSize(toSize.getLength());
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import org.dataconservancy.pass.deposit.assembler.shared.ResourceCache.ConnectionCustomizer;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+/**
+ * A remote Spring {@code Resource} whose bytes are retrieved through a {@link ResourceCache}.  Metadata, such as the
+ * file name and description of the resource, are answered by the origin {@code Resource}.
+ */
+public class CachedResource extends AbstractResource {
+
+    private final Resource origin;
+
+    private final URL url;
+
+    private final ResourceCache cache;
+
+    private final ConnectionCustomizer customizer;
+
+    /**
+     * @param origin the resource being cached
+     * @param cache the cache
+     * @param customizer customizes connections to the origin, e.g. to supply credentials
+     * @throws IOException if the URL of the origin cannot be determined
+     */
+    public CachedResource(Resource origin, ResourceCache cache, ConnectionCustomizer customizer) throws IOException {
+        if (origin == null) {
+            throw new IllegalArgumentException("Origin Resource must not be null.");
+        }
+        if (cache == null) {
+            throw new IllegalArgumentException("ResourceCache must not be null.");
+        }
+        this.origin = origin;
+        this.url = origin.getURL();
+        this.cache = cache;
+        this.customizer = customizer == null ? con -> { } : customizer;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return cache.open(url, customizer);
+    }
+
+    /**
+     * Answers the length of the cached content if the resource has been cached, otherwise the length reported by the
+     * origin.
+     *
+     * @return {@inheritDoc}
+     * @throws IOException {@inheritDoc}
+     */
+    @Override
+    public long contentLength() throws IOException {
+        long length = cache.length(url);
+        return length < 0 ? origin.contentLength() : length;
+    }
+
+    @Override
+    public boolean exists() {
+        return origin.exists();
+    }
+
+    @Override
+    public URL getURL() {
+        return url;
+    }
+
+    @Override
+    public String getFilename() {
+        return origin.getFilename();
+    }
+
+    @Override
+    public String getDescription() {
+        return "Cached " + origin.getDescription();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        // URL.equals(Object) resolves host names, so compare the string forms
+        return this == other || (other instanceof CachedResource &&
+                url.toString().equals(((CachedResource) other).url.toString()));
+    }
+
+    @Override
+    public int hashCode() {
+        return url.toString().hashCode();
+    }
+
+}
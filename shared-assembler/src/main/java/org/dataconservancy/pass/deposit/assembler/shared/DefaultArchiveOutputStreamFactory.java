@@ -17,17 +17,20 @@ package org.dataconservancy.pass.deposit.assembler.shared;
 
 import org.apache.commons.compress.archivers.ArchiveOutputStream;
 import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
-import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipParameters;
 import org.dataconservancy.pass.deposit.assembler.PackageOptions.Archive;
 import org.dataconservancy.pass.deposit.assembler.PackageOptions.Compression;
 
+import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Map;
+import java.util.zip.Deflater;
 
 import static java.lang.String.format;
 import static org.dataconservancy.pass.deposit.assembler.PackageOptions.Archive.OPTS.TAR;
 import static org.dataconservancy.pass.deposit.assembler.PackageOptions.Archive.OPTS.ZIP;
+import static org.dataconservancy.pass.deposit.assembler.shared.AssemblerSupport.intOption;
 
 /**
  * @author Elliot Metsger (emetsger@jhu.edu)
@@ -55,7 +58,7 @@ public class DefaultArchiveOutputStreamFactory implements ArchiveOutputStreamFac
         if (packageOptions.getOrDefault(Archive.KEY, Archive.OPTS.NONE) == TAR) {
             try {
                 if (packageOptions.getOrDefault(Compression.KEY, Compression.OPTS.NONE) == Compression.OPTS.GZIP) {
-                    archiveOut = new TarArchiveOutputStream(new GzipCompressorOutputStream(toWrap));
+                    archiveOut = new TarArchiveOutputStream(gzipOutputStream(packageOptions, toWrap));
                 } else {
                     archiveOut = new TarArchiveOutputStream(toWrap);
                 }
@@ -64,7 +67,7 @@ public class DefaultArchiveOutputStreamFactory implements ArchiveOutputStreamFac
             }
         } else if (packageOptions.getOrDefault(Archive.KEY, Archive.OPTS.NONE) == ZIP) {
             try {
-                archiveOut = new ZipArchiveOutputStream(toWrap);
+                archiveOut = new ZipPackageOutputStream(toWrap, level(packageOptions));
             } catch (Exception e) {
                 throw new RuntimeException(format(ERR_CREATING_ARCHIVE_STREAM, ZIP, e.getMessage()), e);
             }
@@ -75,4 +78,47 @@ public class DefaultArchiveOutputStreamFactory implements ArchiveOutputStreamFac
         return archiveOut;
     }
 
+    /**
+     * Answers a gzip stream wrapping {@code toWrap}.  If {@link Compression#THREADS_KEY} is greater than one, blocks of
+     * the package are compressed in parallel as a multi-member gzip stream.
+     *
+     * @param packageOptions the package options
+     * @param toWrap the stream receiving the compressed bytes
+     * @return the gzip stream
+     * @throws IOException if the gzip stream cannot be created
+     */
+    protected OutputStream gzipOutputStream(Map<String, Object> packageOptions, OutputStream toWrap)
+            throws IOException {
+        int level = level(packageOptions);
+        int threads = intOption(packageOptions, Compression.THREADS_KEY, 1);
+        if (threads > 1) {
+            int blockSize = intOption(packageOptions, Compression.BLOCK_SIZE_KEY,
+                    ParallelGzipOutputStream.DEFAULT_BLOCK_SIZE);
+            return new ParallelGzipOutputStream(toWrap, threads, blockSize, level,
+                    ParallelGzipOutputStream.sharedExecutor());
+        }
+
+        GzipParameters parameters = new GzipParameters();
+        parameters.setCompressionLevel(level);
+        return new GzipCompressorOutputStream(toWrap, parameters);
+    }
+
+    /**
+     * Answers the {@link Compression#LEVEL_KEY compression level}, or {@link Deflater#DEFAULT_COMPRESSION} if it is
+     * not specified.
+     *
+     * @param packageOptions the package options
+     * @return the deflate compression level
+     * @throws IllegalArgumentException if the compression level is not between 0 and 9
+     */
+    protected static int level(Map<String, Object> packageOptions) {
+        int level = intOption(packageOptions, Compression.LEVEL_KEY, Deflater.DEFAULT_COMPRESSION);
+        if (level != Deflater.DEFAULT_COMPRESSION &&
+                (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)) {
+            throw new IllegalArgumentException("Invalid compression level " + level + ": must be between " +
+                    Deflater.NO_COMPRESSION + " and " + Deflater.BEST_COMPRESSION);
+        }
+        return level;
+    }
+
 }
@@ -21,9 +21,9 @@ import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.ContentLengthObserver;
-import org.apache.commons.io.input.DigestObserver;
+import org.apache.commons.io.input.MultiDigestObserver;
 import org.apache.commons.io.input.ObservableInputStream;
-import org.apache.tika.detect.DefaultDetector;
+import org.apache.tika.mime.MediaType;
 import org.dataconservancy.pass.deposit.assembler.PackageOptions;
 import org.dataconservancy.pass.deposit.assembler.PackageStream;
 import org.dataconservancy.pass.deposit.assembler.ResourceBuilder;
@@ -39,14 +39,29 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.ZipEntry;
 
 import static java.lang.String.format;
 import static java.util.Collections.emptyList;
 import static org.dataconservancy.pass.deposit.assembler.shared.ArchivingPackageStream.ERR_PUT_RESOURCE;
 import static org.dataconservancy.pass.deposit.assembler.shared.ArchivingPackageStream.STREAMING_IO_LOG;
-import static org.dataconservancy.pass.deposit.assembler.shared.AssemblerSupport.detectMediaType;
+import static org.dataconservancy.pass.deposit.assembler.shared.AssemblerSupport.booleanOption;
+import static org.dataconservancy.pass.deposit.assembler.shared.AssemblerSupport.intOption;
 
 /**
+ * Writes custodial and supplemental resources to the package stream, in the order they are supplied.
+ * <p>
+ * If the {@link PackageOptions.Prefetch#KEY prefetch option} is a positive integer, that many custodial resources are
+ * read ahead of the resource being written, using a {@link ResourcePrefetcher}.  The memory used by prefetched
+ * resources is bounded by the {@link PrefetchMemoryBudget#shared() shared} {@code PrefetchMemoryBudget}, and, for
+ * each package, by the {@link PackageOptions.Prefetch#MEMORY_KEY prefetch memory option}, which defaults to 128 MiB.
+ * </p>
+ * <p>
+ * The media type of each resource is determined by the {@link ResourceMediaTypeDetector#shared() shared} {@code
+ * ResourceMediaTypeDetector}.  When writing a ZIP package, the media type, or a sample of the resource's bytes,
+ * determines whether the resource is stored or deflated; see {@link ZipCompressionPolicy}.
+ * </p>
+ *
  * @author Elliot Metsger (emetsger@jhu.edu)
  */
 public class DefaultStreamWriterImpl implements StreamWriter {
@@ -65,6 +80,10 @@ public class DefaultStreamWriterImpl implements StreamWriter {
 
     protected PackageProvider packageProvider;
 
+    private final ResourceMediaTypeDetector mediaTypeDetector = ResourceMediaTypeDetector.shared();
+
+    private final ZipCompressionPolicy zipCompressionPolicy = new ZipCompressionPolicy();
+
     /**
      * Constructs an {@code StreamWriter} that is supplied with the output stream being written to, the custodial
      * content being packaged, the submission, and other supporting classes.
@@ -105,7 +124,19 @@ public class DefaultStreamWriterImpl implements StreamWriter {
 
             packageProvider.start(submission, custodialFiles, packageOptions);
 
-            packageFiles.forEach(custodialFile -> assembledResources.add(assembleResource(custodialFile)));
+            int prefetch = intOption(packageOptions, PackageOptions.Prefetch.KEY, 0);
+
+            if (prefetch > 0 && packageFiles.size() > 1) {
+                try (ResourcePrefetcher prefetcher = new ResourcePrefetcher(packageFiles, prefetch,
+                        intOption(packageOptions, PackageOptions.Prefetch.MEMORY_KEY,
+                                ResourcePrefetcher.DEFAULT_MEMORY_LIMIT))) {
+                    for (DepositFileResource custodialFile : packageFiles) {
+                        assembledResources.add(assembleResource(custodialFile, prefetcher));
+                    }
+                }
+            } else {
+                packageFiles.forEach(custodialFile -> assembledResources.add(assembleResource(custodialFile)));
+            }
 
             List<SupplementalResource> supplementalResources =
                     packageProvider.finish(submission, assembledResources);
@@ -140,11 +171,36 @@ public class DefaultStreamWriterImpl implements StreamWriter {
         archiveOut.finish();
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public PackageStream.Resource writeResource(ResourceBuilder resourceBuilder, Resource resource) throws IOException {
-        try (InputStream resourceIn = resource.getInputStream(); BufferedInputStream buffIn =
-                resourceIn.markSupported() ? null : new BufferedInputStream(resourceIn)) {
+        try (InputStream resourceIn = resource.getInputStream()) {
+            return writeResource(resourceBuilder, resource, resourceIn, resource::contentLength);
+        }
+    }
+
+    /**
+     * Writes the bytes of a resource that have already been read, e.g. by a {@link ResourcePrefetcher}, to the package
+     * stream.  The length of the archive entry is the number of bytes read, rather than the length reported by the
+     * resource.
+     *
+     * @param resourceBuilder the builder used to describe the resource
+     * @param resource the resource being written
+     * @param prefetched the bytes of the resource
+     * @return the metadata describing the resource written to the package stream
+     * @throws IOException if there is an error writing the resource
+     */
+    protected PackageStream.Resource writeResource(ResourceBuilder resourceBuilder, Resource resource,
+                                                   SizedStream prefetched) throws IOException {
+        try (InputStream resourceIn = prefetched.getInputStream()) {
+            return writeResource(resourceBuilder, resource, resourceIn, prefetched::getLength);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private PackageStream.Resource writeResource(ResourceBuilder resourceBuilder, Resource resource,
+                                                 InputStream resourceIn, ContentLength contentLength)
+            throws IOException {
+        try (BufferedInputStream buffIn = resourceIn.markSupported() ? null : new BufferedInputStream(resourceIn)) {
 
             InputStream in;
 
@@ -154,15 +210,28 @@ public class DefaultStreamWriterImpl implements StreamWriter {
                 in = resourceIn;
             }
 
-            resourceBuilder.mimeType(detectMediaType(in, new DefaultDetector()).toString());
+            MediaType mediaType = mediaTypeDetector.detect(resource, in);
+            resourceBuilder.mimeType(mediaType.toString());
+
+            long length = contentLength.get();
+
+            // Decided before the stream is observed, so sampled bytes are not counted or digested twice
+            int zipMethod = zipMethod(mediaType, in);
 
             try (ObservableInputStream observableIn = new ObservableInputStream(in)) {
                 ContentLengthObserver clObs = new ContentLengthObserver(resourceBuilder);
                 observableIn.add(clObs);
 
-                ((List<PackageOptions.Checksum.OPTS>) packageOptions.getOrDefault(
-                        PackageOptions.Checksum.KEY, emptyList()))
-                        .forEach(algo -> observableIn.add(new DigestObserver(resourceBuilder, algo)));
+                // A single observer updates every requested digest with each chunk read
+                List<PackageOptions.Checksum.OPTS> algos = (List<PackageOptions.Checksum.OPTS>)
+                        packageOptions.getOrDefault(PackageOptions.Checksum.KEY, emptyList());
+                if (!algos.isEmpty()) {
+                    int parallelThreshold = intOption(packageOptions,
+                            PackageOptions.Checksum.PARALLEL_THRESHOLD_KEY, -1);
+                    boolean parallel = parallelThreshold >= 0 && length >= parallelThreshold;
+                    observableIn.add(new MultiDigestObserver(resourceBuilder, algos,
+                            parallel ? MultiDigestObserver.sharedExecutor() : null));
+                }
 
                 if (resource instanceof DepositFileResource) {
                     resourceBuilder.name(packageProvider.packagePath((DepositFileResource)resource));
@@ -173,8 +242,10 @@ public class DefaultStreamWriterImpl implements StreamWriter {
                 }
 
                 PackageStream.Resource packageResource = resourceBuilder.build();
-                long length = resource.contentLength();
                 ArchiveEntry archiveEntry = createEntry(packageResource.name(), length);
+                if (archiveEntry instanceof ZipArchiveEntry) {
+                    ((ZipArchiveEntry) archiveEntry).setMethod(zipMethod);
+                }
                 writeResource(archiveOut, archiveEntry, observableIn);
             }
 
@@ -183,6 +254,26 @@ public class DefaultStreamWriterImpl implements StreamWriter {
         }
     }
 
+    /**
+     * Answers the compression method of a resource written to a ZIP package.  Unless the {@link
+     * PackageOptions.Compression#STORE_INCOMPRESSIBLE_KEY store incompressible option} is {@code false}, resources
+     * judged incompressible by the {@link ZipCompressionPolicy} are stored.
+     *
+     * @param mediaType the media type of the resource
+     * @param in the bytes of the resource, which must support {@code mark(int)}
+     * @return the {@code ZipEntry} compression method
+     * @throws IOException if the bytes of the resource cannot be sampled
+     */
+    private int zipMethod(MediaType mediaType, InputStream in) throws IOException {
+        if (packageOptions.getOrDefault(PackageOptions.Archive.KEY, PackageOptions.Archive.OPTS.NONE) !=
+                PackageOptions.Archive.OPTS.ZIP ||
+                !booleanOption(packageOptions, PackageOptions.Compression.STORE_INCOMPRESSIBLE_KEY, true)) {
+            return ZipEntry.DEFLATED;
+        }
+
+        return zipCompressionPolicy.method(mediaType, in);
+    }
+
     /**
      * Create an ArchiveEntry from a {@code String} name and a {@code long} length
      *
@@ -255,4 +346,28 @@ public class DefaultStreamWriterImpl implements StreamWriter {
         }
     }
 
+    /**
+     * Like {@link #assembleResource(Resource)}, but the bytes of the resource are answered by the supplied {@code
+     * ResourcePrefetcher}, which must answer resources in the same order as they are assembled.
+     *
+     * @param resource the custodial content to be written to the package stream
+     * @param prefetcher supplies the bytes of {@code resource}
+     * @return the metadata describing the {@code resource} written to the package stream
+     */
+    private PackageStream.Resource assembleResource(Resource resource, ResourcePrefetcher prefetcher) {
+        try {
+            return writeResource(rbf.newInstance(), resource, prefetcher.next());
+        } catch (IOException e) {
+            throw new RuntimeException(format(ERR_PUT_RESOURCE, resource.getFilename(), e.getMessage()), e);
+        }
+    }
+
+    /**
+     * Supplies the length of a resource, which may require I/O.
+     */
+    @FunctionalInterface
+    private interface ContentLength {
+        long get() throws IOException;
+    }
+
 }
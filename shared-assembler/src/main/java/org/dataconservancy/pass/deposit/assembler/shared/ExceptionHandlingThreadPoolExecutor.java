@@ -16,9 +16,11 @@
 package org.dataconservancy.pass.deposit.assembler.shared;
 
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -26,6 +28,13 @@ import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
 
 /**
+ * A {@code ThreadPoolExecutor} which hands any {@code Throwable} thrown by a task to an exception handler.
+ * <p>
+ * Tasks submitted using {@link #submit(Callable, BiConsumer)} carry their own exception handler, which takes
+ * precedence over the executor-wide handler set by {@link #setExceptionHandler(BiConsumer)}.  This allows a single
+ * executor to be shared by concurrent callers, each of which must be notified of failures of <em>its</em> task only.
+ * </p>
+ *
  * @author Elliot Metsger (emetsger@jhu.edu)
  */
 public class ExceptionHandlingThreadPoolExecutor extends ThreadPoolExecutor {
@@ -60,6 +69,24 @@ public class ExceptionHandlingThreadPoolExecutor extends ThreadPoolExecutor {
         this.exceptionHandler = exceptionHandler;
     }
 
+    /**
+     * Submits a task for execution.  If the task throws an exception, or is cancelled, the supplied {@code
+     * exceptionHandler} is invoked instead of the executor-wide {@link #getExceptionHandler() exception handler}.
+     *
+     * @param task the task to execute
+     * @param exceptionHandler invoked with the task and the {@code Throwable} if the task fails
+     * @param <T> the type of the task's result
+     * @return a {@code Future} representing the pending completion of the task
+     */
+    public <T> Future<T> submit(Callable<T> task, BiConsumer<Runnable, Throwable> exceptionHandler) {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+        HandledFutureTask<T> future = new HandledFutureTask<>(task, exceptionHandler);
+        execute(future);
+        return future;
+    }
+
     @Override
     protected void afterExecute(Runnable runnable, Throwable throwable) {
         super.afterExecute(runnable, throwable);
@@ -81,8 +108,28 @@ public class ExceptionHandlingThreadPoolExecutor extends ThreadPoolExecutor {
 
         // Only invoke the exception handler if the Throwable is present, otherwise the stream closing logic supplied
         // by ArchivingPackageStream is executed erroneously.
-        if (exceptionHandler != null && throwable != null) {
-            exceptionHandler.accept(runnable, throwable);
+        BiConsumer<Runnable, Throwable> handler = exceptionHandler;
+        if (runnable instanceof HandledFutureTask) {
+            handler = ((HandledFutureTask<?>) runnable).exceptionHandler;
+        }
+
+        if (handler != null && throwable != null) {
+            handler.accept(runnable, throwable);
+        }
+    }
+
+    /**
+     * A {@code FutureTask} that carries the exception handler supplied on submission.
+     *
+     * @param <T> the type of the task's result
+     */
+    private static class HandledFutureTask<T> extends FutureTask<T> {
+
+        private final BiConsumer<Runnable, Throwable> exceptionHandler;
+
+        private HandledFutureTask(Callable<T> callable, BiConsumer<Runnable, Throwable> exceptionHandler) {
+            super(callable);
+            this.exceptionHandler = exceptionHandler;
         }
     }
 }
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.Runtime.getRuntime;
+
+/**
+ * The executor used by {@link ArchivingPackageStream} to write packages.  A single instance is meant to be shared by
+ * every {@code Assembler} in the application, so that the number of threads writing packages is bounded regardless
+ * of the number of packages being streamed.
+ * <p>
+ * At most {@code maxWriters} packages are written concurrently.  Up to {@code queueCapacity} additional writers wait
+ * for a thread; beyond that, submissions are rejected with a {@link RejectedExecutionException}.  Idle threads are
+ * released after one minute.
+ * </p>
+ * <p>
+ * Saturation of the executor is reported by {@link #getActiveWriters()}, {@link #getPeakActiveWriters()}, {@link
+ * #getQueuedWriters()}, {@link #getCompletedWriters()} and {@link #getRejectedWriters()}.
+ * </p>
+ */
+public class PackageAssemblyExecutor extends ExceptionHandlingThreadPoolExecutor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PackageAssemblyExecutor.class);
+
+    static final int DEFAULT_MAX_WRITERS = getRuntime().availableProcessors() * 2;
+
+    static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+    private static PackageAssemblyExecutor shared;
+
+    private final int maxWriters;
+
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final AtomicInteger peakActive = new AtomicInteger();
+
+    private final AtomicLong completed = new AtomicLong();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Creates an executor with a default cap of twice the number of available processors, and a queue of {@code 64}
+     * waiting writers.
+     */
+    public PackageAssemblyExecutor() {
+        this(DEFAULT_MAX_WRITERS, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Creates an executor which writes at most {@code maxWriters} packages concurrently.
+     *
+     * @param maxWriters the maximum number of packages written concurrently
+     * @param queueCapacity the number of writers that may wait for a thread before submissions are rejected
+     */
+    public PackageAssemblyExecutor(int maxWriters, int queueCapacity) {
+        this(maxWriters, queueCapacity, new WriterThreadFactory());
+    }
+
+    /**
+     * Creates an executor which writes at most {@code maxWriters} packages concurrently, on threads created by the
+     * supplied factory.  Writers may run on virtual threads, in which case {@code maxWriters} bounds the number of
+     * packages written concurrently rather than the number of platform threads.
+     *
+     * @param maxWriters the maximum number of packages written concurrently
+     * @param queueCapacity the number of writers that may wait for a thread before submissions are rejected
+     * @param threadFactory creates the threads writing packages
+     */
+    public PackageAssemblyExecutor(int maxWriters, int queueCapacity, ThreadFactory threadFactory) {
+        super(maxWriters, maxWriters, 1, TimeUnit.MINUTES, new ArrayBlockingQueue<>(queueCapacity), threadFactory);
+        this.maxWriters = maxWriters;
+        allowCoreThreadTimeOut(true);
+        setRejectedExecutionHandler(new CountingAbortPolicy());
+    }
+
+    /**
+     * Answers the executor shared by {@link ArchivingPackageStream}s that are not supplied with an executor on
+     * construction.  If one has not been {@link #setShared(PackageAssemblyExecutor) set}, an executor with default
+     * settings is created.
+     *
+     * @return the shared executor
+     */
+    public static synchronized PackageAssemblyExecutor shared() {
+        if (shared == null || shared.isShutdown()) {
+            shared = new PackageAssemblyExecutor();
+        }
+        return shared;
+    }
+
+    /**
+     * Replaces the shared executor, for example with one configured by the application.  A previously shared executor
+     * is shut down, allowing any packages it is writing to complete.
+     *
+     * @param executor the executor to share
+     */
+    public static synchronized void setShared(PackageAssemblyExecutor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("PackageAssemblyExecutor must not be null.");
+        }
+        if (shared != null && shared != executor) {
+            shared.shutdown();
+        }
+        shared = executor;
+    }
+
+    /**
+     * @return the maximum number of packages written concurrently
+     */
+    public int getMaxWriters() {
+        return maxWriters;
+    }
+
+    /**
+     * @return the number of packages currently being written
+     */
+    public int getActiveWriters() {
+        return active.get();
+    }
+
+    /**
+     * @return the largest number of packages that have been written concurrently
+     */
+    public int getPeakActiveWriters() {
+        return peakActive.get();
+    }
+
+    /**
+     * @return the number of writers waiting for a thread
+     */
+    public int getQueuedWriters() {
+        return getQueue().size();
+    }
+
+    /**
+     * @return the number of writers that have finished, successfully or not
+     */
+    public long getCompletedWriters() {
+        return completed.get();
+    }
+
+    /**
+     * @return the number of writers rejected because the executor was saturated or shut down
+     */
+    public long getRejectedWriters() {
+        return rejected.get();
+    }
+
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        super.beforeExecute(t, r);
+        int now = active.incrementAndGet();
+        peakActive.accumulateAndGet(now, Math::max);
+    }
+
+    @Override
+    protected void afterExecute(Runnable runnable, Throwable throwable) {
+        try {
+            super.afterExecute(runnable, throwable);
+        } finally {
+            active.decrementAndGet();
+            completed.incrementAndGet();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PackageAssemblyExecutor{" + "maxWriters=" + maxWriters + ", active=" + active + ", peakActive=" +
+                peakActive + ", queued=" + getQueuedWriters() + ", completed=" + completed + ", rejected=" +
+                rejected + '}';
+    }
+
+    /**
+     * Counts rejected writers before rejecting them with a {@code RejectedExecutionException}.
+     */
+    private class CountingAbortPolicy implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            rejected.incrementAndGet();
+            LOG.warn("Package writer rejected, the assembly executor is saturated or shut down: {}",
+                    PackageAssemblyExecutor.this);
+            throw new RejectedExecutionException("Package writer rejected by " + PackageAssemblyExecutor.this);
+        }
+    }
+
+    /**
+     * Creates daemon threads, so that idle package writers do not prevent the JVM from exiting.
+     */
+    private static class WriterThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "package-writer-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.Runtime.getRuntime;
+
+/**
+ * The executor used for the work a package writer hands off while writing a package: reading custodial resources
+ * ahead of the writer, updating digests in parallel, and compressing gzip blocks in parallel.  A single instance is
+ * meant to be shared by every {@code Assembler} in the application, so that the number of threads performing such
+ * work is bounded regardless of the number of packages being written.
+ * <p>
+ * At most {@code maxThreads} tasks run concurrently, and up to {@code queueCapacity} additional tasks wait for a
+ * thread.  Package writers wait for the tasks they submit, so a task submitted to a saturated executor is run by the
+ * submitting thread rather than rejected; the writer is slowed, but its package does not fail.  Idle threads are
+ * released after one minute.
+ * </p>
+ * <p>
+ * This executor is distinct from the {@link PackageAssemblyExecutor}: its tasks are submitted by package writers
+ * running on that executor, and must not wait behind them for a thread.
+ * </p>
+ */
+public class PackageTaskExecutor extends ThreadPoolExecutor {
+
+    static final int DEFAULT_MAX_THREADS = getRuntime().availableProcessors() * 2;
+
+    static final int DEFAULT_QUEUE_CAPACITY = 256;
+
+    private static PackageTaskExecutor shared;
+
+    private final AtomicLong callerRuns = new AtomicLong();
+
+    /**
+     * Creates an executor with a default of twice the number of available processors, and a queue of {@code 256}
+     * waiting tasks.
+     */
+    public PackageTaskExecutor() {
+        this(DEFAULT_MAX_THREADS, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Creates an executor which runs at most {@code maxThreads} tasks concurrently.
+     *
+     * @param maxThreads the maximum number of tasks run concurrently
+     * @param queueCapacity the number of tasks that may wait for a thread before tasks are run by their submitter
+     */
+    public PackageTaskExecutor(int maxThreads, int queueCapacity) {
+        this(maxThreads, queueCapacity, new TaskThreadFactory());
+    }
+
+    /**
+     * Creates an executor which runs at most {@code maxThreads} tasks concurrently, on threads created by the supplied
+     * factory.
+     *
+     * @param maxThreads the maximum number of tasks run concurrently
+     * @param queueCapacity the number of tasks that may wait for a thread before tasks are run by their submitter
+     * @param threadFactory creates the threads running tasks
+     */
+    public PackageTaskExecutor(int maxThreads, int queueCapacity, ThreadFactory threadFactory) {
+        super(maxThreads, maxThreads, 1, TimeUnit.MINUTES, new ArrayBlockingQueue<>(queueCapacity), threadFactory);
+        allowCoreThreadTimeOut(true);
+        setRejectedExecutionHandler((task, executor) -> {
+            if (!executor.isShutdown()) {
+                callerRuns.incrementAndGet();
+                task.run();
+            } else {
+                new AbortPolicy().rejectedExecution(task, executor);
+            }
+        });
+    }
+
+    /**
+     * Answers the executor shared by package writers that are not supplied with an executor.  If one has not been
+     * {@link #setShared(PackageTaskExecutor) set}, or the shared executor has been shut down, an executor with default
+     * settings is created.
+     *
+     * @return the shared executor
+     */
+    public static synchronized PackageTaskExecutor shared() {
+        if (shared == null || shared.isShutdown()) {
+            shared = new PackageTaskExecutor();
+        }
+        return shared;
+    }
+
+    /**
+     * Replaces the shared executor, for example with one configured by the application.  A previously shared executor
+     * is shut down, allowing the tasks it is running to complete.
+     *
+     * @param executor the executor to share
+     */
+    public static synchronized void setShared(PackageTaskExecutor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("PackageTaskExecutor must not be null.");
+        }
+        if (shared != null && shared != executor) {
+            shared.shutdown();
+        }
+        shared = executor;
+    }
+
+    /**
+     * @return the number of tasks run by their submitter because the executor was saturated
+     */
+    public long getCallerRuns() {
+        return callerRuns.get();
+    }
+
+    @Override
+    public String toString() {
+        return "PackageTaskExecutor{" + "maxThreads=" + getMaximumPoolSize() + ", active=" + getActiveCount() +
+                ", queued=" + getQueue().size() + ", callerRuns=" + callerRuns + '}';
+    }
+
+    /**
+     * Creates daemon threads, so that idle threads do not prevent the JVM from exiting.
+     */
+    private static class TaskThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "package-task-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
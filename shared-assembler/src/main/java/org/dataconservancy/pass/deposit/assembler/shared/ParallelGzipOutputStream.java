@@ -0,0 +1,242 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses bytes as a multi-member gzip stream, compressing fixed-size blocks in parallel (after the fashion of
+ * {@code pigz}).  Each block is compressed as a complete, independent gzip member, and members are written to the
+ * underlying stream in the order their bytes were written to this stream.
+ * <p>
+ * A gzip stream consisting of concatenated members is valid per RFC 1952, and decompresses to the concatenation of
+ * the members' content with {@code gunzip} and {@code java.util.zip.GZIPInputStream}.  Note that Commons Compress'
+ * {@code GzipCompressorInputStream} only reads past the first member when constructed with {@code
+ * decompressConcatenated} set to {@code true}.
+ * </p>
+ * <p>
+ * At most {@code parallelism} blocks are held by this stream at once, bounding its memory to roughly {@code
+ * parallelism} times the block size.  Blocks are compressed by the executor supplied on construction, by default
+ * the {@link PackageTaskExecutor#shared() shared} {@code PackageTaskExecutor}; if it is saturated, a block may be
+ * compressed by the writing thread.
+ * </p>
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+    static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+
+    private final OutputStream out;
+
+    private final ExecutorService executor;
+
+    private final int blockSize;
+
+    private final int parallelism;
+
+    private final int level;
+
+    private final Deque<Future<byte[]>> inFlight = new ArrayDeque<>();
+
+    private byte[] block;
+
+    private int pos = 0;
+
+    private boolean membersWritten = false;
+
+    private boolean closed = false;
+
+    /**
+     * Compresses blocks of {@link #DEFAULT_BLOCK_SIZE} bytes at the default compression level, using the shared
+     * executor.
+     *
+     * @param out the stream the gzip members are written to
+     * @param parallelism the maximum number of blocks compressed concurrently by this stream
+     */
+    public ParallelGzipOutputStream(OutputStream out, int parallelism) {
+        this(out, parallelism, DEFAULT_BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION, sharedExecutor());
+    }
+
+    /**
+     * @param out the stream the gzip members are written to
+     * @param parallelism the maximum number of blocks compressed concurrently by this stream
+     * @param blockSize the number of uncompressed bytes in each gzip member
+     * @param level the {@link Deflater} compression level
+     * @param executor compresses the blocks
+     */
+    public ParallelGzipOutputStream(OutputStream out, int parallelism, int blockSize, int level,
+                                    ExecutorService executor) {
+        if (out == null) {
+            throw new IllegalArgumentException("OutputStream must not be null.");
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be a positive integer.");
+        }
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size must be a positive integer.");
+        }
+        this.out = out;
+        this.parallelism = parallelism;
+        this.blockSize = blockSize;
+        this.level = level;
+        this.executor = executor;
+        this.block = new byte[blockSize];
+    }
+
+    /**
+     * @return the executor shared by all instances for compressing blocks, the {@link PackageTaskExecutor#shared()
+     *         shared} {@code PackageTaskExecutor}
+     */
+    public static ExecutorService sharedExecutor() {
+        return PackageTaskExecutor.shared();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        block[pos++] = (byte) b;
+        if (pos == blockSize) {
+            submitBlock();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (b == null) {
+            throw new NullPointerException();
+        } else if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        while (len > 0) {
+            int toCopy = Math.min(len, blockSize - pos);
+            System.arraycopy(b, off, block, pos, toCopy);
+            pos += toCopy;
+            off += toCopy;
+            len -= toCopy;
+            if (pos == blockSize) {
+                submitBlock();
+            }
+        }
+    }
+
+    /**
+     * Compresses any partially filled block as its own member, and writes all pending members to the underlying
+     * stream.  Frequent flushing reduces the compression ratio.
+     *
+     * @throws IOException if a block could not be compressed or written
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        if (pos > 0) {
+            submitBlock();
+        }
+        while (!inFlight.isEmpty()) {
+            writeHead();
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        try {
+            flush();
+            if (!membersWritten) {
+                // an empty gzip stream still requires one (empty) member
+                out.write(compress(new byte[0], 0, level));
+            }
+        } finally {
+            closed = true;
+            inFlight.forEach(f -> f.cancel(true));
+            inFlight.clear();
+            out.close();
+        }
+    }
+
+    private void submitBlock() throws IOException {
+        while (inFlight.size() >= parallelism) {
+            writeHead();
+        }
+
+        byte[] toCompress = block;
+        int length = pos;
+        int level = this.level;
+        inFlight.addLast(executor.submit(() -> compress(toCompress, length, level)));
+
+        block = new byte[blockSize];
+        pos = 0;
+
+        // write any members that are already complete, without waiting
+        while (!inFlight.isEmpty() && inFlight.peekFirst().isDone()) {
+            writeHead();
+        }
+    }
+
+    private void writeHead() throws IOException {
+        Future<byte[]> head = inFlight.removeFirst();
+        try {
+            out.write(head.get());
+            membersWritten = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a gzip block to be compressed");
+        } catch (ExecutionException e) {
+            throw new IOException("Error compressing gzip block: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    /**
+     * Compresses the supplied bytes as a complete gzip member.
+     *
+     * @param b the bytes to compress
+     * @param len the number of bytes to compress
+     * @param level the compression level
+     * @return the gzip member
+     * @throws IOException if the bytes cannot be compressed
+     */
+    private static byte[] compress(byte[] b, int len, int level) throws IOException {
+        ByteArrayOutputStream member = new ByteArrayOutputStream(Math.max(64, len / 2));
+        try (GZIPOutputStream gzipOut = new GZIPOutputStream(member, 8192) {
+            {
+                def.setLevel(level);
+            }
+        }) {
+            gzipOut.write(b, 0, len);
+        }
+        return member.toByteArray();
+    }
+}
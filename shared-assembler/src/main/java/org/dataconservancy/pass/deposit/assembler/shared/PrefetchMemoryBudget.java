@@ -0,0 +1,116 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The memory available to {@link ResourcePrefetcher}s for holding prefetched content.  A single instance is meant to
+ * be shared by every {@code Assembler} in the application, so that the memory held by prefetched content is bounded
+ * regardless of the number of packages being assembled; content that does not fit is spooled to temporary files.
+ */
+public class PrefetchMemoryBudget {
+
+    static final long DEFAULT_CAPACITY = 128 * 1024 * 1024;
+
+    private static PrefetchMemoryBudget shared;
+
+    private final long capacity;
+
+    private final AtomicLong available;
+
+    /**
+     * @param capacity the number of bytes of prefetched content that may be held in memory
+     */
+    public PrefetchMemoryBudget(long capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Prefetch memory budget must not be negative.");
+        }
+        this.capacity = capacity;
+        this.available = new AtomicLong(capacity);
+    }
+
+    /**
+     * Answers the budget shared by {@link ResourcePrefetcher}s that are not supplied with a budget on construction.
+     * If one has not been {@link #setShared(PrefetchMemoryBudget) set}, a budget of {@code 128} MiB is created.
+     *
+     * @return the shared budget
+     */
+    public static synchronized PrefetchMemoryBudget shared() {
+        if (shared == null) {
+            shared = new PrefetchMemoryBudget(DEFAULT_CAPACITY);
+        }
+        return shared;
+    }
+
+    /**
+     * Replaces the shared budget, for example with one configured by the application.  Memory reserved from a
+     * previously shared budget is returned to that budget.
+     *
+     * @param budget the budget to share
+     */
+    public static synchronized void setShared(PrefetchMemoryBudget budget) {
+        if (budget == null) {
+            throw new IllegalArgumentException("PrefetchMemoryBudget must not be null.");
+        }
+        shared = budget;
+    }
+
+    /**
+     * Reserves {@code bytes} of the budget, if they are available.
+     *
+     * @param bytes the number of bytes to reserve
+     * @return {@code true} if the bytes were reserved, {@code false} if the budget does not have them available
+     */
+    public boolean reserve(long bytes) {
+        long current;
+        do {
+            current = available.get();
+            if (current < bytes) {
+                return false;
+            }
+        } while (!available.compareAndSet(current, current - bytes));
+        return true;
+    }
+
+    /**
+     * Returns {@code bytes} previously {@link #reserve(long) reserved} to the budget.
+     *
+     * @param bytes the number of bytes to return
+     */
+    public void release(long bytes) {
+        available.addAndGet(bytes);
+    }
+
+    /**
+     * @return the number of bytes of prefetched content that may be held in memory
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of bytes that are not reserved
+     */
+    public long getAvailable() {
+        return available.get();
+    }
+
+    @Override
+    public String toString() {
+        return "PrefetchMemoryBudget{" + "capacity=" + capacity + ", available=" + available + '}';
+    }
+}
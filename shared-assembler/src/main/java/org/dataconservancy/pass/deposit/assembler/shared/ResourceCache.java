@@ -0,0 +1,525 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.apache.commons.codec.binary.Hex.encodeHexString;
+import static org.dataconservancy.pass.deposit.assembler.PackageOptions.Checksum.OPTS.SHA256;
+import static org.dataconservancy.pass.deposit.assembler.shared.AssemblerSupport.messageDigest;
+
+/**
+ * An on-disk cache of the bytes of remote resources, typically custodial content retrieved from Fedora.
+ * <p>
+ * Cached content is addressed by its SHA-256 digest, so identical content retrieved from different locations is stored
+ * once.  Each cached location records the {@code ETag} and {@code Last-Modified} validators of the response that
+ * supplied its content.  When a cached location is {@link #open(URL, ConnectionCustomizer) opened}, the cache issues
+ * a conditional request using those validators: a {@code 304 Not Modified} response is answered from the cache (a
+ * <em>hit</em>), and any other successful response replaces the cached content (a <em>miss</em>).  Responses carrying
+ * neither validator are not cached.  Content retrieved from the origin is written to the cache as the caller reads
+ * it, and is only cached once the caller has read it to its end.
+ * </p>
+ * <p>
+ * The cache is bounded by the number of bytes of content it holds; the least recently used locations are evicted
+ * when the bound is exceeded.  The cache index is held in memory, so content is only reused by the process that
+ * cached it: files left in the cache directory by an earlier process are removed when the cache is created.
+ * Content that is evicted while it is being read remains readable on platforms that permit deleting open files.
+ * </p>
+ */
+public class ResourceCache implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ResourceCache.class);
+
+    private static final String BLOB_PREFIX = "blob-";
+
+    private static final String DOWNLOAD_PREFIX = "download-";
+
+    private final Path directory;
+
+    private final long maxBytes;
+
+    /**
+     * Cached locations, in access order
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * The number of cached locations referencing each blob, keyed by content digest
+     */
+    private final Map<String, Integer> blobReferences = new HashMap<>();
+
+    private long size = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong bytesSaved = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Creates a cache in the supplied directory, removing any content left by an earlier cache.
+     *
+     * @param directory the directory holding cached content, created if it does not exist
+     * @param maxBytes the maximum number of bytes of content held by the cache
+     * @throws IOException if the directory cannot be created or cleaned
+     */
+    public ResourceCache(Path directory, long maxBytes) throws IOException {
+        if (directory == null) {
+            throw new IllegalArgumentException("Cache directory must not be null.");
+        }
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("Maximum cache size must be a positive integer.");
+        }
+
+        this.directory = Files.createDirectories(directory);
+        this.maxBytes = maxBytes;
+
+        try (DirectoryStream<Path> stale = Files.newDirectoryStream(directory,
+                "{" + BLOB_PREFIX + "," + DOWNLOAD_PREFIX + "}*")) {
+            for (Path file : stale) {
+                delete(file);
+            }
+        }
+    }
+
+    /**
+     * Opens the content at {@code location}, answering it from the cache if the origin confirms the cached content is
+     * current.
+     *
+     * @param location the location of the content
+     * @param customizer customizes each connection made to {@code location}, e.g. to supply credentials
+     * @return the content
+     * @throws IOException if the content cannot be retrieved or cached
+     */
+    public InputStream open(URL location, ConnectionCustomizer customizer) throws IOException {
+        String key = location.toString();
+        Entry cached;
+        synchronized (this) {
+            cached = entries.get(key);
+        }
+
+        URLConnection urlCon = location.openConnection();
+        if (!(urlCon instanceof HttpURLConnection)) {
+            return urlCon.getInputStream();
+        }
+
+        HttpURLConnection con = (HttpURLConnection) urlCon;
+        customizer.customize(con);
+
+        if (cached != null) {
+            if (cached.etag != null) {
+                con.setRequestProperty("If-None-Match", cached.etag);
+            }
+            if (cached.lastModified != null) {
+                con.setRequestProperty("If-Modified-Since", cached.lastModified);
+            }
+        }
+
+        if (cached != null && con.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            con.getInputStream().close();
+            InputStream in = openBlob(key, cached);
+            if (in != null) {
+                hits.incrementAndGet();
+                bytesSaved.addAndGet(cached.length);
+                LOG.trace("Cache hit for {} ({} bytes)", key, cached.length);
+                return in;
+            }
+
+            // evicted after revalidation; retrieve it again, unconditionally
+            return open(location, customizer);
+        }
+
+        misses.incrementAndGet();
+
+        InputStream body = con.getInputStream();
+        String etag = con.getHeaderField("ETag");
+        String lastModified = con.getHeaderField("Last-Modified");
+
+        if (etag == null && lastModified == null) {
+            LOG.trace("Not caching {}: the response has no validators", key);
+            return body;
+        }
+
+        if (con.getContentLengthLong() > maxBytes) {
+            LOG.debug("Not caching {}: {} bytes exceeds the cache size of {} bytes", key,
+                    con.getContentLengthLong(), maxBytes);
+            return body;
+        }
+
+        return store(key, etag, lastModified, body);
+    }
+
+    /**
+     * @return the number of opened locations answered from the cache
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of opened locations whose content was retrieved from the origin
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of bytes answered from the cache rather than retrieved from the origin
+     */
+    public long getBytesSaved() {
+        return bytesSaved.get();
+    }
+
+    /**
+     * @return the number of locations evicted from the cache
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * @return the number of bytes of content held by the cache
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Answers the length of the content cached for {@code location}.  The cached content is not revalidated.
+     *
+     * @param location the location of the content
+     * @return the length of the cached content, or {@code -1} if the location is not cached
+     */
+    public synchronized long length(URL location) {
+        Entry cached = entries.get(location.toString());
+        return cached == null ? -1 : cached.length;
+    }
+
+    /**
+     * Removes all cached content.
+     */
+    @Override
+    public synchronized void close() {
+        entries.clear();
+        blobReferences.keySet().forEach(digest -> delete(blob(digest)));
+        blobReferences.clear();
+        size = 0;
+    }
+
+    /**
+     * Answers a stream over {@code body} which copies the bytes read by the caller to the cache as they are read, so
+     * that the caller does not wait for the whole body to be downloaded.  The content is cached once the caller has
+     * read it to its end; content that is not read to its end is not cached.
+     */
+    private InputStream store(String key, String etag, String lastModified, InputStream body) throws IOException {
+        Path download = Files.createTempFile(directory, DOWNLOAD_PREFIX, ".bin");
+        try {
+            return new CachingInputStream(key, etag, lastModified, body, download);
+        } catch (IOException | RuntimeException e) {
+            delete(download);
+            body.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Adds downloaded content to the cache.
+     */
+    private synchronized void commit(String key, Entry entry, Path download) throws IOException {
+        String hash = entry.digest;
+        Path blob = blob(hash);
+        if (blobReferences.containsKey(hash)) {
+            delete(download);
+        } else {
+            try {
+                Files.move(download, blob, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e) {
+                delete(download);
+            }
+        }
+
+        Entry replaced = entries.put(key, entry);
+        if (replaced != null) {
+            release(replaced);
+        }
+        if (blobReferences.merge(hash, 1, Integer::sum) == 1) {
+            size += entry.length;
+        }
+
+        evict(key);
+
+        LOG.trace("Cached {} ({} bytes, sha256 {})", key, entry.length, hash);
+    }
+
+    /**
+     * Opens the blob for a cached location, answering {@code null} if the location has been evicted.
+     */
+    private synchronized InputStream openBlob(String key, Entry entry) throws IOException {
+        if (entries.get(key) != entry) {
+            return null;
+        }
+
+        try {
+            return Channels.newInputStream(FileChannel.open(blob(entry.digest), StandardOpenOption.READ));
+        } catch (NoSuchFileException e) {
+            LOG.warn("Cached content for {} is missing from {}", key, directory);
+            entries.remove(key);
+            release(entry);
+            return null;
+        }
+    }
+
+    /**
+     * Evicts least recently used locations, other than {@code retain}, until the cache is within its bounds.
+     */
+    private void evict(String retain) {
+        Iterator<Map.Entry<String, Entry>> itr = entries.entrySet().iterator();
+        while (size > maxBytes && itr.hasNext()) {
+            Map.Entry<String, Entry> eldest = itr.next();
+            if (eldest.getKey().equals(retain)) {
+                continue;
+            }
+            itr.remove();
+            release(eldest.getValue());
+            evictions.incrementAndGet();
+            LOG.trace("Evicted {} from the cache", eldest.getKey());
+        }
+    }
+
+    /**
+     * Releases a location's reference to its blob, deleting the blob if it is no longer referenced.
+     */
+    private void release(Entry entry) {
+        if (blobReferences.merge(entry.digest, -1, Integer::sum) == 0) {
+            blobReferences.remove(entry.digest);
+            size -= entry.length;
+            delete(blob(entry.digest));
+        }
+    }
+
+    private Path blob(String digest) {
+        return directory.resolve(BLOB_PREFIX + digest);
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOG.warn("Unable to delete cached content {}: {}", file, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Customizes a connection before it is used, for example by adding an {@code Authorization} header.
+     */
+    @FunctionalInterface
+    public interface ConnectionCustomizer {
+        void customize(HttpURLConnection con) throws IOException;
+    }
+
+    private static class Entry {
+
+        private final String etag;
+
+        private final String lastModified;
+
+        private final String digest;
+
+        private final long length;
+
+        private Entry(String etag, String lastModified, String digest, long length) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.digest = digest;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Reads the body of a response, copying the bytes read to a download file.  Once the body has been read to its
+     * end, the download is added to the cache.  If the body exceeds the size of the cache, or the download cannot be
+     * written, the download is abandoned and the body is read without being cached; the caller is not affected.
+     */
+    private class CachingInputStream extends FilterInputStream {
+
+        private final String key;
+
+        private final String etag;
+
+        private final String lastModified;
+
+        private final Path download;
+
+        private final MessageDigest digest = messageDigest(SHA256);
+
+        private OutputStream out;
+
+        private long length = 0;
+
+        private CachingInputStream(String key, String etag, String lastModified, InputStream body, Path download)
+                throws IOException {
+            super(body);
+            this.key = key;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.download = download;
+            this.out = new DigestOutputStream(Files.newOutputStream(download), digest);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = readBody(() -> in.read());
+            if (b == -1) {
+                complete();
+            } else {
+                cache(new byte[] { (byte) b }, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = readBody(() -> in.read(b, off, len));
+            if (read == -1) {
+                complete();
+            } else {
+                cache(b, off, read);
+            }
+            return read;
+        }
+
+        /**
+         * Skips by reading, so that the skipped bytes are cached.
+         */
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] buf = new byte[(int) Math.min(64 * 1024, Math.max(n, 1))];
+            long skipped = 0;
+            while (skipped < n) {
+                int read = read(buf, 0, (int) Math.min(buf.length, n - skipped));
+                if (read == -1) {
+                    break;
+                }
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (out != null) {
+                    LOG.trace("Not caching {}: the content was not read to its end", key);
+                    abandon();
+                }
+            }
+        }
+
+        private int readBody(BodyRead read) throws IOException {
+            try {
+                return read.read();
+            } catch (IOException | RuntimeException e) {
+                abandon();
+                throw e;
+            }
+        }
+
+        private void cache(byte[] b, int off, int len) {
+            if (out == null) {
+                return;
+            }
+            if (length + len > maxBytes) {
+                LOG.debug("Not caching {}: the content exceeds the cache size of {} bytes", key, maxBytes);
+                abandon();
+                return;
+            }
+            try {
+                out.write(b, off, len);
+                length += len;
+            } catch (IOException e) {
+                LOG.warn("Not caching {}: unable to write {}: {}", key, download, e.getMessage());
+                abandon();
+            }
+        }
+
+        private void complete() {
+            if (out == null) {
+                return;
+            }
+            try {
+                out.close();
+                out = null;
+                commit(key, new Entry(etag, lastModified, encodeHexString(digest.digest()), length), download);
+            } catch (IOException e) {
+                LOG.warn("Not caching {}: unable to store {}: {}", key, download, e.getMessage());
+                abandon();
+            }
+        }
+
+        private void abandon() {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // the download is deleted regardless
+                }
+                out = null;
+            }
+            delete(download);
+        }
+    }
+
+    @FunctionalInterface
+    private interface BodyRead {
+        int read() throws IOException;
+    }
+
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import org.apache.tika.detect.DefaultDetector;
+import org.apache.tika.detect.Detector;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.mime.MediaType;
+import org.apache.tika.mime.MimeTypes;
+import org.dataconservancy.pass.deposit.model.DepositFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.dataconservancy.pass.deposit.assembler.shared.AssemblerSupport.detectMediaType;
+
+/**
+ * Determines the media type of a resource being written to a package.  The first of the following that yields a
+ * media type is used:
+ * <ol>
+ *     <li>the media type recorded by PASS for a {@link DepositFileResource} ({@link DepositFile#getMimeType()}),
+ *         unless it is a generic type such as {@code application/octet-stream}, which browsers record for files
+ *         they cannot type</li>
+ *     <li>the extension of the resource's file name</li>
+ *     <li>the bytes of the resource, as sniffed by Tika's {@link DefaultDetector}</li>
+ * </ol>
+ * <p>
+ * Building a {@code DefaultDetector} loads Tika's service registry and MIME repository, so a single detector is created
+ * and shared by all threads; Tika detectors are stateless and safe for concurrent use.  The number of resources whose
+ * media type had to be sniffed from their bytes is reported by {@link #getSniffCount()}.
+ * </p>
+ */
+public class ResourceMediaTypeDetector {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ResourceMediaTypeDetector.class);
+
+    private static final ResourceMediaTypeDetector SHARED = new ResourceMediaTypeDetector(new DefaultDetector(),
+            MimeTypes.getDefaultMimeTypes());
+
+    /**
+     * Media types that say nothing about the content they are recorded for.
+     */
+    private static final Set<MediaType> GENERIC = new HashSet<>(Arrays.asList(MediaType.OCTET_STREAM,
+            MediaType.parse("binary/octet-stream"), MediaType.parse("application/unknown"),
+            MediaType.parse("application/x-unknown"), MediaType.parse("application/binary")));
+
+    private final Detector detector;
+
+    private final MimeTypes mimeTypes;
+
+    private final AtomicLong metadataCount = new AtomicLong();
+
+    private final AtomicLong extensionCount = new AtomicLong();
+
+    private final AtomicLong sniffCount = new AtomicLong();
+
+    public ResourceMediaTypeDetector(Detector detector, MimeTypes mimeTypes) {
+        if (detector == null) {
+            throw new IllegalArgumentException("Detector must not be null.");
+        }
+        if (mimeTypes == null) {
+            throw new IllegalArgumentException("MimeTypes must not be null.");
+        }
+        this.detector = detector;
+        this.mimeTypes = mimeTypes;
+    }
+
+    /**
+     * @return the detector shared by all package streams
+     */
+    public static ResourceMediaTypeDetector shared() {
+        return SHARED;
+    }
+
+    /**
+     * Answers the media type of the supplied resource.  The bytes of {@code in} are only consulted if a specific media
+     * type cannot be determined from the metadata or file name of the resource; in that case {@code in} must support
+     * {@code mark(int)}, and is reset after sniffing.
+     *
+     * @param resource the resource being typed
+     * @param in the bytes of the resource
+     * @return the media type of the resource
+     * @throws IOException if the bytes of the resource cannot be read
+     */
+    public MediaType detect(Resource resource, InputStream in) throws IOException {
+        DepositFile depositFile = (resource instanceof DepositFileResource)
+                ? ((DepositFileResource) resource).getDepositFile()
+                : null;
+
+        if (depositFile != null && depositFile.getMimeType() != null) {
+            MediaType recorded = MediaType.parse(depositFile.getMimeType().trim());
+            if (recorded != null && !GENERIC.contains(recorded.getBaseType())) {
+                metadataCount.incrementAndGet();
+                return recorded;
+            }
+        }
+
+        String name = (depositFile != null && depositFile.getName() != null)
+                ? depositFile.getName()
+                : resource.getFilename();
+
+        if (name != null && name.indexOf('.') > 0) {
+            Metadata metadata = new Metadata();
+            metadata.set(Metadata.RESOURCE_NAME_KEY, name);
+            // without an input stream, only the resource name is consulted
+            MediaType byName = mimeTypes.detect(null, metadata);
+            if (!MediaType.OCTET_STREAM.equals(byName)) {
+                extensionCount.incrementAndGet();
+                return byName;
+            }
+        }
+
+        sniffCount.incrementAndGet();
+        LOG.debug("Sniffing the media type of {}", name);
+        return detectMediaType(in, detector);
+    }
+
+    /**
+     * @return the number of resources typed using the media type recorded by PASS
+     */
+    public long getMetadataCount() {
+        return metadataCount.get();
+    }
+
+    /**
+     * @return the number of resources typed by their file name extension
+     */
+    public long getExtensionCount() {
+        return extensionCount.get();
+    }
+
+    /**
+     * @return the number of resources whose bytes had to be sniffed to determine their media type
+     */
+    public long getSniffCount() {
+        return sniffCount.get();
+    }
+
+}
@@ -0,0 +1,366 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import org.apache.commons.io.output.ByteArrayOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads a list of {@code Resource}s ahead of the caller.  While the caller consumes the bytes of one resource, the
+ * bytes of the next {@code depth} resources are read in parallel, so that the latency of opening each resource (e.g.
+ * an HTTP {@code GET} of a file in Fedora) is not paid serially.
+ * <p>
+ * Resources are answered by {@link #next()} in the order they were supplied, regardless of the order in which they
+ * are read.  Prefetched bytes are held in memory while the {@link PrefetchMemoryBudget} shared by every prefetcher
+ * has room for them, and while the bytes held by this instance are within its own {@code memoryLimit}; bytes beyond
+ * either are spooled to a temporary file.  Memory and temporary files are released when the {@code InputStream} of
+ * each prefetched resource is closed, or when this prefetcher is closed.
+ * </p>
+ */
+public class ResourcePrefetcher implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ResourcePrefetcher.class);
+
+    /**
+     * The number of bytes prefetched by a single instance that may be held in memory, unless otherwise specified:
+     * {@code 128} MiB, the default capacity of the shared {@link PrefetchMemoryBudget}.
+     */
+    static final int DEFAULT_MEMORY_LIMIT = 128 * 1024 * 1024;
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final List<? extends Resource> resources;
+
+    private final int depth;
+
+    private final AtomicLong availableMemory;
+
+    private final PrefetchMemoryBudget budget;
+
+    private final ExecutorService executor;
+
+    private final List<Future<Prefetched>> fetches;
+
+    private final Set<Prefetched> unanswered = ConcurrentHashMap.newKeySet();
+
+    private int nextIndex = 0;
+
+    private volatile boolean closed = false;
+
+    /**
+     * Prefetches resources using the {@link PackageTaskExecutor#shared() shared} {@code PackageTaskExecutor} and
+     * {@link PrefetchMemoryBudget#shared() shared} memory budget.
+     *
+     * @param resources the resources to read, in the order they are to be answered
+     * @param depth the number of resources read ahead of the resource being consumed, must be at least 1
+     * @param memoryLimit the number of bytes prefetched by this instance that may be held in memory
+     */
+    public ResourcePrefetcher(List<? extends Resource> resources, int depth, long memoryLimit) {
+        this(resources, depth, memoryLimit, PrefetchMemoryBudget.shared(), PackageTaskExecutor.shared());
+    }
+
+    /**
+     * Prefetches resources using the supplied memory budget and executor.
+     *
+     * @param resources the resources to read, in the order they are to be answered
+     * @param depth the number of resources read ahead of the resource being consumed, must be at least 1
+     * @param memoryLimit the number of bytes prefetched by this instance that may be held in memory
+     * @param budget the memory shared with other prefetchers
+     * @param executor reads the resources
+     */
+    public ResourcePrefetcher(List<? extends Resource> resources, int depth, long memoryLimit,
+                              PrefetchMemoryBudget budget, ExecutorService executor) {
+        if (depth < 1) {
+            throw new IllegalArgumentException("Prefetch depth must be a positive integer.");
+        }
+
+        if (memoryLimit < 0) {
+            throw new IllegalArgumentException("Prefetch memory limit must not be negative.");
+        }
+
+        if (budget == null) {
+            throw new IllegalArgumentException("Prefetch memory budget must not be null.");
+        }
+
+        this.resources = resources;
+        this.depth = depth;
+        this.availableMemory = new AtomicLong(memoryLimit);
+        this.budget = budget;
+        this.executor = executor;
+        this.fetches = new ArrayList<>(resources.size());
+
+        for (int i = 0; i < Math.min(depth, resources.size()); i++) {
+            schedule(i);
+        }
+    }
+
+    /**
+     * @return {@code true} if there are resources that have not been answered by {@link #next()}
+     */
+    public boolean hasNext() {
+        return nextIndex < resources.size();
+    }
+
+    /**
+     * Answers the next resource, blocking until it has been read.  Reading of a subsequent resource is started, so
+     * that {@code depth} resources are being read ahead.  The caller is responsible for closing the {@code
+     * InputStream} of the answered resource.
+     *
+     * @return the length and bytes of the next resource
+     * @throws IOException if the resource could not be read, or if the caller is interrupted
+     * @throws NoSuchElementException if all resources have been answered
+     */
+    public SizedStream next() throws IOException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        if (closed) {
+            throw new IOException("Prefetcher closed");
+        }
+
+        int index = nextIndex++;
+
+        if (index + depth < resources.size()) {
+            schedule(index + depth);
+        }
+
+        try {
+            Prefetched prefetched = fetches.get(index).get();
+            unanswered.remove(prefetched);
+            return prefetched;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for " + resources.get(index).getDescription());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Cancels outstanding reads, and releases the memory and temporary files of resources that have been read, or are
+     * being read, but have not been answered by {@link #next()}.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (int i = nextIndex; i < fetches.size(); i++) {
+            fetches.get(i).cancel(true);
+        }
+
+        // a cancelled read may have finished before noticing; its result is released here rather than discarded
+        unanswered.forEach(Prefetched::release);
+    }
+
+    private void schedule(int index) {
+        Resource resource = resources.get(index);
+        fetches.add(executor.submit(() -> fetch(resource)));
+    }
+
+    /**
+     * Reads the bytes of the supplied resource, into memory while the memory budget allows, and into a temporary file
+     * thereafter.
+     *
+     * @param resource the resource to read
+     * @return the bytes of the resource
+     * @throws IOException if the resource cannot be read
+     */
+    private Prefetched fetch(Resource resource) throws IOException {
+        Prefetched prefetched = new Prefetched(resource);
+        unanswered.add(prefetched);
+        byte[] buf = new byte[READ_BUFFER_SIZE];
+
+        try (InputStream in = resource.getInputStream()) {
+            int read;
+            while ((read = in.read(buf)) != -1) {
+                if (closed || Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Prefetch of " + resource.getDescription() + " cancelled");
+                }
+                prefetched.append(buf, read);
+            }
+            prefetched.finish();
+        } catch (IOException | RuntimeException e) {
+            prefetched.release();
+            unanswered.remove(prefetched);
+            throw e;
+        }
+
+        if (closed) {
+            // close() may have missed this fetch while it was running
+            prefetched.release();
+        }
+
+        LOG.trace("Prefetched {} bytes of {} ({} bytes in memory)", prefetched.length, resource.getDescription(),
+                prefetched.reserved);
+
+        return prefetched;
+    }
+
+    /**
+     * Reserves memory for {@code bytes} prefetched bytes, within both the limit of this instance and the shared budget.
+     */
+    private boolean reserve(long bytes) {
+        long available;
+        do {
+            available = availableMemory.get();
+            if (available < bytes) {
+                return false;
+            }
+        } while (!availableMemory.compareAndSet(available, available - bytes));
+
+        if (!budget.reserve(bytes)) {
+            availableMemory.addAndGet(bytes);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * The bytes of a prefetched resource, held in memory and possibly continued in a temporary file.
+     */
+    private class Prefetched implements SizedStream {
+
+        private final Resource resource;
+
+        private final ByteArrayOutputStream memory = new ByteArrayOutputStream(READ_BUFFER_SIZE);
+
+        private long reserved = 0;
+
+        private long length = 0;
+
+        private File spool;
+
+        private OutputStream spoolOut;
+
+        private boolean released = false;
+
+        private Prefetched(Resource resource) {
+            this.resource = resource;
+        }
+
+        @Override
+        public long getLength() {
+            return length;
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * Closing the returned stream releases the memory and temporary file held by this resource.
+         * </p>
+         *
+         * @return {@inheritDoc}
+         */
+        @Override
+        public InputStream getInputStream() {
+            InputStream in = memory.toInputStream();
+            if (spool != null) {
+                try {
+                    in = new SequenceInputStream(in, new FileInputStream(spool));
+                } catch (IOException e) {
+                    throw new RuntimeException(e.getMessage(), e);
+                }
+            }
+
+            return new FilterInputStream(in) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        release();
+                    }
+                }
+            };
+        }
+
+        /**
+         * Appends bytes read from the resource, in memory while memory can be reserved for them, and to the spool file
+         * thereafter.  Appending to a released resource fails, so that nothing is reserved or spooled once it has been
+         * released.
+         */
+        private synchronized void append(byte[] buf, int len) throws IOException {
+            if (released) {
+                throw new InterruptedIOException("Prefetch of " + resource.getDescription() + " cancelled");
+            }
+
+            if (spoolOut == null && reserve(len)) {
+                memory.write(buf, 0, len);
+                reserved += len;
+            } else {
+                if (spoolOut == null) {
+                    spool = File.createTempFile("package-prefetch-", ".bin");
+                    spoolOut = new FileOutputStream(spool);
+                    LOG.debug("Prefetch memory exhausted, spooling {} to {}", resource.getDescription(), spool);
+                }
+                spoolOut.write(buf, 0, len);
+            }
+            length += len;
+        }
+
+        private synchronized void finish() throws IOException {
+            if (spoolOut != null) {
+                spoolOut.close();
+            }
+        }
+
+        private synchronized void release() {
+            if (released) {
+                return;
+            }
+            released = true;
+            if (spoolOut != null) {
+                try {
+                    spoolOut.close();
+                } catch (IOException e) {
+                    LOG.trace("Error closing prefetch spool file {}: {}", spool, e.getMessage(), e);
+                }
+            }
+            memory.reset();
+            availableMemory.addAndGet(reserved);
+            budget.release(reserved);
+            if (spool != null && !spool.delete()) {
+                LOG.warn("Unable to delete prefetch spool file {}", spool);
+            }
+        }
+    }
+}
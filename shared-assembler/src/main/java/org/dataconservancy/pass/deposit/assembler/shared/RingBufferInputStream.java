@@ -0,0 +1,316 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.lang.Integer.toHexString;
+import static java.lang.System.identityHashCode;
+import static org.dataconservancy.pass.deposit.assembler.shared.ArchivingPackageStream.STREAMING_IO_LOG;
+
+/**
+ * The reading side of a single-producer, single-consumer ring of fixed-size {@code byte[]} chunks.  Bytes are written
+ * to the ring by a {@link RingBufferOutputStream}, which fills a chunk in place and hands the whole chunk to this
+ * stream.  Chunks are allocated once, on construction, and are recycled as they are consumed.
+ * <p>
+ * Unlike {@link java.io.PipedInputStream}, reads and writes are not {@code synchronized}: the reader and writer only
+ * coordinate when a chunk is handed off, and a thread blocked on an empty (or full) ring is signalled as soon as a
+ * chunk is published (or consumed), rather than polling.
+ * </p>
+ * <p>
+ * Like {@link ExHandingPipedInputStream}, the {@code Throwable} set by {@link #setWriterEx(Throwable)} is re-thrown as
+ * an {@code IOException} when any {@code public} method of this stream is invoked.
+ * </p>
+ */
+public class RingBufferInputStream extends InputStream {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RingBufferInputStream.class);
+
+    static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    private static final int MIN_CHUNKS = 2;
+
+    private final byte[][] chunks;
+
+    private final int[] lengths;
+
+    /**
+     * Sequence of the next chunk to be read; only advanced by the reader
+     */
+    private volatile long head = 0;
+
+    /**
+     * Sequence of the next chunk to be published; only advanced by the writer
+     */
+    private volatile long tail = 0;
+
+    /**
+     * Position of the reader within the chunk at {@link #head}; only accessed by the reader
+     */
+    private int readPos = 0;
+
+    private volatile boolean writerClosed = false;
+
+    private volatile boolean readerClosed = false;
+
+    private volatile boolean connected = false;
+
+    /**
+     * If non-null, represents an exception that was thrown on the <em>writing</em> side of the ring.
+     */
+    private volatile Throwable writerEx;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition notEmpty = lock.newCondition();
+
+    private final Condition notFull = lock.newCondition();
+
+    /**
+     * Creates a ring that buffers up to {@code capacity} bytes, using chunks of {@link #DEFAULT_CHUNK_SIZE} bytes.
+     *
+     * @param capacity the capacity of the ring in bytes
+     */
+    public RingBufferInputStream(int capacity) {
+        this(capacity, Math.min(DEFAULT_CHUNK_SIZE, Math.max(1, capacity / MIN_CHUNKS)));
+    }
+
+    /**
+     * Creates a ring that buffers up to {@code capacity} bytes, using chunks of {@code chunkSize} bytes.  The ring
+     * will have at least two chunks.
+     *
+     * @param capacity the capacity of the ring in bytes
+     * @param chunkSize the size of each chunk handed from the writer to the reader
+     */
+    public RingBufferInputStream(int capacity, int chunkSize) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be a positive integer.");
+        }
+
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be a positive integer.");
+        }
+
+        int chunkCount = Math.max(MIN_CHUNKS, capacity / chunkSize);
+        this.chunks = new byte[chunkCount][chunkSize];
+        this.lengths = new int[chunkCount];
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return (read(b, 0, 1) < 0) ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        handleEx();
+
+        if (b == null) {
+            throw new NullPointerException();
+        } else if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        } else if (len == 0) {
+            return 0;
+        }
+
+        if (readerClosed) {
+            throw new IOException("Stream closed");
+        }
+
+        if (!awaitChunk()) {
+            handleEx();
+            return -1;
+        }
+
+        int idx = index(head);
+        int toCopy = Math.min(len, lengths[idx] - readPos);
+        System.arraycopy(chunks[idx], readPos, b, off, toCopy);
+        readPos += toCopy;
+
+        if (readPos == lengths[idx]) {
+            readPos = 0;
+            head = head + 1;
+            signal(notFull);
+        }
+
+        return toCopy;
+    }
+
+    @Override
+    public int available() throws IOException {
+        handleEx();
+
+        if (head == tail) {
+            return 0;
+        }
+
+        return lengths[index(head)] - readPos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Close the stream, regardless of whether or not there is an exception waiting for us
+        STREAMING_IO_LOG.debug(">>>> {}@{} close() invoked: ", this.getClass().getSimpleName(),
+                toHexString(identityHashCode(this)), new Exception("close() invoked"));
+        readerClosed = true;
+        signal(notFull);
+        handleEx();
+    }
+
+    /**
+     * Obtain the {@code Throwable} that presumably occurred on the <em>writing</em> side of this ring.
+     *
+     * @return a {@code Throwable} that occurred while writing to the ring, or {@code null} if no exception has occurred
+     */
+    public Throwable getWriterEx() {
+        return writerEx;
+    }
+
+    /**
+     * Set the {@code Throwable} that presumably occurred on the <em>writing</em> side of this ring.  It will be re-
+     * thrown as an {@link IOException} the next time a {@code public} method of this stream is invoked.  A reader
+     * blocked waiting on the writer is woken up.
+     *
+     * @param writerEx a {@code Throwable} that occurred while writing to the ring
+     */
+    public void setWriterEx(Throwable writerEx) {
+        this.writerEx = writerEx;
+        signal(notEmpty);
+    }
+
+    /**
+     * Connects the writing side of the ring.  A ring may only be connected once.
+     *
+     * @throws IOException if the ring is already connected
+     */
+    synchronized void connect() throws IOException {
+        if (connected) {
+            throw new IOException("Already connected");
+        }
+        connected = true;
+    }
+
+    /**
+     * Blocks the writer until a chunk is free, and answers the free chunk.  The writer may fill the chunk in place, and
+     * must {@link #publish(int) publish} it before acquiring another chunk.
+     *
+     * @return the chunk to fill
+     * @throws IOException if the reader has closed the stream, or if the writer is interrupted
+     */
+    byte[] acquire() throws IOException {
+        if (tail - head == chunks.length && !readerClosed) {
+            lock.lock();
+            try {
+                while (tail - head == chunks.length && !readerClosed) {
+                    notFull.await();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for the reader to free a chunk");
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        if (readerClosed) {
+            throw new IOException("Read end closed");
+        }
+
+        return chunks[index(tail)];
+    }
+
+    /**
+     * Hands the chunk most recently {@link #acquire() acquired} to the reader.
+     *
+     * @param length the number of bytes written to the chunk
+     */
+    void publish(int length) {
+        lengths[index(tail)] = length;
+        tail = tail + 1;
+        signal(notEmpty);
+    }
+
+    /**
+     * Signals the end of the stream to the reader.  Chunks already published remain readable.
+     */
+    void writerClosed() {
+        writerClosed = true;
+        signal(notEmpty);
+    }
+
+    /**
+     * Blocks the reader until a chunk is published or the writer is closed.
+     *
+     * @return {@code true} if a chunk is available at {@link #head}, {@code false} if the end of the stream is reached
+     * @throws IOException if the reader is interrupted
+     */
+    private boolean awaitChunk() throws IOException {
+        if (head == tail && !writerClosed && writerEx == null) {
+            lock.lock();
+            try {
+                while (head == tail && !writerClosed && writerEx == null) {
+                    notEmpty.await();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for the writer to publish a chunk");
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // The writer publishes its last chunk before it is closed, so the tail is re-read here
+        return head != tail;
+    }
+
+    private void signal(Condition condition) {
+        lock.lock();
+        try {
+            condition.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int index(long sequence) {
+        return (int) (sequence % chunks.length);
+    }
+
+    /**
+     * Checks for a non-null {@link #writerEx}, and re-throws it as an {@link IOException}.
+     *
+     * @throws IOException the wrapped {@link #writerEx}
+     */
+    private void handleEx() throws IOException {
+        if (writerEx == null) {
+            return;
+        }
+
+        LOG.error("The writing side of this RingBufferInputStream encountered an exception: {}",
+                writerEx.getMessage(), writerEx);
+
+        throw new IOException("The writing side of this RingBufferInputStream encountered an exception: " +
+                writerEx.getMessage(), writerEx);
+    }
+}
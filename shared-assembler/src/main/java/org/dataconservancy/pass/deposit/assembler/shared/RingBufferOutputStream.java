@@ -0,0 +1,128 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The writing side of a {@link RingBufferInputStream}.  Bytes are copied into a chunk of the ring; when the chunk is
+ * full, or when this stream is {@link #flush() flushed} or {@link #close() closed}, the chunk is handed to the reader.
+ */
+public class RingBufferOutputStream extends OutputStream {
+
+    private RingBufferInputStream sink;
+
+    private byte[] chunk;
+
+    private int pos = 0;
+
+    private boolean closed = false;
+
+    /**
+     * Connects this stream to the reading side of the ring.
+     *
+     * @param sink the reading side of the ring
+     * @throws IOException if {@code sink} is already connected to another writer
+     */
+    public RingBufferOutputStream(RingBufferInputStream sink) throws IOException {
+        if (sink == null) {
+            throw new IllegalArgumentException("RingBufferInputStream must not be null.");
+        }
+        sink.connect();
+        this.sink = sink;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureChunk();
+        chunk[pos++] = (byte) b;
+        if (pos == chunk.length) {
+            publish();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (b == null) {
+            throw new NullPointerException();
+        } else if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        while (len > 0) {
+            ensureChunk();
+            int toCopy = Math.min(len, chunk.length - pos);
+            System.arraycopy(b, off, chunk, pos, toCopy);
+            pos += toCopy;
+            off += toCopy;
+            len -= toCopy;
+            if (pos == chunk.length) {
+                publish();
+            }
+        }
+    }
+
+    /**
+     * Hands any partially filled chunk to the reader.
+     *
+     * @throws IOException if the stream is closed
+     */
+    @Override
+    public void flush() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+
+        if (chunk != null && pos > 0) {
+            publish();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        try {
+            if (chunk != null && pos > 0) {
+                publish();
+            }
+        } finally {
+            closed = true;
+            sink.writerClosed();
+        }
+    }
+
+    private void ensureChunk() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+
+        if (chunk == null) {
+            chunk = sink.acquire();
+            pos = 0;
+        }
+    }
+
+    private void publish() {
+        sink.publish(pos);
+        chunk = null;
+        pos = 0;
+    }
+
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import org.dataconservancy.pass.deposit.assembler.PackageOptions.Checksum;
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static java.util.Base64.getEncoder;
+import static org.apache.commons.codec.binary.Hex.encodeHexString;
+import static org.dataconservancy.pass.deposit.assembler.shared.AssemblerSupport.messageDigest;
+
+/**
+ * A package written in its entirety to a temporary file.  The size and checksums of the package are computed as it
+ * is written, so they are known before the package is {@link #open() opened}.  The package may be opened any number
+ * of times, each time reading the file through its own {@code FileChannel}; the file is deleted when this {@code
+ * SpooledPackage} is {@link #close() closed}.
+ */
+public class SpooledPackage implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SpooledPackage.class);
+
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private final Path file;
+
+    private final long length;
+
+    private final List<PackageStream.Checksum> checksums;
+
+    private SpooledPackage(Path file, long length, List<PackageStream.Checksum> checksums) {
+        this.file = file;
+        this.length = length;
+        this.checksums = checksums;
+    }
+
+    /**
+     * Writes a package to a temporary file in {@code directory}, computing the supplied checksums of the package.
+     * The {@code writer} may close the {@code OutputStream} it is supplied.
+     *
+     * @param directory the directory the temporary file is created in, or {@code null} for the default temporary
+     *                  directory
+     * @param algorithms the checksums to compute
+     * @param writer writes the package to the supplied {@code OutputStream}
+     * @return the spooled package
+     * @throws IOException if the package cannot be written
+     */
+    public static SpooledPackage spool(Path directory, List<Checksum.OPTS> algorithms, PackageWriter writer)
+            throws IOException {
+        Path file = (directory == null)
+                ? Files.createTempFile("package-spool-", ".bin")
+                : Files.createTempFile(directory, "package-spool-", ".bin");
+
+        Checksum.OPTS[] algos = algorithms.toArray(new Checksum.OPTS[0]);
+        MessageDigest[] digests = new MessageDigest[algos.length];
+        for (int i = 0; i < algos.length; i++) {
+            digests[i] = messageDigest(algos[i]);
+        }
+
+        long length;
+
+        try {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+                 DigestingOutputStream out = new DigestingOutputStream(
+                         Channels.newOutputStream(channel), digests)) {
+                BufferedOutputStream buffered = new BufferedOutputStream(out, WRITE_BUFFER_SIZE);
+                writer.write(buffered);
+                buffered.flush();
+                length = out.count;
+            }
+        } catch (IOException | RuntimeException e) {
+            delete(file);
+            throw e;
+        }
+
+        List<PackageStream.Checksum> checksums = new ArrayList<>(algos.length);
+        for (int i = 0; i < algos.length; i++) {
+            byte[] value = digests[i].digest();
+            checksums.add(new ChecksumImpl(algos[i], value, getEncoder().encodeToString(value),
+                    encodeHexString(value)));
+        }
+
+        LOG.debug("Spooled {} byte package to {}", length, file);
+
+        return new SpooledPackage(file, length, Collections.unmodifiableList(checksums));
+    }
+
+    /**
+     * Opens the package, reading directly from the spooled file.
+     *
+     * @return a new stream over the package
+     * @throws IOException if the file cannot be opened, for example after this package has been closed
+     */
+    public InputStream open() throws IOException {
+        return Channels.newInputStream(FileChannel.open(file, StandardOpenOption.READ));
+    }
+
+    /**
+     * @return the number of bytes in the package
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * @return the checksums of the package, in the order the algorithms were supplied
+     */
+    public List<PackageStream.Checksum> checksums() {
+        return checksums;
+    }
+
+    /**
+     * @return the spooled file
+     */
+    public Path file() {
+        return file;
+    }
+
+    /**
+     * Deletes the spooled file.  Streams that are already open may continue to be read on platforms that permit it.
+     */
+    @Override
+    public void close() {
+        delete(file);
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOG.warn("Unable to delete spooled package {}: {}", file, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Writes a package to an {@code OutputStream}.
+     */
+    @FunctionalInterface
+    public interface PackageWriter {
+        void write(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Counts the bytes written to the underlying stream, and updates each digest with them.
+     */
+    private static class DigestingOutputStream extends FilterOutputStream {
+
+        private final MessageDigest[] digests;
+
+        private long count = 0;
+
+        private DigestingOutputStream(OutputStream out, MessageDigest[] digests) {
+            super(out);
+            this.digests = digests;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            for (MessageDigest digest : digests) {
+                digest.update((byte) b);
+            }
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            for (MessageDigest digest : digests) {
+                digest.update(b, off, len);
+            }
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import org.apache.tika.mime.MediaType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+
+/**
+ * Decides whether a resource is worth compressing when it is written to a ZIP package.  Resources that are already
+ * compressed - most images, PDFs, Office and OpenDocument files, and archives - gain little from being deflated again,
+ * and cost CPU to deflate; such resources are {@link ZipEntry#STORED stored}.
+ * <p>
+ * A resource is considered incompressible if its media type is one of the {@link #INCOMPRESSIBLE known incompressible
+ * types}, or if the Shannon entropy of a sample of its leading bytes is at least {@link #ENTROPY_THRESHOLD} bits per
+ * byte.
+ * </p>
+ */
+public class ZipCompressionPolicy {
+
+    /**
+     * Media types whose content is already compressed
+     */
+    static final Set<MediaType> INCOMPRESSIBLE = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            MediaType.application("pdf"),
+            MediaType.application("zip"),
+            MediaType.application("gzip"),
+            MediaType.application("x-gzip"),
+            MediaType.application("x-bzip2"),
+            MediaType.application("x-xz"),
+            MediaType.application("x-7z-compressed"),
+            MediaType.application("x-rar-compressed"),
+            MediaType.application("java-archive"),
+            MediaType.application("epub+zip"),
+            MediaType.image("jpeg"),
+            MediaType.image("png"),
+            MediaType.image("gif"),
+            MediaType.image("webp"),
+            MediaType.image("jp2"),
+            MediaType.audio("mpeg"),
+            MediaType.audio("mp4"),
+            MediaType.audio("ogg"),
+            MediaType.video("mp4"),
+            MediaType.video("mpeg"),
+            MediaType.video("quicktime"),
+            MediaType.video("webm"))));
+
+    /**
+     * Prefixes of media types whose content is a ZIP archive: Office Open XML and OpenDocument files
+     */
+    private static final String[] INCOMPRESSIBLE_PREFIXES = {
+            "application/vnd.openxmlformats-officedocument.",
+            "application/vnd.oasis.opendocument."
+    };
+
+    /**
+     * Entropy, in bits per byte, at or above which a sample is considered incompressible
+     */
+    static final double ENTROPY_THRESHOLD = 7.5;
+
+    /**
+     * Number of leading bytes sampled to estimate entropy
+     */
+    static final int SAMPLE_SIZE = 16 * 1024;
+
+    /**
+     * Samples smaller than this are not used to estimate entropy; small resources are simply deflated
+     */
+    private static final int MIN_SAMPLE_SIZE = 1024;
+
+    /**
+     * Answers the compression method used for a resource written to a ZIP package.  The leading bytes of {@code in}
+     * are sampled only if the media type is not known to be incompressible; in that case {@code in} must support
+     * {@code mark(int)}, and is reset after sampling.
+     *
+     * @param mediaType the media type of the resource
+     * @param in the bytes of the resource
+     * @return {@link ZipEntry#STORED} or {@link ZipEntry#DEFLATED}
+     * @throws IOException if the bytes of the resource cannot be read
+     */
+    public int method(MediaType mediaType, InputStream in) throws IOException {
+        if (isIncompressible(mediaType)) {
+            return ZipEntry.STORED;
+        }
+
+        return entropy(in) >= ENTROPY_THRESHOLD ? ZipEntry.STORED : ZipEntry.DEFLATED;
+    }
+
+    /**
+     * @param mediaType a media type, may be {@code null}
+     * @return {@code true} if content of the media type is known to be compressed already
+     */
+    static boolean isIncompressible(MediaType mediaType) {
+        if (mediaType == null) {
+            return false;
+        }
+
+        MediaType base = mediaType.getBaseType();
+        if (INCOMPRESSIBLE.contains(base)) {
+            return true;
+        }
+
+        String type = base.toString();
+        for (String prefix : INCOMPRESSIBLE_PREFIXES) {
+            if (type.startsWith(prefix)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Estimates the Shannon entropy of the leading {@link #SAMPLE_SIZE} bytes of the supplied stream, which is reset
+     * afterwards.
+     *
+     * @param in the stream to sample, which must support {@code mark(int)}
+     * @return the entropy of the sample in bits per byte, or {@code 0} if the sample is too small to be meaningful
+     * @throws IOException if the stream cannot be read
+     */
+    static double entropy(InputStream in) throws IOException {
+        byte[] sample = new byte[SAMPLE_SIZE];
+        int len = 0;
+
+        in.mark(SAMPLE_SIZE);
+        try {
+            int read;
+            while (len < SAMPLE_SIZE && (read = in.read(sample, len, SAMPLE_SIZE - len)) != -1) {
+                len += read;
+            }
+        } finally {
+            in.reset();
+        }
+
+        if (len < MIN_SAMPLE_SIZE) {
+            return 0;
+        }
+
+        int[] counts = new int[256];
+        for (int i = 0; i < len; i++) {
+            counts[sample[i] & 0xff]++;
+        }
+
+        double entropy = 0;
+        for (int count : counts) {
+            if (count > 0) {
+                double p = (double) count / len;
+                entropy -= p * (Math.log(p) / Math.log(2));
+            }
+        }
+
+        return entropy;
+    }
+
+}
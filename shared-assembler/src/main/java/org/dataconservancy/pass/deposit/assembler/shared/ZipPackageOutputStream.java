@@ -0,0 +1,65 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * A {@code ZipArchiveOutputStream} that honors the compression method of each entry, deflating entries at a
+ * configured compression level.
+ * <p>
+ * When writing to a stream that is not seekable, a {@link ZipEntry#STORED stored} entry requires its CRC to be known
+ * before its data is written.  A {@code STORED} entry without a CRC is instead written as a deflated entry at {@link
+ * Deflater#NO_COMPRESSION}: its data is copied into uncompressed deflate blocks, which costs no compression effort
+ * and adds only a few bytes per 64 KiB of data.
+ * </p>
+ */
+public class ZipPackageOutputStream extends ZipArchiveOutputStream {
+
+    private final int level;
+
+    /**
+     * @param out the stream the ZIP archive is written to
+     * @param level the {@link Deflater} compression level used for deflated entries
+     */
+    public ZipPackageOutputStream(OutputStream out, int level) {
+        super(out);
+        this.level = level;
+        setLevel(level);
+    }
+
+    @Override
+    public void putArchiveEntry(ArchiveEntry archiveEntry) throws IOException {
+        ZipArchiveEntry entry = (ZipArchiveEntry) archiveEntry;
+
+        if (entry.getMethod() == ZipEntry.STORED && entry.getCrc() == -1 && !isSeekable()) {
+            entry.setMethod(ZipEntry.DEFLATED);
+            setLevel(Deflater.NO_COMPRESSION);
+        } else {
+            setLevel(level);
+        }
+
+        super.putArchiveEntry(entry);
+    }
+
+}
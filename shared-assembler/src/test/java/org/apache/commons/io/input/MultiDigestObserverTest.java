@@ -0,0 +1,124 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.io.input;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.dataconservancy.pass.deposit.assembler.PackageOptions.Checksum;
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.dataconservancy.pass.deposit.assembler.shared.ResourceBuilderImpl;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class MultiDigestObserverTest {
+
+    private static final List<Checksum.OPTS> ALGOS = Arrays.asList(Checksum.OPTS.SHA512, Checksum.OPTS.MD5,
+            Checksum.OPTS.SHA256);
+
+    /**
+     * The fused observer must produce the same checksums, in the same order, as one DigestObserver per algorithm.
+     */
+    @Test
+    public void testSameChecksumsAsDigestObserver() throws Exception {
+        byte[] content = content(1024 * 1024 + 13);
+
+        List<PackageStream.Checksum> expected = digestPerObserver(content);
+        List<PackageStream.Checksum> actual = fused(content, null);
+
+        assertChecksumsEqual(expected, actual);
+    }
+
+    /**
+     * Hashing in parallel must produce the same checksums as hashing on the observing thread.
+     */
+    @Test
+    public void testParallelMatchesSerial() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            for (int length : new int[] { 0, 1, MultiDigestObserver.PARALLEL_CHUNK_SIZE,
+                    MultiDigestObserver.PARALLEL_CHUNK_SIZE * 3 + 7 }) {
+                byte[] content = content(length);
+                assertChecksumsEqual(digestPerObserver(content), fused(content, executor));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Single-byte reads are staged and hashed like any other read.
+     */
+    @Test
+    public void testSingleByteReads() throws Exception {
+        byte[] content = content(MultiDigestObserver.SERIAL_CHUNK_SIZE * 2 + 3);
+        ResourceBuilderImpl builder = new ResourceBuilderImpl();
+
+        try (ObservableInputStream in = new ObservableInputStream(new ByteArrayInputStream(content))) {
+            in.add(new MultiDigestObserver(builder, ALGOS));
+            while (in.read() != -1) {
+                // consume
+            }
+        }
+
+        assertChecksumsEqual(digestPerObserver(content), new ArrayList<>(builder.build().checksums()));
+    }
+
+    private static List<PackageStream.Checksum> digestPerObserver(byte[] content) throws IOException {
+        ResourceBuilderImpl builder = new ResourceBuilderImpl();
+        try (ObservableInputStream in = new ObservableInputStream(new ByteArrayInputStream(content))) {
+            ALGOS.forEach(algo -> in.add(new DigestObserver(builder, algo)));
+            IOUtils.copy(in, new NullOutputStream());
+        }
+        return new ArrayList<>(builder.build().checksums());
+    }
+
+    private static List<PackageStream.Checksum> fused(byte[] content, ExecutorService executor) throws IOException {
+        ResourceBuilderImpl builder = new ResourceBuilderImpl();
+        try (ObservableInputStream in = new ObservableInputStream(new ByteArrayInputStream(content))) {
+            in.add(new MultiDigestObserver(builder, ALGOS, executor));
+            IOUtils.copy(in, new NullOutputStream());
+        }
+        return new ArrayList<>(builder.build().checksums());
+    }
+
+    private static void assertChecksumsEqual(List<PackageStream.Checksum> expected,
+                                             List<PackageStream.Checksum> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).algorithm(), actual.get(i).algorithm());
+            assertArrayEquals(expected.get(i).value(), actual.get(i).value());
+            assertEquals(expected.get(i).asHex(), actual.get(i).asHex());
+            assertEquals(expected.get(i).asBase64(), actual.get(i).asBase64());
+        }
+    }
+
+    private static byte[] content(int length) {
+        byte[] content = new byte[length];
+        new Random(length).nextBytes(content);
+        return content;
+    }
+}
@@ -189,7 +189,8 @@ public class DepositTestUtil {
     }
 
     /**
-     * Extracts the archive (ZIP, GZip, whatever) to a temporary directory, and returns the directory.
+     * Extracts the archive (ZIP, GZip, whatever) to a temporary directory, and returns the directory.  Every member of
+     * a multi-member gzip stream, as written when compressing in parallel, is extracted.
      *
      * @param packageFile the package file to open
      * @return the directory that the package file was extracted to
@@ -204,7 +205,7 @@ public class DepositTestUtil {
             ArchiveInputStream zipIn = null;
             if (archive.equals(Archive.OPTS.TAR)) {
                 if (compression.equals(Compression.OPTS.GZIP)) {
-                    zipIn = new TarArchiveInputStream(new GzipCompressorInputStream(packageFileIn));
+                    zipIn = new TarArchiveInputStream(new GzipCompressorInputStream(packageFileIn, true));
                 } else {
                     zipIn = new TarArchiveInputStream(packageFileIn);
                 }
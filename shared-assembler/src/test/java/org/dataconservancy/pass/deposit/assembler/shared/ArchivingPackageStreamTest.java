@@ -0,0 +1,169 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.dataconservancy.pass.deposit.assembler.MetadataBuilder;
+import org.dataconservancy.pass.deposit.assembler.PackageOptions.Archive;
+import org.dataconservancy.pass.deposit.assembler.PackageOptions.Buffer;
+import org.dataconservancy.pass.deposit.assembler.PackageOptions.Compression;
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.dataconservancy.pass.deposit.model.DepositFile;
+import org.dataconservancy.pass.deposit.model.DepositSubmission;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.springframework.core.io.FileSystemResource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.dataconservancy.pass.deposit.DepositTestUtil.openArchive;
+import static org.dataconservancy.pass.deposit.DepositTestUtil.savePackage;
+import static org.dataconservancy.pass.deposit.DepositTestUtil.tmpDir;
+import static org.dataconservancy.pass.deposit.DepositTestUtil.tmpFile;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+public class ArchivingPackageStreamTest {
+
+    @Rule
+    public TestName testName = new TestName();
+
+    /**
+     * A writer rejected by a shut down executor is reported to the reader of a piped package stream.
+     */
+    @Test
+    public void testRejectedWriterReportedToPipeReader() throws Exception {
+        assertRejectionReportedToReader(Buffer.OPTS.PIPE);
+    }
+
+    /**
+     * A writer rejected by a shut down executor is reported to the reader of a ring buffered package stream.
+     */
+    @Test
+    public void testRejectedWriterReportedToRingReader() throws Exception {
+        assertRejectionReportedToReader(Buffer.OPTS.RING);
+    }
+
+    /**
+     * A TAR package spanning many blocks, compressed in parallel as a multi-member gzip stream, extracts with the
+     * full content of every resource.
+     */
+    @Test
+    public void testParallelGzipPackageExtractsInFull() throws Exception {
+        File contentDir = tmpDir();
+        List<DepositFileResource> custodialContent = new ArrayList<>();
+        Map<String, byte[]> expected = new HashMap<>();
+        Random random = new Random(1);
+
+        for (int i = 0; i < 3; i++) {
+            // compressible, but not trivially so
+            byte[] content = new byte[ParallelGzipOutputStream.DEFAULT_BLOCK_SIZE * 2 + 17 * i];
+            for (int j = 0; j < content.length; j++) {
+                content[j] = (byte) ('a' + random.nextInt(8));
+            }
+            File file = new File(contentDir, "resource-" + i + ".txt");
+            FileUtils.writeByteArrayToFile(file, content);
+
+            DepositFile depositFile = new DepositFile();
+            depositFile.setName(file.getName());
+            custodialContent.add(new DepositFileResource(depositFile, new FileSystemResource(file)));
+            expected.put(file.getName(), content);
+        }
+
+        Map<String, Object> options = new HashMap<>();
+        options.put(Archive.KEY, Archive.OPTS.TAR);
+        options.put(Compression.KEY, Compression.OPTS.GZIP);
+        options.put(Compression.THREADS_KEY, 4);
+
+        ArchivingPackageStream underTest = new ArchivingPackageStream(new DepositSubmission(), custodialContent,
+                new DefaultMetadataBuilderFactory().newInstance(), new DefaultResourceBuilderFactory(), options,
+                new FilenamePackageProvider());
+
+        File packageFile = savePackage(tmpFile(getClass(), testName, ".tar.gz"), underTest);
+        File extracted = openArchive(packageFile, Archive.OPTS.TAR, Compression.OPTS.GZIP);
+
+        try {
+            for (Map.Entry<String, byte[]> entry : expected.entrySet()) {
+                assertArrayEquals("Unexpected content for " + entry.getKey(), entry.getValue(),
+                        FileUtils.readFileToByteArray(new File(extracted, entry.getKey())));
+            }
+        } finally {
+            FileUtils.deleteQuietly(contentDir);
+            FileUtils.deleteQuietly(extracted);
+            FileUtils.deleteQuietly(packageFile);
+        }
+    }
+
+    private static void assertRejectionReportedToReader(Buffer.OPTS buffer) throws Exception {
+        PackageAssemblyExecutor executor = new PackageAssemblyExecutor(1, 1);
+        executor.shutdown();
+        StreamWriter streamWriter = mock(StreamWriter.class);
+
+        Map<String, Object> options = new HashMap<>();
+        options.put(Archive.KEY, Archive.OPTS.TAR);
+        options.put(Buffer.KEY, buffer);
+
+        ArchivingPackageStream underTest = new ArchivingPackageStream(Collections.emptyList(),
+                mock(MetadataBuilder.class), mock(ResourceBuilderFactory.class), options, executor, streamWriter);
+
+        try (InputStream in = underTest.open()) {
+            IOUtils.toByteArray(in);
+            fail("Expected the reader to see the rejection of the writer");
+        } catch (IOException e) {
+            assertTrue("Unexpected cause: " + e.getCause(), e.getCause() instanceof RejectedExecutionException);
+        }
+
+        verifyZeroInteractions(streamWriter);
+    }
+
+    /**
+     * Places each custodial resource at the root of the package, under its file name, with no supplemental resources.
+     */
+    private static class FilenamePackageProvider implements PackageProvider {
+
+        @Override
+        public void start(DepositSubmission submission, List<DepositFileResource> custodialResources,
+                          Map<String, Object> packageOptions) {
+            // no-op
+        }
+
+        @Override
+        public String packagePath(DepositFileResource custodialResource) {
+            return custodialResource.getFilename();
+        }
+
+        @Override
+        public List<SupplementalResource> finish(DepositSubmission submission,
+                                                 List<PackageStream.Resource> packageResources) {
+            return Collections.emptyList();
+        }
+    }
+
+}
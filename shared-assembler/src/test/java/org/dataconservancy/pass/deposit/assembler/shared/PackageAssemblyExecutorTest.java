@@ -0,0 +1,113 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PackageAssemblyExecutorTest {
+
+    private PackageAssemblyExecutor underTest;
+
+    @Before
+    public void setUp() throws Exception {
+        underTest = new PackageAssemblyExecutor(2, 1);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        underTest.shutdownNow();
+    }
+
+    /**
+     * Each task's exception must be routed to the handler it was submitted with, and not to a handler belonging to a
+     * concurrently submitted task.
+     */
+    @Test
+    public void testExceptionRoutedToSubmittingHandler() throws Exception {
+        RuntimeException expected = new RuntimeException("Expected exception");
+        AtomicReference<Throwable> failingHandler = new AtomicReference<>();
+        AtomicReference<Throwable> succeedingHandler = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+
+        underTest.submit(() -> "ok", (r, t) -> succeedingHandler.set(t));
+        underTest.submit(() -> {
+            throw expected;
+        }, (r, t) -> {
+            failingHandler.set(t);
+            done.countDown();
+        });
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        underTest.shutdown();
+        assertTrue(underTest.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertSame(expected, failingHandler.get());
+        assertNull(succeedingHandler.get());
+        assertEquals(2, underTest.getCompletedWriters());
+    }
+
+    /**
+     * No more than the maximum number of writers execute concurrently, and writers beyond the capacity of the queue are
+     * rejected and counted.
+     */
+    @Test
+    public void testWritersAreCappedAndRejectionsCounted() throws Exception {
+        CountDownLatch running = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+
+        for (int i = 0; i < 3; i++) {
+            underTest.submit(() -> {
+                running.countDown();
+                release.await();
+                return null;
+            }, (r, t) -> { });
+        }
+
+        assertTrue(running.await(10, TimeUnit.SECONDS));
+        assertEquals(2, underTest.getActiveWriters());
+        assertEquals(1, underTest.getQueuedWriters());
+
+        try {
+            underTest.submit(() -> null, (r, t) -> { });
+            fail("Expected RejectedExecutionException");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+
+        assertEquals(1, underTest.getRejectedWriters());
+
+        release.countDown();
+        underTest.shutdown();
+        assertTrue(underTest.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(2, underTest.getPeakActiveWriters());
+        assertEquals(0, underTest.getActiveWriters());
+        assertEquals(3, underTest.getCompletedWriters());
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ParallelGzipOutputStreamTest {
+
+    private static final int BLOCK_SIZE = 4096;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Bytes written across many blocks, using both write methods, decompress in order as a multi-member gzip stream.
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        byte[] content = content(BLOCK_SIZE * 37 + 11);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+
+        try (OutputStream out = new ParallelGzipOutputStream(compressed, 3, BLOCK_SIZE,
+                Deflater.DEFAULT_COMPRESSION, executor)) {
+            out.write(content[0]);
+            int off = 1;
+            while (off < content.length) {
+                int len = Math.min(1000, content.length - off);
+                out.write(content, off, len);
+                off += len;
+            }
+        }
+
+        assertArrayEquals(content, gunzip(compressed.toByteArray()));
+        assertArrayEquals(content, IOUtils.toByteArray(new GzipCompressorInputStream(
+                new ByteArrayInputStream(compressed.toByteArray()), true)));
+    }
+
+    /**
+     * Closing a stream that was never written to produces a valid, empty, gzip stream.
+     */
+    @Test
+    public void testEmptyStream() throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+
+        new ParallelGzipOutputStream(compressed, 2, BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION, executor).close();
+
+        assertTrue(compressed.size() > 0);
+        assertEquals(0, gunzip(compressed.toByteArray()).length);
+    }
+
+    /**
+     * A failure compressing a block is surfaced to the writer.
+     */
+    @Test
+    public void testCompressionFailureIsReported() throws Exception {
+        executor.shutdownNow();
+        executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+
+        OutputStream out = new ParallelGzipOutputStream(new ByteArrayOutputStream(), 2, BLOCK_SIZE,
+                Deflater.DEFAULT_COMPRESSION, executor);
+
+        try {
+            out.write(content(BLOCK_SIZE));
+            out.close();
+            fail("Expected an exception");
+        } catch (Exception e) {
+            // expected: the block cannot be submitted to a shut down executor
+        }
+    }
+
+    /**
+     * Writing to a closed stream fails.
+     */
+    @Test(expected = IOException.class)
+    public void testWriteAfterClose() throws Exception {
+        OutputStream out = new ParallelGzipOutputStream(new ByteArrayOutputStream(), 2, BLOCK_SIZE,
+                Deflater.DEFAULT_COMPRESSION, executor);
+        out.close();
+        out.write(1);
+    }
+
+    private static byte[] gunzip(byte[] compressed) throws IOException {
+        return IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed)));
+    }
+
+    private static byte[] content(int length) {
+        // compressible, but not trivially so
+        byte[] content = new byte[length];
+        Random random = new Random(1);
+        for (int i = 0; i < length; i++) {
+            content[i] = (byte) ('a' + random.nextInt(8));
+        }
+        return content;
+    }
+
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ResourceCacheTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private HttpServer server;
+
+    private final Map<String, byte[]> content = new ConcurrentHashMap<>();
+
+    private final AtomicInteger fullResponses = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            byte[] body = content.get(exchange.getRequestURI().getPath());
+            String etag = "\"" + body.length + "-" + body[0] + "\"";
+            exchange.getResponseHeaders().add("ETag", etag);
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                fullResponses.incrementAndGet();
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop(0);
+    }
+
+    /**
+     * Content that has not changed is revalidated and answered from the cache.
+     */
+    @Test
+    public void testRevalidatedContentAnsweredFromCache() throws Exception {
+        byte[] bytes = bytes(1024, 1);
+        content.put("/a", bytes);
+        ResourceCache underTest = new ResourceCache(tmp.getRoot().toPath(), 4096);
+
+        assertArrayEquals(bytes, read(underTest, "/a"));
+        assertArrayEquals(bytes, read(underTest, "/a"));
+
+        assertEquals(1, fullResponses.get());
+        assertEquals(1, underTest.getMissCount());
+        assertEquals(1, underTest.getHitCount());
+        assertEquals(1024, underTest.getBytesSaved());
+        assertEquals(1024, underTest.length(url("/a")));
+    }
+
+    /**
+     * Content that has changed at the origin replaces the cached content.
+     */
+    @Test
+    public void testChangedContentReplacesCachedContent() throws Exception {
+        content.put("/a", bytes(1024, 1));
+        ResourceCache underTest = new ResourceCache(tmp.getRoot().toPath(), 4096);
+        read(underTest, "/a");
+
+        byte[] changed = bytes(2048, 2);
+        content.put("/a", changed);
+
+        assertArrayEquals(changed, read(underTest, "/a"));
+        assertEquals(2, underTest.getMissCount());
+        assertEquals(0, underTest.getHitCount());
+        assertEquals(2048, underTest.getSize());
+    }
+
+    /**
+     * Identical content at different locations is stored once.
+     */
+    @Test
+    public void testIdenticalContentStoredOnce() throws Exception {
+        content.put("/a", bytes(1024, 1));
+        content.put("/b", bytes(1024, 1));
+        ResourceCache underTest = new ResourceCache(tmp.getRoot().toPath(), 4096);
+
+        read(underTest, "/a");
+        read(underTest, "/b");
+
+        assertEquals(1024, underTest.getSize());
+        assertEquals(1, tmp.getRoot().list().length);
+    }
+
+    /**
+     * The least recently used content is evicted when the cache exceeds its size.
+     */
+    @Test
+    public void testLeastRecentlyUsedEvicted() throws Exception {
+        content.put("/a", bytes(1024, 1));
+        content.put("/b", bytes(1024, 2));
+        content.put("/c", bytes(1024, 3));
+        ResourceCache underTest = new ResourceCache(tmp.getRoot().toPath(), 2048);
+
+        read(underTest, "/a");
+        read(underTest, "/b");
+        read(underTest, "/a");
+        read(underTest, "/c");
+
+        assertEquals(1, underTest.getEvictionCount());
+        assertEquals(2048, underTest.getSize());
+        assertEquals(-1, underTest.length(url("/b")));
+        assertEquals(1024, underTest.length(url("/a")));
+    }
+
+    /**
+     * Content larger than the cache is answered, but not cached.
+     */
+    @Test
+    public void testContentLargerThanCacheNotCached() throws Exception {
+        byte[] bytes = bytes(8192, 1);
+        content.put("/a", bytes);
+        ResourceCache underTest = new ResourceCache(tmp.getRoot().toPath(), 4096);
+
+        assertArrayEquals(bytes, read(underTest, "/a"));
+
+        assertEquals(0, underTest.getSize());
+        assertEquals(-1, underTest.length(url("/a")));
+        assertEquals(0, tmp.getRoot().list().length);
+    }
+
+    /**
+     * Content is answered to the caller as it is retrieved, and cached only once the caller has read it to its end.
+     */
+    @Test
+    public void testContentCachedWhenReadToEnd() throws Exception {
+        byte[] bytes = bytes(2048, 1);
+        content.put("/a", bytes);
+        ResourceCache underTest = new ResourceCache(tmp.getRoot().toPath(), 4096);
+
+        try (InputStream in = underTest.open(url("/a"), con -> { })) {
+            byte[] head = new byte[16];
+            IOUtils.readFully(in, head);
+            assertArrayEquals(Arrays.copyOf(bytes, 16), head);
+            assertEquals(-1, underTest.length(url("/a")));
+        }
+
+        assertEquals(0, underTest.getSize());
+        assertEquals(0, tmp.getRoot().list().length);
+
+        assertArrayEquals(bytes, read(underTest, "/a"));
+        assertEquals(2048, underTest.length(url("/a")));
+        assertArrayEquals(bytes, read(underTest, "/a"));
+        assertEquals(1, underTest.getHitCount());
+    }
+
+    private byte[] read(ResourceCache cache, String path) throws IOException {
+        try (InputStream in = cache.open(url(path), con -> { })) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+
+    private URL url(String path) throws IOException {
+        return new URL("http", "localhost", server.getAddress().getPort(), path);
+    }
+
+    private static byte[] bytes(int length, int seed) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (seed + i);
+        }
+        return bytes;
+    }
+
+}
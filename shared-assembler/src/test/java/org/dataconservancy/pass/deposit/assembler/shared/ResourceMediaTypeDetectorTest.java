@@ -0,0 +1,130 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import org.apache.tika.detect.Detector;
+import org.apache.tika.mime.MediaType;
+import org.apache.tika.mime.MimeTypes;
+import org.dataconservancy.pass.deposit.model.DepositFile;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ByteArrayResource;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+public class ResourceMediaTypeDetectorTest {
+
+    private Detector detector;
+
+    private ResourceMediaTypeDetector underTest;
+
+    @Before
+    public void setUp() throws Exception {
+        detector = mock(Detector.class);
+        underTest = new ResourceMediaTypeDetector(detector, MimeTypes.getDefaultMimeTypes());
+    }
+
+    /**
+     * The media type recorded by PASS is preferred over the file name and the bytes of the resource.
+     */
+    @Test
+    public void testRecordedMediaTypePreferred() throws Exception {
+        DepositFile df = depositFile("manuscript.pdf", "application/msword");
+
+        assertEquals(MediaType.parse("application/msword"), underTest.detect(resource(df), stream()));
+
+        verifyZeroInteractions(detector);
+        assertEquals(1, underTest.getMetadataCount());
+        assertEquals(0, underTest.getSniffCount());
+    }
+
+    /**
+     * A generic recorded media type is not used: the file name extension is consulted, and the bytes of the resource
+     * are sniffed if the extension is not useful either.
+     */
+    @Test
+    public void testGenericRecordedMediaTypeIgnored() throws Exception {
+        assertEquals(MediaType.application("pdf"),
+                underTest.detect(resource(depositFile("manuscript.pdf", "application/octet-stream")), stream()));
+        verifyZeroInteractions(detector);
+        assertEquals(0, underTest.getMetadataCount());
+        assertEquals(1, underTest.getExtensionCount());
+
+        DepositFile df = depositFile("manuscript", "binary/octet-stream; charset=binary");
+        InputStream in = stream();
+        when(detector.detect(eq(in), any())).thenReturn(MediaType.application("pdf"));
+
+        assertEquals(MediaType.application("pdf"), underTest.detect(resource(df), in));
+
+        verify(detector).detect(eq(in), any());
+        assertEquals(0, underTest.getMetadataCount());
+        assertEquals(1, underTest.getSniffCount());
+    }
+
+    /**
+     * Absent a recorded media type, the file name extension is used.
+     */
+    @Test
+    public void testFileNameExtension() throws Exception {
+        DepositFile df = depositFile("manuscript.pdf", null);
+
+        assertEquals(MediaType.application("pdf"), underTest.detect(resource(df), stream()));
+
+        verifyZeroInteractions(detector);
+        assertEquals(1, underTest.getExtensionCount());
+        assertEquals(0, underTest.getSniffCount());
+    }
+
+    /**
+     * Bytes are sniffed only when neither the recorded media type nor the file name are useful, and the sniff is
+     * counted.
+     */
+    @Test
+    public void testSniffWhenMetadataMissing() throws Exception {
+        DepositFile df = depositFile("manuscript", " ");
+        InputStream in = stream();
+        when(detector.detect(eq(in), any())).thenReturn(MediaType.TEXT_PLAIN);
+
+        assertEquals(MediaType.TEXT_PLAIN, underTest.detect(resource(df), in));
+
+        verify(detector).detect(eq(in), any());
+        assertEquals(1, underTest.getSniffCount());
+    }
+
+    private static DepositFile depositFile(String name, String mimeType) {
+        DepositFile df = new DepositFile();
+        df.setName(name);
+        df.setMimeType(mimeType);
+        return df;
+    }
+
+    private static DepositFileResource resource(DepositFile df) {
+        return new DepositFileResource(df, new ByteArrayResource(new byte[] { 1, 2, 3 }));
+    }
+
+    private static InputStream stream() {
+        return new ByteArrayInputStream(new byte[] { 1, 2, 3 });
+    }
+}
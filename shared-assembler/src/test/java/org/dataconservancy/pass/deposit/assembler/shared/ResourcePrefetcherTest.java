@@ -0,0 +1,168 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ResourcePrefetcherTest {
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Resources are answered in the order they are supplied, with their content and length intact, whether they are
+     * held in memory or spooled to a temporary file.
+     */
+    @Test
+    public void testResourcesAnsweredInOrder() throws Exception {
+        Random random = new Random(1);
+        List<byte[]> expected = new ArrayList<>();
+        List<Resource> resources = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            byte[] content = new byte[random.nextInt(200 * 1024)];
+            random.nextBytes(content);
+            expected.add(content);
+            resources.add(new ByteArrayResource(content));
+        }
+
+        // a budget smaller than the resources forces some of them to be spooled
+        try (ResourcePrefetcher underTest = new ResourcePrefetcher(resources, 3, Long.MAX_VALUE,
+                new PrefetchMemoryBudget(256 * 1024), executor)) {
+            for (byte[] content : expected) {
+                assertTrue(underTest.hasNext());
+                SizedStream prefetched = underTest.next();
+                assertEquals(content.length, prefetched.getLength());
+                try (InputStream in = prefetched.getInputStream()) {
+                    assertArrayEquals(content, IOUtils.toByteArray(in));
+                }
+            }
+            assertFalse(underTest.hasNext());
+        }
+    }
+
+    /**
+     * An exception reading a resource is thrown when that resource is answered.
+     */
+    @Test
+    public void testExceptionThrownWhenResourceAnswered() throws Exception {
+        IOException expected = new IOException("Expected exception");
+        Resource failing = new AbstractResource() {
+            @Override
+            public String getDescription() {
+                return "failing resource";
+            }
+
+            @Override
+            public InputStream getInputStream() throws IOException {
+                throw expected;
+            }
+        };
+
+        List<Resource> resources = Arrays.asList(new ByteArrayResource(new byte[] { 1 }), failing);
+
+        try (ResourcePrefetcher underTest = new ResourcePrefetcher(resources, 2, 1024,
+                new PrefetchMemoryBudget(1024), executor)) {
+            underTest.next().getInputStream().close();
+
+            try {
+                underTest.next();
+                fail("Expected IOException");
+            } catch (IOException e) {
+                assertEquals(expected, e);
+            }
+        }
+    }
+
+    /**
+     * Prefetchers draw on the memory budget they share, and return it as their resources are consumed.
+     */
+    @Test
+    public void testMemoryBudgetSharedByPrefetchers() throws Exception {
+        PrefetchMemoryBudget budget = new PrefetchMemoryBudget(1024);
+        List<Resource> resources = Arrays.asList(new ByteArrayResource(new byte[768]),
+                new ByteArrayResource(new byte[768]));
+
+        try (ResourcePrefetcher first = new ResourcePrefetcher(resources.subList(0, 1), 1, 1024, budget, executor);
+             ResourcePrefetcher second = new ResourcePrefetcher(resources.subList(1, 2), 1, 1024, budget,
+                     executor)) {
+            SizedStream a = first.next();
+            SizedStream b = second.next();
+
+            // only one of the resources fits in the shared budget; the other is spooled
+            assertEquals(1024 - 768, budget.getAvailable());
+            assertEquals(768, a.getLength());
+            assertEquals(768, b.getLength());
+
+            a.getInputStream().close();
+            b.getInputStream().close();
+            assertEquals(1024, budget.getAvailable());
+        }
+    }
+
+    /**
+     * Closing a prefetcher releases the memory of resources that were read but never answered.
+     */
+    @Test
+    public void testCloseReleasesUnansweredResources() throws Exception {
+        PrefetchMemoryBudget budget = new PrefetchMemoryBudget(1024);
+        List<Resource> resources = Arrays.asList(new ByteArrayResource(new byte[16]),
+                new ByteArrayResource(new byte[16]), new ByteArrayResource(new byte[16]));
+
+        ResourcePrefetcher underTest = new ResourcePrefetcher(resources, 2, 1024, budget, executor);
+        underTest.next().getInputStream().close();
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        underTest.close();
+        assertEquals(1024, budget.getAvailable());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDepthMustBePositive() throws Exception {
+        new ResourcePrefetcher(new ArrayList<Resource>(), 0, 1024, new PrefetchMemoryBudget(1024), executor);
+    }
+}
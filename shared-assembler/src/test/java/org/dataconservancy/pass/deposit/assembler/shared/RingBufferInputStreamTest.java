@@ -0,0 +1,158 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RingBufferInputStreamTest {
+
+    /**
+     * Bytes written by one thread must be read, in order, by another thread, even when the ring is much smaller than
+     * the number of bytes written.
+     */
+    @Test
+    public void testWriteAndReadFromSeparateThreads() throws Exception {
+        byte[] expected = new byte[1024 * 1024 + 17];
+        new Random(1).nextBytes(expected);
+
+        RingBufferInputStream in = new RingBufferInputStream(4096, 1024);
+        RingBufferOutputStream out = new RingBufferOutputStream(in);
+
+        Thread writer = new Thread(() -> {
+            try {
+                // mix single-byte and multi-byte writes
+                out.write(expected[0]);
+                int off = 1;
+                while (off < expected.length) {
+                    int len = Math.min(777, expected.length - off);
+                    out.write(expected, off, len);
+                    off += len;
+                }
+                out.close();
+            } catch (IOException e) {
+                in.setWriterEx(e);
+            }
+        });
+        writer.start();
+
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        IOUtils.copy(in, actual);
+        writer.join();
+
+        assertArrayEquals(expected, actual.toByteArray());
+        assertEquals(-1, in.read());
+    }
+
+    /**
+     * A flushed, partially filled chunk is visible to the reader before the writer is closed.
+     */
+    @Test
+    public void testFlushPublishesPartialChunk() throws Exception {
+        RingBufferInputStream in = new RingBufferInputStream(4096, 1024);
+        RingBufferOutputStream out = new RingBufferOutputStream(in);
+
+        out.write(new byte[] { 1, 2, 3 });
+        assertEquals(0, in.available());
+
+        out.flush();
+        assertEquals(3, in.available());
+        assertEquals(1, in.read());
+        assertEquals(2, in.available());
+    }
+
+    /**
+     * An exception set by the writer is re-thrown to a reader that is blocked waiting for bytes.
+     */
+    @Test
+    public void testWriterExceptionWakesReader() throws Exception {
+        RingBufferInputStream in = new RingBufferInputStream(4096, 1024);
+        new RingBufferOutputStream(in);
+        RuntimeException expected = new RuntimeException("Expected exception");
+
+        CountDownLatch reading = new CountDownLatch(1);
+        AtomicReference<Throwable> caught = new AtomicReference<>();
+
+        Thread reader = new Thread(() -> {
+            try {
+                reading.countDown();
+                in.read();
+            } catch (IOException e) {
+                caught.set(e);
+            }
+        });
+        reader.start();
+
+        assertTrue(reading.await(10, TimeUnit.SECONDS));
+        in.setWriterEx(expected);
+        reader.join(10000);
+
+        assertTrue(caught.get() instanceof IOException);
+        assertSame(expected, caught.get().getCause());
+    }
+
+    /**
+     * When the reader closes the stream, a writer blocked on a full ring is released with an {@code IOException}.
+     */
+    @Test
+    public void testReaderCloseReleasesWriter() throws Exception {
+        RingBufferInputStream in = new RingBufferInputStream(2048, 1024);
+        RingBufferOutputStream out = new RingBufferOutputStream(in);
+
+        AtomicReference<Throwable> caught = new AtomicReference<>();
+
+        Thread writer = new Thread(() -> {
+            try {
+                // more than the ring can hold
+                out.write(new byte[8192]);
+            } catch (IOException e) {
+                caught.set(e);
+            }
+        });
+        writer.start();
+
+        in.close();
+        writer.join(10000);
+
+        assertTrue(caught.get() instanceof IOException);
+    }
+
+    @Test
+    public void testConnectOnlyOnce() throws Exception {
+        RingBufferInputStream in = new RingBufferInputStream(2048);
+        new RingBufferOutputStream(in);
+
+        try {
+            new RingBufferOutputStream(in);
+            fail("Expected IOException");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
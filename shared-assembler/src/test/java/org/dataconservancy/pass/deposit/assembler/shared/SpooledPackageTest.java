@@ -0,0 +1,108 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
+import org.dataconservancy.pass.deposit.assembler.PackageOptions.Checksum;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SpooledPackageTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /**
+     * The length and checksums of the spooled package are those of the bytes written, and the package may be opened
+     * more than once.
+     */
+    @Test
+    public void testSpoolComputesLengthAndChecksums() throws Exception {
+        byte[] content = new byte[1024 * 1024 + 3];
+        new Random(1).nextBytes(content);
+
+        try (SpooledPackage underTest = SpooledPackage.spool(tmp.getRoot().toPath(),
+                Arrays.asList(Checksum.OPTS.SHA256, Checksum.OPTS.MD5), out -> {
+                    out.write(content[0]);
+                    out.write(content, 1, content.length - 1);
+                    out.close();
+                })) {
+
+            assertEquals(content.length, underTest.length());
+            assertEquals(2, underTest.checksums().size());
+            assertEquals(Checksum.OPTS.SHA256, underTest.checksums().get(0).algorithm());
+            assertEquals(DigestUtils.sha256Hex(content), underTest.checksums().get(0).asHex());
+            assertEquals(Checksum.OPTS.MD5, underTest.checksums().get(1).algorithm());
+            assertEquals(DigestUtils.md5Hex(content), underTest.checksums().get(1).asHex());
+
+            for (int i = 0; i < 2; i++) {
+                try (InputStream in = underTest.open()) {
+                    assertArrayEquals(content, IOUtils.toByteArray(in));
+                }
+            }
+        }
+    }
+
+    /**
+     * Closing the spooled package deletes the file.
+     */
+    @Test
+    public void testCloseDeletesFile() throws Exception {
+        SpooledPackage underTest = SpooledPackage.spool(tmp.getRoot().toPath(), Collections.emptyList(),
+                out -> out.write(new byte[] { 1, 2, 3 }));
+
+        assertTrue(Files.exists(underTest.file()));
+        underTest.close();
+        assertFalse(Files.exists(underTest.file()));
+    }
+
+    /**
+     * A failure writing the package removes the partially written file.
+     */
+    @Test
+    public void testFailedSpoolRemovesFile() throws Exception {
+        IOException expected = new IOException("Expected exception");
+
+        try {
+            SpooledPackage.spool(tmp.getRoot().toPath(), Collections.emptyList(), out -> {
+                out.write(new byte[] { 1, 2, 3 });
+                throw expected;
+            });
+            fail("Expected IOException");
+        } catch (IOException e) {
+            assertEquals(expected, e);
+        }
+
+        File[] files = tmp.getRoot().listFiles();
+        assertEquals(0, files.length);
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.io.IOUtils;
+import org.apache.tika.mime.MediaType;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ZipCompressionPolicyTest {
+
+    private ZipCompressionPolicy underTest = new ZipCompressionPolicy();
+
+    /**
+     * Known incompressible media types are stored without sampling their bytes.
+     */
+    @Test
+    public void testIncompressibleMediaTypes() throws Exception {
+        InputStream in = new ByteArrayInputStream(text(4096));
+
+        assertEquals(ZipEntry.STORED, underTest.method(MediaType.application("pdf"), in));
+        assertEquals(ZipEntry.STORED, underTest.method(MediaType.image("jpeg"), in));
+        assertEquals(ZipEntry.STORED, underTest.method(MediaType.parse(
+                "application/vnd.openxmlformats-officedocument.wordprocessingml.document"), in));
+        assertEquals(ZipEntry.STORED, underTest.method(MediaType.parse("application/zip; charset=binary"), in));
+
+        assertEquals(4096, IOUtils.toByteArray(in).length);
+    }
+
+    /**
+     * Compressible content of an unremarkable media type is deflated, and the sampled stream is reset.
+     */
+    @Test
+    public void testCompressibleContentDeflated() throws Exception {
+        byte[] content = text(64 * 1024);
+        InputStream in = new BufferedInputStream(new ByteArrayInputStream(content));
+
+        assertEquals(ZipEntry.DEFLATED, underTest.method(MediaType.OCTET_STREAM, in));
+        assertArrayEquals(content, IOUtils.toByteArray(in));
+    }
+
+    /**
+     * High entropy content is stored even if its media type is not known to be incompressible.
+     */
+    @Test
+    public void testHighEntropyContentStored() throws Exception {
+        byte[] content = new byte[64 * 1024];
+        new Random(1).nextBytes(content);
+        InputStream in = new BufferedInputStream(new ByteArrayInputStream(content));
+
+        assertEquals(ZipEntry.STORED, underTest.method(MediaType.OCTET_STREAM, in));
+        assertArrayEquals(content, IOUtils.toByteArray(in));
+    }
+
+    /**
+     * Samples too small to be meaningful are deflated.
+     */
+    @Test
+    public void testSmallSampleDeflated() throws Exception {
+        byte[] content = new byte[100];
+        new Random(1).nextBytes(content);
+
+        assertEquals(ZipEntry.DEFLATED, underTest.method(MediaType.OCTET_STREAM,
+                new BufferedInputStream(new ByteArrayInputStream(content))));
+    }
+
+    /**
+     * A stored entry written to a stream is written without compression effort, and is readable.
+     */
+    @Test
+    public void testStoredEntryWrittenToStream() throws Exception {
+        byte[] stored = new byte[128 * 1024];
+        new Random(1).nextBytes(stored);
+        byte[] deflated = text(128 * 1024);
+
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        try (ZipPackageOutputStream out = new ZipPackageOutputStream(zip, Deflater.BEST_SPEED)) {
+            ZipArchiveEntry entry = new ZipArchiveEntry("stored.bin");
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(stored.length);
+            out.putArchiveEntry(entry);
+            out.write(stored);
+            out.closeArchiveEntry();
+
+            entry = new ZipArchiveEntry("deflated.txt");
+            entry.setMethod(ZipEntry.DEFLATED);
+            out.putArchiveEntry(entry);
+            out.write(deflated);
+            out.closeArchiveEntry();
+        }
+
+        // the incompressible entry costs at most a few bytes per 64 KiB over its length
+        assertTrue(zip.size() < stored.length + deflated.length / 2);
+
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(zip.toByteArray()))) {
+            assertEquals("stored.bin", in.getNextEntry().getName());
+            assertArrayEquals(stored, IOUtils.toByteArray(in));
+            assertEquals("deflated.txt", in.getNextEntry().getName());
+            assertArrayEquals(deflated, IOUtils.toByteArray(in));
+            assertNull(in.getNextEntry());
+        }
+    }
+
+    private static byte[] text(int length) {
+        byte[] content = new byte[length];
+        Random random = new Random(1);
+        for (int i = 0; i < length; i++) {
+            content[i] = (byte) ('a' + random.nextInt(4));
+        }
+        return content;
+    }
+
+}